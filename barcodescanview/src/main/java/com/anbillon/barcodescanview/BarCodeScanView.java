@@ -7,11 +7,27 @@ import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.Result;
 import com.google.zxing.client.android.BeepManager;
 import com.google.zxing.client.android.CaptureHandler;
+import com.google.zxing.client.android.DecodeFormatManager;
+import com.google.zxing.client.android.DecodeMetrics;
+import com.google.zxing.client.android.DecodeStatistics;
+import com.google.zxing.client.android.DecodeTier;
+import com.google.zxing.client.android.FormatStatistics;
+import com.google.zxing.client.android.ResultCacheStatistics;
 import com.google.zxing.client.android.ViewfinderView;
 import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.CameraThread;
+import com.google.zxing.client.android.camera.DecodeAwarePreviewSizePolicy;
+import com.google.zxing.client.android.camera.PreviewSizeChoice;
+import com.google.zxing.client.android.camera.PreviewSizePolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 /**
  * BarCodeScanView Class which uses ZXING lib and let you easily integrate a QR decoder view.
@@ -20,12 +36,19 @@ import com.google.zxing.client.android.camera.CameraManager;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 public class BarCodeScanView extends FrameLayout
-    implements SurfaceHolder.Callback, CaptureHandler.OnCaptureListener {
+    implements SurfaceHolder.Callback, CaptureHandler.OnCaptureListener,
+    CaptureHandler.OnMetricsListener, CameraThread.Callback {
   private OnCameraErrorListener onCameraErrorListener;
   private OnBarCodeReadListener onBarCodeReadListener;
+  private OnDecodeTierListener onDecodeTierListener;
+  private OnBarCodesReadListener onBarCodesReadListener;
+  private OnMetricsListener onMetricsListener;
   private final CameraManager cameraManager;
+  private final CameraThread cameraThread;
   private final BeepManager beepManager;
+  private final ViewfinderView viewfinderView;
   private CaptureHandler captureHandler;
+  private boolean prewarmDecoder;
 
   public BarCodeScanView(Context context) {
     this(context, null);
@@ -41,7 +64,7 @@ public class BarCodeScanView extends FrameLayout
     setKeepScreenOn(true);
 
     SurfaceView surfaceView = new SurfaceView(context, attrs, defStyleAttr);
-    ViewfinderView viewfinderView = new ViewfinderView(context, attrs);
+    viewfinderView = new ViewfinderView(context, attrs);
     LayoutParams params =
         new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
     surfaceView.setLayoutParams(params);
@@ -55,6 +78,16 @@ public class BarCodeScanView extends FrameLayout
     float labelTextSize = a.getDimensionPixelSize(R.styleable.BarCodeScanView_labelTextSize, 40);
     boolean shouldPlayBeepAndVibrate =
         a.getBoolean(R.styleable.BarCodeScanView_shouldPlayBeepAndVibrate, true);
+    int frameWidth = a.getDimensionPixelSize(R.styleable.BarCodeScanView_frameWidth, 0);
+    int frameHeight = a.getDimensionPixelSize(R.styleable.BarCodeScanView_frameHeight, 0);
+    int decodeMargin = a.getDimensionPixelSize(R.styleable.BarCodeScanView_decodeMargin, 0);
+    int fullFrameDecodeInterval =
+        a.getInt(R.styleable.BarCodeScanView_fullFrameDecodeInterval, 0);
+    int decodeFormats =
+        a.getInt(R.styleable.BarCodeScanView_decodeFormats, DecodeFormatManager.ALL);
+    prewarmDecoder = a.getBoolean(R.styleable.BarCodeScanView_prewarmDecoder, false);
+    boolean autoTorch = a.getBoolean(R.styleable.BarCodeScanView_autoTorch, false);
+    boolean autoZoom = a.getBoolean(R.styleable.BarCodeScanView_autoZoom, false);
     a.recycle();
 
     viewfinderView.setLabelText(label);
@@ -63,31 +96,38 @@ public class BarCodeScanView extends FrameLayout
     beepManager = new BeepManager(context);
     beepManager.shouldPlayBeepAndVbirate(shouldPlayBeepAndVibrate);
     cameraManager = new CameraManager(getContext());
+    cameraManager.setManualFramingRect(frameWidth, frameHeight);
+    cameraManager.setDecodeMargin(decodeMargin);
+    cameraManager.setFullFrameDecodeInterval(fullFrameDecodeInterval);
+    cameraManager.setAutoTorchEnabled(autoTorch);
+    cameraManager.setAutoZoomEnabled(autoZoom);
+    cameraThread = new CameraThread(cameraManager, this);
     viewfinderView.setCameraManager(cameraManager);
     surfaceView.getHolder().addCallback(this);
     captureHandler = new CaptureHandler(viewfinderView, cameraManager, this);
+    captureHandler.setDecodeFormats(DecodeFormatManager.getFormats(decodeFormats));
+  }
+
+  @Override public void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    /* camera opens on its own thread while the surface is being created */
+    cameraThread.open();
+    if (prewarmDecoder && captureHandler != null) {
+      captureHandler.prewarmDecoder();
+    }
   }
 
   @Override public void onDetachedFromWindow() {
     super.onDetachedFromWindow();
     setKeepScreenOn(false);
     beepManager.close();
+    cameraThread.quit();
     captureHandler.quitSynchronously();
     captureHandler = null;
   }
 
   @Override public void surfaceCreated(SurfaceHolder holder) {
-    try {
-      cameraManager.openDriver(holder, this.getWidth(), this.getHeight());
-      cameraManager.startPreview();
-    } catch (Exception e) {
-      if (onCameraErrorListener != null) {
-        onCameraErrorListener.onCameraError("Can not open camera: " + e.getMessage());
-      }
-      return;
-    }
-
-    captureHandler.restartPreviewAndDecode();
+    cameraThread.startPreview(holder, this.getWidth(), this.getHeight());
   }
 
   @Override public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
@@ -98,38 +138,52 @@ public class BarCodeScanView extends FrameLayout
       return;
     }
 
-    if (cameraManager.getPreviewSize() == null) {
-      if (onCameraErrorListener != null) {
-        onCameraErrorListener.onCameraError("Error: preview size does not exist");
-      }
-      return;
-    }
+    cameraThread.restartPreview();
+  }
 
-    try {
-      cameraManager.stopPreview();
-      cameraManager.startPreview();
-    } catch (Exception e) {
-      if (onCameraErrorListener != null) {
-        onCameraErrorListener.onCameraError("Can not open camera: " + e.getMessage());
-      }
-      return;
-    }
+  @Override public void surfaceDestroyed(SurfaceHolder holder) {
+    /* blocks until camera let go of the surface */
+    cameraThread.close();
+  }
 
-    captureHandler.restartPreviewAndDecode();
+  @Override public void onPreviewStarted() {
+    if (captureHandler != null) {
+      /* the framing rect is known once camera is configured */
+      viewfinderView.invalidate();
+      captureHandler.restartPreviewAndDecode();
+    }
   }
 
-  @Override public void surfaceDestroyed(SurfaceHolder holder) {
-    cameraManager.stopPreview();
-    cameraManager.closeDriver();
+  @Override public void onCameraError(String errorMsg) {
+    if (onCameraErrorListener != null) {
+      onCameraErrorListener.onCameraError(errorMsg);
+    }
   }
 
-  @Override public void onCapture(Result result) {
+  @Override public void onCapture(Result result, int tier) {
     beepManager.playBeepSoundAndVibrate();
+    if (onDecodeTierListener != null) {
+      onDecodeTierListener.onDecodeTier(result, tier);
+    }
     if (onBarCodeReadListener != null) {
       onBarCodeReadListener.onBarCodeRead(result);
     }
   }
 
+  @Override public void onCaptureBatch(List<Result> results) {
+    beepManager.playBeepSoundAndVibrate();
+    viewfinderView.drawResultPoints(results);
+    if (onBarCodesReadListener != null) {
+      onBarCodesReadListener.onBarCodesRead(results);
+    }
+  }
+
+  @Override public void onMetrics(DecodeMetrics metrics) {
+    if (onMetricsListener != null) {
+      onMetricsListener.onMetrics(metrics);
+    }
+  }
+
   /**
    * Interface defination for a callback to be invoked when opening camera error.
    */
@@ -152,6 +206,43 @@ public class BarCodeScanView extends FrameLayout
     void onBarCodeRead(Result result);
   }
 
+  /**
+   * Interface defination for a callback to be invoked with the decode tier of each result.
+   */
+  public interface OnDecodeTierListener {
+    /**
+     * Invoked when bar code decoded, before {@link OnBarCodeReadListener}.
+     *
+     * @param result {@link Result}
+     * @param tier index of the tier in decode ladder which decoded the result
+     */
+    void onDecodeTier(Result result, int tier);
+  }
+
+  /**
+   * Interface defination for a callback to be invoked when bar codes decoded in multi decode mode.
+   */
+  public interface OnBarCodesReadListener {
+    /**
+     * Invoked when bar codes decoded.
+     *
+     * @param results bar codes found in consecutive frames, without duplicates
+     */
+    void onBarCodesRead(List<Result> results);
+  }
+
+  /**
+   * Interface defination for a callback to be invoked periodically with decode metrics.
+   */
+  public interface OnMetricsListener {
+    /**
+     * Invoked with the metrics since the view was created.
+     *
+     * @param metrics {@link DecodeMetrics}
+     */
+    void onMetrics(DecodeMetrics metrics);
+  }
+
   /**
    * Set on camera error listener.
    *
@@ -170,6 +261,24 @@ public class BarCodeScanView extends FrameLayout
     this.onBarCodeReadListener = onBarCodeReadListener;
   }
 
+  /**
+   * Set the callback to return the decode tier of each result, which helps to tune the ladder.
+   *
+   * @param l {@link OnDecodeTierListener}
+   */
+  public void setOnDecodeTierListener(OnDecodeTierListener l) {
+    this.onDecodeTierListener = l;
+  }
+
+  /**
+   * Set the callback to return all bar codes decoded in multi decode mode.
+   *
+   * @param l {@link OnBarCodesReadListener}
+   */
+  public void setOnBarCodesReadListener(OnBarCodesReadListener l) {
+    this.onBarCodesReadListener = l;
+  }
+
   /**
    * Should play beep and vibrate or not. Default is true.
    *
@@ -180,7 +289,9 @@ public class BarCodeScanView extends FrameLayout
   }
 
   /**
-   * Set Camera autofocus interval value default value is 5000 ms.
+   * Set the longest time camera goes without focusing while nothing is decoded, default value is
+   * 3000 ms. Camera also focuses when frames keep failing to decode or get blurred, and not at
+   * all in continuous focus modes, where it focuses by itself.
    *
    * @param autofocusIntervalInMs autofocus interval value
    */
@@ -192,13 +303,456 @@ public class BarCodeScanView extends FrameLayout
 
   /**
    * Set Torch enabled/disabled.
-   * default value is false
+   * default value is false. Switching torch manually turns auto torch off.
    *
    * @param enabled torch enabled/disabled.
    */
   public void setTorchEnabled(boolean enabled) {
     if (cameraManager != null) {
-      cameraManager.setTorch(enabled);
+      /* camera is switched on its own thread */
+      cameraThread.setTorch(enabled);
+    }
+  }
+
+  /**
+   * Set whether torch is switched on by itself when the framing rect stays dark even at the
+   * brightest exposure, and off again when it stays too bright. Default value is false.
+   *
+   * @param enabled auto torch enabled/disabled
+   */
+  public void setAutoTorchEnabled(boolean enabled) {
+    if (cameraManager != null) {
+      cameraManager.setAutoTorchEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set whether camera zooms in toward bar codes too far away to decode, which is told by how
+   * small the candidate points found by decoder are in the framing rect. Zoom is reset once a bar
+   * code was decoded, or when nothing decoded for a while. Default value is false.
+   *
+   * @param enabled auto zoom enabled/disabled
+   */
+  public void setAutoZoomEnabled(boolean enabled) {
+    if (cameraManager != null) {
+      cameraManager.setAutoZoomEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set whether exposure compensation is stepped to keep the framing rect well exposed. Default
+   * value is true.
+   *
+   * @param enabled auto exposure enabled/disabled
+   */
+  public void setAutoExposureEnabled(boolean enabled) {
+    if (cameraManager != null) {
+      cameraManager.setAutoExposureEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set the size of the framing rect, which is both drawn by the viewfinder and decoded. The rect
+   * is centered horizontally. A width or height of 0 means to size it automatically.
+   *
+   * @param width width of framing rect in pixels
+   * @param height height of framing rect in pixels
+   */
+  public void setFramingRectSize(int width, int height) {
+    if (cameraManager != null) {
+      cameraManager.setManualFramingRect(width, height);
+      viewfinderView.postInvalidate();
+    }
+  }
+
+  /**
+   * Set the margin around the framing rect which is decoded as well. Default is 0.
+   *
+   * @param margin margin in pixels
+   */
+  public void setDecodeMargin(int margin) {
+    if (cameraManager != null) {
+      cameraManager.setDecodeMargin(margin);
+    }
+  }
+
+  /**
+   * Set how often the whole preview frame is decoded instead of the framing rect only, e.g. 5
+   * means every 5th frame. Default is 0, which means the framing rect only.
+   *
+   * @param interval interval in frames
+   */
+  public void setFullFrameDecodeInterval(int interval) {
+    if (cameraManager != null) {
+      cameraManager.setFullFrameDecodeInterval(interval);
+    }
+  }
+
+  /**
+   * Set the number of reusable preview frame buffers, default value is 3. More buffers let the
+   * camera keep delivering frames while the decoder is busy, at the cost of one frame of memory
+   * each. A value of 0 disables buffered preview. Takes effect the next time preview is started.
+   *
+   * @param count number of preview buffers
+   */
+  public void setPreviewBufferCount(int count) {
+    if (cameraManager != null) {
+      cameraManager.setPreviewBufferCount(count);
+    }
+  }
+
+  /**
+   * Set which backend drives the camera, default is {@link CameraManager#FRAME_SOURCE_AUTO},
+   * which uses Camera2 where the camera supports more than legacy camera API through it. Takes
+   * effect the next time the camera is opened.
+   *
+   * @param type one of {@link CameraManager#FRAME_SOURCE_AUTO},
+   * {@link CameraManager#FRAME_SOURCE_LEGACY} and {@link CameraManager#FRAME_SOURCE_CAMERA2}
+   */
+  public void setFrameSourceType(int type) {
+    if (cameraManager != null) {
+      cameraManager.setFrameSourceType(type);
+    }
+  }
+
+  /**
+   * Get the backend driving the camera, {@link CameraManager#FRAME_SOURCE_LEGACY} or
+   * {@link CameraManager#FRAME_SOURCE_CAMERA2} once the camera is opened.
+   *
+   * @return type of frame source
+   */
+  public int getFrameSourceType() {
+    return cameraManager == null ? CameraManager.FRAME_SOURCE_AUTO
+        : cameraManager.getFrameSourceType();
+  }
+
+  /**
+   * Set the policy to choose preview size by, default is {@link DecodeAwarePreviewSizePolicy},
+   * which chooses the smallest size dense enough for the formats to decode. Takes effect the
+   * next time the camera is opened.
+   *
+   * @param policy {@link PreviewSizePolicy}
+   */
+  public void setPreviewSizePolicy(PreviewSizePolicy policy) {
+    if (cameraManager != null) {
+      cameraManager.setPreviewSizePolicy(policy);
+    }
+  }
+
+  /**
+   * Get the preview size chosen the last time the camera was opened, and why.
+   *
+   * @return {@link PreviewSizeChoice}, or null if camera was never opened
+   */
+  public PreviewSizeChoice getPreviewSizeChoice() {
+    return cameraManager == null ? null : cameraManager.getPreviewSizeChoice();
+  }
+
+  /**
+   * Get the number of preview buffers currently held by the decoder.
+   *
+   * @return number of preview buffers in use
+   */
+  public int getPreviewBuffersInUse() {
+    return cameraManager == null ? 0 : cameraManager.getPreviewBuffersInUse();
+  }
+
+  /**
+   * Set the formats to decode by presets, such as {@code DecodeFormatManager.PRODUCT |
+   * DecodeFormatManager.QR_CODE}. Default is {@link DecodeFormatManager#ALL}. Fewer formats make
+   * decoding faster. This can be changed while scanning.
+   *
+   * @param presets presets defined in {@link DecodeFormatManager}
+   */
+  public void setDecodeFormats(int presets) {
+    setDecodeFormats(DecodeFormatManager.getFormats(presets));
+  }
+
+  /**
+   * Set the formats to decode. Fewer formats make decoding faster. This can be changed while
+   * scanning.
+   *
+   * @param formats formats to decode
+   */
+  public void setDecodeFormats(Collection<BarcodeFormat> formats) {
+    if (captureHandler != null) {
+      captureHandler.setDecodeFormats(formats);
+    }
+  }
+
+  /**
+   * Get the formats to decode.
+   *
+   * @return formats to decode, or null once detached from window
+   */
+  public Set<BarcodeFormat> getDecodeFormats() {
+    return captureHandler == null ? null : captureHandler.getDecodeFormats();
+  }
+
+  /**
+   * Set how often readers of rarely decoded formats are tried. Readers of formats decoded often in
+   * this session are tried first on every frame, while the others are tried once every given
+   * number of frames. Default is 4, 1 means every reader on every frame.
+   *
+   * @param interval interval in frames
+   */
+  public void setRareFormatInterval(int interval) {
+    if (captureHandler != null) {
+      captureHandler.setRareFormatInterval(interval);
+    }
+  }
+
+  /**
+   * Get the statistics of formats decoded in this session, which decide the order of readers.
+   *
+   * @return {@link FormatStatistics}, or null once detached from window
+   */
+  public FormatStatistics getFormatStatistics() {
+    return captureHandler == null ? null : captureHandler.getFormatStatistics();
+  }
+
+  /**
+   * Enable or disable skipping of frames which are too blurry or too badly exposed to decode.
+   * Skipped frames make camera focus or adjust exposure instead. Default is enabled.
+   *
+   * @param enabled enabled or not
+   */
+  public void setFrameQualityGateEnabled(boolean enabled) {
+    if (captureHandler != null) {
+      captureHandler.setFrameQualityGateEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set the thresholds below which frames are skipped without decoding. Sharpness is the mean
+   * gradient energy of luminance in the framing rect (default 20), luminance is the mean
+   * luminance in the framing rect from 0 to 255 (default 16 to 240).
+   *
+   * @param minSharpness least sharpness, 0 to disable
+   * @param minLuma least mean luminance, 0 to disable
+   * @param maxLuma most mean luminance, 255 to disable
+   */
+  public void setFrameQualityThresholds(float minSharpness, int minLuma, int maxLuma) {
+    if (captureHandler != null) {
+      captureHandler.setFrameQualityThresholds(minSharpness, minLuma, maxLuma);
+    }
+  }
+
+  /**
+   * Enable or disable skipping of frames which barely changed since the last frame failed to
+   * decode at every tier of decode ladder, or which changed too much since the previous frame to
+   * be sharp. Default is enabled.
+   *
+   * @param enabled enabled or not
+   */
+  public void setMotionGateEnabled(boolean enabled) {
+    if (captureHandler != null) {
+      captureHandler.setMotionGateEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set the thresholds of mean luminance difference between downsampled frames, from 0 to 255.
+   * Default is 3 for still frames and 48 for frames moving too much.
+   *
+   * @param stillThreshold below this a frame is still compared to the last failed frame
+   * @param heavyThreshold above this a frame moved too much compared to the previous frame
+   */
+  public void setMotionThresholds(float stillThreshold, float heavyThreshold) {
+    if (captureHandler != null) {
+      captureHandler.setMotionThresholds(stillThreshold, heavyThreshold);
+    }
+  }
+
+  /**
+   * Enable or disable multi decode mode. In this mode every bar code of a frame is decoded, codes
+   * found in the frames decoded shortly after the first one are merged without duplicates, and
+   * the batch is returned through {@link OnBarCodesReadListener} instead of
+   * {@link OnBarCodeReadListener}. Each code is highlighted in the viewfinder until
+   * {@link #restart()}. Default is disabled.
+   *
+   * @param enabled enabled or not
+   */
+  public void setMultiDecodeEnabled(boolean enabled) {
+    if (captureHandler != null) {
+      captureHandler.setMultiDecodeEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set the time to keep decoding after the first bar code is found in multi decode mode, codes
+   * found meanwhile join the same batch. Default is 300 ms.
+   *
+   * @param windowMs window in milliseconds
+   */
+  public void setMultiDecodeWindow(long windowMs) {
+    if (captureHandler != null) {
+      captureHandler.setMultiDecodeWindow(windowMs);
+    }
+  }
+
+  /**
+   * Enable or disable continuous scanning mode. In this mode decoding never pauses after a
+   * result, so {@link #restart()} is not needed, and a content read again before its entry in
+   * the cache expires is not reported again. Default is disabled.
+   *
+   * @param enabled enabled or not
+   */
+  public void setContinuousScanEnabled(boolean enabled) {
+    if (captureHandler != null) {
+      captureHandler.setContinuousScanEnabled(enabled);
+    }
+  }
+
+  /**
+   * Set the most contents remembered in continuous scanning mode, least recently read ones are
+   * forgotten first. Default is 64.
+   *
+   * @param maxSize max number of contents
+   */
+  public void setResultCacheSize(int maxSize) {
+    if (captureHandler != null) {
+      captureHandler.setResultCacheSize(maxSize);
+    }
+  }
+
+  /**
+   * Set the time after which a content not read again can be reported again in continuous
+   * scanning mode. A content staying in view is not reported again. Default is 5000 ms.
+   *
+   * @param ttlMs time to live in milliseconds
+   */
+  public void setResultCacheTtl(long ttlMs) {
+    if (captureHandler != null) {
+      captureHandler.setResultCacheTtl(ttlMs);
+    }
+  }
+
+  /**
+   * Get the size and hit/miss counters of the cache suppressing repeat reads in continuous
+   * scanning mode.
+   *
+   * @return {@link ResultCacheStatistics}, or null once detached from window
+   */
+  public ResultCacheStatistics getResultCacheStatistics() {
+    return captureHandler == null ? null : captureHandler.getResultCacheStatistics();
+  }
+
+  /**
+   * Set the tiers of decode ladder, from cheapest to most expensive. Each frame is decoded with
+   * the current tier, consecutive failures escalate to the next tier and a success drops back to
+   * the first one. By default frames start downsampled by 2 with the global histogram binarizer
+   * and the likeliest formats, then escalate to full resolution, all formats, the hybrid
+   * binarizer, and finally try harder with inverted frames.
+   *
+   * @param tiers tiers of ladder
+   */
+  public void setDecodeTiers(DecodeTier... tiers) {
+    if (captureHandler != null) {
+      captureHandler.setDecodeTiers(tiers);
+    }
+  }
+
+  /**
+   * Set the number of consecutive failures after which the next tier of decode ladder is used.
+   * Default is 2.
+   *
+   * @param failures number of failures
+   */
+  public void setDecodeFailuresPerTier(int failures) {
+    if (captureHandler != null) {
+      captureHandler.setDecodeFailuresPerTier(failures);
+    }
+  }
+
+  /**
+   * Set the listener invoked on main thread every interval with the latencies of each stage of
+   * decode pipeline, as percentiles, and the counters of frames seen, decoded, skipped and
+   * failed. Metrics are always recorded, so this costs nothing more than the snapshot itself.
+   *
+   * @param l {@link OnMetricsListener}, or null to stop
+   * @param intervalMs interval in milliseconds
+   */
+  public void setOnMetricsListener(OnMetricsListener l, long intervalMs) {
+    this.onMetricsListener = l;
+    if (captureHandler != null) {
+      captureHandler.setOnMetricsListener(l == null ? null : this, intervalMs);
+    }
+  }
+
+  /**
+   * Get the latencies of each stage of decode pipeline and the counters of frames.
+   *
+   * @return {@link DecodeMetrics}, or null once detached from window
+   */
+  public DecodeMetrics getDecodeMetrics() {
+    return captureHandler == null ? null : captureHandler.getDecodeMetrics();
+  }
+
+  /**
+   * Get the counters of frames decoded and skipped.
+   *
+   * @return {@link DecodeStatistics}, or null once detached from window
+   */
+  public DecodeStatistics getDecodeStatistics() {
+    return captureHandler == null ? null : captureHandler.getDecodeStatistics();
+  }
+
+  /**
+   * Prewarm decoder or not. When enabled, the decode threads decode a synthetic frame of each
+   * format to decode while camera is opening, so the first scan is not slowed down by cold
+   * readers. Compare {@link DecodeMetrics#getFirstDecodeTime()} with and without prewarm to tell
+   * what it saves on a device. Default is false, set it before the view is attached to window.
+   *
+   * @param enabled enabled or not
+   */
+  public void setPrewarmDecoderEnabled(boolean enabled) {
+    this.prewarmDecoder = enabled;
+  }
+
+  /**
+   * Set the number of threads decoding preview frames in parallel. Default is the number of
+   * available cores minus one.
+   *
+   * @param workerCount number of decode threads
+   */
+  public void setDecodeWorkerCount(int workerCount) {
+    if (captureHandler != null) {
+      captureHandler.setDecodeWorkerCount(workerCount);
+    }
+  }
+
+  /**
+   * Get the number of preview frames decoded per second, measured over the last second.
+   *
+   * @return frames per second
+   */
+  public float getDecodeFramesPerSecond() {
+    return captureHandler == null ? 0f : captureHandler.getDecodeFramesPerSecond();
+  }
+
+  /**
+   * Start recording the preview frames handed to decoder into a file, so that a scan which failed
+   * in the field can be replayed on the JVM with the frame replayer of benchmark module. Only the
+   * Y plane of frames is recorded, together with the decoder settings, so change settings before
+   * recording. Replays decode exactly like the device with a single decode worker.
+   *
+   * @param file file to append frames to
+   * @param maxBytes most bytes to record, frames beyond are dropped
+   * @throws IOException if the file can not be written
+   */
+  public void startFrameRecording(File file, long maxBytes) throws IOException {
+    if (captureHandler != null) {
+      captureHandler.startFrameRecording(file, maxBytes);
+    }
+  }
+
+  /**
+   * Stop recording preview frames, the file is complete once this returns.
+   */
+  public void stopFrameRecording() {
+    if (captureHandler != null) {
+      captureHandler.stopFrameRecording();
     }
   }
 
@@ -206,6 +760,9 @@ public class BarCodeScanView extends FrameLayout
    * Restart preview and decode.
    */
   public void restart() {
-    captureHandler.restartPreviewAndDecode();
+    viewfinderView.drawViewfinder();
+    if (captureHandler != null) {
+      captureHandler.restartPreviewAndDecode();
+    }
   }
 }
@@ -0,0 +1,51 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import java.util.Arrays;
+
+/**
+ * This class converts a {@link BitMatrix} to ARGB pixels. Encoded bar codes are made of runs of
+ * identical rows (every row of a 1D code, every row of a 2D module), so each row is converted
+ * once and copied for the rows repeating it.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class BitMatrixPixels {
+  private BitMatrixPixels() {
+  }
+
+  /**
+   * Convert a bit matrix to pixels.
+   *
+   * @param matrix matrix to convert
+   * @param onColor color of set bits
+   * @param offColor color of unset bits
+   * @return pixels, row by row
+   */
+  static int[] toPixels(BitMatrix matrix, int onColor, int offColor) {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    int[] pixels = new int[width * height];
+    BitArray row = new BitArray(width);
+    BitArray previousRow = new BitArray(width);
+
+    for (int y = 0; y < height; y++) {
+      row = matrix.getRow(y, row);
+      int offset = y * width;
+      if (y > 0 && Arrays.equals(row.getBitArray(), previousRow.getBitArray())) {
+        System.arraycopy(pixels, offset - width, pixels, offset, width);
+      } else {
+        int[] bits = row.getBitArray();
+        for (int x = 0; x < width; x++) {
+          pixels[offset + x] = (bits[x >>> 5] & (1 << (x & 0x1f))) != 0 ? onColor : offColor;
+        }
+      }
+
+      BitArray swap = previousRow;
+      previousRow = row;
+      row = swap;
+    }
+    return pixels;
+  }
+}
@@ -1,10 +1,17 @@
 package com.google.zxing.client.android;
 
-import android.os.Build;
 import android.os.Handler;
 import android.os.Message;
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.Result;
 import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.Frame;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class handles all the messaging which comprises the state machine for capture.
@@ -12,33 +19,116 @@ import com.google.zxing.client.android.camera.CameraManager;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 public final class CaptureHandler extends Handler {
-  private final DecodeThread decodeThread;
+  private static final long DEFAULT_MULTI_DECODE_WINDOW_MS = 300L;
+
+  private final DecodeEngine decodeEngine;
   private final CameraManager cameraManager;
   private final OnCaptureListener onCaptureListener;
+  private final ResultMerger resultMerger = new ResultMerger();
+  private boolean decoding;
+  private boolean multiDecode;
+  private boolean continuous;
+  private long multiDecodeWindow = DEFAULT_MULTI_DECODE_WINDOW_MS;
+  private OnMetricsListener onMetricsListener;
+  private long metricsInterval;
 
   public CaptureHandler(ViewfinderView viewfinderView, CameraManager cameraManager,
       OnCaptureListener l) {
-    this.decodeThread = new DecodeThread(viewfinderView, cameraManager, this);
-    decodeThread.start();
     this.cameraManager = cameraManager;
     this.onCaptureListener = l;
+    this.decodeEngine = new DecodeEngine(viewfinderView, cameraManager, this,
+        DecodeEngine.defaultWorkerCount());
+    cameraManager.setOnPreviewFrameListener(decodeEngine.getMetrics());
+    cameraManager.setOnFocusListener(decodeEngine.getMetrics());
+    cameraManager.setOnExposureListener(decodeEngine.getMetrics());
   }
 
   @Override public void handleMessage(Message msg) {
     switch (msg.what) {
-      case Constants.MESSAGE_SUCCEEDED:
-        Result result = (Result) msg.obj;
-        if (onCaptureListener != null) {
-          onCaptureListener.onCapture(result);
+      case Constants.MESSAGE_FRAME:
+        Frame frame = (Frame) msg.obj;
+        long frameTime = ((long) msg.arg1 << 32) | (msg.arg2 & 0xffffffffL);
+        if (!decoding || !decodeEngine.dispatch(frame, frameTime)) {
+          cameraManager.releaseFrame(frame);
         }
+        requestPreviewFrames();
         break;
 
+      case Constants.MESSAGE_SUCCEEDED:
       case Constants.MESSAGE_FAILED:
-        restartPreviewAndDecode();
+        PipelineMetrics metrics = decodeEngine.getMetrics();
+        if (msg.obj != null) {
+          metrics.record(DecodeMetrics.STAGE_HANDOFF,
+              System.nanoTime() - ((DecodeResult) msg.obj).postTime);
+        }
+        decodeEngine.onDecodeComplete(msg.arg2, msg.arg1, (DecodeResult) msg.obj);
+        DecodeResult result;
+        while (decoding && (result = decodeEngine.pollResult()) != null) {
+          metrics.record(DecodeMetrics.STAGE_END_TO_END,
+              System.nanoTime() - decodeEngine.getFrameTime(result.sequence));
+          if (continuous) {
+            reportContinuous(result);
+          } else if (multiDecode) {
+            mergeBatch(result);
+          } else {
+            decodeEngine.cancel();
+            decoding = false;
+            if (onCaptureListener != null) {
+              onCaptureListener.onCapture(result.results[0], result.tier);
+            }
+          }
+        }
+        requestPreviewFrames();
+        break;
+
+      case Constants.MESSAGE_BATCH:
+        if (decoding) {
+          decodeEngine.cancel();
+          decoding = false;
+          List<Result> results = resultMerger.getResults();
+          resultMerger.clear();
+          if (onCaptureListener != null) {
+            onCaptureListener.onCaptureBatch(results);
+          }
+        }
+        break;
+
+      case Constants.MESSAGE_METRICS:
+        if (onMetricsListener != null) {
+          onMetricsListener.onMetrics(getDecodeMetrics());
+          sendEmptyMessageDelayed(Constants.MESSAGE_METRICS, metricsInterval);
+        }
         break;
     }
   }
 
+  /**
+   * Report the new bar codes of a frame without pausing decoding.
+   */
+  private void reportContinuous(DecodeResult result) {
+    if (onCaptureListener == null) {
+      return;
+    }
+
+    if (multiDecode) {
+      onCaptureListener.onCaptureBatch(Arrays.asList(result.results));
+    } else {
+      onCaptureListener.onCapture(result.results[0], result.tier);
+    }
+  }
+
+  /**
+   * Merge the bar codes of a frame into current batch, the batch is reported once the window
+   * since its first bar code is over.
+   */
+  private void mergeBatch(DecodeResult result) {
+    boolean first = resultMerger.isEmpty();
+    resultMerger.add(result.results);
+    if (first) {
+      sendEmptyMessageDelayed(Constants.MESSAGE_BATCH, multiDecodeWindow);
+    }
+  }
+
   /**
    * Interface defination for a callback to be invoked when bar code result was captured.
    */
@@ -47,33 +137,308 @@ public final class CaptureHandler extends Handler {
      * Invoked when bar code result was captured.
      *
      * @param result {@link Result}
+     * @param tier index of the tier in decode ladder which decoded the result
+     */
+    void onCapture(Result result, int tier);
+
+    /**
+     * Invoked when bar codes were captured in multi decode mode.
+     *
+     * @param results bar codes merged from consecutive frames
      */
-    void onCapture(Result result);
+    void onCaptureBatch(List<Result> results);
+  }
+
+  /**
+   * Interface defination for a callback to be invoked periodically with decode metrics.
+   */
+  public interface OnMetricsListener {
+    /**
+     * Invoked with the metrics since decoding started.
+     *
+     * @param metrics {@link DecodeMetrics}
+     */
+    void onMetrics(DecodeMetrics metrics);
+  }
+
+  /**
+   * Ask camera for another frame if decoding and a worker is idle.
+   */
+  private void requestPreviewFrames() {
+    if (decoding && decodeEngine.hasIdleWorker()) {
+      cameraManager.requestPreviewFrame(this, Constants.MESSAGE_FRAME);
+    }
   }
 
   /**
    * Restart preview.
    */
   public void restartPreviewAndDecode() {
-    cameraManager.requestPreviewFrame(decodeThread.getHandler(), Constants.MESSAGE_DECODE);
+    decodeEngine.cancel();
+    /* a new scan, frames like the ones failed in last scan deserve another try */
+    decodeEngine.getMotionDetector().reset();
+    decodeEngine.getDecodeLadder().reset();
+    removeMessages(Constants.MESSAGE_BATCH);
+    resultMerger.clear();
+    decoding = true;
+    requestPreviewFrames();
   }
 
   /**
-   * Quit Synchronously.
+   * Set the number of threads decoding frames in parallel.
+   *
+   * @param workerCount number of decode threads
    */
-  public void quitSynchronously() {
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-      decodeThread.quitSafely();
-    } else {
-      decodeThread.quit();
+  public void setDecodeWorkerCount(int workerCount) {
+    decodeEngine.setWorkerCount(workerCount);
+    requestPreviewFrames();
+  }
+
+  /**
+   * Decode synthetic frames of the formats to decode on the decode threads, so the first preview
+   * frame is decoded as fast as the ones after it. This returns at once, call it while camera is
+   * opening.
+   */
+  public void prewarmDecoder() {
+    decodeEngine.prewarm();
+  }
+
+  /**
+   * Set the formats to decode. Reader hints are rebuilt without restarting camera, the preview
+   * size is chosen for the formats the next time camera is opened.
+   *
+   * @param formats formats to decode
+   */
+  public void setDecodeFormats(Collection<BarcodeFormat> formats) {
+    Set<BarcodeFormat> copy = DecodeFormatManager.copyOf(formats);
+    decodeEngine.setDecodeFormats(copy);
+    cameraManager.setDecodeFormats(copy);
+  }
+
+  /**
+   * Get the formats to decode.
+   *
+   * @return immutable set of formats
+   */
+  public Set<BarcodeFormat> getDecodeFormats() {
+    return decodeEngine.getDecodeFormats();
+  }
+
+  /**
+   * Set the interval in frames at which readers of rarely decoded formats are tried.
+   *
+   * @param interval interval in frames, 1 means every reader on every frame
+   */
+  public void setRareFormatInterval(int interval) {
+    decodeEngine.getReaderScheduler().setRareFormatInterval(interval);
+  }
+
+  /**
+   * Get the statistics used to order readers.
+   *
+   * @return {@link FormatStatistics}
+   */
+  public FormatStatistics getFormatStatistics() {
+    return decodeEngine.getReaderScheduler().snapshot(decodeEngine.getDecodeFormats());
+  }
+
+  /**
+   * Set the thresholds below which frames are skipped without decoding.
+   *
+   * @param minSharpness least mean gradient energy of luminance, 0 to disable
+   * @param minLuma least mean luminance, 0 to disable
+   * @param maxLuma most mean luminance, 255 to disable
+   */
+  public void setFrameQualityThresholds(float minSharpness, int minLuma, int maxLuma) {
+    decodeEngine.setFrameQualityGate(new FrameQualityGate(minSharpness, minLuma, maxLuma));
+  }
+
+  /**
+   * Enable or disable skipping of blurred and badly exposed frames.
+   *
+   * @param enabled enabled or not
+   */
+  public void setFrameQualityGateEnabled(boolean enabled) {
+    decodeEngine.setFrameQualityGate(
+        enabled ? FrameQualityGate.DEFAULT : FrameQualityGate.DISABLED);
+  }
+
+  /**
+   * Enable or disable skipping of frames which barely moved since the last failed frame, or which
+   * moved too much to be sharp.
+   *
+   * @param enabled enabled or not
+   */
+  public void setMotionGateEnabled(boolean enabled) {
+    decodeEngine.getMotionDetector().setEnabled(enabled);
+  }
+
+  /**
+   * Set the thresholds of mean luminance difference between frame thumbnails.
+   *
+   * @param stillThreshold below this a frame is still compared to the last failed frame
+   * @param heavyThreshold above this a frame moved too much compared to the previous frame
+   */
+  public void setMotionThresholds(float stillThreshold, float heavyThreshold) {
+    decodeEngine.getMotionDetector().setThresholds(stillThreshold, heavyThreshold);
+  }
+
+  /**
+   * Enable or disable multi decode mode, in which all bar codes of frames decoded within a
+   * window are reported as one batch.
+   *
+   * @param enabled enabled or not
+   */
+  public void setMultiDecodeEnabled(boolean enabled) {
+    multiDecode = enabled;
+    decodeEngine.setMultiDecode(enabled);
+  }
+
+  /**
+   * Set the time to keep merging bar codes after the first one found in multi decode mode.
+   *
+   * @param windowMs window in milliseconds
+   */
+  public void setMultiDecodeWindow(long windowMs) {
+    if (windowMs < 0) {
+      throw new IllegalArgumentException("Multi decode window must not be negative.");
     }
+    multiDecodeWindow = windowMs;
+  }
+
+  /**
+   * Enable or disable continuous scanning mode, in which decoding never pauses after a result
+   * and repeat reads of the same content are suppressed by a cache.
+   *
+   * @param enabled enabled or not
+   */
+  public void setContinuousScanEnabled(boolean enabled) {
+    continuous = enabled;
+    decodeEngine.setContinuous(enabled);
+    decodeEngine.getResultCache().clear();
+  }
+
+  /**
+   * Set the most contents kept by the cache of continuous scanning mode.
+   *
+   * @param maxSize max number of contents
+   */
+  public void setResultCacheSize(int maxSize) {
+    decodeEngine.getResultCache().setMaxSize(maxSize);
+  }
+
+  /**
+   * Set the time after which a content not read again can be reported again.
+   *
+   * @param ttlMs time to live in milliseconds
+   */
+  public void setResultCacheTtl(long ttlMs) {
+    decodeEngine.getResultCache().setTtl(ttlMs);
+  }
+
+  /**
+   * Get the statistics of the cache of continuous scanning mode.
+   *
+   * @return {@link ResultCacheStatistics}
+   */
+  public ResultCacheStatistics getResultCacheStatistics() {
+    return decodeEngine.getResultCache().snapshot();
+  }
+
+  /**
+   * Set the tiers of decode ladder, from cheapest to most expensive.
+   *
+   * @param tiers tiers of ladder
+   */
+  public void setDecodeTiers(DecodeTier... tiers) {
+    decodeEngine.getDecodeLadder().setTiers(tiers);
+  }
 
-    try {
-      decodeThread.join(500L);
-    } catch (InterruptedException ignore) {
+  /**
+   * Set the number of consecutive failures after which the next tier of decode ladder is used.
+   *
+   * @param failures number of failures
+   */
+  public void setDecodeFailuresPerTier(int failures) {
+    decodeEngine.getDecodeLadder().setFailuresPerTier(failures);
+  }
+
+  /**
+   * Set the listener invoked periodically with decode metrics, or null to stop.
+   *
+   * @param l {@link OnMetricsListener}
+   * @param intervalMs interval in milliseconds
+   */
+  public void setOnMetricsListener(OnMetricsListener l, long intervalMs) {
+    if (l != null && intervalMs <= 0) {
+      throw new IllegalArgumentException("Metrics interval must be greater than 0.");
+    }
+    onMetricsListener = l;
+    metricsInterval = intervalMs;
+    removeMessages(Constants.MESSAGE_METRICS);
+    if (l != null) {
+      sendEmptyMessageDelayed(Constants.MESSAGE_METRICS, intervalMs);
     }
+  }
+
+  /**
+   * Get the latencies of each stage of decode pipeline and the counters of frames.
+   *
+   * @return {@link DecodeMetrics}
+   */
+  public DecodeMetrics getDecodeMetrics() {
+    return decodeEngine.getMetrics()
+        .snapshot(decodeEngine.getStatistics(), cameraManager.getStartupMetrics());
+  }
+
+  /**
+   * Get the counters of frames handled by decoder.
+   *
+   * @return {@link DecodeStatistics}
+   */
+  public DecodeStatistics getDecodeStatistics() {
+    return decodeEngine.getStatistics();
+  }
+
+  /**
+   * Start recording the frames handed to decoder, so they can be replayed on the JVM. The
+   * configuration of decoder is recorded when recording starts, change it before.
+   *
+   * @param file file to append frames to
+   * @param maxBytes most bytes to record, frames beyond are dropped
+   * @throws IOException if the file can not be written
+   */
+  public void startFrameRecording(File file, long maxBytes) throws IOException {
+    decodeEngine.startFrameRecording(file, maxBytes);
+  }
+
+  /**
+   * Stop recording frames, the file is complete once this returns.
+   */
+  public void stopFrameRecording() {
+    decodeEngine.stopFrameRecording();
+  }
+
+  /**
+   * Get the number of frames per second decoded, measured over the last second.
+   *
+   * @return frames per second
+   */
+  public float getDecodeFramesPerSecond() {
+    return decodeEngine.getFramesPerSecond();
+  }
+
+  /**
+   * Quit Synchronously.
+   */
+  public void quitSynchronously() {
+    decoding = false;
+    decodeEngine.quitWorkers(true);
+    decodeEngine.stopFrameRecording();
 
     removeMessages(Constants.MESSAGE_SUCCEEDED);
     removeMessages(Constants.MESSAGE_FAILED);
+    removeMessages(Constants.MESSAGE_BATCH);
+    removeMessages(Constants.MESSAGE_METRICS);
   }
 }
@@ -4,7 +4,12 @@ package com.google.zxing.client.android;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class Constants {
+  public static final int MESSAGE_FRAME = 0x50;
   public static final int MESSAGE_DECODE = 0x44;
+  public static final int MESSAGE_SET_FORMATS = 0x48;
+  public static final int MESSAGE_PREWARM = 0x57;
   public static final int MESSAGE_SUCCEEDED = 0x53;
   public static final int MESSAGE_FAILED = 0x46;
+  public static final int MESSAGE_BATCH = 0x42;
+  public static final int MESSAGE_METRICS = 0x4D;
 }
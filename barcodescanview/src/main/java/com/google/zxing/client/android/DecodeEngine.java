@@ -0,0 +1,437 @@
+package com.google.zxing.client.android;
+
+import android.os.Build;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.Frame;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents a pool of {@link DecodeThread}s, each owning its own reader, which decode
+ * preview frames in parallel. Frames are numbered in the order they arrive and results are
+ * reported in the same order. All methods except {@link #isCancelled(int)} and the ones told
+ * otherwise must be called on the thread of {@link CaptureHandler}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class DecodeEngine {
+  private static final String TAG = DecodeEngine.class.getSimpleName();
+  private static final long FPS_WINDOW_MS = 1000L;
+  private static final Object FAILED = new Object();
+
+  private final ViewfinderView viewfinderView;
+  private final CameraManager cameraManager;
+  private final CaptureHandler captureHandler;
+  private final ReaderScheduler readerScheduler = new ReaderScheduler();
+  private final DecodeStatistics statistics = new DecodeStatistics();
+  private final MotionDetector motionDetector = new MotionDetector();
+  private final DecodeLadder decodeLadder = new DecodeLadder();
+  private final ResultCache resultCache = new ResultCache();
+  private final PipelineMetrics metrics = new PipelineMetrics();
+  private volatile FrameQualityGate frameQualityGate = FrameQualityGate.DEFAULT;
+  private volatile boolean multiDecode;
+  private volatile boolean continuous;
+  private volatile FrameRecorder frameRecorder;
+
+  private Set<BarcodeFormat> decodeFormats =
+      DecodeFormatManager.copyOf(DecodeFormatManager.ALL_FORMATS);
+  private DecodeThread[] workers;
+  private boolean[] busy;
+  private int busyCount;
+  /* worker ids keep increasing across rebuilds, so replies from retired workers are recognized */
+  private int workerIdBase;
+  /* results of frames in flight waiting to be reported in order, indexed by sequence */
+  private Object[] completed;
+  /* arrival time of frames in flight, indexed by sequence like completed */
+  private long[] frameTimes;
+  private int nextSequence;
+  private int nextToReport;
+  private volatile int cancelledBelow;
+
+  private long fpsWindowStart;
+  private int fpsWindowFrames;
+  private float framesPerSecond;
+
+  DecodeEngine(ViewfinderView viewfinderView, CameraManager cameraManager,
+      CaptureHandler captureHandler, int workerCount) {
+    this.viewfinderView = viewfinderView;
+    this.cameraManager = cameraManager;
+    this.captureHandler = captureHandler;
+    startWorkers(workerCount);
+  }
+
+  /**
+   * Get the default number of workers: all cores but one, which is left for preview and UI.
+   */
+  static int defaultWorkerCount() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+  private void startWorkers(int workerCount) {
+    workers = new DecodeThread[workerCount];
+    busy = new boolean[workerCount];
+    busyCount = 0;
+    /* let workers run ahead of a slow frame, but only so far */
+    completed = new Object[workerCount * 2];
+    frameTimes = new long[completed.length];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new DecodeThread(viewfinderView, cameraManager, captureHandler, this,
+          workerIdBase + i, decodeFormats);
+      workers[i].start();
+    }
+    cameraManager.setMinPreviewBufferCount(workerCount + 1);
+  }
+
+  /**
+   * Change the number of workers. Frames in flight are cancelled.
+   *
+   * @param workerCount number of workers
+   */
+  void setWorkerCount(int workerCount) {
+    if (workerCount <= 0) {
+      throw new IllegalArgumentException("Worker count must be greater than 0.");
+    }
+    if (workerCount == workers.length) {
+      return;
+    }
+
+    cancel();
+    quitWorkers(false);
+    workerIdBase += workers.length;
+    startWorkers(workerCount);
+  }
+
+  int getWorkerCount() {
+    return workers.length;
+  }
+
+  /**
+   * Warm decoder up with synthetic frames of the formats to decode, without waiting. The formats
+   * are shared out among workers, since loaded classes and code compiled by JIT serve all of
+   * them, so the prewarm takes about as long as its share on a single worker.
+   */
+  void prewarm() {
+    List<BarcodeFormat> formats = new ArrayList<>(decodeFormats);
+    int workerCount = Math.min(workers.length, formats.size());
+    if (workerCount == 0) {
+      return;
+    }
+
+    metrics.onPrewarmStarted(workerCount);
+    for (int i = 0; i < workerCount; i++) {
+      List<BarcodeFormat> share = new ArrayList<>();
+      for (int j = i; j < formats.size(); j += workerCount) {
+        share.add(formats.get(j));
+      }
+      workers[i].prewarm(share);
+    }
+  }
+
+  /**
+   * Change the formats to decode without restarting workers or camera.
+   *
+   * @param formats formats to decode
+   */
+  void setDecodeFormats(Set<BarcodeFormat> formats) {
+    decodeFormats = formats;
+    for (DecodeThread worker : workers) {
+      worker.setDecodeFormats(formats);
+    }
+  }
+
+  Set<BarcodeFormat> getDecodeFormats() {
+    return decodeFormats;
+  }
+
+  ReaderScheduler getReaderScheduler() {
+    return readerScheduler;
+  }
+
+  DecodeStatistics getStatistics() {
+    return statistics;
+  }
+
+  MotionDetector getMotionDetector() {
+    return motionDetector;
+  }
+
+  DecodeLadder getDecodeLadder() {
+    return decodeLadder;
+  }
+
+  ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the gate which tells frames not worth decoding. This can be called on any thread.
+   *
+   * @param frameQualityGate {@link FrameQualityGate}
+   */
+  void setFrameQualityGate(FrameQualityGate frameQualityGate) {
+    this.frameQualityGate = frameQualityGate;
+  }
+
+  FrameQualityGate getFrameQualityGate() {
+    return frameQualityGate;
+  }
+
+  /**
+   * Decode all bar codes in each frame or the first one found. This can be called on any thread.
+   *
+   * @param multiDecode multi decode or not
+   */
+  void setMultiDecode(boolean multiDecode) {
+    this.multiDecode = multiDecode;
+  }
+
+  boolean isMultiDecode() {
+    return multiDecode;
+  }
+
+  /**
+   * Keep decoding after a result and report new contents only. This can be called on any thread.
+   *
+   * @param continuous continuous or not
+   */
+  void setContinuous(boolean continuous) {
+    this.continuous = continuous;
+  }
+
+  boolean isContinuous() {
+    return continuous;
+  }
+
+  /**
+   * Start recording the frames handed to workers and how they were decoded, see
+   * {@link FrameRecorder}. What the pipeline learned so far is forgotten first, so that the
+   * recording replays from a known state. A recording in progress is stopped.
+   *
+   * @param file file to append to
+   * @param maxBytes most bytes to record
+   * @throws IOException if the file can not be written
+   */
+  synchronized void startFrameRecording(File file, long maxBytes) throws IOException {
+    stopFrameRecording();
+    FrameRecorder recorder = new FrameRecorder(file, maxBytes);
+    readerScheduler.reset();
+    decodeLadder.reset();
+    motionDetector.reset();
+    resultCache.clear();
+    try {
+      recorder.recordConfig(decodeFormats, decodeLadder, frameQualityGate, motionDetector,
+          readerScheduler, resultCache, multiDecode, continuous);
+    } catch (IOException e) {
+      recorder.close();
+      throw e;
+    }
+    frameRecorder = recorder;
+  }
+
+  /**
+   * Stop recording frames, the file is complete once this returns.
+   */
+  void stopFrameRecording() {
+    FrameRecorder recorder = frameRecorder;
+    if (recorder != null) {
+      stopFrameRecording(recorder);
+    }
+  }
+
+  /**
+   * Stop a recording if it is still the current one. This can be called on any thread.
+   *
+   * @param recorder {@link FrameRecorder} to stop
+   */
+  synchronized void stopFrameRecording(FrameRecorder recorder) {
+    if (frameRecorder == recorder) {
+      frameRecorder = null;
+    }
+    try {
+      recorder.close();
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to close frame recording", e);
+    }
+  }
+
+  /**
+   * Get the current recording, or null if not recording. This can be called on any thread.
+   */
+  FrameRecorder getFrameRecorder() {
+    return frameRecorder;
+  }
+
+  /**
+   * Check if there is a worker ready to decode another frame.
+   */
+  boolean hasIdleWorker() {
+    return busyCount < workers.length && nextSequence - nextToReport < completed.length;
+  }
+
+  /**
+   * Hand a frame to an idle worker.
+   *
+   * @param frame preview frame
+   * @param frameTime {@link System#nanoTime()} when the frame arrived
+   * @return true if the frame was dispatched, otherwise return false
+   */
+  boolean dispatch(Frame frame, long frameTime) {
+    if (!hasIdleWorker()) {
+      return false;
+    }
+
+    for (int i = 0; i < workers.length; i++) {
+      if (!busy[i] && workers[i].getHandler() != null) {
+        busy[i] = true;
+        busyCount++;
+        frameTimes[nextSequence % frameTimes.length] = frameTime;
+        Message.obtain(workers[i].getHandler(), Constants.MESSAGE_DECODE, nextSequence++, 0, frame)
+            .sendToTarget();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Invoked when a worker has finished a frame.
+   *
+   * @param workerId id of the worker
+   * @param sequence sequence of the frame
+   * @param result decoded result, or null if failed
+   */
+  void onDecodeComplete(int workerId, int sequence, DecodeResult result) {
+    int index = workerId - workerIdBase;
+    if (index < 0 || index >= workers.length) {
+      /* reply from a retired worker */
+      return;
+    }
+    if (busy[index]) {
+      busy[index] = false;
+      busyCount--;
+    }
+    if (sequence < cancelledBelow) {
+      return;
+    }
+
+    countFrame();
+    completed[sequence % completed.length] = result == null ? FAILED : result;
+  }
+
+  /**
+   * Get the next result to report in frame order. Call {@link #cancel()} to drop the frames still
+   * in flight once a result is enough.
+   *
+   * @return the next result, or null if none yet
+   */
+  DecodeResult pollResult() {
+    while (nextToReport < nextSequence) {
+      int slot = nextToReport % completed.length;
+      Object next = completed[slot];
+      if (next == null) {
+        /* an earlier frame is still in flight */
+        return null;
+      }
+      completed[slot] = null;
+      nextToReport++;
+      if (next != FAILED) {
+        return (DecodeResult) next;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the time a frame arrived. It stays valid while the frame is in flight, so this can be
+   * called by the worker decoding the frame, and until another frame is dispatched once reported.
+   *
+   * @param sequence sequence of the frame
+   * @return {@link System#nanoTime()} when the frame arrived
+   */
+  long getFrameTime(int sequence) {
+    return frameTimes[sequence % frameTimes.length];
+  }
+
+  /**
+   * Cancel all frames in flight, their results will never be reported.
+   */
+  void cancel() {
+    cancelledBelow = nextSequence;
+    nextToReport = nextSequence;
+    for (int i = 0; i < completed.length; i++) {
+      completed[i] = null;
+    }
+  }
+
+  /**
+   * Check if the frame has been cancelled. This can be called on any thread.
+   *
+   * @param sequence sequence of the frame
+   * @return true if cancelled, otherwise return false
+   */
+  boolean isCancelled(int sequence) {
+    return sequence < cancelledBelow;
+  }
+
+  private void countFrame() {
+    long now = SystemClock.elapsedRealtime();
+    if (fpsWindowFrames == 0) {
+      fpsWindowStart = now;
+    }
+    fpsWindowFrames++;
+    long elapsed = now - fpsWindowStart;
+    if (elapsed >= FPS_WINDOW_MS) {
+      framesPerSecond = fpsWindowFrames * 1000f / elapsed;
+      fpsWindowFrames = 0;
+    }
+  }
+
+  /**
+   * Get the number of frames per second decoded by all workers, measured over the last second.
+   */
+  float getFramesPerSecond() {
+    if (SystemClock.elapsedRealtime() - fpsWindowStart > 2 * FPS_WINDOW_MS) {
+      /* no frames decoded recently */
+      return 0f;
+    }
+    return framesPerSecond;
+  }
+
+  /**
+   * Quit all workers.
+   *
+   * @param wait wait for workers to finish or not
+   */
+  void quitWorkers(boolean wait) {
+    for (DecodeThread worker : workers) {
+      worker.releaseResultPoints();
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        worker.quitSafely();
+      } else {
+        worker.quit();
+      }
+    }
+
+    if (!wait) {
+      return;
+    }
+
+    for (DecodeThread worker : workers) {
+      try {
+        worker.join(500L);
+      } catch (InterruptedException ignore) {
+      }
+    }
+  }
+}
@@ -17,10 +17,22 @@
 package com.google.zxing.client.android;
 
 import com.google.zxing.BarcodeFormat;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
 
-final class DecodeFormatManager {
+public final class DecodeFormatManager {
+  /* presets of formats, which can be combined, must match the flags of decodeFormats attribute */
+  public static final int PRODUCT = 0x01;
+  public static final int INDUSTRIAL = 0x02;
+  public static final int ONE_D = PRODUCT | INDUSTRIAL;
+  public static final int QR_CODE = 0x04;
+  public static final int DATA_MATRIX = 0x08;
+  public static final int AZTEC = 0x10;
+  public static final int PDF417 = 0x20;
+  public static final int ALL = ONE_D | QR_CODE | DATA_MATRIX | AZTEC | PDF417;
+
   private static final Set<BarcodeFormat> PRODUCT_FORMATS;
   private static final Set<BarcodeFormat> INDUSTRIAL_FORMATS;
   private static final Set<BarcodeFormat> ONE_D_FORMATS;
@@ -29,7 +41,7 @@ final class DecodeFormatManager {
       EnumSet.of(BarcodeFormat.DATA_MATRIX);
   private static final Set<BarcodeFormat> AZTEC_FORMATS = EnumSet.of(BarcodeFormat.AZTEC);
   private static final Set<BarcodeFormat> PDF417_FORMATS = EnumSet.of(BarcodeFormat.PDF_417);
-  public static Set<BarcodeFormat> ALL_FORMATS = EnumSet.noneOf(BarcodeFormat.class);
+  static final Set<BarcodeFormat> ALL_FORMATS = EnumSet.noneOf(BarcodeFormat.class);
 
   static {
     PRODUCT_FORMATS = EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13,
@@ -49,4 +61,46 @@ final class DecodeFormatManager {
 
   private DecodeFormatManager() {
   }
+
+  /**
+   * Get the formats of the given presets.
+   *
+   * @param presets presets combined with bitwise or, such as {@code PRODUCT | QR_CODE}
+   * @return formats of the presets
+   */
+  public static Set<BarcodeFormat> getFormats(int presets) {
+    Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+    if ((presets & PRODUCT) != 0) {
+      formats.addAll(PRODUCT_FORMATS);
+    }
+    if ((presets & INDUSTRIAL) != 0) {
+      formats.addAll(INDUSTRIAL_FORMATS);
+    }
+    if ((presets & QR_CODE) != 0) {
+      formats.addAll(QR_CODE_FORMATS);
+    }
+    if ((presets & DATA_MATRIX) != 0) {
+      formats.addAll(DATA_MATRIX_FORMATS);
+    }
+    if ((presets & AZTEC) != 0) {
+      formats.addAll(AZTEC_FORMATS);
+    }
+    if ((presets & PDF417) != 0) {
+      formats.addAll(PDF417_FORMATS);
+    }
+    return formats;
+  }
+
+  /**
+   * Make an immutable copy of formats to decode, throwing if nothing would be decoded.
+   *
+   * @param formats formats to decode
+   * @return immutable copy of the formats
+   */
+  static Set<BarcodeFormat> copyOf(Collection<BarcodeFormat> formats) {
+    if (formats == null || formats.isEmpty()) {
+      throw new IllegalArgumentException("At least one format must be decoded.");
+    }
+    return Collections.unmodifiableSet(EnumSet.copyOf(formats));
+  }
 }
@@ -1,80 +1,189 @@
 package com.google.zxing.client.android;
 
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
-import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import android.util.Log;
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.Frame;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.io.IOException;
+import java.util.Collection;
 
 /**
- * This class represents a {@link Handler} used in {@link DecodeThread}.
+ * This class represents a {@link Handler} used in {@link DecodeThread}. Each decoded frame is
+ * reported back with its sequence in arg1 and the worker id in arg2. The frame itself is decoded
+ * by a {@link FrameDecoder}, this class only feeds it and tells camera what it asks for.
  *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
-final class DecodeHandler extends Handler {
-  private final MultiFormatReader multiFormatReader;
+final class DecodeHandler extends Handler implements FrameDecoder.Listener {
+  private static final String TAG = DecodeHandler.class.getSimpleName();
+
+  private final ScheduledMultiFormatReader multiFormatReader;
   private final CameraManager cameraManager;
+  private final ViewfinderResultPointCallback resultPointCallback;
   private final Handler handler;
+  private final DecodeEngine decodeEngine;
+  private final FrameDecoder frameDecoder;
+  private final int workerId;
+  /* region of the frame being decoded */
+  private Rect region;
+  private boolean fullFrame;
 
-  DecodeHandler(CameraManager cameraManager, MultiFormatReader multiFormatReader,
-      CaptureHandler captureHandler, Looper looper) {
+  DecodeHandler(CameraManager cameraManager, ScheduledMultiFormatReader multiFormatReader,
+      ViewfinderResultPointCallback resultPointCallback, CaptureHandler captureHandler,
+      DecodeEngine decodeEngine, int workerId, Looper looper) {
     super(looper);
     this.cameraManager = cameraManager;
     this.multiFormatReader = multiFormatReader;
+    this.resultPointCallback = resultPointCallback;
+    this.decodeEngine = decodeEngine;
+    this.workerId = workerId;
     handler = captureHandler;
+    frameDecoder = new FrameDecoder(multiFormatReader, decodeEngine.getDecodeLadder(),
+        decodeEngine.getMotionDetector(), decodeEngine.getResultCache(),
+        decodeEngine.getStatistics(), this);
   }
 
   @Override public void handleMessage(Message msg) {
     switch (msg.what) {
       case Constants.MESSAGE_DECODE:
-        decode((byte[]) msg.obj);
+        Frame frame = (Frame) msg.obj;
+        try {
+          decode(frame, msg.arg1);
+        } finally {
+          cameraManager.releaseFrame(frame);
+        }
+        break;
+
+      case Constants.MESSAGE_SET_FORMATS:
+        @SuppressWarnings("unchecked") Collection<BarcodeFormat> decodeFormats =
+            (Collection<BarcodeFormat>) msg.obj;
+        multiFormatReader.setHints(DecodeThread.buildHints(decodeFormats, resultPointCallback));
+        break;
+
+      case Constants.MESSAGE_PREWARM:
+        @SuppressWarnings("unchecked") Collection<BarcodeFormat> prewarmFormats =
+            (Collection<BarcodeFormat>) msg.obj;
+        prewarm(prewarmFormats);
         break;
     }
   }
 
-  @SuppressWarnings("SuspiciousNameCombination") private void decode(byte[] data) {
-    if (cameraManager.getPreviewSize() == null) {
-      Message message = Message.obtain(handler, Constants.MESSAGE_FAILED);
+  private void prewarm(Collection<BarcodeFormat> formats) {
+    int frames = 0;
+    try {
+      frames = new DecodePrewarmer().prewarm(formats, decodeEngine.getDecodeLadder().getTiers());
+    } catch (RuntimeException e) {
+      /* a prewarm is only an optimization, never let it break decoding */
+      Log.w(TAG, "Failed to prewarm decoder", e);
+    } finally {
+      decodeEngine.getMetrics().onPrewarmDone(frames);
+    }
+  }
+
+  private void decode(Frame frame, int sequence) {
+    if (!cameraManager.isOpen() || decodeEngine.isCancelled(sequence)) {
+      Message message = Message.obtain(handler, Constants.MESSAGE_FAILED, sequence, workerId);
       message.sendToTarget();
       return;
     }
 
-    int width = cameraManager.getPreviewSize().x;
-    int height = cameraManager.getPreviewSize().y;
-
-      /* rotate the data cause width and height is opposite  */
-    byte[] rotatedData = new byte[data.length];
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++)
-        rotatedData[x * height + height - y - 1] = data[x + y * width];
-    }
+    /* decode the framing rect only, falling back to the whole frame every few frames */
+    int fullFrameInterval = cameraManager.getFullFrameDecodeInterval();
+    fullFrame = fullFrameInterval > 0 && (sequence + 1) % fullFrameInterval == 0;
+    region = cameraManager.getDecodeRegion(fullFrame);
 
-    final PlanarYUVLuminanceSource source =
-        cameraManager.buildLuminanceSource(rotatedData, height, width);
-    Result rawResult = null;
+    /* the source rotates the frame on the fly, so no copy of the frame is needed */
+    PipelineMetrics metrics = decodeEngine.getMetrics();
+    long start = System.nanoTime();
+    final RotatedYUVLuminanceSource source = cameraManager.buildLuminanceSource(frame, region);
+    metrics.record(DecodeMetrics.STAGE_LUMINANCE, System.nanoTime() - start);
 
+    DecodeResult result = null;
     if (source != null) {
-      BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-      try {
-        rawResult = multiFormatReader.decodeWithState(bitmap);
-      } catch (ReaderException ignore) {
-        /* continue */
-      } finally {
-        multiFormatReader.reset();
+      long frameTime = decodeEngine.getFrameTime(sequence);
+      boolean focusing = cameraManager.isFocusing();
+      FrameRecorder recorder = decodeEngine.getFrameRecorder();
+      boolean recorded = recorder != null
+          && record(recorder, frame, source, sequence, frameTime, focusing);
+
+      frameDecoder.setOptions(decodeEngine.getFrameQualityGate(), decodeEngine.isMultiDecode(),
+          decodeEngine.isContinuous());
+      frameDecoder.setMeasuring(cameraManager.isExposureControlled());
+      resultPointCallback.startFrame();
+      int outcome = frameDecoder.decode(source, sequence, frameTime, focusing);
+      if (outcome == FrameDecoder.OUTCOME_DECODED || outcome == FrameDecoder.OUTCOME_FAILED) {
+        cameraManager.recordFrameDecoded();
+        metrics.record(DecodeMetrics.STAGE_BINARIZATION, frameDecoder.getBinarizationTime());
+        metrics.record(DecodeMetrics.STAGE_READER, frameDecoder.getReaderTime());
+        metrics.recordDecode(frameDecoder.getBinarizationTime() + frameDecoder.getReaderTime());
+        /* a repeat read in continuous mode still tells that camera is in focus */
+        cameraManager.reportDecodeOutcome(
+            outcome == FrameDecoder.OUTCOME_DECODED || frameDecoder.isFound());
+      }
+      if (outcome == FrameDecoder.OUTCOME_FAILED) {
+        /* points found without a bar code decoded tell whether a code is too far away */
+        resultPointCallback.endFrame();
+      }
+      if (outcome == FrameDecoder.OUTCOME_DECODED) {
+        cameraManager.resetAutoZoom();
+        result = new DecodeResult(frameDecoder.getResults(), frameDecoder.getTier(), sequence,
+            System.nanoTime());
+      }
+      if (recorded) {
+        recordOutcome(recorder, sequence, outcome);
       }
     }
 
-    if (rawResult != null) {
-      Message message = Message.obtain(handler, Constants.MESSAGE_SUCCEEDED, rawResult);
+    if (result != null) {
+      Message message =
+          Message.obtain(handler, Constants.MESSAGE_SUCCEEDED, sequence, workerId, result);
       message.sendToTarget();
     } else {
-      Message message = Message.obtain(handler, Constants.MESSAGE_FAILED);
+      Message message = Message.obtain(handler, Constants.MESSAGE_FAILED, sequence, workerId);
       message.sendToTarget();
     }
   }
+
+  private boolean record(FrameRecorder recorder, Frame frame, RotatedYUVLuminanceSource source,
+      int sequence, long frameTime, boolean focusing) {
+    try {
+      return recorder.recordFrame(frame, source, sequence, frameTime, focusing);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to record frame, recording stopped", e);
+      decodeEngine.stopFrameRecording(recorder);
+      return false;
+    }
+  }
+
+  private void recordOutcome(FrameRecorder recorder, int sequence, int outcome) {
+    try {
+      recorder.recordOutcome(sequence, outcome, frameDecoder.getTier(),
+          frameDecoder.getResults());
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to record outcome, recording stopped", e);
+      decodeEngine.stopFrameRecording(recorder);
+    }
+  }
+
+  @Override public void onDecodeTier(DecodeTier tier) {
+    resultPointCallback.setDecodeRegion(region, tier.getSample());
+  }
+
+  /**
+   * Tell camera the quality of frame, so that it focuses when frames get blurred, and follows
+   * the exposure of framing rect.
+   */
+  @Override public void onFrameQuality(FrameQuality quality) {
+    cameraManager.reportFrameQuality(quality.sharpness,
+        quality.verdict != FrameQualityGate.VERDICT_BLURRY);
+    /* the whole frame decoded now and then says little about the framing rect */
+    if (!fullFrame) {
+      cameraManager.reportFrameLuma(quality.meanLuma);
+    }
+  }
 }
@@ -0,0 +1,101 @@
+package com.google.zxing.client.android;
+
+/**
+ * This class decides how hard each frame is decoded. Frames start at the cheapest
+ * {@link DecodeTier}, and every few consecutive failures escalate to the next tier. A success
+ * drops back to the cheapest tier. Failures at the last tier wrap around to the cheapest one, so
+ * a scene without any bar code does not keep the most expensive tier forever. This class is shared
+ * by all decode workers.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class DecodeLadder {
+  static final int DEFAULT_FAILURES_PER_TIER = 2;
+
+  private DecodeTier[] tiers = DecodeTier.defaultLadder();
+  private int failuresPerTier = DEFAULT_FAILURES_PER_TIER;
+  private int current;
+  private int failures;
+
+  /**
+   * Set the tiers, from cheapest to most expensive.
+   *
+   * @param tiers tiers of ladder
+   */
+  synchronized void setTiers(DecodeTier[] tiers) {
+    if (tiers == null || tiers.length == 0) {
+      throw new IllegalArgumentException("Decode ladder must have at least one tier.");
+    }
+    this.tiers = tiers.clone();
+    reset();
+  }
+
+  synchronized DecodeTier[] getTiers() {
+    return tiers.clone();
+  }
+
+  synchronized DecodeTier getTier(int index) {
+    /* index may be stale if tiers were replaced meanwhile */
+    return tiers[Math.min(index, tiers.length - 1)];
+  }
+
+  /**
+   * Set the number of consecutive failures after which the next tier is used.
+   *
+   * @param failures number of failures
+   */
+  synchronized void setFailuresPerTier(int failures) {
+    if (failures <= 0) {
+      throw new IllegalArgumentException("Failures per tier must be greater than 0.");
+    }
+    this.failuresPerTier = failures;
+  }
+
+  synchronized int getFailuresPerTier() {
+    return failuresPerTier;
+  }
+
+  /**
+   * Check if given tier is the most expensive one, a frame failing there failed at every tier.
+   *
+   * @param index index of tier
+   */
+  synchronized boolean isTopTier(int index) {
+    return index >= tiers.length - 1;
+  }
+
+  /**
+   * Get the index of tier the next frame should be decoded with.
+   */
+  synchronized int current() {
+    return current;
+  }
+
+  /**
+   * Record a frame which failed to decode.
+   *
+   * @param tier index of tier the frame was decoded with
+   */
+  synchronized void onFailed(int tier) {
+    /* workers finishing frames started before the last escalation do not count twice */
+    if (tier != current) {
+      return;
+    }
+    if (++failures >= failuresPerTier) {
+      failures = 0;
+      current = (current + 1) % tiers.length;
+    }
+  }
+
+  /**
+   * Record a frame decoded successfully, drop back to the cheapest tier.
+   */
+  synchronized void onSucceeded() {
+    reset();
+  }
+
+  synchronized void reset() {
+    current = 0;
+    failures = 0;
+  }
+}
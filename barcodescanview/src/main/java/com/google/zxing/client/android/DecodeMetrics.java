@@ -0,0 +1,171 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.client.android.camera.StartupMetrics;
+
+/**
+ * A snapshot of where the time of decode pipeline goes, from preview frame to result, along with
+ * counters of frames. Latencies are in microseconds.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class DecodeMetrics {
+  /** Time between two preview frames delivered by camera. */
+  public static final int STAGE_FRAME_INTERVAL = 0;
+  /** Time to build the luminance source of the region to decode. */
+  public static final int STAGE_LUMINANCE = 1;
+  /** Time spent in binarizer, including reading luminance. */
+  public static final int STAGE_BINARIZATION = 2;
+  /** Time spent in readers, excluding binarizer. */
+  public static final int STAGE_READER = 3;
+  /** Time from a worker posting a result to the main thread handling it. */
+  public static final int STAGE_HANDOFF = 4;
+  /** Time from preview frame delivered by camera to its result reported. */
+  public static final int STAGE_END_TO_END = 5;
+  /** Time from frames getting blurred or camera starting to focus to the next sharp frame. */
+  public static final int STAGE_TIME_TO_SHARP = 6;
+  /** Time from the framing rect getting too dark or bright to it being well exposed again. */
+  public static final int STAGE_EXPOSURE_SETTLE = 7;
+  static final int STAGE_COUNT = 8;
+
+  private final StageLatency[] stages;
+  private final long framesSeen;
+  private final long framesDecoded;
+  private final long framesSkipped;
+  private final long framesFailed;
+  private final long prewarmTime;
+  private final int prewarmFrames;
+  private final long firstDecodeTime;
+  private final StartupMetrics startup;
+  private final ExposureMetrics exposure;
+
+  DecodeMetrics(StageLatency[] stages, long framesSeen, long framesDecoded, long framesSkipped,
+      long framesFailed, long prewarmTime, int prewarmFrames, long firstDecodeTime,
+      StartupMetrics startup, ExposureMetrics exposure) {
+    this.stages = stages;
+    this.framesSeen = framesSeen;
+    this.framesDecoded = framesDecoded;
+    this.framesSkipped = framesSkipped;
+    this.framesFailed = framesFailed;
+    this.prewarmTime = prewarmTime;
+    this.prewarmFrames = prewarmFrames;
+    this.firstDecodeTime = firstDecodeTime;
+    this.startup = startup;
+    this.exposure = exposure;
+  }
+
+  /**
+   * Get the latencies of a stage.
+   *
+   * @param stage one of the stages defined in this class
+   * @return {@link StageLatency}
+   */
+  public StageLatency getStage(int stage) {
+    if (stage < 0 || stage >= STAGE_COUNT) {
+      throw new IllegalArgumentException("Bad stage: " + stage);
+    }
+    return stages[stage];
+  }
+
+  /**
+   * Get the number of preview frames delivered by camera, decoded or not.
+   */
+  public long getFramesSeen() {
+    return framesSeen;
+  }
+
+  /**
+   * Get the number of frames run through binarizer and readers.
+   */
+  public long getFramesDecoded() {
+    return framesDecoded;
+  }
+
+  /**
+   * Get the number of frames skipped without decoding.
+   */
+  public long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /**
+   * Get the number of frames decoded without any bar code found.
+   */
+  public long getFramesFailed() {
+    return framesFailed;
+  }
+
+  /**
+   * Get the time from starting to prewarm decoder to all workers done, or -1 if decoder was not
+   * prewarmed or is still prewarming.
+   */
+  public long getPrewarmTime() {
+    return prewarmTime;
+  }
+
+  /**
+   * Get the number of synthetic frames decoded to prewarm decoder, 0 if not prewarmed.
+   */
+  public int getPrewarmFrames() {
+    return prewarmFrames;
+  }
+
+  /**
+   * Get the time spent in binarizer and readers on the first preview frame decoded, or -1 if no
+   * frame was decoded yet. Compare it with and without prewarm to tell what prewarm saves.
+   */
+  public long getFirstDecodeTime() {
+    return firstDecodeTime;
+  }
+
+  /**
+   * Get how long the camera took to start, including time to first frame.
+   */
+  public StartupMetrics getStartup() {
+    return startup;
+  }
+
+  /**
+   * Get what exposure controller decided so far.
+   */
+  public ExposureMetrics getExposure() {
+    return exposure;
+  }
+
+  @Override public String toString() {
+    return "DecodeMetrics{seen "
+        + framesSeen
+        + ", decoded "
+        + framesDecoded
+        + ", skipped "
+        + framesSkipped
+        + ", failed "
+        + framesFailed
+        + ", interval "
+        + stages[STAGE_FRAME_INTERVAL]
+        + ", luminance "
+        + stages[STAGE_LUMINANCE]
+        + ", binarization "
+        + stages[STAGE_BINARIZATION]
+        + ", reader "
+        + stages[STAGE_READER]
+        + ", handoff "
+        + stages[STAGE_HANDOFF]
+        + ", end to end "
+        + stages[STAGE_END_TO_END]
+        + ", time to sharp "
+        + stages[STAGE_TIME_TO_SHARP]
+        + ", exposure settle "
+        + stages[STAGE_EXPOSURE_SETTLE]
+        + ", prewarm "
+        + prewarmTime
+        + " ("
+        + prewarmFrames
+        + " frames), first decode "
+        + firstDecodeTime
+        + ", startup "
+        + startup
+        + ", exposure "
+        + exposure
+        + '}';
+  }
+}
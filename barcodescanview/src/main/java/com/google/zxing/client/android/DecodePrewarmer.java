@@ -0,0 +1,93 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class warms decoder up before the first preview frame arrives. On the first frame the
+ * readers and binarizers are not loaded yet and the decode loop is interpreted until JIT compiles
+ * it, so the first scan is slower than the ones after it. The prewarmer decodes a synthetic frame
+ * of each format through every tier of decode ladder, with a reader, ladder and counters of its
+ * own, so nothing learned from these frames leaks into real decoding. It does not depend on
+ * Android, so it can be measured on the JVM.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class DecodePrewarmer {
+  static final int FRAME_WIDTH = 640;
+  static final int FRAME_HEIGHT = 480;
+
+  private static final int ROTATION = 90;
+  private static final long SEED = 0x5052455741524dL;
+
+  private final ScheduledMultiFormatReader multiFormatReader =
+      new ScheduledMultiFormatReader(new ReaderScheduler());
+  private final DecodeLadder decodeLadder = new DecodeLadder();
+  private final FrameDecoder frameDecoder;
+  private final SyntheticFrameGenerator generator;
+  private final DecodeTier[] tier = new DecodeTier[1];
+  private byte[] buffer;
+  private int sequence;
+
+  DecodePrewarmer() {
+    MotionDetector motionDetector = new MotionDetector();
+    motionDetector.setEnabled(false);
+    frameDecoder = new FrameDecoder(multiFormatReader, decodeLadder, motionDetector,
+        new ResultCache(), new DecodeStatistics(), new FrameDecoder.Listener() {
+      @Override public void onDecodeTier(DecodeTier tier) {
+      }
+
+      @Override public void onFrameQuality(FrameQuality quality) {
+      }
+    });
+    frameDecoder.setOptions(FrameQualityGate.DISABLED, false, false);
+    generator = new SyntheticFrameGenerator(FRAME_WIDTH, FRAME_HEIGHT, SEED);
+    generator.setRotation(ROTATION);
+  }
+
+  /**
+   * Decode a synthetic frame of each format through each tier.
+   *
+   * @param formats formats to warm up, the ones generator can not draw are left out
+   * @param tiers tiers of decode ladder
+   * @return number of frames decoded, one per format and tier
+   */
+  int prewarm(Collection<BarcodeFormat> formats, DecodeTier[] tiers) {
+    Set<BarcodeFormat> drawable = EnumSet.noneOf(BarcodeFormat.class);
+    for (BarcodeFormat format : formats) {
+      if (SyntheticFrameGenerator.SUPPORTED_FORMATS.contains(format)) {
+        drawable.add(format);
+      }
+    }
+    if (drawable.isEmpty()) {
+      return 0;
+    }
+
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, drawable);
+    multiFormatReader.setHints(hints);
+
+    int frames = 0;
+    for (BarcodeFormat format : drawable) {
+      generator.setFormats(EnumSet.of(format));
+      SyntheticFrame frame = generator.frame(sequence, buffer);
+      buffer = frame.data;
+      RotatedYUVLuminanceSource source =
+          new RotatedYUVLuminanceSource(frame.data, frame.width, frame.height, ROTATION, false);
+      /* one tier at a time, a clean frame would never escalate past the cheapest one */
+      for (DecodeTier next : tiers) {
+        tier[0] = next;
+        decodeLadder.setTiers(tier);
+        frameDecoder.decode(source, sequence++, System.nanoTime(), false);
+        frames++;
+      }
+    }
+    return frames;
+  }
+}
@@ -0,0 +1,25 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.Result;
+
+/**
+ * A frame decoded successfully by a worker, sent back to {@link CaptureHandler}. In multi decode
+ * mode a frame may hold several bar codes.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class DecodeResult {
+  final Result[] results;
+  /* index of the tier in decode ladder which decoded the frame */
+  final int tier;
+  final int sequence;
+  /* System.nanoTime() when the worker posted this result */
+  final long postTime;
+
+  DecodeResult(Result[] results, int tier, int sequence, long postTime) {
+    this.results = results;
+    this.tier = tier;
+    this.sequence = sequence;
+    this.postTime = postTime;
+  }
+}
@@ -0,0 +1,155 @@
+package com.google.zxing.client.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of frames handled by the decode workers. Counters are updated by all workers and can
+ * be read from any thread.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class DecodeStatistics {
+  private final AtomicLong framesDecoded = new AtomicLong();
+  private final AtomicLong framesSkippedFocusing = new AtomicLong();
+  private final AtomicLong framesSkippedBlurry = new AtomicLong();
+  private final AtomicLong framesSkippedUnderexposed = new AtomicLong();
+  private final AtomicLong framesSkippedOverexposed = new AtomicLong();
+  private final AtomicLong framesSkippedStill = new AtomicLong();
+  private final AtomicLong framesSkippedMotion = new AtomicLong();
+  private final AtomicLong framesFailed = new AtomicLong();
+
+  DecodeStatistics() {
+  }
+
+  void onFrameDecoded() {
+    framesDecoded.incrementAndGet();
+  }
+
+  void onFrameFailed() {
+    framesFailed.incrementAndGet();
+  }
+
+  void onFrameSkippedFocusing() {
+    framesSkippedFocusing.incrementAndGet();
+  }
+
+  /**
+   * Count a frame skipped by {@link FrameQualityGate}.
+   *
+   * @param verdict verdict of the gate
+   */
+  void onFrameSkipped(int verdict) {
+    switch (verdict) {
+      case FrameQualityGate.VERDICT_BLURRY:
+        framesSkippedBlurry.incrementAndGet();
+        break;
+      case FrameQualityGate.VERDICT_UNDEREXPOSED:
+        framesSkippedUnderexposed.incrementAndGet();
+        break;
+      case FrameQualityGate.VERDICT_OVEREXPOSED:
+        framesSkippedOverexposed.incrementAndGet();
+        break;
+    }
+  }
+
+  /**
+   * Count a frame skipped by {@link MotionDetector}.
+   *
+   * @param motion motion of the frame
+   */
+  void onFrameSkippedMotion(int motion) {
+    if (motion == MotionDetector.MOTION_STILL) {
+      framesSkippedStill.incrementAndGet();
+    } else if (motion == MotionDetector.MOTION_HEAVY) {
+      framesSkippedMotion.incrementAndGet();
+    }
+  }
+
+  /**
+   * Get the number of frames run through binarizer and readers.
+   */
+  public long getFramesDecoded() {
+    return framesDecoded.get();
+  }
+
+  /**
+   * Get the number of frames decoded without any bar code found.
+   */
+  public long getFramesFailed() {
+    return framesFailed.get();
+  }
+
+  /**
+   * Get the number of frames skipped because camera was focusing.
+   */
+  public long getFramesSkippedFocusing() {
+    return framesSkippedFocusing.get();
+  }
+
+  /**
+   * Get the number of frames skipped as too blurry to decode.
+   */
+  public long getFramesSkippedBlurry() {
+    return framesSkippedBlurry.get();
+  }
+
+  /**
+   * Get the number of frames skipped as too dark to decode.
+   */
+  public long getFramesSkippedUnderexposed() {
+    return framesSkippedUnderexposed.get();
+  }
+
+  /**
+   * Get the number of frames skipped as too bright to decode.
+   */
+  public long getFramesSkippedOverexposed() {
+    return framesSkippedOverexposed.get();
+  }
+
+  /**
+   * Get the number of frames skipped as nearly identical to the last frame failed to decode.
+   */
+  public long getFramesSkippedStill() {
+    return framesSkippedStill.get();
+  }
+
+  /**
+   * Get the number of frames skipped as moving too much.
+   */
+  public long getFramesSkippedMotion() {
+    return framesSkippedMotion.get();
+  }
+
+  /**
+   * Get the number of frames skipped for any reason.
+   */
+  public long getFramesSkipped() {
+    return getFramesSkippedFocusing()
+        + getFramesSkippedBlurry()
+        + getFramesSkippedUnderexposed()
+        + getFramesSkippedOverexposed()
+        + getFramesSkippedStill()
+        + getFramesSkippedMotion();
+  }
+
+  @Override public String toString() {
+    return "DecodeStatistics{decoded "
+        + getFramesDecoded()
+        + ", failed "
+        + getFramesFailed()
+        + ", skipped focusing "
+        + getFramesSkippedFocusing()
+        + ", blurry "
+        + getFramesSkippedBlurry()
+        + ", underexposed "
+        + getFramesSkippedUnderexposed()
+        + ", overexposed "
+        + getFramesSkippedOverexposed()
+        + ", still "
+        + getFramesSkippedStill()
+        + ", motion "
+        + getFramesSkippedMotion()
+        + '}';
+  }
+}
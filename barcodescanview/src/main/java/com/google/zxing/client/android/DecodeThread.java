@@ -4,49 +4,104 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ResultPointCallback;
 import com.google.zxing.client.android.camera.CameraManager;
 import java.util.Collection;
 import java.util.EnumMap;
-import java.util.EnumSet;
 import java.util.Map;
 
 /**
- * This class represents a {@link Thread} for bar code decoding.
+ * This class represents a {@link Thread} for bar code decoding. Each thread owns its own reader
+ * and hints, so several threads can decode at the same time.
  *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class DecodeThread extends HandlerThread {
   private final CameraManager cameraManager;
-  private final MultiFormatReader multiFormatReader;
+  private final ScheduledMultiFormatReader multiFormatReader;
   private final CaptureHandler captureHandler;
-  private DecodeHandler decodeHandler;
+  private final ViewfinderResultPointCallback resultPointCallback;
+  private final DecodeEngine decodeEngine;
+  private final int workerId;
+  private Collection<BarcodeFormat> decodeFormats;
+  /* formats to prewarm once the handler exists, or null */
+  private Collection<BarcodeFormat> prewarmFormats;
+  private volatile DecodeHandler decodeHandler;
 
-  private DecodeThread(String name, ViewfinderView viewfinderView, CameraManager cameraManager,
-      CaptureHandler captureHandler) {
-    super(name);
+  DecodeThread(ViewfinderView viewfinderView, CameraManager cameraManager,
+      CaptureHandler captureHandler, DecodeEngine decodeEngine, int workerId,
+      Collection<BarcodeFormat> decodeFormats) {
+    super("DecodeThread-" + workerId);
 
-    multiFormatReader = new MultiFormatReader();
-    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
-    Collection<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
-    decodeFormats.addAll(DecodeFormatManager.ALL_FORMATS);
-    hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK,
-        new ViewfinderResultPointCallback(viewfinderView, cameraManager));
-    multiFormatReader.setHints(hints);
+    multiFormatReader = new ScheduledMultiFormatReader(decodeEngine.getReaderScheduler());
+    resultPointCallback = new ViewfinderResultPointCallback(viewfinderView, cameraManager);
     this.cameraManager = cameraManager;
     this.captureHandler = captureHandler;
-  }
-
-  DecodeThread(ViewfinderView viewfinderView, CameraManager cameraManager,
-      CaptureHandler captureHandler) {
-    this("DecodeThread", viewfinderView, cameraManager, captureHandler);
+    this.decodeEngine = decodeEngine;
+    this.workerId = workerId;
+    this.decodeFormats = decodeFormats;
   }
 
   @Override protected void onLooperPrepared() {
     super.onLooperPrepared();
-    decodeHandler =
-        new DecodeHandler(cameraManager, multiFormatReader, captureHandler, getLooper());
+    synchronized (this) {
+      multiFormatReader.setHints(buildHints(decodeFormats, resultPointCallback));
+      decodeHandler = new DecodeHandler(cameraManager, multiFormatReader, resultPointCallback,
+          captureHandler, decodeEngine, workerId, getLooper());
+      if (prewarmFormats != null) {
+        decodeHandler.obtainMessage(Constants.MESSAGE_PREWARM, prewarmFormats).sendToTarget();
+        prewarmFormats = null;
+      }
+    }
+  }
+
+  /**
+   * Build the hints of reader.
+   *
+   * @param decodeFormats formats to decode
+   * @param resultPointCallback {@link ResultPointCallback} to use
+   * @return hints of reader
+   */
+  static Map<DecodeHintType, Object> buildHints(Collection<BarcodeFormat> decodeFormats,
+      ResultPointCallback resultPointCallback) {
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
+    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+    return hints;
+  }
+
+  /**
+   * Change the formats to decode. The reader hints are rebuilt on this thread before the next
+   * frame is decoded.
+   *
+   * @param decodeFormats formats to decode
+   */
+  synchronized void setDecodeFormats(Collection<BarcodeFormat> decodeFormats) {
+    this.decodeFormats = decodeFormats;
+    if (decodeHandler != null) {
+      decodeHandler.obtainMessage(Constants.MESSAGE_SET_FORMATS, decodeFormats).sendToTarget();
+    }
+  }
+
+  /**
+   * Decode synthetic frames of given formats on this thread before any preview frame, see
+   * {@link DecodePrewarmer}. Preview frames handed meanwhile wait for the prewarm to finish.
+   *
+   * @param formats formats to prewarm
+   */
+  synchronized void prewarm(Collection<BarcodeFormat> formats) {
+    if (decodeHandler == null) {
+      prewarmFormats = formats;
+    } else {
+      decodeHandler.obtainMessage(Constants.MESSAGE_PREWARM, formats).sendToTarget();
+    }
+  }
+
+  /**
+   * Stop showing the possible result points of this thread, as it is quitting.
+   */
+  void releaseResultPoints() {
+    resultPointCallback.release();
   }
 
   /**
@@ -0,0 +1,80 @@
+package com.google.zxing.client.android;
+
+/**
+ * One step of the decode ladder, see {@link DecodeLadder}. A tier tells how hard a frame is
+ * decoded: at which resolution, with which binarizer, with which readers and hints. Options are
+ * combined as flags, such as {@code DecodeTier.HYBRID_BINARIZER | DecodeTier.TRY_HARDER}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class DecodeTier {
+  /** Use {@link com.google.zxing.common.HybridBinarizer} instead of the global histogram one. */
+  public static final int HYBRID_BINARIZER = 1;
+  /** Try every enabled reader, not only the ones of formats decoded often in this session. */
+  public static final int ALL_FORMATS = 2;
+  /** Decode with {@link com.google.zxing.DecodeHintType#TRY_HARDER}. */
+  public static final int TRY_HARDER = 4;
+  /** Decode the inverted frame as well, for light codes on dark background. */
+  public static final int INVERTED = 8;
+
+  private final int sample;
+  private final int flags;
+
+  /**
+   * Create a tier.
+   *
+   * @param sample read one pixel out of sample in both directions, 1 means full resolution
+   * @param flags options of tier
+   */
+  public DecodeTier(int sample, int flags) {
+    if (sample <= 0) {
+      throw new IllegalArgumentException("Sample must be greater than 0.");
+    }
+    this.sample = sample;
+    this.flags = flags;
+  }
+
+  /**
+   * Get the default ladder, from cheapest to most expensive.
+   */
+  static DecodeTier[] defaultLadder() {
+    return new DecodeTier[] {
+        new DecodeTier(2, 0), new DecodeTier(1, ALL_FORMATS),
+        new DecodeTier(1, HYBRID_BINARIZER | ALL_FORMATS),
+        new DecodeTier(1, HYBRID_BINARIZER | ALL_FORMATS | TRY_HARDER | INVERTED)
+    };
+  }
+
+  public int getSample() {
+    return sample;
+  }
+
+  public int getFlags() {
+    return flags;
+  }
+
+  public boolean isHybridBinarizer() {
+    return (flags & HYBRID_BINARIZER) != 0;
+  }
+
+  public boolean isAllFormats() {
+    return (flags & ALL_FORMATS) != 0;
+  }
+
+  public boolean isTryHarder() {
+    return (flags & TRY_HARDER) != 0;
+  }
+
+  public boolean isInverted() {
+    return (flags & INVERTED) != 0;
+  }
+
+  @Override public String toString() {
+    return "DecodeTier{sample " + sample
+        + (isHybridBinarizer() ? ", hybrid" : ", global")
+        + (isAllFormats() ? ", all formats" : ", likeliest formats")
+        + (isTryHarder() ? ", try harder" : "")
+        + (isInverted() ? ", inverted" : "")
+        + '}';
+  }
+}
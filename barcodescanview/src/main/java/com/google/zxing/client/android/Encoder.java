@@ -11,11 +11,8 @@ import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import java.util.Hashtable;
 
 /**
  * This class represents a encoder for 1D/2D barcode.
@@ -23,12 +20,6 @@ import java.util.Hashtable;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 public final class Encoder {
-  private static final Hashtable<EncodeHintType, String> HINTS = new Hashtable<>();
-
-  static {
-    HINTS.put(EncodeHintType.CHARACTER_SET, "utf-8");
-  }
-
   /**
    * Generate bar code with text below.
    *
@@ -50,7 +41,8 @@ public final class Encoder {
   }
 
   /**
-   * Generate bar code.
+   * Generate bar code. The bitmap is always as large as asked, content needing a wider code is
+   * clipped on the right.
    *
    * @param content content to encode
    * @param width width of bar code
@@ -58,19 +50,15 @@ public final class Encoder {
    * @return bar code bitmap
    */
   public static Bitmap generateBarcodeBitmap(String content, int width, int height) {
-    MultiFormatWriter writer = new MultiFormatWriter();
     Bitmap bitmap = null;
     try {
-      BitMatrix result = writer.encode(content, BarcodeFormat.CODE_128, width, height, HINTS);
-      int[] pixels = new int[width * height];
-      for (int y = 0; y < height; y++) {
-        int offset = y * width;
-        for (int x = 0; x < width; x++) {
-          pixels[offset + x] = result.get(x, y) ? Color.BLACK : Color.WHITE;
-        }
-      }
+      BitMatrix result = MatrixEncoder.encode(content, BarcodeFormat.CODE_128, width, height);
+      /* the matrix is wider than asked if the content needs more room, it is clipped as ever */
+      int matrixWidth = result.getWidth();
+      int[] pixels = BitMatrixPixels.toPixels(result, Color.BLACK, Color.WHITE);
       bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-      bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+      bitmap.setPixels(pixels, 0, matrixWidth, 0, 0, Math.min(width, matrixWidth),
+          Math.min(height, result.getHeight()));
     } catch (WriterException e) {
       e.printStackTrace();
     }
@@ -140,19 +128,10 @@ public final class Encoder {
   public static Bitmap createQRCodeBitmap(String content, int widthAndHeight)
       throws WriterException {
     BitMatrix matrix =
-        new MultiFormatWriter().encode(content, BarcodeFormat.QR_CODE, widthAndHeight,
-            widthAndHeight, HINTS);
+        MatrixEncoder.encode(content, BarcodeFormat.QR_CODE, widthAndHeight, widthAndHeight);
     int width = matrix.getWidth();
     int height = matrix.getHeight();
-    int[] pixels = new int[width * height];
-
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        if (matrix.get(x, y)) {
-          pixels[y * width + x] = Color.BLACK;
-        }
-      }
-    }
+    int[] pixels = BitMatrixPixels.toPixels(matrix, Color.BLACK, Color.TRANSPARENT);
 
     Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
     bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
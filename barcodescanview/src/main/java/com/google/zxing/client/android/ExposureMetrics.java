@@ -0,0 +1,76 @@
+package com.google.zxing.client.android;
+
+/**
+ * A snapshot of what exposure controller decided so far: exposure compensation stepped up or
+ * down, and torch switched on or off, along with the smoothed luminance of the framing rect
+ * behind the last decision. How long the framing rect took to get well exposed again is in
+ * {@link DecodeMetrics#STAGE_EXPOSURE_SETTLE}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class ExposureMetrics {
+  private final int stepsUp;
+  private final int stepsDown;
+  private final int torchOnSwitches;
+  private final int torchOffSwitches;
+  private final float lastDecisionLuma;
+
+  ExposureMetrics(int stepsUp, int stepsDown, int torchOnSwitches, int torchOffSwitches,
+      float lastDecisionLuma) {
+    this.stepsUp = stepsUp;
+    this.stepsDown = stepsDown;
+    this.torchOnSwitches = torchOnSwitches;
+    this.torchOffSwitches = torchOffSwitches;
+    this.lastDecisionLuma = lastDecisionLuma;
+  }
+
+  /**
+   * Get the number of times exposure compensation was stepped up.
+   */
+  public int getStepsUp() {
+    return stepsUp;
+  }
+
+  /**
+   * Get the number of times exposure compensation was stepped down.
+   */
+  public int getStepsDown() {
+    return stepsDown;
+  }
+
+  /**
+   * Get the number of times torch was switched on.
+   */
+  public int getTorchOnSwitches() {
+    return torchOnSwitches;
+  }
+
+  /**
+   * Get the number of times torch was switched off.
+   */
+  public int getTorchOffSwitches() {
+    return torchOffSwitches;
+  }
+
+  /**
+   * Get the smoothed mean luminance of the framing rect which led to the last decision, or -1 if
+   * nothing was decided yet.
+   */
+  public float getLastDecisionLuma() {
+    return lastDecisionLuma;
+  }
+
+  @Override public String toString() {
+    return "{up "
+        + stepsUp
+        + ", down "
+        + stepsDown
+        + ", torch on "
+        + torchOnSwitches
+        + ", torch off "
+        + torchOffSwitches
+        + ", luma "
+        + lastDecisionLuma
+        + '}';
+  }
+}
@@ -0,0 +1,77 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A snapshot of the statistics used to order readers, see {@link ReaderScheduler}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class FormatStatistics {
+  private final Set<BarcodeFormat> enabledFormats;
+  private final float[] scores;
+  private final long[] hits;
+  private final long[] skippedFrames;
+
+  FormatStatistics(Set<BarcodeFormat> enabledFormats, float[] scores, long[] hits,
+      long[] skippedFrames) {
+    this.enabledFormats = Collections.unmodifiableSet(enabledFormats);
+    this.scores = scores;
+    this.hits = hits;
+    this.skippedFrames = skippedFrames;
+  }
+
+  /**
+   * Get the formats enabled when this snapshot was taken.
+   */
+  public Set<BarcodeFormat> getEnabledFormats() {
+    return enabledFormats;
+  }
+
+  /**
+   * Get the decaying hit count of a format, recent hits weigh more than old ones.
+   *
+   * @param format {@link BarcodeFormat}
+   * @return decaying hit count
+   */
+  public float getScore(BarcodeFormat format) {
+    return scores[format.ordinal()];
+  }
+
+  /**
+   * Get the number of times a format was decoded in this session.
+   *
+   * @param format {@link BarcodeFormat}
+   * @return number of hits
+   */
+  public long getHits(BarcodeFormat format) {
+    return hits[format.ordinal()];
+  }
+
+  /**
+   * Get the number of frames on which the reader of a format was skipped as rarely decoded.
+   *
+   * @param format {@link BarcodeFormat}
+   * @return number of frames skipped
+   */
+  public long getSkippedFrames(BarcodeFormat format) {
+    return skippedFrames[format.ordinal()];
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder("FormatStatistics{");
+    for (BarcodeFormat format : enabledFormats) {
+      sb.append(format)
+          .append("=[score ")
+          .append(getScore(format))
+          .append(", hits ")
+          .append(getHits(format))
+          .append(", skipped ")
+          .append(getSkippedFrames(format))
+          .append("] ");
+    }
+    return sb.append('}').toString();
+  }
+}
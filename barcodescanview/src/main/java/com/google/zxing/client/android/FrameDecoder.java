@@ -0,0 +1,299 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * This class decodes a single frame: it runs the frame through the quality and motion gates,
+ * decodes it at the tier told by {@link DecodeLadder}, and updates the state shared by all
+ * workers. It does not depend on Android, so recorded frames can be replayed on the JVM through
+ * exactly the same code. This class is not thread safe, every decode worker owns one.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class FrameDecoder {
+  static final int OUTCOME_DECODED = 0;
+  static final int OUTCOME_FAILED = 1;
+  static final int OUTCOME_SKIPPED_FOCUSING = 2;
+  static final int OUTCOME_SKIPPED_QUALITY = 3;
+  static final int OUTCOME_SKIPPED_MOTION = 4;
+
+  private final ScheduledMultiFormatReader multiFormatReader;
+  private final DecodeLadder decodeLadder;
+  private final MotionDetector motionDetector;
+  private final ResultCache resultCache;
+  private final DecodeStatistics statistics;
+  private final Listener listener;
+  private final FrameQuality frameQuality = new FrameQuality();
+  private final int[] thumbnail =
+      new int[MotionDetector.THUMBNAIL_SIZE * MotionDetector.THUMBNAIL_SIZE];
+  private boolean hasThumbnail;
+  /* nanoseconds spent in binarizers of current frame */
+  private final long[] binarizationTime = new long[1];
+  private long readerTime;
+
+  private FrameQualityGate frameQualityGate = FrameQualityGate.DEFAULT;
+  private boolean multiDecode;
+  private boolean continuous;
+  private boolean measuring;
+
+  private Result[] results;
+  private boolean found;
+  private int tier;
+
+  FrameDecoder(ScheduledMultiFormatReader multiFormatReader, DecodeLadder decodeLadder,
+      MotionDetector motionDetector, ResultCache resultCache, DecodeStatistics statistics,
+      Listener listener) {
+    this.multiFormatReader = multiFormatReader;
+    this.decodeLadder = decodeLadder;
+    this.motionDetector = motionDetector;
+    this.resultCache = resultCache;
+    this.statistics = statistics;
+    this.listener = listener;
+  }
+
+  /**
+   * Interface defination for a callback to be invoked on the decoding thread, so that the owner
+   * can tell camera how to get better frames.
+   */
+  interface Listener {
+    /**
+     * Invoked right before a frame is decoded with a tier.
+     *
+     * @param tier {@link DecodeTier} to decode with
+     */
+    void onDecodeTier(DecodeTier tier);
+
+    /**
+     * Invoked when {@link FrameQualityGate} measured a frame, whether rejected or not, the
+     * verdict is in {@link FrameQuality#verdict}.
+     *
+     * @param quality {@link FrameQuality}, only valid during the call
+     */
+    void onFrameQuality(FrameQuality quality);
+  }
+
+  /**
+   * Set the options of next frames.
+   *
+   * @param frameQualityGate gate which tells frames not worth decoding
+   * @param multiDecode decode all bar codes of a frame or not
+   * @param continuous report new contents only or not
+   */
+  void setOptions(FrameQualityGate frameQualityGate, boolean multiDecode, boolean continuous) {
+    this.frameQualityGate = frameQualityGate;
+    this.multiDecode = multiDecode;
+    this.continuous = continuous;
+  }
+
+  /**
+   * Set whether the quality of next frames is measured even with the gate disabled, for camera
+   * to follow it.
+   *
+   * @param measuring measure or not
+   */
+  void setMeasuring(boolean measuring) {
+    this.measuring = measuring;
+  }
+
+  /**
+   * Decode a frame.
+   *
+   * @param source the region of frame to decode
+   * @param sequence sequence of the frame
+   * @param frameTime {@link System#nanoTime()} when the frame arrived
+   * @param focusing camera was focusing or not
+   * @return one of the outcomes, results are available with {@link #getResults()} if decoded
+   */
+  int decode(RotatedYUVLuminanceSource source, int sequence, long frameTime, boolean focusing) {
+    results = null;
+    found = false;
+    binarizationTime[0] = 0L;
+    readerTime = 0L;
+    tier = decodeLadder.current();
+
+    int outcome = checkQuality(source, focusing);
+    if (outcome == OUTCOME_DECODED) {
+      outcome = checkMotion(source);
+    }
+    if (outcome != OUTCOME_DECODED) {
+      return outcome;
+    }
+
+    statistics.onFrameDecoded();
+    long start = System.nanoTime();
+    try {
+      results = decode(source, sequence, decodeLadder.getTier(tier));
+    } catch (ReaderException ignore) {
+      /* continue */
+    }
+    readerTime = System.nanoTime() - start - binarizationTime[0];
+
+    if (results == null) {
+      statistics.onFrameFailed();
+      decodeLadder.onFailed(tier);
+    } else {
+      found = true;
+      if (continuous) {
+        /* repeat reads are dropped here, so they never wake up the main thread */
+        results = resultCache.filter(results, frameTime / 1000000L);
+      }
+      /* a code staying in view must not hold the ladder down, new codes may need higher tiers */
+      if (results == null) {
+        decodeLadder.onFailed(tier);
+      } else {
+        decodeLadder.onSucceeded();
+      }
+    }
+
+    /*
+     * a frame with nothing new is as useless as a failed one, skip frames just like it, but only
+     * once it failed at the top tier, still frames must escalate through the ladder first
+     */
+    if (results == null) {
+      if (hasThumbnail && decodeLadder.isTopTier(tier)) {
+        motionDetector.onDecodeFailed(thumbnail, source.getWidth() * source.getSample(),
+            source.getHeight() * source.getSample());
+      }
+      return OUTCOME_FAILED;
+    }
+    return OUTCOME_DECODED;
+  }
+
+  /**
+   * Get the bar codes of last frame, in terms of the rotated preview frame.
+   */
+  Result[] getResults() {
+    return results;
+  }
+
+  /**
+   * Check if readers found a bar code in last frame, even if it was dropped as a repeat read.
+   */
+  boolean isFound() {
+    return found;
+  }
+
+  /**
+   * Get the index of tier in decode ladder which last frame was decoded with.
+   */
+  int getTier() {
+    return tier;
+  }
+
+  /**
+   * Get the nanoseconds spent in binarizers on last frame.
+   */
+  long getBinarizationTime() {
+    return binarizationTime[0];
+  }
+
+  /**
+   * Get the nanoseconds spent in readers on last frame.
+   */
+  long getReaderTime() {
+    return readerTime;
+  }
+
+  /**
+   * Decode a frame as hard as the tier tells, all bar codes in it in multi decode mode.
+   */
+  private Result[] decode(RotatedYUVLuminanceSource source, int sequence, DecodeTier tier)
+      throws ReaderException {
+    int sample = tier.getSample();
+    LuminanceSource tierSource = source.downsample(sample);
+    listener.onDecodeTier(tier);
+    BinaryBitmap bitmap = new BinaryBitmap(binarizer(tierSource, tier));
+    BinaryBitmap inverted =
+        tier.isInverted() ? new BinaryBitmap(binarizer(tierSource.invert(), tier)) : null;
+
+    Result[] results;
+    if (multiDecode) {
+      results = multiFormatReader.decodeMultiple(bitmap, inverted, sequence, tier);
+    } else {
+      results = new Result[] { multiFormatReader.decode(bitmap, inverted, sequence, tier) };
+    }
+    for (int i = 0; i < results.length; i++) {
+      results[i] = toFrameCoordinates(results[i], source.getLeft(), source.getTop(), sample);
+    }
+    return results;
+  }
+
+  /**
+   * Map the result points from the decoded source to the rotated preview frame, so points of
+   * every frame are comparable whatever the region and tier.
+   */
+  private static Result toFrameCoordinates(Result result, int left, int top, int sample) {
+    ResultPoint[] points = result.getResultPoints();
+    if (points == null || points.length == 0) {
+      return result;
+    }
+
+    ResultPoint[] framePoints = new ResultPoint[points.length];
+    for (int i = 0; i < points.length; i++) {
+      ResultPoint point = points[i];
+      framePoints[i] = point == null ? null
+          : new ResultPoint(left + point.getX() * sample, top + point.getY() * sample);
+    }
+    Result frameResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(),
+        framePoints, result.getBarcodeFormat(), result.getTimestamp());
+    frameResult.putAllMetadata(result.getResultMetadata());
+    return frameResult;
+  }
+
+  private Binarizer binarizer(LuminanceSource source, DecodeTier tier) {
+    Binarizer binarizer = tier.isHybridBinarizer() ? new HybridBinarizer(source)
+        : new GlobalHistogramBinarizer(source);
+    return new TimedBinarizer(binarizer, binarizationTime);
+  }
+
+  private int checkQuality(LuminanceSource source, boolean focusing) {
+    FrameQualityGate gate = frameQualityGate;
+    if (!gate.isEnabled()) {
+      if (measuring && !focusing) {
+        gate.evaluate(source, frameQuality);
+        listener.onFrameQuality(frameQuality);
+      }
+      return OUTCOME_DECODED;
+    }
+
+    if (focusing) {
+      statistics.onFrameSkippedFocusing();
+      return OUTCOME_SKIPPED_FOCUSING;
+    }
+
+    int verdict = gate.evaluate(source, frameQuality);
+    listener.onFrameQuality(frameQuality);
+    if (verdict == FrameQualityGate.VERDICT_OK) {
+      return OUTCOME_DECODED;
+    }
+
+    statistics.onFrameSkipped(verdict);
+    return OUTCOME_SKIPPED_QUALITY;
+  }
+
+  private int checkMotion(RotatedYUVLuminanceSource source) {
+    hasThumbnail = motionDetector.isEnabled();
+    if (!hasThumbnail) {
+      return OUTCOME_DECODED;
+    }
+
+    MotionDetector.thumbnail(source, frameQuality, thumbnail);
+    /* sizes in frame pixels, so thumbnails compare whatever the sample of source */
+    int motion = motionDetector.classify(thumbnail, source.getWidth() * source.getSample(),
+        source.getHeight() * source.getSample());
+    if (motion == MotionDetector.MOTION_NORMAL) {
+      return OUTCOME_DECODED;
+    }
+
+    statistics.onFrameSkippedMotion(motion);
+    return OUTCOME_SKIPPED_MOTION;
+  }
+}
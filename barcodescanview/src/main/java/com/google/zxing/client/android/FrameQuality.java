@@ -0,0 +1,18 @@
+package com.google.zxing.client.android;
+
+/**
+ * The quality of a frame measured by {@link FrameQualityGate}. Instances are reused from frame to
+ * frame by the decode worker owning them.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class FrameQuality {
+  /* mean gradient energy of luminance, higher is sharper */
+  float sharpness;
+  /* mean luminance, from 0 to 255 */
+  float meanLuma;
+  int verdict;
+  /* rows read from the luminance source, kept to avoid allocation */
+  byte[] row;
+  byte[] nextRow;
+}
@@ -0,0 +1,106 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A cheap check which tells frames that cannot be decoded, because they are blurred or badly
+ * exposed, before the binarizer and readers run on them. Sharpness is measured as the mean
+ * gradient energy and exposure as the mean luminance, both over a sparse grid of the region to
+ * decode. Instances are immutable and shared by all decode workers.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class FrameQualityGate {
+  static final int VERDICT_OK = 0;
+  static final int VERDICT_BLURRY = 1;
+  static final int VERDICT_UNDEREXPOSED = 2;
+  static final int VERDICT_OVEREXPOSED = 3;
+
+  static final float DEFAULT_MIN_SHARPNESS = 20f;
+  static final int DEFAULT_MIN_LUMA = 16;
+  static final int DEFAULT_MAX_LUMA = 240;
+  static final FrameQualityGate DEFAULT =
+      new FrameQualityGate(DEFAULT_MIN_SHARPNESS, DEFAULT_MIN_LUMA, DEFAULT_MAX_LUMA);
+  static final FrameQualityGate DISABLED = new FrameQualityGate(0f, 0, 255);
+
+  /* number of samples along the shorter side of region */
+  private static final int SAMPLES_PER_SIDE = 48;
+
+  private final float minSharpness;
+  private final int minLuma;
+  private final int maxLuma;
+
+  FrameQualityGate(float minSharpness, int minLuma, int maxLuma) {
+    if (minSharpness < 0f || minLuma < 0 || maxLuma > 255 || minLuma > maxLuma) {
+      throw new IllegalArgumentException("Bad frame quality thresholds.");
+    }
+    this.minSharpness = minSharpness;
+    this.minLuma = minLuma;
+    this.maxLuma = maxLuma;
+  }
+
+  float getMinSharpness() {
+    return minSharpness;
+  }
+
+  int getMinLuma() {
+    return minLuma;
+  }
+
+  int getMaxLuma() {
+    return maxLuma;
+  }
+
+  /**
+   * Check if any threshold is set, a disabled gate lets every frame through without measuring.
+   */
+  boolean isEnabled() {
+    return minSharpness > 0f || minLuma > 0 || maxLuma < 255;
+  }
+
+  /**
+   * Measure the quality of a frame.
+   *
+   * @param source the region of frame to decode
+   * @param quality output of measured quality
+   * @return verdict of the frame
+   */
+  int evaluate(LuminanceSource source, FrameQuality quality) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width < 2 || height < 2) {
+      quality.verdict = VERDICT_OK;
+      return VERDICT_OK;
+    }
+
+    int step = Math.max(1, Math.min(width, height) / SAMPLES_PER_SIDE);
+    long energy = 0;
+    long luma = 0;
+    int samples = 0;
+    for (int y = 0; y < height - 1; y += step) {
+      byte[] row = quality.row = source.getRow(y, quality.row);
+      byte[] nextRow = quality.nextRow = source.getRow(y + 1, quality.nextRow);
+      for (int x = 0; x < width - 1; x += step) {
+        int pixel = row[x] & 0xff;
+        int dx = (row[x + 1] & 0xff) - pixel;
+        int dy = (nextRow[x] & 0xff) - pixel;
+        energy += dx * dx + dy * dy;
+        luma += pixel;
+        samples++;
+      }
+    }
+
+    quality.sharpness = (float) energy / samples;
+    quality.meanLuma = (float) luma / samples;
+    if (quality.meanLuma < minLuma) {
+      quality.verdict = VERDICT_UNDEREXPOSED;
+    } else if (quality.meanLuma > maxLuma) {
+      quality.verdict = VERDICT_OVEREXPOSED;
+    } else if (quality.sharpness < minSharpness) {
+      quality.verdict = VERDICT_BLURRY;
+    } else {
+      quality.verdict = VERDICT_OK;
+    }
+    return quality.verdict;
+  }
+}
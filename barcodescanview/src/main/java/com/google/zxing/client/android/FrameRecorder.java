@@ -0,0 +1,276 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.Frame;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Set;
+
+/**
+ * This class appends the frames handed to decoder to a file, so that field failures can be
+ * replayed with {@link FrameRecording}. Only the Y plane of each frame is kept, together with
+ * what the decoder needs to decode it again: size, rotation, decode region, arrival time and
+ * whether camera was focusing. The outcome of every recorded frame and the configuration of
+ * pipeline are recorded as well, so a replay can tell if it decoded exactly like the device.
+ * Records are staged in a direct buffer and written through a {@link FileChannel}. This class is
+ * shared by all decode workers.
+ *
+ * <p>A file holds a header followed by records. The header is {@link #MAGIC} and
+ * {@link #VERSION}, each record is its type as a byte, the length of payload as an int and the
+ * payload. All numbers are big endian.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class FrameRecorder implements Closeable {
+  static final int MAGIC = 0x42435346;
+  static final int VERSION = 1;
+  static final byte RECORD_CONFIG = 1;
+  static final byte RECORD_FRAME = 2;
+  static final byte RECORD_OUTCOME = 3;
+  static final int RECORD_HEADER_SIZE = 5;
+  /* payload of frame record before the Y plane */
+  static final int FRAME_HEADER_SIZE = 44;
+  static final int FLAG_FOCUSING = 1;
+  static final int FLAG_MIRRORED = 2;
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final long maxBytes;
+  private long written;
+  private long frames;
+  private boolean closed;
+
+  /**
+   * Create a recorder appending to a file.
+   *
+   * @param file file to append to, created if it does not exist
+   * @param maxBytes most bytes of frames to append, further frames are dropped
+   * @throws IOException if the file can not be opened
+   */
+  FrameRecorder(File file, long maxBytes) throws IOException {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Max bytes of recording must be greater than 0.");
+    }
+    this.maxBytes = maxBytes;
+    channel = new FileOutputStream(file, true).getChannel();
+    if (channel.size() == 0) {
+      buffer.putInt(MAGIC).putInt(VERSION);
+    }
+  }
+
+  /**
+   * Record the configuration of pipeline, which frames recorded after are decoded with.
+   */
+  synchronized void recordConfig(Set<BarcodeFormat> formats, DecodeLadder decodeLadder,
+      FrameQualityGate frameQualityGate, MotionDetector motionDetector,
+      ReaderScheduler readerScheduler, ResultCache resultCache, boolean multiDecode,
+      boolean continuous) throws IOException {
+    if (closed) {
+      return;
+    }
+
+    DecodeTier[] tiers = decodeLadder.getTiers();
+    ByteBuffer payload = ByteBuffer.allocate(
+        4 + formats.size() * 4 + 8 + tiers.length * 8 + 12 + 9 + 4 + 2 + 12);
+    payload.putInt(formats.size());
+    for (BarcodeFormat format : formats) {
+      payload.putInt(format.ordinal());
+    }
+    payload.putInt(decodeLadder.getFailuresPerTier());
+    payload.putInt(tiers.length);
+    for (DecodeTier tier : tiers) {
+      payload.putInt(tier.getSample()).putInt(tier.getFlags());
+    }
+    payload.putFloat(frameQualityGate.getMinSharpness());
+    payload.putInt(frameQualityGate.getMinLuma());
+    payload.putInt(frameQualityGate.getMaxLuma());
+    payload.put((byte) (motionDetector.isEnabled() ? 1 : 0));
+    payload.putFloat(motionDetector.getStillThreshold());
+    payload.putFloat(motionDetector.getHeavyThreshold());
+    payload.putInt(readerScheduler.getRareFormatInterval());
+    payload.put((byte) (multiDecode ? 1 : 0));
+    payload.put((byte) (continuous ? 1 : 0));
+    payload.putInt(resultCache.getMaxSize());
+    payload.putLong(resultCache.getTtl());
+    putRecord(RECORD_CONFIG, payload);
+  }
+
+  /**
+   * Record a frame about to be decoded.
+   *
+   * @param frame preview frame, only its Y plane is recorded
+   * @param source the region of frame to decode
+   * @param sequence sequence of the frame
+   * @param frameTime {@link System#nanoTime()} when the frame arrived
+   * @param focusing camera was focusing or not
+   * @return true if recorded, false if closed or the recording is full
+   */
+  synchronized boolean recordFrame(Frame frame, RotatedYUVLuminanceSource source, int sequence,
+      long frameTime, boolean focusing) throws IOException {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    int planeSize = width * height;
+    int length = FRAME_HEADER_SIZE + planeSize;
+    if (closed || written + RECORD_HEADER_SIZE + length > maxBytes) {
+      return false;
+    }
+
+    int flags = (focusing ? FLAG_FOCUSING : 0) | (source.isMirrored() ? FLAG_MIRRORED : 0);
+    beginRecord(RECORD_FRAME, length, FRAME_HEADER_SIZE);
+    buffer.putInt(sequence);
+    buffer.putLong(frameTime);
+    buffer.putInt(width);
+    buffer.putInt(height);
+    buffer.putInt(source.getRotation());
+    buffer.putInt(source.getLeft());
+    buffer.putInt(source.getTop());
+    buffer.putInt(source.getWidth() * source.getSample());
+    buffer.putInt(source.getHeight() * source.getSample());
+    buffer.putInt(flags);
+    if (frame.getData() != null) {
+      put(frame.getData(), planeSize);
+    } else {
+      putPlane(frame);
+    }
+    written += RECORD_HEADER_SIZE + length;
+    frames++;
+    return true;
+  }
+
+  /**
+   * Record how a recorded frame was decoded.
+   *
+   * @param sequence sequence of the frame
+   * @param outcome outcome of {@link FrameDecoder}
+   * @param tier index of tier the frame was decoded with
+   * @param results bar codes found, or null if none
+   */
+  synchronized void recordOutcome(int sequence, int outcome, int tier, Result[] results)
+      throws IOException {
+    if (closed) {
+      return;
+    }
+
+    int count = results == null ? 0 : results.length;
+    byte[][] texts = new byte[count][];
+    int length = 16;
+    for (int i = 0; i < count; i++) {
+      texts[i] = results[i].getText().getBytes(UTF_8);
+      length += 8 + texts[i].length;
+    }
+
+    ByteBuffer payload = ByteBuffer.allocate(length);
+    payload.putInt(sequence);
+    payload.putInt(outcome);
+    payload.putInt(tier);
+    payload.putInt(count);
+    for (int i = 0; i < count; i++) {
+      payload.putInt(results[i].getBarcodeFormat().ordinal());
+      payload.putInt(texts[i].length);
+      payload.put(texts[i]);
+    }
+    putRecord(RECORD_OUTCOME, payload);
+  }
+
+  /**
+   * Get the number of frames recorded so far.
+   */
+  synchronized long getFrameCount() {
+    return frames;
+  }
+
+  /**
+   * Check if this recorder has been closed.
+   */
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Write the records staged and close the file. Records coming later are dropped.
+   */
+  @Override public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Stage a record whose payload is built already.
+   */
+  private void putRecord(byte type, ByteBuffer payload) throws IOException {
+    int length = payload.position();
+    beginRecord(type, length, 0);
+    put(payload.array(), length);
+    written += RECORD_HEADER_SIZE + length;
+  }
+
+  /**
+   * Stage the header of a record, and make sure the part of payload staged next fits too.
+   *
+   * @param fixedSize bytes of payload staged directly into buffer after the header
+   */
+  private void beginRecord(byte type, int length, int fixedSize) throws IOException {
+    if (buffer.remaining() < RECORD_HEADER_SIZE + fixedSize) {
+      flush();
+    }
+    buffer.put(type).putInt(length);
+  }
+
+  private void put(byte[] data, int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      int count = Math.min(length - offset, buffer.remaining());
+      buffer.put(data, offset, count);
+      offset += count;
+    }
+  }
+
+  /**
+   * Write a strided Y plane packed row by row, like planes of array frames.
+   */
+  private void putPlane(Frame frame) throws IOException {
+    ByteBuffer plane = frame.getPlane().duplicate();
+    int rowStride = frame.getRowStride();
+    int pixelStride = frame.getPixelStride();
+    int width = frame.getWidth();
+    for (int y = 0; y < frame.getHeight(); y++) {
+      int offset = y * rowStride;
+      for (int x = 0; x < width; x++) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        buffer.put(plane.get(offset));
+        offset += pixelStride;
+      }
+    }
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,323 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * This class reads a file written by {@link FrameRecorder} record by record. The file is memory
+ * mapped window by window, so recordings larger than the address space a single mapping allows
+ * can be read as well. Call {@link #next()} to move to the next record, then read the fields of
+ * its type. This class is not thread safe.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class FrameRecording implements Closeable {
+  static final int END = -1;
+
+  /* largest window mapped at once */
+  private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+  private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long size;
+  private MappedByteBuffer window;
+  /* position in file of the start of window */
+  private long windowStart;
+  /* position in file of the next record */
+  private long position;
+
+  /* config record */
+  private Set<BarcodeFormat> decodeFormats;
+  private int failuresPerTier;
+  private DecodeTier[] tiers;
+  private FrameQualityGate frameQualityGate;
+  private boolean motionGateEnabled;
+  private float stillThreshold;
+  private float heavyThreshold;
+  private int rareFormatInterval;
+  private boolean multiDecode;
+  private boolean continuous;
+  private int resultCacheSize;
+  private long resultCacheTtl;
+
+  /* frame and outcome records */
+  private int sequence;
+  private long frameTime;
+  private int width;
+  private int height;
+  private int rotation;
+  private int left;
+  private int top;
+  private int regionWidth;
+  private int regionHeight;
+  private int flags;
+  private int planeOffset;
+  private int outcome;
+  private int tier;
+  private Result[] results;
+
+  /**
+   * Open a recording.
+   *
+   * @param path path of recording
+   * @throws IOException if the file can not be read or is not a recording
+   */
+  FrameRecording(File path) throws IOException {
+    file = new RandomAccessFile(path, "r");
+    channel = file.getChannel();
+    size = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(8);
+    if (size < 8 || channel.read(header, 0) != 8) {
+      close();
+      throw new IOException("Not a frame recording: " + path);
+    }
+    header.flip();
+    int magic = header.getInt();
+    int version = header.getInt();
+    if (magic != FrameRecorder.MAGIC || version != FrameRecorder.VERSION) {
+      close();
+      throw new IOException("Not a frame recording of version " + FrameRecorder.VERSION
+          + ": " + path);
+    }
+    position = 8;
+  }
+
+  /**
+   * Move to the next record. A truncated record at the end, e.g. of an app killed while
+   * recording, is treated as the end.
+   *
+   * @return type of record, or {@link #END} if no more
+   * @throws IOException if the file can not be read
+   */
+  int next() throws IOException {
+    if (position + FrameRecorder.RECORD_HEADER_SIZE > size) {
+      return END;
+    }
+    map(position, FrameRecorder.RECORD_HEADER_SIZE);
+    byte type = window.get();
+    int length = window.getInt();
+    long end = position + FrameRecorder.RECORD_HEADER_SIZE + length;
+    if (length < 0 || end > size) {
+      return END;
+    }
+    map(position + FrameRecorder.RECORD_HEADER_SIZE, length);
+    position = end;
+
+    switch (type) {
+      case FrameRecorder.RECORD_CONFIG:
+        readConfig();
+        break;
+      case FrameRecorder.RECORD_FRAME:
+        readFrame();
+        break;
+      case FrameRecorder.RECORD_OUTCOME:
+        readOutcome();
+        break;
+      default:
+        /* unknown record, skipped */
+        break;
+    }
+    return type;
+  }
+
+  /**
+   * Make sure the bytes at given position of file are mapped, and move window to them.
+   */
+  private void map(long at, int length) throws IOException {
+    if (window == null || at < windowStart || at + length > windowStart + window.limit()) {
+      windowStart = at;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, at,
+          Math.min(Math.max(WINDOW_SIZE, length), size - at));
+    }
+    window.position((int) (at - windowStart));
+  }
+
+  private void readConfig() {
+    int formatCount = window.getInt();
+    Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+    for (int i = 0; i < formatCount; i++) {
+      formats.add(FORMATS[window.getInt()]);
+    }
+    decodeFormats = formats;
+    failuresPerTier = window.getInt();
+    tiers = new DecodeTier[window.getInt()];
+    for (int i = 0; i < tiers.length; i++) {
+      tiers[i] = new DecodeTier(window.getInt(), window.getInt());
+    }
+    frameQualityGate = new FrameQualityGate(window.getFloat(), window.getInt(), window.getInt());
+    motionGateEnabled = window.get() != 0;
+    stillThreshold = window.getFloat();
+    heavyThreshold = window.getFloat();
+    rareFormatInterval = window.getInt();
+    multiDecode = window.get() != 0;
+    continuous = window.get() != 0;
+    resultCacheSize = window.getInt();
+    resultCacheTtl = window.getLong();
+  }
+
+  private void readFrame() {
+    sequence = window.getInt();
+    frameTime = window.getLong();
+    width = window.getInt();
+    height = window.getInt();
+    rotation = window.getInt();
+    left = window.getInt();
+    top = window.getInt();
+    regionWidth = window.getInt();
+    regionHeight = window.getInt();
+    flags = window.getInt();
+    planeOffset = window.position();
+  }
+
+  private void readOutcome() {
+    sequence = window.getInt();
+    outcome = window.getInt();
+    tier = window.getInt();
+    results = new Result[window.getInt()];
+    for (int i = 0; i < results.length; i++) {
+      BarcodeFormat format = FORMATS[window.getInt()];
+      byte[] text = new byte[window.getInt()];
+      window.get(text);
+      results[i] = new Result(new String(text, FrameRecorder.UTF_8), null, null, format);
+    }
+  }
+
+  /**
+   * Check if a config record has been read yet.
+   */
+  boolean hasConfig() {
+    return decodeFormats != null;
+  }
+
+  /**
+   * Get the formats to decode of the last config record.
+   */
+  Set<BarcodeFormat> getDecodeFormats() {
+    return decodeFormats;
+  }
+
+  FrameQualityGate getFrameQualityGate() {
+    return frameQualityGate;
+  }
+
+  boolean isMultiDecode() {
+    return multiDecode;
+  }
+
+  boolean isContinuous() {
+    return continuous;
+  }
+
+  /**
+   * Apply the last config record to the state shared by decode workers.
+   */
+  void configure(DecodeLadder decodeLadder, MotionDetector motionDetector,
+      ReaderScheduler readerScheduler, ResultCache resultCache) {
+    decodeLadder.setTiers(tiers);
+    decodeLadder.setFailuresPerTier(failuresPerTier);
+    motionDetector.setEnabled(motionGateEnabled);
+    motionDetector.setThresholds(stillThreshold, heavyThreshold);
+    readerScheduler.setRareFormatInterval(rareFormatInterval);
+    resultCache.setMaxSize(resultCacheSize);
+    resultCache.setTtl(resultCacheTtl);
+  }
+
+  /**
+   * Get the sequence of current frame or outcome.
+   */
+  int getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Get {@link System#nanoTime()} when current frame arrived.
+   */
+  long getFrameTime() {
+    return frameTime;
+  }
+
+  /**
+   * Get the width of current frame as delivered by camera.
+   */
+  int getWidth() {
+    return width;
+  }
+
+  /**
+   * Get the height of current frame as delivered by camera.
+   */
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * Check if camera was focusing when current frame arrived.
+   */
+  boolean isFocusing() {
+    return (flags & FrameRecorder.FLAG_FOCUSING) != 0;
+  }
+
+  /**
+   * Copy the Y plane of current frame.
+   *
+   * @param plane array to copy to, reused if large enough
+   * @return the Y plane
+   */
+  byte[] readPlane(byte[] plane) {
+    int planeSize = width * height;
+    if (plane == null || plane.length < planeSize) {
+      plane = new byte[planeSize];
+    }
+    window.position(planeOffset);
+    window.get(plane, 0, planeSize);
+    return plane;
+  }
+
+  /**
+   * Build the region of current frame to decode, just like the device did.
+   *
+   * @param plane the Y plane returned by {@link #readPlane(byte[])}
+   * @return {@link RotatedYUVLuminanceSource}
+   */
+  RotatedYUVLuminanceSource buildLuminanceSource(byte[] plane) {
+    return new RotatedYUVLuminanceSource(plane, width, height, rotation,
+        (flags & FrameRecorder.FLAG_MIRRORED) != 0, left, top, regionWidth, regionHeight);
+  }
+
+  /**
+   * Get the outcome of current outcome record.
+   */
+  int getOutcome() {
+    return outcome;
+  }
+
+  /**
+   * Get the index of tier of current outcome record.
+   */
+  int getTier() {
+    return tier;
+  }
+
+  /**
+   * Get the bar codes of current outcome record, holding format and text only.
+   */
+  Result[] getResults() {
+    return results;
+  }
+
+  @Override public void close() throws IOException {
+    window = null;
+    file.close();
+  }
+}
@@ -0,0 +1,76 @@
+package com.google.zxing.client.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, allocation-free histogram of latencies in microseconds. Buckets are log-linear:
+ * each power of two is split into {@link #SUB_BUCKETS} buckets, so any value is known within
+ * 12.5%. Values can be recorded from any thread.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /* enough for values up to 2^40 microseconds, larger ones go to the last bucket */
+  static final int BUCKET_COUNT = (40 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Get the bucket of a value.
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(0, value);
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int bucket = (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  /**
+   * Get the largest value falling in a bucket.
+   */
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos latency in nanoseconds
+   */
+  void recordNanos(long nanos) {
+    long micros = nanos / 1000L;
+    counts.incrementAndGet(bucketOf(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    long currentMax;
+    while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+      /* retry */
+    }
+  }
+
+  /**
+   * Take a snapshot of this histogram. Values recorded meanwhile may or may not be included.
+   *
+   * @return {@link StageLatency}
+   */
+  StageLatency snapshot() {
+    long[] copy = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      copy[i] = counts.get(i);
+    }
+    return new StageLatency(copy, count.get(), sum.get(), max.get());
+  }
+}
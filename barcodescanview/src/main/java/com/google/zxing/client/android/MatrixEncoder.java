@@ -0,0 +1,41 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import java.util.Hashtable;
+
+/**
+ * This class encodes contents into {@link BitMatrix}, shared by {@link Encoder} which draws them
+ * into bitmaps and by {@link SyntheticFrameGenerator} which draws them into camera frames.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class MatrixEncoder {
+  private static final Hashtable<EncodeHintType, String> HINTS = new Hashtable<>();
+
+  static {
+    HINTS.put(EncodeHintType.CHARACTER_SET, "utf-8");
+  }
+
+  private MatrixEncoder() {
+  }
+
+  /**
+   * Encode a content. Writers may return a larger matrix than asked if the content needs more
+   * room, and some return one pixel per module whatever the size asked.
+   *
+   * @param content content to encode
+   * @param format format of bar code
+   * @param width width of matrix
+   * @param height height of matrix
+   * @return {@link BitMatrix}
+   * @throws WriterException if the content can not be encoded
+   */
+  static BitMatrix encode(String content, BarcodeFormat format, int width, int height)
+      throws WriterException {
+    return new MultiFormatWriter().encode(content, format, width, height, HINTS);
+  }
+}
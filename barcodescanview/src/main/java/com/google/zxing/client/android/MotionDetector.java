@@ -0,0 +1,151 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * This class tells how much the scene moved by comparing tiny luminance thumbnails of frames.
+ * A frame nearly identical to the last frame which failed to decode at the top tier of decode
+ * ladder will fail the same way, and a frame very different from the previous one is likely
+ * smeared by motion, so neither is worth decoding. Frames failing at cheaper tiers are not
+ * remembered, so still frames escalate through the ladder first. Thumbnails are computed by each
+ * worker, while the comparison state is shared by all decode workers.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class MotionDetector {
+  static final int THUMBNAIL_SIZE = 32;
+
+  static final int MOTION_NORMAL = 0;
+  static final int MOTION_STILL = 1;
+  static final int MOTION_HEAVY = 2;
+
+  static final float DEFAULT_STILL_THRESHOLD = 3f;
+  static final float DEFAULT_HEAVY_THRESHOLD = 48f;
+  /* decode a still frame anyway after this many, in case the failure was bad luck */
+  private static final int MAX_STILL_SKIPS = 8;
+
+  private final int[] previous = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+  private final int[] lastFailed = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+  private int previousWidth = -1;
+  private int previousHeight = -1;
+  private int lastFailedWidth = -1;
+  private int lastFailedHeight = -1;
+  private int stillSkips;
+  private boolean enabled = true;
+  private float stillThreshold = DEFAULT_STILL_THRESHOLD;
+  private float heavyThreshold = DEFAULT_HEAVY_THRESHOLD;
+
+  /**
+   * Compute the luminance thumbnail of a frame, each cell being the mean of a few pixels.
+   *
+   * @param source the region of frame to decode
+   * @param quality scratch rows to use
+   * @param thumbnail output of {@link #THUMBNAIL_SIZE} squared cells
+   */
+  static void thumbnail(LuminanceSource source, FrameQuality quality, int[] thumbnail) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    for (int cy = 0; cy < THUMBNAIL_SIZE; cy++) {
+      int y = (2 * cy + 1) * height / (2 * THUMBNAIL_SIZE);
+      byte[] row = quality.row = source.getRow(y, quality.row);
+      for (int cx = 0; cx < THUMBNAIL_SIZE; cx++) {
+        int x = (2 * cx + 1) * width / (2 * THUMBNAIL_SIZE);
+        int left = Math.max(0, x - 1);
+        int right = Math.min(width - 1, x + 1);
+        thumbnail[cy * THUMBNAIL_SIZE + cx] =
+            ((row[left] & 0xff) + 2 * (row[x] & 0xff) + (row[right] & 0xff)) >> 2;
+      }
+    }
+  }
+
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    reset();
+  }
+
+  synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set the thresholds of mean thumbnail difference, from 0 to 255.
+   *
+   * @param stillThreshold below this a frame is still compared to the last failed frame
+   * @param heavyThreshold above this a frame moved too much compared to the previous frame
+   */
+  synchronized void setThresholds(float stillThreshold, float heavyThreshold) {
+    if (stillThreshold < 0f || heavyThreshold <= stillThreshold) {
+      throw new IllegalArgumentException("Bad motion thresholds.");
+    }
+    this.stillThreshold = stillThreshold;
+    this.heavyThreshold = heavyThreshold;
+  }
+
+  synchronized float getStillThreshold() {
+    return stillThreshold;
+  }
+
+  synchronized float getHeavyThreshold() {
+    return heavyThreshold;
+  }
+
+  /**
+   * Classify the motion of a frame and remember its thumbnail as the previous one.
+   *
+   * @param thumbnail thumbnail of the frame
+   * @param width width in frame pixels of region the thumbnail was computed from
+   * @param height height in frame pixels of region the thumbnail was computed from
+   * @return one of {@link #MOTION_NORMAL}, {@link #MOTION_STILL} or {@link #MOTION_HEAVY}
+   */
+  synchronized int classify(int[] thumbnail, int width, int height) {
+    int motion = MOTION_NORMAL;
+    if (width == previousWidth && height == previousHeight
+        && difference(thumbnail, previous) > heavyThreshold) {
+      motion = MOTION_HEAVY;
+    } else if (width == lastFailedWidth && height == lastFailedHeight
+        && difference(thumbnail, lastFailed) < stillThreshold) {
+      if (stillSkips < MAX_STILL_SKIPS) {
+        stillSkips++;
+        motion = MOTION_STILL;
+      } else {
+        stillSkips = 0;
+      }
+    }
+
+    System.arraycopy(thumbnail, 0, previous, 0, previous.length);
+    previousWidth = width;
+    previousHeight = height;
+    return motion;
+  }
+
+  /**
+   * Remember the thumbnail of a frame which failed to decode at the most expensive tier.
+   *
+   * @param thumbnail thumbnail of the frame
+   * @param width width in frame pixels of region the thumbnail was computed from
+   * @param height height in frame pixels of region the thumbnail was computed from
+   */
+  synchronized void onDecodeFailed(int[] thumbnail, int width, int height) {
+    System.arraycopy(thumbnail, 0, lastFailed, 0, lastFailed.length);
+    lastFailedWidth = width;
+    lastFailedHeight = height;
+    stillSkips = 0;
+  }
+
+  /**
+   * Forget all frames seen, e.g. when a new scan starts.
+   */
+  synchronized void reset() {
+    previousWidth = previousHeight = -1;
+    lastFailedWidth = lastFailedHeight = -1;
+    stillSkips = 0;
+  }
+
+  private static float difference(int[] a, int[] b) {
+    int sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += Math.abs(a[i] - b[i]);
+    }
+    return (float) sum / a.length;
+  }
+}
@@ -0,0 +1,132 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.StartupMetrics;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class records the latencies of each stage of decode pipeline into
+ * {@link LatencyHistogram}s. Recording never allocates or locks, so it is always on.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class PipelineMetrics implements CameraManager.OnPreviewFrameListener,
+    CameraManager.OnFocusListener, CameraManager.OnExposureListener {
+  private final LatencyHistogram[] histograms = new LatencyHistogram[DecodeMetrics.STAGE_COUNT];
+  private final AtomicLong framesSeen = new AtomicLong();
+  private final AtomicInteger prewarmsPending = new AtomicInteger();
+  private final AtomicInteger prewarmFrames = new AtomicInteger();
+  private final AtomicLong firstDecodeTime = new AtomicLong(-1L);
+  private volatile long prewarmStart;
+  private volatile long prewarmTime = -1L;
+  private final AtomicInteger exposureStepsUp = new AtomicInteger();
+  private final AtomicInteger exposureStepsDown = new AtomicInteger();
+  private final AtomicInteger torchOnSwitches = new AtomicInteger();
+  private final AtomicInteger torchOffSwitches = new AtomicInteger();
+  private volatile float lastDecisionLuma = -1f;
+  /* only touched by camera callback thread */
+  private long lastFrameTime;
+
+  PipelineMetrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  @Override public void onPreviewFrame(long timestampNanos) {
+    framesSeen.incrementAndGet();
+    if (lastFrameTime != 0) {
+      record(DecodeMetrics.STAGE_FRAME_INTERVAL, timestampNanos - lastFrameTime);
+    }
+    lastFrameTime = timestampNanos;
+  }
+
+  @Override public void onSharpFrame(long timeToSharpNanos) {
+    record(DecodeMetrics.STAGE_TIME_TO_SHARP, timeToSharpNanos);
+  }
+
+  @Override public void onExposureStep(int steps, float meanLuma) {
+    (steps > 0 ? exposureStepsUp : exposureStepsDown).incrementAndGet();
+    lastDecisionLuma = meanLuma;
+  }
+
+  @Override public void onTorchSwitched(boolean on, float meanLuma) {
+    (on ? torchOnSwitches : torchOffSwitches).incrementAndGet();
+    lastDecisionLuma = meanLuma;
+  }
+
+  @Override public void onExposureSettled(long timeToSettleNanos) {
+    record(DecodeMetrics.STAGE_EXPOSURE_SETTLE, timeToSettleNanos);
+  }
+
+  /**
+   * Record the latency of a stage.
+   *
+   * @param stage one of the stages defined in {@link DecodeMetrics}
+   * @param nanos latency in nanoseconds
+   */
+  void record(int stage, long nanos) {
+    histograms[stage].recordNanos(nanos);
+  }
+
+  /**
+   * Start timing a prewarm of decoder.
+   *
+   * @param workerCount number of workers taking part
+   */
+  void onPrewarmStarted(int workerCount) {
+    prewarmStart = System.nanoTime();
+    prewarmTime = -1L;
+    prewarmFrames.set(0);
+    prewarmsPending.set(workerCount);
+  }
+
+  /**
+   * Invoked by each worker when its share of prewarm is done, the prewarm is timed once the last
+   * worker is done. This can be called on any thread.
+   *
+   * @param frames number of synthetic frames decoded by the worker
+   */
+  void onPrewarmDone(int frames) {
+    prewarmFrames.addAndGet(frames);
+    if (prewarmsPending.decrementAndGet() == 0) {
+      prewarmTime = System.nanoTime() - prewarmStart;
+    }
+  }
+
+  /**
+   * Record the time of binarizers and readers on a real frame, only the first one is kept. This
+   * can be called on any thread.
+   *
+   * @param nanos time in nanoseconds
+   */
+  void recordDecode(long nanos) {
+    if (firstDecodeTime.get() < 0) {
+      firstDecodeTime.compareAndSet(-1L, nanos);
+    }
+  }
+
+  /**
+   * Take a snapshot of metrics.
+   *
+   * @param statistics counters of decode workers
+   * @param startup startup of camera
+   * @return {@link DecodeMetrics}
+   */
+  DecodeMetrics snapshot(DecodeStatistics statistics, StartupMetrics startup) {
+    StageLatency[] stages = new StageLatency[histograms.length];
+    for (int i = 0; i < histograms.length; i++) {
+      stages[i] = histograms[i].snapshot();
+    }
+    return new DecodeMetrics(stages, framesSeen.get(), statistics.getFramesDecoded(),
+        statistics.getFramesSkipped(), statistics.getFramesFailed(), toMicros(prewarmTime),
+        prewarmFrames.get(), toMicros(firstDecodeTime.get()), startup,
+        new ExposureMetrics(exposureStepsUp.get(), exposureStepsDown.get(), torchOnSwitches.get(),
+            torchOffSwitches.get(), lastDecisionLuma));
+  }
+
+  private static long toMicros(long nanos) {
+    return nanos < 0 ? -1L : nanos / 1000L;
+  }
+}
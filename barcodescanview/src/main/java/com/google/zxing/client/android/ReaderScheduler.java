@@ -0,0 +1,177 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * This class decides in which order the readers are tried on each frame. It keeps a decaying hit
+ * count for every format decoded in this session, tries readers of frequently decoded formats
+ * first, and tries readers of rarely decoded formats only every few frames. Every enabled reader
+ * is still tried at least once in any run of {@link #getRareFormatInterval()} frames, or a few
+ * times that on tiers of the likeliest formats only, which bounds the extra latency to detect a
+ * rare format. This class is shared by all decode workers.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ReaderScheduler {
+  /* families of formats, each decoded by one reader */
+  static final int FAMILY_ONE_D = 0;
+  static final int FAMILY_QR_CODE = 1;
+  static final int FAMILY_DATA_MATRIX = 2;
+  static final int FAMILY_AZTEC = 3;
+  static final int FAMILY_PDF417 = 4;
+  static final int FAMILY_COUNT = 5;
+
+  static final int DEFAULT_RARE_FORMAT_INTERVAL = 4;
+  /* tiers of the likeliest formats only try rare readers this many times less often */
+  static final int LIKELIEST_ONLY_STRETCH = 4;
+  /* weight kept by old hits each time a new hit comes in */
+  private static final float DECAY = 0.9f;
+  /* below this total score the statistics are too thin, so every reader is tried */
+  private static final float MIN_EVIDENCE = 3f;
+  /* readers whose share of the total score is below this are considered rare */
+  private static final float RARE_SHARE = 0.1f;
+
+  private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+  private final float[] scores = new float[FORMATS.length];
+  private final long[] hits = new long[FORMATS.length];
+  private final long[] skippedFrames = new long[FAMILY_COUNT];
+  private final int[] lastTriedFrame = new int[FAMILY_COUNT];
+  private final float[] familyScores = new float[FAMILY_COUNT];
+  private int rareFormatInterval = DEFAULT_RARE_FORMAT_INTERVAL;
+
+  ReaderScheduler() {
+    reset();
+  }
+
+  /**
+   * Get the family of reader which decodes given format.
+   *
+   * @param format {@link BarcodeFormat}
+   * @return family of reader
+   */
+  static int familyOf(BarcodeFormat format) {
+    switch (format) {
+      case QR_CODE:
+        return FAMILY_QR_CODE;
+      case DATA_MATRIX:
+        return FAMILY_DATA_MATRIX;
+      case AZTEC:
+        return FAMILY_AZTEC;
+      case PDF_417:
+        return FAMILY_PDF417;
+      default:
+        return FAMILY_ONE_D;
+    }
+  }
+
+  /**
+   * Set the interval in frames at which rarely decoded readers are tried.
+   *
+   * @param interval interval in frames, 1 means every reader on every frame
+   */
+  synchronized void setRareFormatInterval(int interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Rare format interval must be greater than 0.");
+    }
+    this.rareFormatInterval = interval;
+  }
+
+  synchronized int getRareFormatInterval() {
+    return rareFormatInterval;
+  }
+
+  /**
+   * Record a successful decode.
+   *
+   * @param format format decoded
+   */
+  synchronized void onDecoded(BarcodeFormat format) {
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] *= DECAY;
+    }
+    scores[format.ordinal()] += 1f;
+    hits[format.ordinal()]++;
+  }
+
+  /**
+   * Get the readers to try on a frame, most likely first.
+   *
+   * @param frame sequence of the frame
+   * @param enabled whether each family is enabled, indexed by family
+   * @param order output of families to try, in order
+   * @param likeliestOnly try rare families even less often on this frame, though still at a
+   * bounded interval so they are never starved
+   * @return number of families to try
+   */
+  synchronized int order(int frame, boolean[] enabled, int[] order, boolean likeliestOnly) {
+    float total = 0f;
+    for (int i = 0; i < FAMILY_COUNT; i++) {
+      familyScores[i] = 0f;
+    }
+    for (int i = 0; i < FORMATS.length; i++) {
+      int family = familyOf(FORMATS[i]);
+      if (enabled[family]) {
+        familyScores[family] += scores[i];
+        total += scores[i];
+      }
+    }
+
+    int interval = likeliestOnly ? rareFormatInterval * LIKELIEST_ONLY_STRETCH
+        : rareFormatInterval;
+    int count = 0;
+    for (int family = 0; family < FAMILY_COUNT; family++) {
+      if (!enabled[family]) {
+        continue;
+      }
+
+      boolean rare = total >= MIN_EVIDENCE && familyScores[family] < total * RARE_SHARE;
+      if (rare && frame - lastTriedFrame[family] < interval) {
+        skippedFrames[family]++;
+        continue;
+      }
+
+      lastTriedFrame[family] = frame;
+      /* insertion sort by score, descending; stable so ties keep the default order */
+      int i = count++;
+      while (i > 0 && familyScores[order[i - 1]] < familyScores[family]) {
+        order[i] = order[i - 1];
+        i--;
+      }
+      order[i] = family;
+    }
+    return count;
+  }
+
+  /**
+   * Forget all formats decoded, e.g. before recording frames which must replay from a known state.
+   */
+  synchronized void reset() {
+    for (int i = 0; i < FORMATS.length; i++) {
+      scores[i] = 0f;
+      hits[i] = 0;
+    }
+    for (int i = 0; i < FAMILY_COUNT; i++) {
+      skippedFrames[i] = 0;
+      lastTriedFrame[i] = Integer.MIN_VALUE / 2;
+    }
+  }
+
+  /**
+   * Take a snapshot of statistics.
+   *
+   * @param formats formats currently enabled
+   * @return {@link FormatStatistics}
+   */
+  synchronized FormatStatistics snapshot(Set<BarcodeFormat> formats) {
+    float[] scoresCopy = scores.clone();
+    long[] hitsCopy = hits.clone();
+    long[] skippedCopy = new long[FORMATS.length];
+    for (int i = 0; i < FORMATS.length; i++) {
+      skippedCopy[i] = skippedFrames[familyOf(FORMATS[i])];
+    }
+    return new FormatStatistics(EnumSet.copyOf(formats), scoresCopy, hitsCopy, skippedCopy);
+  }
+}
@@ -0,0 +1,135 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.Result;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of bar codes read recently, used in continuous scanning mode to suppress
+ * repeat reads of the same content. An entry expires once the content has not been read for the
+ * time to live, and the least recently read entry is evicted when the cache is full. This class
+ * is shared by all decode workers.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ResultCache {
+  static final int DEFAULT_MAX_SIZE = 64;
+  static final long DEFAULT_TTL_MS = 5000L;
+
+  /* last time each content was read, least recently read first */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private long ttl = DEFAULT_TTL_MS;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Set the most entries to keep.
+   *
+   * @param maxSize max number of entries
+   */
+  synchronized void setMaxSize(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Result cache size must be greater than 0.");
+    }
+    this.maxSize = maxSize;
+    trim();
+  }
+
+  synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Set the time to live of entries.
+   *
+   * @param ttl time to live in milliseconds
+   */
+  synchronized void setTtl(long ttl) {
+    if (ttl <= 0) {
+      throw new IllegalArgumentException("Result cache ttl must be greater than 0.");
+    }
+    this.ttl = ttl;
+  }
+
+  synchronized long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * Drop the results read recently, keep only the new ones. Every result refreshes its entry.
+   *
+   * @param results results of a frame
+   * @param now current time in milliseconds
+   * @return new results, or null if none
+   */
+  synchronized Result[] filter(Result[] results, long now) {
+    expire(now);
+    int fresh = 0;
+    boolean[] seen = null;
+    for (int i = 0; i < results.length; i++) {
+      Result result = results[i];
+      if (entries.put(keyOf(result), now) != null) {
+        hits++;
+        if (seen == null) {
+          seen = new boolean[results.length];
+        }
+        seen[i] = true;
+      } else {
+        misses++;
+        fresh++;
+      }
+    }
+    trim();
+
+    if (fresh == 0) {
+      return null;
+    }
+    if (seen == null) {
+      return results;
+    }
+    Result[] freshResults = new Result[fresh];
+    for (int i = 0, j = 0; i < results.length; i++) {
+      if (!seen[i]) {
+        freshResults[j++] = results[i];
+      }
+    }
+    return freshResults;
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Take a snapshot of statistics.
+   *
+   * @return {@link ResultCacheStatistics}
+   */
+  synchronized ResultCacheStatistics snapshot() {
+    return new ResultCacheStatistics(entries.size(), maxSize, ttl, hits, misses, evictions);
+  }
+
+  private void expire(long now) {
+    /* iteration goes from least recently read, so stop at the first live entry */
+    Iterator<Long> iterator = entries.values().iterator();
+    while (iterator.hasNext() && now - iterator.next() >= ttl) {
+      iterator.remove();
+    }
+  }
+
+  private void trim() {
+    Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+    while (entries.size() > maxSize) {
+      iterator.next();
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  private static String keyOf(Result result) {
+    return result.getBarcodeFormat() + ":" + result.getText();
+  }
+}
@@ -0,0 +1,83 @@
+package com.google.zxing.client.android;
+
+/**
+ * A snapshot of the cache suppressing repeat reads in continuous scanning mode.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class ResultCacheStatistics {
+  private final int size;
+  private final int maxSize;
+  private final long ttl;
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+
+  ResultCacheStatistics(int size, int maxSize, long ttl, long hits, long misses,
+      long evictions) {
+    this.size = size;
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+  }
+
+  /**
+   * Get the number of contents currently cached.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Get the most contents kept, least recently read ones are evicted first.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get the time in milliseconds after which a content not read again expires.
+   */
+  public long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * Get the number of repeat reads suppressed.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of new contents passed to listener.
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Get the number of contents evicted before expiring because the cache was full.
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  @Override public String toString() {
+    return "ResultCacheStatistics{size "
+        + size
+        + "/"
+        + maxSize
+        + ", ttl "
+        + ttl
+        + ", hits "
+        + hits
+        + ", misses "
+        + misses
+        + ", evictions "
+        + evictions
+        + '}';
+  }
+}
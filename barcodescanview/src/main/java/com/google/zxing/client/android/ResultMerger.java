@@ -0,0 +1,52 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.Result;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class merges the bar codes decoded from consecutive frames into one batch. A bar code seen
+ * in several frames is kept once, in the order it was first seen.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ResultMerger {
+  private final Map<String, Result> results = new LinkedHashMap<>();
+
+  /**
+   * Add the bar codes decoded from a frame.
+   *
+   * @param frameResults bar codes of the frame
+   * @return number of bar codes not seen before
+   */
+  int add(Result[] frameResults) {
+    int added = 0;
+    for (Result result : frameResults) {
+      String key = result.getBarcodeFormat() + ":" + result.getText();
+      if (!results.containsKey(key)) {
+        results.put(key, result);
+        added++;
+      }
+    }
+    return added;
+  }
+
+  boolean isEmpty() {
+    return results.isEmpty();
+  }
+
+  /**
+   * Get the bar codes merged so far.
+   *
+   * @return a new list of bar codes
+   */
+  List<Result> getResults() {
+    return new ArrayList<>(results.values());
+  }
+
+  void clear() {
+    results.clear();
+  }
+}
@@ -0,0 +1,111 @@
+package com.google.zxing.client.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A ring of the possible result points one decode thread found, handed to the view drawing them
+ * without locking or allocating. There must be one writer thread and one reader thread. The
+ * writer never waits for the reader, it overwrites the oldest point once the ring is full. Each
+ * point is stamped with the generation it was written in, which is the number of points written
+ * before it, so the reader tells a point it expects from one overwritten meanwhile.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ResultPointRing {
+  /* stamp of a slot being written */
+  private static final long WRITING = -1L;
+
+  private final int mask;
+  /* both coordinates of a point packed into one long, so they are never torn apart */
+  private final AtomicLongArray points;
+  private final AtomicLongArray stamps;
+  private final AtomicLong generation = new AtomicLong();
+
+  /* only touched on the reader thread */
+  private long readGeneration;
+  private long lastReadGeneration;
+
+  /**
+   * Create a ring.
+   *
+   * @param capacity number of points kept, must be a power of 2
+   */
+  ResultPointRing(int capacity) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("Capacity must be a power of 2.");
+    }
+
+    mask = capacity - 1;
+    points = new AtomicLongArray(capacity);
+    stamps = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      stamps.set(i, WRITING);
+    }
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Add a point, called on the writer thread only.
+   *
+   * @param x x of the point
+   * @param y y of the point
+   */
+  void add(float x, float y) {
+    long current = generation.get();
+    int slot = (int) current & mask;
+    /* ordered stores: the reader sees the slot being written before it sees new coordinates */
+    stamps.lazySet(slot, WRITING);
+    points.lazySet(slot,
+        ((long) Float.floatToRawIntBits(x) << 32) | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL));
+    stamps.lazySet(slot, current);
+    generation.lazySet(current + 1);
+  }
+
+  /**
+   * Read the points added since the last call, called on the reader thread only. Points
+   * overwritten before they were read are skipped.
+   *
+   * @param out coordinates of the points in pairs of x and y, at least twice the capacity long
+   * @return number of points read
+   */
+  int readNew(float[] out) {
+    long end = generation.get();
+    lastReadGeneration = readGeneration;
+    readGeneration = end;
+    return read(lastReadGeneration, end, out);
+  }
+
+  /**
+   * Read again the points returned by the last {@link #readNew(float[])}, called on the reader
+   * thread only. Points overwritten since are skipped.
+   *
+   * @param out coordinates of the points in pairs of x and y, at least twice the capacity long
+   * @return number of points read
+   */
+  int readLast(float[] out) {
+    return read(lastReadGeneration, readGeneration, out);
+  }
+
+  private int read(long start, long end, float[] out) {
+    int count = 0;
+    for (long g = Math.max(start, end - capacity()); g < end; g++) {
+      int slot = (int) g & mask;
+      if (stamps.get(slot) != g) {
+        continue;
+      }
+      long point = points.get(slot);
+      /* the writer came round to this slot while it was read */
+      if (stamps.get(slot) != g) {
+        continue;
+      }
+      out[count * 2] = Float.intBitsToFloat((int) (point >>> 32));
+      out[count * 2 + 1] = Float.intBitsToFloat((int) point);
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,182 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Like {@link com.google.zxing.MultiFormatReader}, but the order in which readers are tried on
+ * each frame is decided by a {@link ReaderScheduler}. This class is not thread safe, every decode
+ * worker owns one.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ScheduledMultiFormatReader {
+  private final ReaderScheduler scheduler;
+  private final Reader[] readers = new Reader[ReaderScheduler.FAMILY_COUNT];
+  private final MultipleBarcodeReader[] multipleReaders =
+      new MultipleBarcodeReader[ReaderScheduler.FAMILY_COUNT];
+  private final List<Result> multipleResults = new ArrayList<>();
+  private final boolean[] enabled = new boolean[ReaderScheduler.FAMILY_COUNT];
+  private final int[] order = new int[ReaderScheduler.FAMILY_COUNT];
+  private Map<DecodeHintType, ?> hints;
+  private Map<DecodeHintType, ?> tryHarderHints;
+
+  ScheduledMultiFormatReader(ReaderScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Set the hints and create the readers for {@link DecodeHintType#POSSIBLE_FORMATS}.
+   *
+   * @param hints hints of readers
+   */
+  void setHints(Map<DecodeHintType, ?> hints) {
+    this.hints = hints;
+    Map<DecodeHintType, Object> harder = new EnumMap<>(DecodeHintType.class);
+    harder.putAll(hints);
+    harder.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    this.tryHarderHints = harder;
+    @SuppressWarnings("unchecked") Collection<BarcodeFormat> formats =
+        (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+
+    for (int i = 0; i < ReaderScheduler.FAMILY_COUNT; i++) {
+      enabled[i] = false;
+      readers[i] = null;
+    }
+    for (BarcodeFormat format : formats) {
+      enabled[ReaderScheduler.familyOf(format)] = true;
+    }
+
+    if (enabled[ReaderScheduler.FAMILY_ONE_D]) {
+      readers[ReaderScheduler.FAMILY_ONE_D] = new MultiFormatOneDReader(hints);
+    }
+    if (enabled[ReaderScheduler.FAMILY_QR_CODE]) {
+      /* it decodes a single code like QRCodeReader, and finds several codes natively */
+      readers[ReaderScheduler.FAMILY_QR_CODE] = new QRCodeMultiReader();
+    }
+    if (enabled[ReaderScheduler.FAMILY_DATA_MATRIX]) {
+      readers[ReaderScheduler.FAMILY_DATA_MATRIX] = new DataMatrixReader();
+    }
+    if (enabled[ReaderScheduler.FAMILY_AZTEC]) {
+      readers[ReaderScheduler.FAMILY_AZTEC] = new AztecReader();
+    }
+    if (enabled[ReaderScheduler.FAMILY_PDF417]) {
+      readers[ReaderScheduler.FAMILY_PDF417] = new PDF417Reader();
+    }
+
+    for (int i = 0; i < ReaderScheduler.FAMILY_COUNT; i++) {
+      if (readers[i] == null) {
+        multipleReaders[i] = null;
+      } else if (readers[i] instanceof MultipleBarcodeReader) {
+        multipleReaders[i] = (MultipleBarcodeReader) readers[i];
+      } else {
+        multipleReaders[i] = new GenericMultipleBarcodeReader(readers[i]);
+      }
+    }
+  }
+
+  /**
+   * Decode a frame with the readers scheduled for it.
+   *
+   * @param image image to decode
+   * @param inverted inverted image to decode if image fails, or null
+   * @param frame sequence of the frame
+   * @param tier {@link DecodeTier} to decode with
+   * @return {@link Result}
+   * @throws NotFoundException if no reader found a bar code
+   */
+  Result decode(BinaryBitmap image, BinaryBitmap inverted, int frame, DecodeTier tier)
+      throws NotFoundException {
+    int count = scheduler.order(frame, enabled, order, !tier.isAllFormats());
+    Map<DecodeHintType, ?> tierHints = tier.isTryHarder() ? tryHarderHints : hints;
+    Result result = decode(image, count, tierHints);
+    if (result == null && inverted != null) {
+      result = decode(inverted, count, tierHints);
+    }
+    if (result == null) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+
+    scheduler.onDecoded(result.getBarcodeFormat());
+    return result;
+  }
+
+  private Result decode(BinaryBitmap image, int count, Map<DecodeHintType, ?> hints) {
+    for (int i = 0; i < count; i++) {
+      Reader reader = readers[order[i]];
+      try {
+        return reader.decode(image, hints);
+      } catch (ReaderException ignore) {
+        /* continue */
+      } finally {
+        reader.reset();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Decode all bar codes in a frame with the readers scheduled for it.
+   *
+   * @param image image to decode
+   * @param inverted inverted image to decode if image has no bar code, or null
+   * @param frame sequence of the frame
+   * @param tier {@link DecodeTier} to decode with
+   * @return bar codes found
+   * @throws NotFoundException if no reader found a bar code
+   */
+  Result[] decodeMultiple(BinaryBitmap image, BinaryBitmap inverted, int frame, DecodeTier tier)
+      throws NotFoundException {
+    int count = scheduler.order(frame, enabled, order, !tier.isAllFormats());
+    Map<DecodeHintType, ?> tierHints = tier.isTryHarder() ? tryHarderHints : hints;
+    List<Result> results = multipleResults;
+    results.clear();
+    decodeMultiple(image, count, tierHints, results);
+    if (results.isEmpty() && inverted != null) {
+      decodeMultiple(inverted, count, tierHints, results);
+    }
+    if (results.isEmpty()) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+
+    for (Result result : results) {
+      scheduler.onDecoded(result.getBarcodeFormat());
+    }
+    Result[] array = results.toArray(new Result[results.size()]);
+    results.clear();
+    return array;
+  }
+
+  private void decodeMultiple(BinaryBitmap image, int count, Map<DecodeHintType, ?> hints,
+      List<Result> results) {
+    for (int i = 0; i < count; i++) {
+      int family = order[i];
+      try {
+        Collections.addAll(results, multipleReaders[family].decodeMultiple(image, hints));
+      } catch (ReaderException ignore) {
+        /* continue */
+      } finally {
+        readers[family].reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.google.zxing.client.android;
+
+/**
+ * A snapshot of the latencies of one stage of decode pipeline, see {@link DecodeMetrics}. All
+ * values are in microseconds.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class StageLatency {
+  private final long[] counts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  StageLatency(long[] counts, long count, long sum, long max) {
+    this.counts = counts;
+    this.count = count;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  /**
+   * Get the number of latencies recorded.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the mean latency, or 0 if none recorded.
+   */
+  public long getMean() {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * Get the largest latency recorded.
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Get the latency below which the given percentage of latencies fall, within 12.5%.
+   *
+   * @param percentile percentile from 0 to 100, such as 50, 90 or 99
+   * @return latency, or 0 if none recorded
+   */
+  public long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+    }
+
+    long total = 0;
+    for (long bucketCount : counts) {
+      total += bucketCount;
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.highestValueOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  @Override public String toString() {
+    return "{count "
+        + count
+        + ", mean "
+        + getMean()
+        + ", p50 "
+        + getPercentile(50)
+        + ", p90 "
+        + getPercentile(90)
+        + ", p99 "
+        + getPercentile(99)
+        + ", max "
+        + max
+        + '}';
+  }
+}
@@ -0,0 +1,63 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * A frame rendered by {@link SyntheticFrameGenerator}, with the bar code drawn into it and the
+ * degradations it was drawn with, so a frame failing to decode can be told apart.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class SyntheticFrame {
+  final long index;
+  /* NV21 frame as delivered by camera */
+  final byte[] data;
+  final int width;
+  final int height;
+  final BarcodeFormat format;
+  final String content;
+  /* longer side of code relative to the shorter side of frame */
+  final float scale;
+  /* in-plane rotation in degrees */
+  final float angle;
+  /* largest corner displacement relative to the size of code */
+  final float perspective;
+  /* box blur radius in pixels */
+  final int blur;
+  /* standard deviation of luminance noise */
+  final float noise;
+  final boolean glare;
+  /* difference between light and dark modules, from 0 to 1 */
+  final float contrast;
+
+  SyntheticFrame(long index, byte[] data, int width, int height, BarcodeFormat format,
+      String content, float scale, float angle, float perspective, int blur, float noise,
+      boolean glare, float contrast) {
+    this.index = index;
+    this.data = data;
+    this.width = width;
+    this.height = height;
+    this.format = format;
+    this.content = content;
+    this.scale = scale;
+    this.angle = angle;
+    this.perspective = perspective;
+    this.blur = blur;
+    this.noise = noise;
+    this.glare = glare;
+    this.contrast = contrast;
+  }
+
+  @Override public String toString() {
+    return "SyntheticFrame{" + index
+        + ", " + format
+        + ", scale " + scale
+        + ", angle " + angle
+        + ", perspective " + perspective
+        + ", blur " + blur
+        + ", noise " + noise
+        + (glare ? ", glare" : "")
+        + ", contrast " + contrast
+        + '}';
+  }
+}
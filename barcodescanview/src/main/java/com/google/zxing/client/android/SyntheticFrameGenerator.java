@@ -0,0 +1,603 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.PerspectiveTransform;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class renders bar codes into NV21 frames like the ones delivered by camera, so the decoder
+ * can be load and regression tested without a camera. Codes are encoded with
+ * {@link MatrixEncoder} like {@link Encoder} does, drawn on a light label with a random scale,
+ * rotation and perspective, then degraded by glare, blur, noise and low contrast, each within the
+ * bounds set. Every frame is generated from the seed and its index only, so a corpus is
+ * reproducible, is streamed lazily by {@link #frames(long)} and any frame of it can be generated
+ * again alone. Once configured, frames can be generated on several threads at the same time.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class SyntheticFrameGenerator {
+  /* formats which have a writer */
+  static final Set<BarcodeFormat> SUPPORTED_FORMATS = EnumSet.of(BarcodeFormat.AZTEC,
+      BarcodeFormat.CODABAR, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128,
+      BarcodeFormat.DATA_MATRIX, BarcodeFormat.EAN_8, BarcodeFormat.EAN_13, BarcodeFormat.ITF,
+      BarcodeFormat.PDF_417, BarcodeFormat.QR_CODE, BarcodeFormat.UPC_A);
+
+  /* height of one dimensional codes relative to their width */
+  private static final float ONE_D_ASPECT = 0.35f;
+  /* light margin of label around code relative to the size of code, some writers add none */
+  private static final float LABEL_MARGIN = 0.2f;
+  /* largest offset of code from the center of frame relative to the room left around it */
+  private static final float MAX_OFFSET = 0.25f;
+  private static final int NOISE_TABLE_SIZE = 4096;
+  private static final float[] GAUSSIAN = new float[NOISE_TABLE_SIZE];
+  private static final String TEXT_CHARS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 -./:";
+  private static final String CODE_39_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+  static {
+    Random random = new Random(0L);
+    for (int i = 0; i < NOISE_TABLE_SIZE; i++) {
+      GAUSSIAN[i] = (float) random.nextGaussian();
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final long seed;
+  private BarcodeFormat[] formats = {
+      BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX, BarcodeFormat.AZTEC,
+      BarcodeFormat.PDF_417, BarcodeFormat.EAN_13, BarcodeFormat.CODE_128
+  };
+  private int rotation;
+  private float minScale = 0.3f;
+  private float maxScale = 0.6f;
+  private float maxAngle;
+  private float maxPerspective;
+  private float maxBlur;
+  private float maxNoise;
+  private float glareChance;
+  private float minContrast = 0.6f;
+  private float maxContrast = 0.8f;
+
+  /**
+   * Create a generator of frames.
+   *
+   * @param width width of frames as delivered by camera
+   * @param height height of frames as delivered by camera
+   * @param seed seed of the corpus
+   */
+  SyntheticFrameGenerator(int width, int height, long seed) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Bad frame size: " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+    this.seed = seed;
+  }
+
+  /**
+   * Set the formats to draw, picked at random for each frame.
+   *
+   * @param formats formats to draw, see {@link #SUPPORTED_FORMATS}
+   */
+  void setFormats(Set<BarcodeFormat> formats) {
+    if (formats.isEmpty() || !SUPPORTED_FORMATS.containsAll(formats)) {
+      throw new IllegalArgumentException("Formats must be some of " + SUPPORTED_FORMATS);
+    }
+    this.formats = formats.toArray(new BarcodeFormat[formats.size()]);
+  }
+
+  /**
+   * Set the clockwise rotation which presents frames in display orientation, like
+   * {@code CameraConfigurationManager.getCWNeededRotation}. Codes read upright once frames are
+   * rotated so, before the random in-plane rotation.
+   *
+   * @param rotation one of 0, 90, 180, 270
+   */
+  void setRotation(int rotation) {
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+      throw new IllegalArgumentException("Bad rotation: " + rotation);
+    }
+    this.rotation = rotation;
+  }
+
+  /**
+   * Set the range of the size of codes.
+   *
+   * @param minScale least longer side of code relative to the shorter side of frame
+   * @param maxScale most longer side of code relative to the shorter side of frame
+   */
+  void setScale(float minScale, float maxScale) {
+    if (minScale <= 0f || maxScale > 1f || minScale > maxScale) {
+      throw new IllegalArgumentException("Bad scale range.");
+    }
+    this.minScale = minScale;
+    this.maxScale = maxScale;
+  }
+
+  /**
+   * Set the largest in-plane rotation of codes, either way.
+   *
+   * @param maxAngle angle in degrees
+   */
+  void setMaxAngle(float maxAngle) {
+    if (maxAngle < 0f || maxAngle > 180f) {
+      throw new IllegalArgumentException("Bad max angle: " + maxAngle);
+    }
+    this.maxAngle = maxAngle;
+  }
+
+  /**
+   * Set the largest perspective distortion of codes, each corner moves by up to this much.
+   *
+   * @param maxPerspective displacement relative to the size of code, from 0 to 0.25
+   */
+  void setMaxPerspective(float maxPerspective) {
+    if (maxPerspective < 0f || maxPerspective > 0.25f) {
+      throw new IllegalArgumentException("Bad max perspective: " + maxPerspective);
+    }
+    this.maxPerspective = maxPerspective;
+  }
+
+  /**
+   * Set the largest blur, as the radius of a box blur applied twice.
+   *
+   * @param maxBlur radius in pixels
+   */
+  void setMaxBlur(float maxBlur) {
+    if (maxBlur < 0f) {
+      throw new IllegalArgumentException("Max blur must not be negative.");
+    }
+    this.maxBlur = maxBlur;
+  }
+
+  /**
+   * Set the largest luminance noise, independent from pixel to pixel. Camera pipelines denoise
+   * frames, so a few levels is typical already.
+   *
+   * @param maxNoise standard deviation of noise, from 0 to 255
+   */
+  void setMaxNoise(float maxNoise) {
+    if (maxNoise < 0f || maxNoise > 255f) {
+      throw new IllegalArgumentException("Bad max noise: " + maxNoise);
+    }
+    this.maxNoise = maxNoise;
+  }
+
+  /**
+   * Set the chance of a specular highlight over the code.
+   *
+   * @param glareChance chance from 0 to 1
+   */
+  void setGlareChance(float glareChance) {
+    if (glareChance < 0f || glareChance > 1f) {
+      throw new IllegalArgumentException("Bad glare chance: " + glareChance);
+    }
+    this.glareChance = glareChance;
+  }
+
+  /**
+   * Set the range of the difference between light and dark modules.
+   *
+   * @param minContrast least contrast, from 0 to 1
+   * @param maxContrast most contrast, from 0 to 1
+   */
+  void setContrast(float minContrast, float maxContrast) {
+    if (minContrast <= 0f || maxContrast > 1f || minContrast > maxContrast) {
+      throw new IllegalArgumentException("Bad contrast range.");
+    }
+    this.minContrast = minContrast;
+    this.maxContrast = maxContrast;
+  }
+
+  /**
+   * Stream frames lazily, from index 0. Each frame gets its own buffer.
+   *
+   * @param count number of frames
+   * @return frames, which can be iterated several times
+   */
+  Iterable<SyntheticFrame> frames(final long count) {
+    return new Iterable<SyntheticFrame>() {
+      @Override public Iterator<SyntheticFrame> iterator() {
+        return new Iterator<SyntheticFrame>() {
+          private long next;
+
+          @Override public boolean hasNext() {
+            return next < count;
+          }
+
+          @Override public SyntheticFrame next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            return frame(next++);
+          }
+
+          @Override public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Generate a frame of the corpus.
+   *
+   * @param index index of the frame
+   * @return {@link SyntheticFrame}
+   */
+  SyntheticFrame frame(long index) {
+    return frame(index, null);
+  }
+
+  /**
+   * Generate a frame of the corpus into a buffer, e.g. to soak test without garbage.
+   *
+   * @param index index of the frame
+   * @param data buffer to draw into, a new one is allocated if null or too small
+   * @return {@link SyntheticFrame}
+   */
+  SyntheticFrame frame(long index, byte[] data) {
+    int frameSize = width * height;
+    if (data == null || data.length < frameSize * 3 / 2) {
+      data = new byte[frameSize * 3 / 2];
+    }
+
+    Random random = new Random(mix(seed + index * 0x9E3779B97F4A7C15L));
+    BarcodeFormat format = formats[random.nextInt(formats.length)];
+    String content = contentOf(format, random);
+    BitMatrix matrix;
+    try {
+      /* the smallest matrix the writer makes, one pixel per module for most formats */
+      matrix = MatrixEncoder.encode(content, format, 1, 1);
+    } catch (WriterException e) {
+      throw new IllegalStateException("Failed to encode " + format + ": " + content, e);
+    }
+
+    float scale = between(random, minScale, maxScale);
+    float angle = between(random, -maxAngle, maxAngle);
+    float perspective = random.nextFloat() * maxPerspective;
+    int blur = Math.round(random.nextFloat() * maxBlur);
+    float noise = random.nextFloat() * maxNoise;
+    boolean glare = random.nextFloat() < glareChance;
+    float contrast = between(random, minContrast, maxContrast);
+
+    /* exposure of scene, paper is lighter and ink darker by half the contrast */
+    int mid = 80 + random.nextInt(96);
+    int light = clamp(Math.round(mid + contrast * 127f));
+    int dark = clamp(Math.round(mid - contrast * 127f));
+    drawBackground(data, mid, random);
+
+    /* height of code relative to its width */
+    float aspect = ReaderScheduler.familyOf(format) == ReaderScheduler.FAMILY_ONE_D
+        ? ONE_D_ASPECT : (float) matrix.getHeight() / matrix.getWidth();
+    float[] corners = placeCode(aspect, scale, angle, perspective, random);
+    int[] bounds = drawCode(data, matrix, aspect, corners, light, dark);
+    if (glare) {
+      drawGlare(data, bounds, random);
+    }
+    if (blur > 0) {
+      blur(data, bounds, blur);
+    }
+    if (noise > 0f) {
+      addNoise(data, noise, random.nextInt() | 1);
+    }
+    for (int i = frameSize; i < frameSize * 3 / 2; i++) {
+      data[i] = (byte) 128;
+    }
+
+    return new SyntheticFrame(index, data, width, height, format, content, scale, angle,
+        perspective, blur, noise, glare, contrast);
+  }
+
+  /**
+   * Place the code in display orientation, and return its corners in terms of camera frame:
+   * top left, top right, bottom right and bottom left.
+   */
+  private float[] placeCode(float aspect, float scale, float angle, float perspective,
+      Random random) {
+    int displayWidth = rotation % 180 == 0 ? width : height;
+    int displayHeight = rotation % 180 == 0 ? height : width;
+    float size = scale * Math.min(displayWidth, displayHeight);
+    float codeWidth = aspect <= 1f ? size : size / aspect;
+    float codeHeight = codeWidth * aspect;
+
+    /*
+     * aimed at roughly like a user does, off center by up to a quarter of the room left around
+     * the label, which stays in frame whatever the rotation
+     */
+    float margin = LABEL_MARGIN * size;
+    float radius = (float) Math.hypot(codeWidth / 2 + margin, codeHeight / 2 + margin);
+    float roomX = Math.max(0f, displayWidth / 2f - radius) * MAX_OFFSET;
+    float roomY = Math.max(0f, displayHeight / 2f - radius) * MAX_OFFSET;
+    float centerX = displayWidth / 2f + between(random, -roomX, roomX);
+    float centerY = displayHeight / 2f + between(random, -roomY, roomY);
+
+    double theta = Math.toRadians(angle);
+    float cos = (float) Math.cos(theta);
+    float sin = (float) Math.sin(theta);
+    float[] corners = {
+        -codeWidth / 2, -codeHeight / 2, codeWidth / 2, -codeHeight / 2,
+        codeWidth / 2, codeHeight / 2, -codeWidth / 2, codeHeight / 2
+    };
+    for (int i = 0; i < corners.length; i += 2) {
+      float x = corners[i] * cos - corners[i + 1] * sin;
+      float y = corners[i] * sin + corners[i + 1] * cos;
+      x += centerX + between(random, -perspective, perspective) * size;
+      y += centerY + between(random, -perspective, perspective) * size;
+      toCamera(corners, i, x, y);
+    }
+    return corners;
+  }
+
+  /**
+   * Map a point from display orientation to camera frame, the inverse of the mapping done by
+   * {@link com.google.zxing.client.android.camera.RotatedYUVLuminanceSource}.
+   */
+  private void toCamera(float[] points, int i, float x, float y) {
+    switch (rotation) {
+      case 90:
+        points[i] = y;
+        points[i + 1] = height - x;
+        break;
+      case 180:
+        points[i] = width - x;
+        points[i + 1] = height - y;
+        break;
+      case 270:
+        points[i] = width - y;
+        points[i + 1] = x;
+        break;
+      default:
+        points[i] = x;
+        points[i + 1] = y;
+        break;
+    }
+  }
+
+  /**
+   * Fill the Y plane with a dim scene lit unevenly.
+   */
+  private void drawBackground(byte[] data, int mid, Random random) {
+    float base = mid - 40 + random.nextInt(40);
+    float gradientX = between(random, -40f, 40f) / width;
+    float gradientY = between(random, -40f, 40f) / height;
+    for (int y = 0; y < height; y++) {
+      float rowBase = base + gradientY * y;
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        data[offset + x] = (byte) clamp((int) (rowBase + gradientX * x));
+      }
+    }
+  }
+
+  /**
+   * Draw the code and its label by mapping every pixel around them back to the matrix.
+   *
+   * @return bounds of label in frame: left, top, right and bottom, exclusive
+   */
+  private int[] drawCode(byte[] data, BitMatrix matrix, float aspect, float[] corners, int light,
+      int dark) {
+    int matrixWidth = matrix.getWidth();
+    int matrixHeight = matrix.getHeight();
+    PerspectiveTransform toMatrix = PerspectiveTransform.quadrilateralToQuadrilateral(
+        corners[0], corners[1], corners[2], corners[3], corners[4], corners[5], corners[6],
+        corners[7], 0f, 0f, matrixWidth, 0f, matrixWidth, matrixHeight, 0f, matrixHeight);
+    PerspectiveTransform toFrame = PerspectiveTransform.quadrilateralToQuadrilateral(
+        0f, 0f, matrixWidth, 0f, matrixWidth, matrixHeight, 0f, matrixHeight,
+        corners[0], corners[1], corners[2], corners[3], corners[4], corners[5], corners[6],
+        corners[7]);
+
+    /* margin of label in terms of matrix, as wide on all sides relative to the longer side */
+    float marginX = LABEL_MARGIN * matrixWidth * Math.max(1f, aspect);
+    float marginY = LABEL_MARGIN * matrixHeight / Math.min(1f, aspect);
+    float[] label = {
+        -marginX, -marginY, matrixWidth + marginX, -marginY,
+        matrixWidth + marginX, matrixHeight + marginY, -marginX, matrixHeight + marginY
+    };
+    toFrame.transformPoints(label);
+    int left = width;
+    int top = height;
+    int right = 0;
+    int bottom = 0;
+    for (int i = 0; i < label.length; i += 2) {
+      left = Math.min(left, (int) Math.floor(label[i]));
+      right = Math.max(right, (int) Math.ceil(label[i]));
+      top = Math.min(top, (int) Math.floor(label[i + 1]));
+      bottom = Math.max(bottom, (int) Math.ceil(label[i + 1]));
+    }
+    left = Math.max(0, left);
+    top = Math.max(0, top);
+    right = Math.min(width, right);
+    bottom = Math.min(height, bottom);
+
+    byte lightByte = (byte) light;
+    byte darkByte = (byte) dark;
+    float[] points = new float[Math.max(0, right - left) * 2];
+    for (int y = top; y < bottom; y++) {
+      for (int x = left, i = 0; x < right; x++, i += 2) {
+        points[i] = x + 0.5f;
+        points[i + 1] = y + 0.5f;
+      }
+      toMatrix.transformPoints(points);
+      int offset = y * width;
+      for (int x = left, i = 0; x < right; x++, i += 2) {
+        float matrixX = points[i];
+        float matrixY = points[i + 1];
+        if (matrixX < -marginX || matrixX >= matrixWidth + marginX || matrixY < -marginY
+            || matrixY >= matrixHeight + marginY) {
+          continue;
+        }
+        boolean on = matrixX >= 0f && matrixX < matrixWidth && matrixY >= 0f
+            && matrixY < matrixHeight && matrix.get((int) matrixX, (int) matrixY);
+        data[offset + x] = on ? darkByte : lightByte;
+      }
+    }
+    return new int[] { left, top, right, bottom };
+  }
+
+  /**
+   * Add a bright highlight somewhere over the label, as from a light reflected by glossy paper.
+   */
+  private void drawGlare(byte[] data, int[] bounds, Random random) {
+    int labelWidth = bounds[2] - bounds[0];
+    int labelHeight = bounds[3] - bounds[1];
+    if (labelWidth <= 0 || labelHeight <= 0) {
+      return;
+    }
+
+    float centerX = bounds[0] + random.nextFloat() * labelWidth;
+    float centerY = bounds[1] + random.nextFloat() * labelHeight;
+    float sigma = between(random, 0.1f, 0.3f) * Math.max(labelWidth, labelHeight);
+    float amplitude = between(random, 80f, 220f);
+    int reach = (int) (3 * sigma);
+    int left = Math.max(0, (int) centerX - reach);
+    int right = Math.min(width, (int) centerX + reach);
+    int top = Math.max(0, (int) centerY - reach);
+    int bottom = Math.min(height, (int) centerY + reach);
+    float scale = -1f / (2 * sigma * sigma);
+    for (int y = top; y < bottom; y++) {
+      float dy = y - centerY;
+      int offset = y * width;
+      for (int x = left; x < right; x++) {
+        float dx = x - centerX;
+        int luma = (data[offset + x] & 0xff)
+            + (int) (amplitude * Math.exp((dx * dx + dy * dy) * scale));
+        data[offset + x] = (byte) clamp(luma);
+      }
+    }
+  }
+
+  /**
+   * Blur the label and its surroundings with two passes of box blur, close to a gaussian one.
+   * The rest of frame is smooth already.
+   */
+  private void blur(byte[] data, int[] bounds, int radius) {
+    int left = Math.max(0, bounds[0] - 2 * radius);
+    int top = Math.max(0, bounds[1] - 2 * radius);
+    int right = Math.min(width, bounds[2] + 2 * radius);
+    int bottom = Math.min(height, bounds[3] + 2 * radius);
+    int regionWidth = right - left;
+    int regionHeight = bottom - top;
+    if (regionWidth <= 0 || regionHeight <= 0) {
+      return;
+    }
+
+    int[] line = new int[Math.max(regionWidth, regionHeight)];
+    for (int pass = 0; pass < 2; pass++) {
+      for (int y = top; y < bottom; y++) {
+        boxBlur(data, y * width + left, 1, regionWidth, radius, line);
+      }
+      for (int x = left; x < right; x++) {
+        boxBlur(data, top * width + x, width, regionHeight, radius, line);
+      }
+    }
+  }
+
+  /**
+   * Box blur a line of pixels in place, clamping at both ends.
+   */
+  private static void boxBlur(byte[] data, int start, int step, int length, int radius,
+      int[] line) {
+    for (int i = 0; i < length; i++) {
+      line[i] = data[start + i * step] & 0xff;
+    }
+
+    int window = 2 * radius + 1;
+    int sum = 0;
+    for (int i = -radius; i <= radius; i++) {
+      sum += line[Math.min(length - 1, Math.max(0, i))];
+    }
+    for (int i = 0; i < length; i++) {
+      data[start + i * step] = (byte) (sum / window);
+      sum += line[Math.min(length - 1, i + radius + 1)] - line[Math.max(0, i - radius)];
+    }
+  }
+
+  /**
+   * Add gaussian noise to the Y plane, drawn from a table by a xorshift generator to be cheap.
+   */
+  private void addNoise(byte[] data, float sigma, int state) {
+    int frameSize = width * height;
+    for (int i = 0; i < frameSize; i++) {
+      state ^= state << 13;
+      state ^= state >>> 17;
+      state ^= state << 5;
+      int luma = (data[i] & 0xff) + (int) (sigma * GAUSSIAN[state & (NOISE_TABLE_SIZE - 1)]);
+      data[i] = (byte) clamp(luma);
+    }
+  }
+
+  /**
+   * Get a random content which the writer of format accepts.
+   */
+  static String contentOf(BarcodeFormat format, Random random) {
+    switch (format) {
+      case EAN_8:
+        return withCheckDigit(digits(random, 7));
+      case EAN_13:
+        return withCheckDigit(digits(random, 12));
+      case UPC_A:
+        return withCheckDigit(digits(random, 11));
+      case ITF:
+        return digits(random, 2 * (3 + random.nextInt(5)));
+      case CODABAR:
+        /* the writer adds start and stop characters, which the reader drops */
+        return digits(random, 6 + random.nextInt(6));
+      case CODE_39:
+      case CODE_93:
+        return chars(random, CODE_39_CHARS, 6 + random.nextInt(8));
+      case CODE_128:
+        return chars(random, TEXT_CHARS, 6 + random.nextInt(12));
+      default:
+        return chars(random, TEXT_CHARS, 8 + random.nextInt(48));
+    }
+  }
+
+  private static String digits(Random random, int count) {
+    return chars(random, "0123456789", count);
+  }
+
+  private static String chars(Random random, String alphabet, int count) {
+    StringBuilder builder = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Append the check digit of UPC and EAN codes.
+   */
+  private static String withCheckDigit(String digits) {
+    int sum = 0;
+    for (int i = digits.length() - 1, weight = 3; i >= 0; i--, weight = 4 - weight) {
+      sum += (digits.charAt(i) - '0') * weight;
+    }
+    return digits + (10 - sum % 10) % 10;
+  }
+
+  private static float between(Random random, float min, float max) {
+    return min + random.nextFloat() * (max - min);
+  }
+
+  private static int clamp(int luma) {
+    return luma < 0 ? 0 : luma > 255 ? 255 : luma;
+  }
+
+  /**
+   * Mix the bits of a seed, so that nearby seeds give unrelated frames.
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,50 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * A {@link Binarizer} which adds up the time spent in another one, so binarization can be told
+ * apart from reading. Binarizers created for crops share the same total.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class TimedBinarizer extends Binarizer {
+  private final Binarizer delegate;
+  private final long[] elapsed;
+
+  /**
+   * @param delegate binarizer to time
+   * @param elapsed a single element array to add the elapsed nanoseconds to
+   */
+  TimedBinarizer(Binarizer delegate, long[] elapsed) {
+    super(delegate.getLuminanceSource());
+    this.delegate = delegate;
+    this.elapsed = elapsed;
+  }
+
+  @Override public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getBlackRow(y, row);
+    } finally {
+      elapsed[0] += System.nanoTime() - start;
+    }
+  }
+
+  @Override public BitMatrix getBlackMatrix() throws NotFoundException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getBlackMatrix();
+    } finally {
+      elapsed[0] += System.nanoTime() - start;
+    }
+  }
+
+  @Override public Binarizer createBinarizer(LuminanceSource source) {
+    return new TimedBinarizer(delegate.createBinarizer(source), elapsed);
+  }
+}
@@ -16,22 +16,93 @@
 
 package com.google.zxing.client.android;
 
+import android.graphics.Rect;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.client.android.camera.CameraManager;
 
 public final class ViewfinderResultPointCallback implements ResultPointCallback {
   private final ViewfinderView viewfinderView;
+  private final ResultPointRing resultPointRing;
   private final CameraManager cameraManager;
+  /* offset of the decoded region from the framing rect in preview */
+  private int offsetX;
+  private int offsetY;
+  /* frame pixels per decoded pixel when decoding a downsampled region */
+  private int sample = 1;
+  /* bounds of the points found in current frame, relative to framing rect in preview */
+  private float minX;
+  private float minY;
+  private float maxX;
+  private float maxY;
+  private int pointCount;
 
   public ViewfinderResultPointCallback(ViewfinderView viewfinderView, CameraManager cameraManager) {
     this.viewfinderView = viewfinderView;
     this.cameraManager = cameraManager;
+    resultPointRing = viewfinderView.createResultPointRing();
+  }
+
+  /**
+   * Stop showing the points found, once the decode thread quit.
+   */
+  void release() {
+    viewfinderView.releaseResultPointRing(resultPointRing);
+  }
+
+  /**
+   * Set the region being decoded, points found are relative to this region.
+   *
+   * @param region region in terms of the rotated preview frame
+   * @param sample frame pixels per decoded pixel in both directions
+   */
+  void setDecodeRegion(Rect region, int sample) {
+    this.sample = sample;
+    Rect framingRectInPreview = cameraManager.getFramingRectInPreview();
+    if (region == null || framingRectInPreview == null) {
+      offsetX = offsetY = 0;
+      return;
+    }
+
+    offsetX = region.left - framingRectInPreview.left;
+    offsetY = region.top - framingRectInPreview.top;
+  }
+
+  /**
+   * Start collecting the points of a frame, before it is decoded.
+   */
+  void startFrame() {
+    pointCount = 0;
+  }
+
+  /**
+   * Tell camera how much of the framing rect the points of the frame span, once it was decoded
+   * without a bar code found. Nothing is told unless at least two points were found.
+   */
+  void endFrame() {
+    Rect framingRectInPreview = cameraManager.getFramingRectInPreview();
+    if (pointCount < 2 || framingRectInPreview == null || framingRectInPreview.isEmpty()) {
+      return;
+    }
+
+    float spread = Math.max((maxX - minX) / framingRectInPreview.width(),
+        (maxY - minY) / framingRectInPreview.height());
+    cameraManager.reportResultPointSpread(spread);
   }
 
   @Override public void foundPossibleResultPoint(ResultPoint point) {
-    ResultPoint realPoint =
-        new ResultPoint(cameraManager.getPreviewSize().y - point.getY(), point.getX());
-    viewfinderView.addPossibleResultPoint(realPoint);
+    /* make the point relative to framing rect in preview, which is what viewfinder draws */
+    float x = point.getX() * sample + offsetX;
+    float y = point.getY() * sample + offsetY;
+    if (pointCount++ == 0) {
+      minX = maxX = x;
+      minY = maxY = y;
+    } else {
+      minX = Math.min(minX, x);
+      maxX = Math.max(maxX, x);
+      minY = Math.min(minY, y);
+      maxY = Math.max(maxY, y);
+    }
+    resultPointRing.add(x, y);
   }
 }
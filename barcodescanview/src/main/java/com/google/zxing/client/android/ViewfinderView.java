@@ -11,9 +11,11 @@ import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.View;
 import com.anbillon.barcodescanview.R;
+import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.client.android.camera.CameraManager;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -24,7 +26,8 @@ public final class ViewfinderView extends View {
   private static final int[] SCANNER_ALPHA = { 0, 64, 128, 192, 255, 192, 128, 64 };
   private static final long ANIMATION_DELAY = 28L;
   private static final int CURRENT_POINT_OPACITY = 0xA0;
-  private static final int MAX_RESULT_POINTS = 20;
+  /* possible result points kept per decode thread, a power of 2 */
+  private static final int MAX_RESULT_POINTS = 16;
   private static final int POINT_SIZE = 10;
   private static final int LINE_MOVE_DOWN = 0;
   private static final int LINE_MOVE_UP = 1;
@@ -44,8 +47,12 @@ public final class ViewfinderView extends View {
   private final int resultPointColor;
   /* the alpha of the scanner page */
   private int scannerAlpha;
-  private List<ResultPoint> possibleResultPoints;
-  private List<ResultPoint> lastPossibleResultPoints;
+  /* one ring of possible result points per decode thread, replaced as a whole when changed */
+  private volatile ResultPointRing[] resultPointRings = new ResultPointRing[0];
+  /* coordinates read out of a ring, reused on every draw */
+  private final float[] resultPointCoordinates = new float[MAX_RESULT_POINTS * 2];
+  /* result points of each bar code of last batch, in terms of the rotated preview frame */
+  private List<ResultPoint[]> resultCodePoints;
 
   private int linePosition = 0;
   private int cornerLinewidth = CORNER_LINE_WITH;
@@ -68,8 +75,6 @@ public final class ViewfinderView extends View {
     laserLineColor = getColor(context, R.color.viewfinder_laser);
     resultPointColor = getColor(context, R.color.possible_result_points);
     scannerAlpha = 0;
-    possibleResultPoints = allocateResultPoint(5);
-    lastPossibleResultPoints = null;
     label = context.getString(R.string.default_label);
   }
 
@@ -151,35 +156,20 @@ public final class ViewfinderView extends View {
       Rect previewFrame = cameraManager.getFramingRectInPreview();
       float scaleX = frame.width() / (float) previewFrame.width();
       float scaleY = frame.height() / (float) previewFrame.height();
-      List<ResultPoint> currentPossible = possibleResultPoints;
-      List<ResultPoint> currentLast = lastPossibleResultPoints;
-      int frameLeft = frame.left;
-      int frameTop = frame.top;
-      if (currentPossible.isEmpty()) {
-        lastPossibleResultPoints = null;
-      } else {
-        possibleResultPoints = allocateResultPoint(5);
-        lastPossibleResultPoints = currentPossible;
-        paint.setAlpha(CURRENT_POINT_OPACITY);
+      /* points found since last draw, and faded the ones drawn last time */
+      float[] coordinates = resultPointCoordinates;
+      for (ResultPointRing ring : resultPointRings) {
         paint.setColor(resultPointColor);
-        synchronized (currentPossible) {
-          for (ResultPoint point : currentPossible) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                frameTop + (int) (point.getY() * scaleY), POINT_SIZE, paint);
-          }
-        }
+        paint.setAlpha(CURRENT_POINT_OPACITY / 2);
+        drawPossibleResultPoints(canvas, frame, scaleX, scaleY, coordinates,
+            ring.readLast(coordinates), POINT_SIZE / 2f);
+        paint.setAlpha(CURRENT_POINT_OPACITY);
+        drawPossibleResultPoints(canvas, frame, scaleX, scaleY, coordinates,
+            ring.readNew(coordinates), POINT_SIZE);
       }
 
-      if (currentLast != null) {
-        paint.setAlpha(CURRENT_POINT_OPACITY / 2);
-        paint.setColor(resultPointColor);
-        synchronized (currentLast) {
-          float radius = POINT_SIZE / 2.0f;
-          for (ResultPoint point : currentLast) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                frameTop + (int) (point.getY() * scaleY), radius, paint);
-          }
-        }
+      if (resultCodePoints != null) {
+        drawResultCodePoints(canvas, previewFrame, frame, scaleX, scaleY);
       }
       // Request another update at the animation interval, but only repaint the laser line,
       // not the entire viewfinder mask.
@@ -190,6 +180,42 @@ public final class ViewfinderView extends View {
     canvas.drawText(label, getWidth() / 2, frame.bottom + 100, labelPaint);
   }
 
+  private void drawPossibleResultPoints(Canvas canvas, Rect frame, float scaleX, float scaleY,
+      float[] coordinates, int count, float radius) {
+    for (int i = 0; i < count; i++) {
+      canvas.drawCircle(frame.left + (int) (coordinates[i * 2] * scaleX),
+          frame.top + (int) (coordinates[i * 2 + 1] * scaleY), radius, paint);
+    }
+  }
+
+  /**
+   * Highlight each bar code of last batch by joining its result points.
+   */
+  private void drawResultCodePoints(Canvas canvas, Rect previewFrame, Rect frame, float scaleX,
+      float scaleY) {
+    paint.setColor(resultPointColor);
+    /* paint is shared by every drawing pass, so its stroke width is restored once done */
+    float strokeWidth = paint.getStrokeWidth();
+    paint.setStrokeWidth(POINT_SIZE / 2f);
+    for (ResultPoint[] points : resultCodePoints) {
+      ResultPoint previous = points.length > 2 ? points[points.length - 1] : null;
+      for (ResultPoint point : points) {
+        if (point == null) {
+          continue;
+        }
+        float x = frame.left + (point.getX() - previewFrame.left) * scaleX;
+        float y = frame.top + (point.getY() - previewFrame.top) * scaleY;
+        canvas.drawCircle(x, y, POINT_SIZE, paint);
+        if (previous != null) {
+          canvas.drawLine(frame.left + (previous.getX() - previewFrame.left) * scaleX,
+              frame.top + (previous.getY() - previewFrame.top) * scaleY, x, y, paint);
+        }
+        previous = point;
+      }
+    }
+    paint.setStrokeWidth(strokeWidth);
+  }
+
   /**
    * Get color for api 23 and lower.
    *
@@ -205,16 +231,6 @@ public final class ViewfinderView extends View {
     }
   }
 
-  /**
-   * Allocate the result point.
-   *
-   * @param num the number of result point
-   * @return the list
-   */
-  private List<ResultPoint> allocateResultPoint(int num) {
-    return new ArrayList<>(num);
-  }
-
   /**
    * Set the camera manager.
    */
@@ -266,6 +282,7 @@ public final class ViewfinderView extends View {
    * Draw the view finder view.
    */
   public void drawViewfinder() {
+    resultCodePoints = null;
     Bitmap resultBitmap = this.resultBitmap;
     this.resultBitmap = null;
     if (resultBitmap != null) {
@@ -287,16 +304,47 @@ public final class ViewfinderView extends View {
   }
 
   /**
-   * Add the reuslt point.
+   * Highlight the result points of each bar code, until {@link #drawViewfinder()} is called.
+   *
+   * @param results bar codes with points in terms of the rotated preview frame
    */
-  public void addPossibleResultPoint(ResultPoint point) {
-    List<ResultPoint> points = possibleResultPoints;
-    synchronized (points) {
-      points.add(point);
-      int size = points.size();
-      if (size > MAX_RESULT_POINTS) {
-        points.subList(0, size - MAX_RESULT_POINTS / 2).clear();
+  public void drawResultPoints(List<Result> results) {
+    List<ResultPoint[]> codePoints = new ArrayList<>(results.size());
+    for (Result result : results) {
+      ResultPoint[] points = result.getResultPoints();
+      if (points != null && points.length > 0) {
+        codePoints.add(points);
       }
     }
+    resultCodePoints = codePoints;
+    invalidate();
+  }
+
+  /**
+   * Create a ring for a decode thread to add its possible result points to. Adding a point neither
+   * locks nor allocates, and it does not invalidate this view either: points added between two
+   * frames of the scanner animation are all drawn by the next one.
+   *
+   * @return {@link ResultPointRing}
+   */
+  synchronized ResultPointRing createResultPointRing() {
+    ResultPointRing[] rings = resultPointRings;
+    ResultPointRing[] newRings = Arrays.copyOf(rings, rings.length + 1);
+    newRings[rings.length] = new ResultPointRing(MAX_RESULT_POINTS);
+    resultPointRings = newRings;
+    return newRings[rings.length];
+  }
+
+  /**
+   * Stop drawing the points of a ring, once its decode thread quit.
+   *
+   * @param ring {@link ResultPointRing} created by {@link #createResultPointRing()}
+   */
+  synchronized void releaseResultPointRing(ResultPointRing ring) {
+    ResultPointRing[] rings = resultPointRings;
+    List<ResultPointRing> remaining = new ArrayList<>(Arrays.asList(rings));
+    if (remaining.remove(ring)) {
+      resultPointRings = remaining.toArray(new ResultPointRing[remaining.size()]);
+    }
   }
 }
\ No newline at end of file
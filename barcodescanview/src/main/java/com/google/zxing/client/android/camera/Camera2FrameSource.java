@@ -0,0 +1,843 @@
+package com.google.zxing.client.android.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CameraFrameSource} on Camera2. Preview is drawn at a high resolution on screen, while
+ * frames for decoder come from a separate low resolution YUV_420_888 stream of an
+ * {@link ImageReader}. All camera callbacks run on a dedicated camera thread. Frames read the Y
+ * plane of images in place, without copying it, and each image is kept open until its frame is
+ * released. Images arriving while decoder holds every frame are dropped at once, so camera never
+ * stalls on the decoder.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP) final class Camera2FrameSource extends CameraFrameSource
+    implements ImageReader.OnImageAvailableListener {
+  private static final String TAG = Camera2FrameSource.class.getSimpleName();
+  /* preview on screen is sharper than the analysis stream, but not larger than this */
+  private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+  private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+  /* images acquireLatestImage needs besides those held by decoder */
+  private static final int SPARE_IMAGES = 2;
+  private static final long OPEN_TIMEOUT_MS = 3000L;
+
+  private final Context context;
+  private final android.hardware.camera2.CameraManager manager;
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private String cameraId;
+  private CameraCharacteristics characteristics;
+  private volatile CameraDevice cameraDevice;
+  private CameraCaptureSession captureSession;
+  private ImageReader imageReader;
+  private SurfaceHolder previewHolder;
+  private Surface previewSurface;
+  /* size of preview surface when the capture session was configured */
+  private Point sessionSurfaceSize;
+  private CaptureRequest.Builder requestBuilder;
+  private volatile HeldImages heldImages;
+  /* images of a closed reader still held by decoder, the reader is closed once they are released */
+  private volatile HeldImages closingImages;
+  private Point analysisSize;
+  private int rotation;
+  private boolean previewing;
+  private int afMode;
+  private boolean torchSupported;
+  private Range<Integer> exposureRange;
+  /* focus area in analysis frames, kept to follow zoom */
+  private Rect focusArea;
+  private float zoom = 1f;
+  /* a focus scan was triggered and its end was not seen yet */
+  private volatile boolean awaitingFocus;
+
+  private final FocusStateCallback captureCallback = new FocusStateCallback();
+  private final Camera2Focuser focuser = new Camera2Focuser();
+
+  Camera2FrameSource(Context context) {
+    this.context = context;
+    this.manager = (android.hardware.camera2.CameraManager) context.getSystemService(
+        Context.CAMERA_SERVICE);
+  }
+
+  /**
+   * Check if the camera to open is better driven by Camera2 than by the legacy camera, which is
+   * when its hardware level is above legacy. Must only be called on Lollipop or later.
+   *
+   * @param context context to use
+   * @param requestedCameraId index of camera to open, or a negative value for no preference
+   * @return true if Camera2 should be used, otherwise return false
+   */
+  static boolean isSupported(Context context, int requestedCameraId) {
+    android.hardware.camera2.CameraManager manager =
+        (android.hardware.camera2.CameraManager) context.getSystemService(
+            Context.CAMERA_SERVICE);
+    try {
+      String cameraId = findCameraId(manager, requestedCameraId);
+      if (cameraId == null) {
+        return false;
+      }
+      Integer level = manager.getCameraCharacteristics(cameraId)
+          .get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+      return level != null && level != CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+    } catch (CameraAccessException | RuntimeException e) {
+      Log.w(TAG, "Unable to query camera characteristics", e);
+      return false;
+    }
+  }
+
+  /**
+   * Find the id of camera at given index, as counted by legacy camera, or the first back camera.
+   */
+  private static String findCameraId(android.hardware.camera2.CameraManager manager,
+      int requestedCameraId) throws CameraAccessException {
+    String[] cameraIds = manager.getCameraIdList();
+    if (cameraIds.length == 0) {
+      return null;
+    }
+    if (requestedCameraId >= 0) {
+      return requestedCameraId < cameraIds.length ? cameraIds[requestedCameraId] : null;
+    }
+
+    for (String cameraId : cameraIds) {
+      Integer facing = manager.getCameraCharacteristics(cameraId)
+          .get(CameraCharacteristics.LENS_FACING);
+      if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
+        return cameraId;
+      }
+    }
+    return cameraIds[0];
+  }
+
+  @Override synchronized void openDevice(int requestedCameraId) throws Exception {
+    if (cameraDevice != null) {
+      return;
+    }
+
+    String id = findCameraId(manager, requestedCameraId);
+    if (id == null) {
+      throw new IOException("No camera available for id " + requestedCameraId);
+    }
+    characteristics = manager.getCameraCharacteristics(id);
+    cameraId = id;
+    if (cameraThread == null) {
+      cameraThread = new HandlerThread("Camera2Thread");
+      cameraThread.start();
+      cameraHandler = new Handler(cameraThread.getLooper());
+    }
+
+    OpenCallback openCallback = new OpenCallback();
+    manager.openCamera(id, openCallback, cameraHandler);
+    CameraDevice device = openCallback.await();
+    if (device == null) {
+      close();
+      throw new IOException("Camera2 failed to open camera " + id + ", error "
+          + openCallback.error);
+    }
+    cameraDevice = device;
+  }
+
+  @Override synchronized void open(SurfaceHolder holder, int requestedCameraId,
+      Point screenResolution) throws Exception {
+    openDevice(requestedCameraId);
+    if (imageReader != null) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    configure(characteristics, screenResolution);
+    /* characteristics are kept by the framework, there is nothing slow to cache here */
+    recordConfiguration(System.nanoTime() - start, false, 0);
+    Point previewSize = findPreviewSize(characteristics);
+    Log.i(TAG, "Camera " + cameraId + " analysis size: " + analysisSize + ", preview size: "
+        + previewSize + ", rotation: " + rotation);
+
+    setFixedSize(holder, previewSize);
+    previewHolder = holder;
+    previewSurface = holder.getSurface();
+    int bufferCount = Math.max(1, getBufferCount());
+    imageReader = ImageReader.newInstance(analysisSize.x, analysisSize.y,
+        ImageFormat.YUV_420_888, bufferCount + SPARE_IMAGES);
+    imageReader.setOnImageAvailableListener(this, cameraHandler);
+    heldImages = new HeldImages(imageReader, bufferCount);
+    createControllers(cameraHandler.getLooper(), focuser,
+        afMode != CameraMetadata.CONTROL_AF_MODE_AUTO);
+  }
+
+  /**
+   * Set the size of surface, which relayouts the view, so it is done on main thread. Until then,
+   * camera rounds the surface to a size it supports, and the capture session is configured again
+   * once preview restarts on the resized surface.
+   */
+  private static void setFixedSize(final SurfaceHolder holder, final Point size) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      holder.setFixedSize(size.x, size.y);
+      return;
+    }
+
+    new Handler(Looper.getMainLooper()).post(new Runnable() {
+      @Override public void run() {
+        holder.setFixedSize(size.x, size.y);
+      }
+    });
+  }
+
+  /**
+   * Read rotation, analysis size and supported controls from characteristics of camera.
+   */
+  private void configure(CameraCharacteristics characteristics, Point screenResolution) {
+    Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+    Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+    boolean front = facing != null && facing == CameraMetadata.LENS_FACING_FRONT;
+    int cwRotationFromDisplayToCamera = CameraConfigurationManager.getRotationFromDisplayToCamera(
+        CameraConfigurationManager.getDisplayRotation(context),
+        orientation == null ? 0 : orientation, front);
+    rotation = CameraConfigurationManager.getNeededRotation(cwRotationFromDisplayToCamera, front);
+
+    StreamConfigurationMap map =
+        characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    List<Point> sizes = toPoints(map.getOutputSizes(ImageFormat.YUV_420_888));
+    /* there is no default size for an image reader, take the smallest size instead */
+    Point smallest = sizes.get(0);
+    for (Point size : sizes) {
+      if (size.x * size.y < smallest.x * smallest.y) {
+        smallest = size;
+      }
+    }
+    analysisSize = choosePreviewSize(sizes, screenResolution, smallest).getSize();
+
+    int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+    /* camera focuses by itself in continuous modes, otherwise focus is scheduled by decoder */
+    if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+      afMode = CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+    } else if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO)) {
+      afMode = CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO;
+    } else if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_AUTO)) {
+      afMode = CameraMetadata.CONTROL_AF_MODE_AUTO;
+    } else {
+      afMode = CameraMetadata.CONTROL_AF_MODE_OFF;
+    }
+    Boolean flash = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+    torchSupported = flash != null && flash;
+    exposureRange = characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_RANGE);
+  }
+
+  /**
+   * Find the largest size of the aspect ratio of analysis size to draw preview on screen.
+   */
+  private Point findPreviewSize(CameraCharacteristics characteristics) {
+    StreamConfigurationMap map =
+        characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    float aspectRatio = (float) analysisSize.x / analysisSize.y;
+    Point previewSize = analysisSize;
+    for (Point size : toPoints(map.getOutputSizes(SurfaceHolder.class))) {
+      int pixels = size.x * size.y;
+      if (pixels <= MAX_PREVIEW_PIXELS
+          && pixels > previewSize.x * previewSize.y
+          && Math.abs((float) size.x / size.y - aspectRatio) < ASPECT_RATIO_TOLERANCE) {
+        previewSize = size;
+      }
+    }
+    return previewSize;
+  }
+
+  private static List<Point> toPoints(Size[] sizes) {
+    List<Point> points = new ArrayList<>(sizes == null ? 0 : sizes.length);
+    if (sizes != null) {
+      for (Size size : sizes) {
+        points.add(new Point(size.getWidth(), size.getHeight()));
+      }
+    }
+    return points;
+  }
+
+  private static boolean contains(int[] values, int value) {
+    if (values != null) {
+      for (int v : values) {
+        if (v == value) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override boolean isOpen() {
+    return cameraDevice != null;
+  }
+
+  @Override synchronized void startPreview() throws Exception {
+    if (cameraDevice == null || previewing) {
+      return;
+    }
+
+    Rect surfaceFrame = previewHolder.getSurfaceFrame();
+    Point surfaceSize = new Point(surfaceFrame.width(), surfaceFrame.height());
+    if (captureSession != null && !surfaceSize.equals(sessionSurfaceSize)) {
+      /* outputs of a session can not change size, such as when the fixed size landed */
+      Log.i(TAG, "Preview surface resized to " + surfaceSize + ", configuring session again");
+      captureSession.close();
+      captureSession = null;
+    }
+
+    if (captureSession == null) {
+      SessionCallback sessionCallback = new SessionCallback();
+      cameraDevice.createCaptureSession(Arrays.asList(previewSurface, imageReader.getSurface()),
+          sessionCallback, cameraHandler);
+      captureSession = sessionCallback.await();
+      if (captureSession == null) {
+        throw new IOException("Camera2 failed to configure capture session");
+      }
+      sessionSurfaceSize = surfaceSize;
+    }
+
+    if (requestBuilder == null) {
+      requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+      requestBuilder.addTarget(previewSurface);
+      requestBuilder.addTarget(imageReader.getSurface());
+      requestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+      requestBuilder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+      requestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
+    }
+    captureSession.setRepeatingRequest(requestBuilder.build(), captureCallback, cameraHandler);
+    previewing = true;
+    startControllers();
+  }
+
+  @Override synchronized void stopPreview() {
+    stopControllers();
+    if (captureSession != null && previewing) {
+      try {
+        captureSession.stopRepeating();
+      } catch (CameraAccessException | IllegalStateException e) {
+        Log.w(TAG, "Unexpected exception while stopping preview", e);
+      }
+      previewing = false;
+      awaitingFocus = false;
+    }
+  }
+
+  @Override synchronized void close() {
+    stopPreview();
+    if (captureSession != null) {
+      captureSession.close();
+      captureSession = null;
+    }
+    if (cameraDevice != null) {
+      cameraDevice.close();
+      cameraDevice = null;
+    }
+    if (heldImages != null) {
+      /* decoder may still read images, so the reader can only be closed once they are released */
+      closingImages = heldImages.close() ? null : heldImages;
+      heldImages = null;
+      imageReader = null;
+    }
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
+    requestBuilder = null;
+    previewHolder = null;
+    previewSurface = null;
+    sessionSurfaceSize = null;
+    focusArea = null;
+    zoom = 1f;
+    characteristics = null;
+    cameraId = null;
+  }
+
+  @Override public void onImageAvailable(ImageReader reader) {
+    Image image;
+    try {
+      image = reader.acquireLatestImage();
+    } catch (IllegalStateException e) {
+      Log.w(TAG, "Unable to acquire image", e);
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+
+    HeldImages held = heldImages;
+    Frame frame = held == null ? null : held.hold(image);
+    if (frame == null) {
+      /* decoder holds every frame, drop this one */
+      image.close();
+      return;
+    }
+    if (!deliver(frame)) {
+      held.release(frame);
+    }
+  }
+
+  @Override public void requestFrame() {
+    /* frames come continuously from image reader */
+  }
+
+  @Override public void releaseFrame(Frame frame) {
+    HeldImages held = heldImages;
+    if (held != null && held.release(frame)) {
+      return;
+    }
+
+    HeldImages closing = closingImages;
+    if (closing != null && closing.release(frame) && closing.isClosed()) {
+      closingImages = null;
+    }
+  }
+
+  @Override public int getBufferCapacity() {
+    HeldImages held = heldImages;
+    return held == null ? 0 : held.getCapacity();
+  }
+
+  @Override public int getBuffersInUse() {
+    HeldImages held = heldImages;
+    return held == null ? 0 : held.getCount();
+  }
+
+  @Override public synchronized int getFrameWidth() {
+    return analysisSize == null ? 0 : analysisSize.x;
+  }
+
+  @Override public synchronized int getFrameHeight() {
+    return analysisSize == null ? 0 : analysisSize.y;
+  }
+
+  @Override public synchronized int getRotation() {
+    return rotation;
+  }
+
+  @Override synchronized void setFocusArea(Rect area) {
+    if (requestBuilder == null || characteristics == null || area == null) {
+      return;
+    }
+
+    focusArea = area;
+    if (applyRegions() && previewing) {
+      updateRepeatingRequest();
+    }
+  }
+
+  /**
+   * Set focus and metering regions of request to the focus area, within the current zoom.
+   *
+   * @return true if regions were set, false if camera does not support them
+   */
+  private boolean applyRegions() {
+    Integer maxAfRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+    Integer maxAeRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE);
+    boolean afRegions = maxAfRegions != null && maxAfRegions > 0;
+    boolean aeRegions = maxAeRegions != null && maxAeRegions > 0;
+    Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+    if (!afRegions && !aeRegions || activeArray == null) {
+      Log.i(TAG, "Camera does not support focus or metering regions");
+      return false;
+    }
+
+    Rect rect = toSensorCoordinates(focusArea, cropRegion(activeArray));
+    Log.i(TAG, "Setting focus and metering region to " + rect);
+    MeteringRectangle[] regions =
+        { new MeteringRectangle(rect, MeteringRectangle.METERING_WEIGHT_MAX) };
+    if (afRegions) {
+      requestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+    }
+    if (aeRegions) {
+      requestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+    }
+    return true;
+  }
+
+  /**
+   * Get the region of active array read by camera at the current zoom.
+   */
+  private Rect cropRegion(Rect activeArray) {
+    int width = Math.round(activeArray.width() / zoom);
+    int height = Math.round(activeArray.height() / zoom);
+    int left = activeArray.left + (activeArray.width() - width) / 2;
+    int top = activeArray.top + (activeArray.height() - height) / 2;
+    return new Rect(left, top, left + width, top + height);
+  }
+
+  /**
+   * Map an area of analysis frames to the active array of sensor, which regions are given in.
+   *
+   * @param area area in analysis frames
+   * @param cropRegion region of active array read by camera
+   */
+  private Rect toSensorCoordinates(Rect area, Rect cropRegion) {
+    /* streams are cropped from the center of crop region to their aspect ratio */
+    int cropWidth = cropRegion.width();
+    int cropHeight = cropRegion.height();
+    if ((long) cropWidth * analysisSize.y > (long) cropHeight * analysisSize.x) {
+      cropWidth = cropHeight * analysisSize.x / analysisSize.y;
+    } else {
+      cropHeight = cropWidth * analysisSize.y / analysisSize.x;
+    }
+    int left = cropRegion.left + (cropRegion.width() - cropWidth) / 2;
+    int top = cropRegion.top + (cropRegion.height() - cropHeight) / 2;
+    return new Rect(left + area.left * cropWidth / analysisSize.x,
+        top + area.top * cropHeight / analysisSize.y,
+        left + area.right * cropWidth / analysisSize.x,
+        top + area.bottom * cropHeight / analysisSize.y);
+  }
+
+  @Override public synchronized float setZoom(float ratio) {
+    if (!previewing || characteristics == null) {
+      return 1f;
+    }
+
+    Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+    Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+    if (maxZoom == null || maxZoom <= 1f || activeArray == null) {
+      return 1f;
+    }
+
+    float applied = Math.max(1f, Math.min(ratio, maxZoom));
+    if (applied == zoom) {
+      return applied;
+    }
+
+    /* crop region applies to every stream, so frames for decoder are zoomed as well */
+    zoom = applied;
+    Log.i(TAG, "Setting zoom to " + zoom);
+    requestBuilder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion(activeArray));
+    if (focusArea != null) {
+      applyRegions();
+    }
+    updateRepeatingRequest();
+    return applied;
+  }
+
+  @Override public synchronized boolean stepExposureCompensation(int steps) {
+    if (!previewing || exposureRange == null) {
+      return false;
+    }
+
+    Integer current = requestBuilder.get(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION);
+    int from = current == null ? 0 : current;
+    int exposure =
+        Math.max(exposureRange.getLower(), Math.min(exposureRange.getUpper(), from + steps));
+    if (exposure == from) {
+      return false;
+    }
+    Log.i(TAG, "Setting exposure compensation to " + exposure);
+    requestBuilder.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, exposure);
+    updateRepeatingRequest();
+    return true;
+  }
+
+  @Override synchronized boolean isTorchSupported() {
+    return torchSupported;
+  }
+
+  @Override public synchronized void setTorch(boolean enabled) {
+    if (requestBuilder == null || !torchSupported) {
+      return;
+    }
+
+    /* torch is switched without restarting focus */
+    requestBuilder.set(CaptureRequest.FLASH_MODE,
+        enabled ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+    if (previewing) {
+      updateRepeatingRequest();
+    }
+  }
+
+  private void updateRepeatingRequest() {
+    try {
+      captureSession.setRepeatingRequest(requestBuilder.build(), captureCallback, cameraHandler);
+    } catch (CameraAccessException | IllegalStateException e) {
+      Log.w(TAG, "Unexpected exception while updating capture request", e);
+    }
+  }
+
+  /**
+   * Triggers single focus scans in auto focus mode.
+   */
+  private final class Camera2Focuser implements FocusScheduler.Focuser {
+    @Override public boolean focus() {
+      synchronized (Camera2FrameSource.this) {
+        if (!previewing || afMode != CameraMetadata.CONTROL_AF_MODE_AUTO) {
+          return false;
+        }
+
+        try {
+          requestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+              CameraMetadata.CONTROL_AF_TRIGGER_START);
+          captureSession.capture(requestBuilder.build(), captureCallback, cameraHandler);
+          awaitingFocus = true;
+          return true;
+        } catch (CameraAccessException | IllegalStateException e) {
+          Log.w(TAG, "Unexpected exception while focusing", e);
+          return false;
+        } finally {
+          requestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+              CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+        }
+      }
+    }
+
+    @Override public void cancelFocus() {
+      synchronized (Camera2FrameSource.this) {
+        if (!previewing || !awaitingFocus) {
+          return;
+        }
+
+        awaitingFocus = false;
+        try {
+          requestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+              CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+          captureSession.capture(requestBuilder.build(), captureCallback, cameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+          Log.w(TAG, "Unexpected exception while cancelling focusing", e);
+        } finally {
+          requestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+              CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tells focus scheduler from every capture result when camera focuses by itself, or when a
+   * triggered focus scan is over.
+   */
+  private final class FocusStateCallback extends CameraCaptureSession.CaptureCallback {
+    @Override public void onCaptureCompleted(CameraCaptureSession session,
+        CaptureRequest request, TotalCaptureResult result) {
+      FocusScheduler scheduler = getFocusScheduler();
+      Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+      if (scheduler == null || afState == null) {
+        return;
+      }
+
+      scheduler.setFocusing(afState == CameraMetadata.CONTROL_AF_STATE_ACTIVE_SCAN
+          || afState == CameraMetadata.CONTROL_AF_STATE_PASSIVE_SCAN);
+      if (awaitingFocus && (afState == CameraMetadata.CONTROL_AF_STATE_FOCUSED_LOCKED
+          || afState == CameraMetadata.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED)) {
+        awaitingFocus = false;
+        scheduler.onFocusDone();
+      }
+    }
+  }
+
+  /**
+   * Waits for camera to open on camera thread.
+   */
+  private final class OpenCallback extends CameraDevice.StateCallback {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private CameraDevice device;
+    private boolean abandoned;
+    private volatile int error;
+
+    @Override public synchronized void onOpened(CameraDevice camera) {
+      if (abandoned) {
+        /* opened too late, nobody waits for it any more */
+        camera.close();
+        return;
+      }
+      device = camera;
+      latch.countDown();
+    }
+
+    @Override public void onDisconnected(CameraDevice camera) {
+      Log.w(TAG, "Camera disconnected");
+      onClosed(camera);
+    }
+
+    @Override public void onError(CameraDevice camera, int error) {
+      Log.w(TAG, "Camera error " + error);
+      this.error = error;
+      onClosed(camera);
+    }
+
+    @Override public void onClosed(CameraDevice camera) {
+      if (latch.getCount() > 0) {
+        camera.close();
+        latch.countDown();
+        return;
+      }
+
+      /* lost the camera while previewing, nothing more will be delivered */
+      synchronized (Camera2FrameSource.this) {
+        if (cameraDevice == camera) {
+          camera.close();
+          cameraDevice = null;
+          captureSession = null;
+          previewing = false;
+        }
+      }
+    }
+
+    CameraDevice await() throws InterruptedException {
+      if (!latch.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Timed out waiting for camera to open");
+      }
+      synchronized (this) {
+        abandoned = device == null;
+        return device;
+      }
+    }
+  }
+
+  /**
+   * Images of a reader delivered as frames, kept open until decoder releases their frames.
+   */
+  private static final class HeldImages {
+    private final ImageReader reader;
+    private final Image[] images;
+    private final Frame[] frames;
+    private int count;
+    private boolean closing;
+    private boolean closed;
+
+    HeldImages(ImageReader reader, int capacity) {
+      this.reader = reader;
+      this.images = new Image[capacity];
+      this.frames = new Frame[capacity];
+    }
+
+    /**
+     * Wrap the Y plane of image in a frame, without copying it.
+     *
+     * @return the frame, or null if every frame is held or the reader is closing
+     */
+    synchronized Frame hold(Image image) {
+      if (closing) {
+        return null;
+      }
+      for (int i = 0; i < images.length; i++) {
+        if (images[i] == null) {
+          Image.Plane plane = image.getPlanes()[0];
+          Frame frame = new Frame(i, plane.getBuffer(), plane.getRowStride(),
+              plane.getPixelStride(), image.getWidth(), image.getHeight());
+          images[i] = image;
+          frames[i] = frame;
+          count++;
+          return frame;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Close the image of frame.
+     *
+     * @return true if the frame was held, otherwise return false
+     */
+    synchronized boolean release(Frame frame) {
+      int index = frame.index;
+      if (index < 0 || index >= frames.length || frames[index] != frame) {
+        return false;
+      }
+
+      images[index].close();
+      images[index] = null;
+      frames[index] = null;
+      count--;
+      if (closing && count == 0) {
+        closeReader();
+      }
+      return true;
+    }
+
+    /**
+     * Stop holding images, and close the reader now if no frame is held.
+     *
+     * @return true if the reader was closed, false if it is closed once frames are released
+     */
+    synchronized boolean close() {
+      closing = true;
+      reader.setOnImageAvailableListener(null, null);
+      if (count == 0) {
+        closeReader();
+      }
+      return closed;
+    }
+
+    private void closeReader() {
+      reader.close();
+      closed = true;
+    }
+
+    synchronized boolean isClosed() {
+      return closed;
+    }
+
+    int getCapacity() {
+      return images.length;
+    }
+
+    synchronized int getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Waits for capture session to be configured on camera thread.
+   */
+  private static final class SessionCallback extends CameraCaptureSession.StateCallback {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private CameraCaptureSession session;
+    private boolean abandoned;
+
+    @Override public synchronized void onConfigured(CameraCaptureSession session) {
+      if (abandoned) {
+        /* configured too late, nobody waits for it any more */
+        session.close();
+        return;
+      }
+      this.session = session;
+      latch.countDown();
+    }
+
+    @Override public void onConfigureFailed(CameraCaptureSession session) {
+      Log.w(TAG, "Capture session configure failed");
+      latch.countDown();
+    }
+
+    CameraCaptureSession await() throws InterruptedException {
+      if (!latch.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Timed out waiting for capture session to be configured");
+      }
+      synchronized (this) {
+        abandoned = session == null;
+        return session;
+      }
+    }
+  }
+}
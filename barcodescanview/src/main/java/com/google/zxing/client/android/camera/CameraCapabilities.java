@@ -0,0 +1,162 @@
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.hardware.Camera;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a legacy camera supports, read once from its parameters, together with the last
+ * configuration it accepted. Parsing parameters of camera is slow, so this is kept in
+ * {@link CameraCapabilityCache} between launches. This class is immutable.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@SuppressWarnings("deprecation") final class CameraCapabilities {
+  private final List<Point> previewSizes;
+  private final Point defaultPreviewSize;
+  private final List<String> focusModes;
+  private final boolean torchSupported;
+  private final Point lastGoodPreviewSize;
+  private final String lastGoodFocusMode;
+  private final long configureNanos;
+
+  private CameraCapabilities(List<Point> previewSizes, Point defaultPreviewSize,
+      List<String> focusModes, boolean torchSupported, Point lastGoodPreviewSize,
+      String lastGoodFocusMode, long configureNanos) {
+    this.previewSizes = Collections.unmodifiableList(previewSizes);
+    this.defaultPreviewSize = defaultPreviewSize;
+    this.focusModes = Collections.unmodifiableList(focusModes);
+    this.torchSupported = torchSupported;
+    this.lastGoodPreviewSize = lastGoodPreviewSize;
+    this.lastGoodFocusMode = lastGoodFocusMode;
+    this.configureNanos = configureNanos;
+  }
+
+  /**
+   * Read capabilities from parameters of camera, without any configuration known to work.
+   *
+   * @param parameters parameters of camera
+   * @return {@link CameraCapabilities}
+   */
+  static CameraCapabilities read(Camera.Parameters parameters) {
+    Camera.Size size = parameters.getPreviewSize();
+    List<String> focusModes = parameters.getSupportedFocusModes();
+    List<String> flashModes = parameters.getSupportedFlashModes();
+    boolean torchSupported = flashModes != null
+        && (flashModes.contains(Camera.Parameters.FLASH_MODE_TORCH)
+        || flashModes.contains(Camera.Parameters.FLASH_MODE_ON));
+    return new CameraCapabilities(CameraConfigurationManager.getSupportedPreviewSizes(parameters),
+        new Point(size.width, size.height),
+        focusModes == null ? Collections.<String>emptyList() : new ArrayList<>(focusModes),
+        torchSupported, null, null, 0);
+  }
+
+  /**
+   * Get a copy of these capabilities with a configuration the camera accepted.
+   *
+   * @param previewSize preview size camera accepted
+   * @param focusMode focus mode camera accepted, or null if it was not set
+   * @param configureNanos time it took to configure camera without this configuration known
+   * @return {@link CameraCapabilities}
+   */
+  CameraCapabilities withLastGood(Point previewSize, String focusMode, long configureNanos) {
+    return new CameraCapabilities(previewSizes, defaultPreviewSize, focusModes, torchSupported,
+        new Point(previewSize), focusMode, configureNanos);
+  }
+
+  List<Point> getPreviewSizes() {
+    return previewSizes;
+  }
+
+  Point getDefaultPreviewSize() {
+    return defaultPreviewSize;
+  }
+
+  List<String> getFocusModes() {
+    return focusModes;
+  }
+
+  boolean isTorchSupported() {
+    return torchSupported;
+  }
+
+  /**
+   * Check if given preview size is the one camera accepted last time.
+   */
+  boolean isLastGood(Point previewSize) {
+    return lastGoodPreviewSize != null && lastGoodPreviewSize.equals(previewSize);
+  }
+
+  String getLastGoodFocusMode() {
+    return lastGoodFocusMode;
+  }
+
+  /**
+   * Get the time it took to configure camera before the configuration was known to work.
+   */
+  long getConfigureNanos() {
+    return configureNanos;
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(previewSizes.size());
+    for (Point size : previewSizes) {
+      out.writeInt(size.x);
+      out.writeInt(size.y);
+    }
+    out.writeInt(defaultPreviewSize.x);
+    out.writeInt(defaultPreviewSize.y);
+    out.writeInt(focusModes.size());
+    for (String focusMode : focusModes) {
+      out.writeUTF(focusMode);
+    }
+    out.writeBoolean(torchSupported);
+    out.writeBoolean(lastGoodPreviewSize != null);
+    if (lastGoodPreviewSize != null) {
+      out.writeInt(lastGoodPreviewSize.x);
+      out.writeInt(lastGoodPreviewSize.y);
+      out.writeUTF(lastGoodFocusMode == null ? "" : lastGoodFocusMode);
+      out.writeLong(configureNanos);
+    }
+  }
+
+  static CameraCapabilities readFrom(DataInput in) throws IOException {
+    int sizeCount = in.readInt();
+    if (sizeCount < 0 || sizeCount > 1024) {
+      throw new IOException("Bad count of preview sizes: " + sizeCount);
+    }
+    List<Point> previewSizes = new ArrayList<>(sizeCount);
+    for (int i = 0; i < sizeCount; i++) {
+      previewSizes.add(new Point(in.readInt(), in.readInt()));
+    }
+    Point defaultPreviewSize = new Point(in.readInt(), in.readInt());
+    int focusModeCount = in.readInt();
+    if (focusModeCount < 0 || focusModeCount > 64) {
+      throw new IOException("Bad count of focus modes: " + focusModeCount);
+    }
+    List<String> focusModes = new ArrayList<>(focusModeCount);
+    for (int i = 0; i < focusModeCount; i++) {
+      focusModes.add(in.readUTF());
+    }
+    boolean torchSupported = in.readBoolean();
+
+    Point lastGoodPreviewSize = null;
+    String lastGoodFocusMode = null;
+    long configureNanos = 0;
+    if (in.readBoolean()) {
+      lastGoodPreviewSize = new Point(in.readInt(), in.readInt());
+      lastGoodFocusMode = in.readUTF();
+      if (lastGoodFocusMode.isEmpty()) {
+        lastGoodFocusMode = null;
+      }
+      configureNanos = in.readLong();
+    }
+    return new CameraCapabilities(previewSizes, defaultPreviewSize, focusModes, torchSupported,
+        lastGoodPreviewSize, lastGoodFocusMode, configureNanos);
+  }
+}
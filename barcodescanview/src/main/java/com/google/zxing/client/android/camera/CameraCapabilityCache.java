@@ -0,0 +1,145 @@
+package com.google.zxing.client.android.camera;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * This class keeps {@link CameraCapabilities} on disk, one file per camera id in the cache
+ * directory of app. An entry is only used on the same build of OS it was written on, since an
+ * update may change what the camera driver supports. Any entry which can not be read is dropped.
+ *
+ * <p>A file holds {@link #MAGIC}, {@link #VERSION}, the camera id and the build fingerprint,
+ * followed by the capabilities.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class CameraCapabilityCache {
+  static final int MAGIC = 0x42434343;
+  /* version 2 prefers continuous focus modes, so focus modes accepted before are dropped */
+  static final int VERSION = 2;
+
+  private static final String TAG = CameraCapabilityCache.class.getSimpleName();
+  private static final String DIRECTORY = "barcodescanview";
+
+  private final File directory;
+  private final String fingerprint;
+
+  CameraCapabilityCache(Context context) {
+    this(new File(context.getCacheDir(), DIRECTORY), Build.FINGERPRINT);
+  }
+
+  CameraCapabilityCache(File directory, String fingerprint) {
+    this.directory = directory;
+    this.fingerprint = fingerprint == null ? "" : fingerprint;
+  }
+
+  /**
+   * Load the capabilities of a camera.
+   *
+   * @param cameraId id of camera
+   * @return {@link CameraCapabilities}, or null if not cached for this camera and build
+   */
+  CameraCapabilities load(int cameraId) {
+    File file = getFile(cameraId);
+    if (!file.exists()) {
+      return null;
+    }
+
+    CameraCapabilities capabilities = null;
+    boolean stale = false;
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != cameraId) {
+        throw new IOException("Not a capability cache of camera " + cameraId);
+      }
+      if (fingerprint.equals(in.readUTF())) {
+        capabilities = CameraCapabilities.readFrom(in);
+      } else {
+        Log.i(TAG, "Build changed, dropping capabilities of camera " + cameraId);
+        stale = true;
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to read capabilities of camera " + cameraId, e);
+      stale = true;
+    } finally {
+      closeQuietly(in);
+    }
+
+    if (stale) {
+      remove(cameraId);
+    }
+    return capabilities;
+  }
+
+  /**
+   * Save the capabilities of a camera, replacing what was cached.
+   *
+   * @param cameraId id of camera
+   * @param capabilities {@link CameraCapabilities}
+   */
+  void save(int cameraId, CameraCapabilities capabilities) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.w(TAG, "Unable to create cache directory " + directory);
+      return;
+    }
+
+    /* write aside and rename, so a crash never leaves a partial entry behind */
+    File file = getFile(cameraId);
+    File temp = new File(directory, file.getName() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(cameraId);
+      out.writeUTF(fingerprint);
+      capabilities.writeTo(out);
+      out.close();
+      out = null;
+      if (!temp.renameTo(file)) {
+        throw new IOException("Unable to rename " + temp + " to " + file);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to save capabilities of camera " + cameraId, e);
+      closeQuietly(out);
+      temp.delete();
+    }
+  }
+
+  /**
+   * Drop the capabilities of a camera, such as when its cached configuration failed.
+   *
+   * @param cameraId id of camera
+   */
+  void remove(int cameraId) {
+    File file = getFile(cameraId);
+    if (file.exists() && !file.delete()) {
+      Log.w(TAG, "Unable to delete " + file);
+    }
+  }
+
+  private File getFile(int cameraId) {
+    return new File(directory, "camera-" + cameraId + ".cache");
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ignored) {
+        /* nothing to do */
+      }
+    }
+  }
+}
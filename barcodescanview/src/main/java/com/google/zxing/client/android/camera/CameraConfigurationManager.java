@@ -18,6 +18,7 @@ package com.google.zxing.client.android.camera;
 
 import android.content.Context;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.util.Log;
 import android.view.Display;
@@ -29,7 +30,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -39,16 +39,12 @@ import java.util.List;
 @SuppressWarnings("deprecation") final class CameraConfigurationManager {
   private static final String TAG = "CameraConfiguration";
 
-  // This is bigger than the size of a small screen, which is still supported. The routine
-  // below will still select the default (presumably 320x240) size for these. This prevents
-  // accidental selection of very low screenResolution on some devices.
-  private static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
-  private static final int MAX_PREVIEW_PIXELS = 1280 * 720;
   private final Context context;
 
+  private CameraCapabilities capabilities;
+  private String focusMode;
   private Point screenResolution;
   private Point cameraResolution;
-  private Point bestPreviewSize;
   private Point previewSizeOnScreen;
   private int cwRotationFromDisplayToCamera;
   private int cwNeededRotation;
@@ -58,71 +54,107 @@ import java.util.List;
   }
 
   void initFromCameraParameters(OpenCamera camera, int width, int height) {
-    Camera.Parameters parameters = camera.getCamera().getParameters();
+    int cwRotationFromNaturalToDisplay = getDisplayRotation(context);
+    Log.i(TAG, "Display at: " + cwRotationFromNaturalToDisplay);
+    Log.i(TAG, "Camera at: " + camera.getOrientation());
+
+    boolean front = camera.getFacing() == CameraFacing.FRONT;
+    cwRotationFromDisplayToCamera = getRotationFromDisplayToCamera(cwRotationFromNaturalToDisplay,
+        camera.getOrientation(), front);
+    Log.i(TAG, "Final display orientation: " + cwRotationFromDisplayToCamera);
+    cwNeededRotation = getNeededRotation(cwRotationFromDisplayToCamera, front);
+    Log.i(TAG, "Clockwise rotation from display to camera: " + cwNeededRotation);
+
+    screenResolution = new Point(width, height);
+    Log.i(TAG, "Screen screenResolution in current orientation: " + screenResolution);
+  }
+
+  /**
+   * Set the capabilities of camera, so they are not read from parameters of camera again.
+   *
+   * @param capabilities {@link CameraCapabilities}
+   */
+  void setCapabilities(CameraCapabilities capabilities) {
+    this.capabilities = capabilities;
+  }
+
+  /**
+   * Set the preview size to configure camera with.
+   *
+   * @param previewSize preview size chosen from {@link #getSupportedPreviewSizes}
+   */
+  void setCameraResolution(Point previewSize) {
+    cameraResolution = new Point(previewSize);
+    Log.i(TAG, "Camera screenResolution: " + cameraResolution);
+
+    boolean isScreenPortrait = screenResolution.x < screenResolution.y;
+    boolean isPreviewSizePortrait = cameraResolution.x < cameraResolution.y;
+
+    if (isScreenPortrait == isPreviewSizePortrait) {
+      previewSizeOnScreen = cameraResolution;
+    } else {
+      previewSizeOnScreen = new Point(cameraResolution.y, cameraResolution.x);
+    }
+    Log.i(TAG, "Preview size on screen: " + previewSizeOnScreen);
+  }
+
+  /**
+   * Get the clockwise rotation from natural orientation of device to current display orientation.
+   *
+   * @param context context to use
+   * @return one of 0, 90, 180, 270
+   */
+  static int getDisplayRotation(Context context) {
     WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
     Display display = manager.getDefaultDisplay();
 
     int displayRotation = display.getRotation();
-    int cwRotationFromNaturalToDisplay;
     switch (displayRotation) {
       case Surface.ROTATION_0:
-        cwRotationFromNaturalToDisplay = 0;
-        break;
+        return 0;
       case Surface.ROTATION_90:
-        cwRotationFromNaturalToDisplay = 90;
-        break;
+        return 90;
       case Surface.ROTATION_180:
-        cwRotationFromNaturalToDisplay = 180;
-        break;
+        return 180;
       case Surface.ROTATION_270:
-        cwRotationFromNaturalToDisplay = 270;
-        break;
+        return 270;
       default:
         // Have seen this return incorrect values like -90
         if (displayRotation % 90 == 0) {
-          cwRotationFromNaturalToDisplay = (360 + displayRotation) % 360;
+          return (360 + displayRotation) % 360;
         } else {
           throw new IllegalArgumentException("Bad rotation: " + displayRotation);
         }
     }
-    Log.i(TAG, "Display at: " + cwRotationFromNaturalToDisplay);
-
-    int cwRotationFromNaturalToCamera = camera.getOrientation();
-    Log.i(TAG, "Camera at: " + cwRotationFromNaturalToCamera);
+  }
 
+  /**
+   * Get the clockwise rotation from display orientation to camera orientation, which is the
+   * orientation to show preview in.
+   *
+   * @param cwRotationFromNaturalToDisplay rotation of display
+   * @param cwRotationFromNaturalToCamera orientation of camera sensor
+   * @param front front camera or not
+   * @return one of 0, 90, 180, 270
+   */
+  static int getRotationFromDisplayToCamera(int cwRotationFromNaturalToDisplay,
+      int cwRotationFromNaturalToCamera, boolean front) {
     // Still not 100% sure about this. But acts like we need to flip this:
-    if (camera.getFacing() == CameraFacing.FRONT) {
+    if (front) {
       cwRotationFromNaturalToCamera = (360 - cwRotationFromNaturalToCamera) % 360;
-      Log.i(TAG, "Front camera overriden to: " + cwRotationFromNaturalToCamera);
     }
+    return (360 + cwRotationFromNaturalToCamera - cwRotationFromNaturalToDisplay) % 360;
+  }
 
-    cwRotationFromDisplayToCamera =
-        (360 + cwRotationFromNaturalToCamera - cwRotationFromNaturalToDisplay) % 360;
-    Log.i(TAG, "Final display orientation: " + cwRotationFromDisplayToCamera);
-    if (camera.getFacing() == CameraFacing.FRONT) {
-      Log.i(TAG, "Compensating rotation for front camera");
-      cwNeededRotation = (360 - cwRotationFromDisplayToCamera) % 360;
-    } else {
-      cwNeededRotation = cwRotationFromDisplayToCamera;
-    }
-    Log.i(TAG, "Clockwise rotation from display to camera: " + cwNeededRotation);
-
-    screenResolution = new Point(width, height);
-    Log.i(TAG, "Screen screenResolution in current orientation: " + screenResolution);
-    cameraResolution = findBestPreviewSizeValue(parameters, screenResolution);
-    Log.i(TAG, "Camera screenResolution: " + cameraResolution);
-    bestPreviewSize = findBestPreviewSizeValue(parameters, screenResolution);
-    Log.i(TAG, "Best available preview size: " + bestPreviewSize);
-
-    boolean isScreenPortrait = screenResolution.x < screenResolution.y;
-    boolean isPreviewSizePortrait = bestPreviewSize.x < bestPreviewSize.y;
-
-    if (isScreenPortrait == isPreviewSizePortrait) {
-      previewSizeOnScreen = bestPreviewSize;
-    } else {
-      previewSizeOnScreen = new Point(bestPreviewSize.y, bestPreviewSize.x);
-    }
-    Log.i(TAG, "Preview size on screen: " + previewSizeOnScreen);
+  /**
+   * Get the clockwise rotation which presents frames of camera in display orientation.
+   *
+   * @param cwRotationFromDisplayToCamera rotation from display to camera
+   * @param front front camera or not
+   * @return one of 0, 90, 180, 270
+   */
+  static int getNeededRotation(int cwRotationFromDisplayToCamera, boolean front) {
+    return front ? (360 - cwRotationFromDisplayToCamera) % 360 : cwRotationFromDisplayToCamera;
   }
 
   void setDesiredCameraParameters(OpenCamera camera, boolean safeMode) {
@@ -142,17 +174,20 @@ import java.util.List;
     }
 
     // Maybe selected auto-focus but not available, so fall through here:
-    String focusMode = null;
+    focusMode = null;
     if (!safeMode) {
-      List<String> supportedFocusModes = parameters.getSupportedFocusModes();
-      focusMode =
-          findSettableValue("focus mode", supportedFocusModes, Camera.Parameters.FOCUS_MODE_AUTO);
+      List<String> supportedFocusModes = capabilities == null
+          ? parameters.getSupportedFocusModes() : capabilities.getFocusModes();
+      /* camera focuses by itself in continuous modes, otherwise focus is scheduled by decoder */
+      focusMode = findSettableValue("focus mode", supportedFocusModes,
+          Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
+          Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO, Camera.Parameters.FOCUS_MODE_AUTO);
     }
     if (focusMode != null) {
       parameters.setFocusMode(focusMode);
     }
 
-    parameters.setPreviewSize(bestPreviewSize.x, bestPreviewSize.y);
+    parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
 
     theCamera.setParameters(parameters);
 
@@ -160,19 +195,83 @@ import java.util.List;
 
     Camera.Parameters afterParameters = theCamera.getParameters();
     Camera.Size afterSize = afterParameters.getPreviewSize();
-    if (afterSize != null && (bestPreviewSize.x != afterSize.width
-        || bestPreviewSize.y != afterSize.height)) {
+    if (afterSize != null && (cameraResolution.x != afterSize.width
+        || cameraResolution.y != afterSize.height)) {
       Log.w(TAG, "Camera said it supported preview size "
-          + bestPreviewSize.x
+          + cameraResolution.x
           + 'x'
-          + bestPreviewSize.y
+          + cameraResolution.y
           + ", but after setting it, preview size is "
           + afterSize.width
           + 'x'
           + afterSize.height);
-      bestPreviewSize.x = afterSize.width;
-      bestPreviewSize.y = afterSize.height;
+      cameraResolution.x = afterSize.width;
+      cameraResolution.y = afterSize.height;
+    }
+  }
+
+  /**
+   * Configure camera with the configuration it accepted last time, see
+   * {@link CameraCapabilities#isLastGood(Point)}. Nothing is looked up or checked, so this is
+   * much faster than {@link #setDesiredCameraParameters(OpenCamera, boolean)}.
+   *
+   * @param camera {@link OpenCamera}
+   */
+  void setKnownGoodCameraParameters(OpenCamera camera) {
+    Camera theCamera = camera.getCamera();
+    Camera.Parameters parameters = theCamera.getParameters();
+    focusMode = capabilities.getLastGoodFocusMode();
+    if (focusMode != null) {
+      parameters.setFocusMode(focusMode);
+    }
+    parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
+    theCamera.setParameters(parameters);
+    theCamera.setDisplayOrientation(cwRotationFromDisplayToCamera);
+  }
+
+  /**
+   * Focus and meter on given area of preview frames, where camera supports it.
+   *
+   * @param camera {@link Camera}
+   * @param area area in coordinates of preview frames
+   */
+  void setFocusArea(Camera camera, Rect area) {
+    Camera.Parameters parameters = camera.getParameters();
+    boolean focusAreas = parameters.getMaxNumFocusAreas() > 0;
+    boolean meteringAreas = parameters.getMaxNumMeteringAreas() > 0;
+    if (!focusAreas && !meteringAreas) {
+      Log.i(TAG, "Camera does not support focus or metering areas");
+      return;
     }
+
+    /* areas of legacy camera range from -1000 to 1000 over the frame, whatever its rotation */
+    Rect rect = new Rect(toAreaCoordinate(area.left, cameraResolution.x),
+        toAreaCoordinate(area.top, cameraResolution.y),
+        toAreaCoordinate(area.right, cameraResolution.x),
+        toAreaCoordinate(area.bottom, cameraResolution.y));
+    if (rect.isEmpty()) {
+      return;
+    }
+    List<Camera.Area> areas = Collections.singletonList(new Camera.Area(rect, 1000));
+    Log.i(TAG, "Setting focus and metering area to " + rect);
+    if (focusAreas) {
+      parameters.setFocusAreas(areas);
+    }
+    if (meteringAreas) {
+      parameters.setMeteringAreas(areas);
+    }
+    camera.setParameters(parameters);
+  }
+
+  private static int toAreaCoordinate(int coordinate, int size) {
+    return Math.max(-1000, Math.min(1000, coordinate * 2000 / size - 1000));
+  }
+
+  /**
+   * Get the focus mode camera was configured with, or null if it was not set.
+   */
+  String getFocusMode() {
+    return focusMode;
   }
 
   Point getCameraResolution() {
@@ -183,80 +282,28 @@ import java.util.List;
     return screenResolution;
   }
 
-  // All references to Torch are removed from here, methods, variables...
-  private Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
+  int getCWNeededRotation() {
+    return cwNeededRotation;
+  }
+
+  /**
+   * Get the preview sizes supported by camera.
+   *
+   * @param parameters parameters of camera
+   * @return supported sizes, empty if camera tells none
+   */
+  static List<Point> getSupportedPreviewSizes(Camera.Parameters parameters) {
     List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
     if (rawSupportedSizes == null) {
-      Log.w(TAG, "Device returned no supported preview sizes; using default");
-      Camera.Size defaultSize = parameters.getPreviewSize();
-      return new Point(defaultSize.width, defaultSize.height);
-    }
-
-    // Sort by size, descending
-    List<Camera.Size> supportedPreviewSizes = new ArrayList<>(rawSupportedSizes);
-    Collections.sort(supportedPreviewSizes, new Comparator<Camera.Size>() {
-      @Override public int compare(Camera.Size a, Camera.Size b) {
-        int aPixels = a.height * a.width;
-        int bPixels = b.height * b.width;
-        if (bPixels < aPixels) {
-          return -1;
-        }
-        if (bPixels > aPixels) {
-          return 1;
-        }
-        return 0;
-      }
-    });
-
-    if (Log.isLoggable(TAG, Log.INFO)) {
-      StringBuilder previewSizesString = new StringBuilder();
-      for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
-        previewSizesString.append(supportedPreviewSize.width)
-            .append('x')
-            .append(supportedPreviewSize.height)
-            .append(' ');
-      }
-      Log.i(TAG, "Supported preview sizes: " + previewSizesString);
-    }
-
-    Point bestSize = null;
-    float screenAspectRatio = (float) screenResolution.x / (float) screenResolution.y;
-
-    float diff = Float.POSITIVE_INFINITY;
-    for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
-      int realWidth = supportedPreviewSize.width;
-      int realHeight = supportedPreviewSize.height;
-      int pixels = realWidth * realHeight;
-      if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
-        continue;
-      }
-
-      // This code is modified since We're using portrait mode
-      boolean isCandidateLandscape = realWidth > realHeight;
-      int maybeFlippedWidth = isCandidateLandscape ? realHeight : realWidth;
-      int maybeFlippedHeight = isCandidateLandscape ? realWidth : realHeight;
-
-      if (maybeFlippedWidth == screenResolution.x && maybeFlippedHeight == screenResolution.y) {
-        Point exactPoint = new Point(realWidth, realHeight);
-        Log.i(TAG, "Found preview size exactly matching screen size: " + exactPoint);
-        return exactPoint;
-      }
-      float aspectRatio = (float) maybeFlippedWidth / (float) maybeFlippedHeight;
-      float newDiff = Math.abs(aspectRatio - screenAspectRatio);
-      if (newDiff < diff) {
-        bestSize = new Point(realWidth, realHeight);
-        diff = newDiff;
-      }
+      Log.w(TAG, "Device returned no supported preview sizes");
+      return Collections.emptyList();
     }
 
-    if (bestSize == null) {
-      Camera.Size defaultSize = parameters.getPreviewSize();
-      bestSize = new Point(defaultSize.width, defaultSize.height);
-      Log.i(TAG, "No suitable preview sizes, using default: " + bestSize);
+    List<Point> supportedSizes = new ArrayList<>(rawSupportedSizes.size());
+    for (Camera.Size size : rawSupportedSizes) {
+      supportedSizes.add(new Point(size.width, size.height));
     }
-
-    Log.i(TAG, "Found best approximate preview size: " + bestSize);
-    return bestSize;
+    return supportedSizes;
   }
 
   private static String findSettableValue(String name, Collection<String> supportedValues,
@@ -287,9 +334,17 @@ import java.util.List;
     return false;
   }
 
-  void setTorchEnabled(Camera camera, boolean enabled) {
+  /**
+   * Switch torch on or off.
+   *
+   * @param camera {@link Camera}
+   * @param enabled on or off
+   * @param keepExposure keep exposure compensation as it is, such as when exposure controller
+   * owns it, otherwise it is set to suit torch
+   */
+  void setTorchEnabled(Camera camera, boolean enabled, boolean keepExposure) {
     Camera.Parameters parameters = camera.getParameters();
-    setTorchEnabled(parameters, enabled, false);
+    setTorchEnabled(parameters, enabled, keepExposure);
     camera.setParameters(parameters);
   }
 
@@ -322,6 +377,62 @@ import java.util.List;
     }
   }
 
+  /**
+   * Step exposure compensation up or down, clamped to the supported range.
+   *
+   * @param camera {@link Camera}
+   * @param steps number of steps, positive to brighten
+   * @return true if exposure compensation was changed, otherwise return false
+   */
+  boolean stepExposureCompensation(Camera camera, int steps) {
+    Camera.Parameters parameters = camera.getParameters();
+    int minExposure = parameters.getMinExposureCompensation();
+    int maxExposure = parameters.getMaxExposureCompensation();
+    if (minExposure == 0 && maxExposure == 0) {
+      return false;
+    }
+
+    int current = parameters.getExposureCompensation();
+    int target = Math.max(Math.min(current + steps, maxExposure), minExposure);
+    if (target == current) {
+      return false;
+    }
+    Log.i(TAG, "Stepping exposure compensation from " + current + " to " + target);
+    parameters.setExposureCompensation(target);
+    camera.setParameters(parameters);
+    return true;
+  }
+
+  /**
+   * Zoom to the largest ratio camera supports up to given ratio, without stopping preview.
+   *
+   * @param camera {@link Camera}
+   * @param ratio zoom ratio, 1 for no zoom
+   * @return the ratio applied, or 1 if camera can not zoom
+   */
+  float setZoom(Camera camera, float ratio) {
+    Camera.Parameters parameters = camera.getParameters();
+    List<Integer> ratios = parameters.isZoomSupported() ? parameters.getZoomRatios() : null;
+    if (ratios == null || ratios.isEmpty()) {
+      return 1f;
+    }
+
+    /* ratios are in hundredths, ascending from 100 at index 0 */
+    int target = Math.round(ratio * 100);
+    int index = 0;
+    for (int i = 1; i < ratios.size() && i <= parameters.getMaxZoom(); i++) {
+      if (ratios.get(i) <= target) {
+        index = i;
+      }
+    }
+    if (index != parameters.getZoom()) {
+      Log.i(TAG, "Setting zoom to " + ratios.get(index) / 100f);
+      parameters.setZoom(index);
+      camera.setParameters(parameters);
+    }
+    return ratios.get(index) / 100f;
+  }
+
   private static void setBestExposure(Camera.Parameters parameters, boolean lightOn) {
     final float MAX_EXPOSURE_COMPENSATION = 1.5f;
     final float MIN_EXPOSURE_COMPENSATION = 0.0f;
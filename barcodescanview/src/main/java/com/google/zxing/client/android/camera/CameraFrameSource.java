@@ -0,0 +1,429 @@
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import com.google.zxing.BarcodeFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link FrameSource} backed by camera hardware, opened and previewed by {@link CameraManager}.
+ * Holds the settings shared by all backends, so they survive switching backend.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+abstract class CameraFrameSource
+    implements FrameSource, ExposureController.Exposer, ZoomController.Zoomer {
+  private static final String TAG = CameraFrameSource.class.getSimpleName();
+
+  private volatile Callback callback;
+  private volatile CameraManager.OnFocusListener onFocusListener;
+  private volatile CameraManager.OnExposureListener onExposureListener;
+  private volatile FocusScheduler focusScheduler;
+  private volatile ExposureController exposureController;
+  private volatile ZoomController zoomController;
+  private boolean autoExposure = true;
+  private boolean autoTorch;
+  private boolean autoZoom;
+  private int bufferCount = PreviewBufferPool.DEFAULT_BUFFER_COUNT;
+  private int minBufferCount;
+  private long autoFocusIntervalInMs = FocusScheduler.DEFAULT_INTERVAL_MS;
+  private PreviewSizePolicy previewSizePolicy = new DecodeAwarePreviewSizePolicy();
+  private Rect framingRect;
+  private Collection<BarcodeFormat> decodeFormats = Collections.emptySet();
+  private PreviewSizeChoice previewSizeChoice;
+  private long configureNanos;
+  private long configureSavedNanos;
+  private boolean capabilityCacheHit;
+
+  @Override public void setCallback(Callback callback) {
+    this.callback = callback;
+  }
+
+  /**
+   * Set the number of frame buffers, 0 means frames are not pooled if the backend supports it.
+   * Takes effect the next time preview is started.
+   *
+   * @param count number of frame buffers
+   */
+  synchronized void setBufferCount(int count) {
+    this.bufferCount = count;
+  }
+
+  @Override public synchronized void setMinBufferCount(int count) {
+    this.minBufferCount = count;
+  }
+
+  /**
+   * Get the number of frame buffers to allocate, 0 if frames should not be pooled.
+   */
+  synchronized int getBufferCount() {
+    return bufferCount == 0 ? 0 : Math.max(bufferCount, minBufferCount);
+  }
+
+  /**
+   * Set the longest time camera goes without focusing while no frame is decoded, for focus modes
+   * which need to be triggered.
+   *
+   * @param intervalInMs interval in millisecond
+   */
+  synchronized void setAutoFocusInterval(long intervalInMs) {
+    this.autoFocusIntervalInMs = intervalInMs;
+    FocusScheduler scheduler = focusScheduler;
+    if (scheduler != null) {
+      scheduler.setInterval(intervalInMs);
+    }
+  }
+
+  synchronized long getAutoFocusInterval() {
+    return autoFocusIntervalInMs;
+  }
+
+  /**
+   * Set the listener told how long frames took to get sharp. Takes effect the next time preview
+   * is started.
+   *
+   * @param l {@link CameraManager.OnFocusListener}
+   */
+  void setOnFocusListener(CameraManager.OnFocusListener l) {
+    this.onFocusListener = l;
+  }
+
+  /**
+   * Set the listener told what exposure controller decided. Takes effect the next time preview
+   * is started.
+   *
+   * @param l {@link CameraManager.OnExposureListener}
+   */
+  void setOnExposureListener(CameraManager.OnExposureListener l) {
+    this.onExposureListener = l;
+  }
+
+  /**
+   * Set whether exposure compensation and torch follow the framing rect.
+   *
+   * @param exposure exposure compensation follows or not
+   * @param torch torch follows or not
+   */
+  synchronized void setAutoExposure(boolean exposure, boolean torch) {
+    this.autoExposure = exposure;
+    this.autoTorch = torch;
+    ExposureController controller = exposureController;
+    if (controller != null) {
+      controller.setAutoExposureEnabled(exposure);
+      controller.setAutoTorchEnabled(torch);
+    }
+  }
+
+  /**
+   * Set whether camera zooms in toward bar codes too small to decode.
+   *
+   * @param enabled enabled or not
+   */
+  synchronized void setAutoZoom(boolean enabled) {
+    this.autoZoom = enabled;
+    ZoomController controller = zoomController;
+    if (controller != null) {
+      controller.setEnabled(enabled);
+    }
+  }
+
+  /**
+   * Create the scheduler deciding when camera focuses and the controllers of exposure and zoom,
+   * to be called by the backend once it knows its focus mode. They are started and stopped with
+   * preview by the backend, see {@link #startControllers()}.
+   *
+   * @param looper looper of the thread camera delivers its callbacks on
+   * @param focuser {@link FocusScheduler.Focuser} of the backend
+   * @param continuous camera focuses continuously by itself or not
+   */
+  synchronized void createControllers(Looper looper, FocusScheduler.Focuser focuser,
+      boolean continuous) {
+    FocusScheduler scheduler = new FocusScheduler(looper, focuser, continuous, onFocusListener);
+    scheduler.setInterval(autoFocusIntervalInMs);
+    focusScheduler = scheduler;
+    ExposureController controller = new ExposureController(looper, this, onExposureListener);
+    controller.setAutoExposureEnabled(autoExposure);
+    controller.setAutoTorchEnabled(autoTorch);
+    exposureController = controller;
+    ZoomController zoom = new ZoomController(looper, this);
+    zoom.setEnabled(autoZoom);
+    zoomController = zoom;
+  }
+
+  /**
+   * Start the controllers created by {@link #createControllers}, once preview started.
+   */
+  void startControllers() {
+    focusScheduler.start();
+    exposureController.start();
+    zoomController.start();
+  }
+
+  /**
+   * Stop the controllers created by {@link #createControllers}, if any, before preview stops.
+   */
+  void stopControllers() {
+    FocusScheduler scheduler = focusScheduler;
+    if (scheduler != null) {
+      scheduler.stop();
+    }
+    ExposureController controller = exposureController;
+    if (controller != null) {
+      controller.stop();
+    }
+    ZoomController zoom = zoomController;
+    if (zoom != null) {
+      zoom.stop();
+    }
+  }
+
+  /**
+   * Get the scheduler created by {@link #createControllers}, or null.
+   */
+  FocusScheduler getFocusScheduler() {
+    return focusScheduler;
+  }
+
+  /**
+   * Tell the focus scheduler whether a frame was decoded. This can be called on any thread.
+   *
+   * @param decoded decoded or failed
+   */
+  void onDecodeOutcome(boolean decoded) {
+    FocusScheduler scheduler = focusScheduler;
+    if (scheduler != null) {
+      if (decoded) {
+        scheduler.onDecoded();
+      } else {
+        scheduler.onDecodeFailed();
+      }
+    }
+  }
+
+  /**
+   * Tell the focus scheduler the sharpness of a frame. This can be called on any thread.
+   *
+   * @param sharpness mean gradient energy of luminance, higher is sharper
+   * @param sharp sharp enough to decode or not
+   */
+  void onFrameQuality(float sharpness, boolean sharp) {
+    FocusScheduler scheduler = focusScheduler;
+    if (scheduler != null) {
+      scheduler.onFrameQuality(sharpness, sharp);
+    }
+  }
+
+  /**
+   * Check if exposure controller needs the luminance of frames.
+   */
+  boolean isExposureControlled() {
+    ExposureController controller = exposureController;
+    return controller != null && controller.isEnabled();
+  }
+
+  /**
+   * Tell the exposure controller the mean luminance inside the framing rect of a frame. This can
+   * be called on any thread.
+   *
+   * @param meanLuma mean luminance, from 0 to 255
+   */
+  void onFrameLuma(float meanLuma) {
+    ExposureController controller = exposureController;
+    if (controller != null && controller.isEnabled()) {
+      controller.onFrameLuma(meanLuma);
+    }
+  }
+
+  /**
+   * Tell the exposure controller that torch was switched manually.
+   *
+   * @param on on or off
+   */
+  void onTorchChanged(boolean on) {
+    ExposureController controller = exposureController;
+    if (controller != null) {
+      controller.onTorchChanged(on);
+    }
+  }
+
+  /**
+   * Tell the zoom controller how much of the framing rect the points found in a frame span. This
+   * can be called on any thread.
+   *
+   * @param spread larger of width and height of the points, as a fraction of the framing rect
+   */
+  void onResultPointSpread(float spread) {
+    ZoomController controller = zoomController;
+    if (controller != null && controller.isEnabled()) {
+      controller.onResultPointSpread(spread);
+    }
+  }
+
+  /**
+   * Tell the zoom controller to zoom back out. This can be called on any thread.
+   */
+  void resetZoom() {
+    ZoomController controller = zoomController;
+    if (controller != null && controller.isEnabled()) {
+      controller.reset();
+    }
+  }
+
+  @Override public boolean switchTorch(boolean on) {
+    if (!isTorchSupported()) {
+      return false;
+    }
+    setTorch(on);
+    return true;
+  }
+
+  /**
+   * Check if camera has a torch.
+   */
+  abstract boolean isTorchSupported();
+
+  @Override public boolean isFocusing() {
+    FocusScheduler scheduler = focusScheduler;
+    return scheduler != null && scheduler.isFocusing();
+  }
+
+  @Override public void requestAutoFocus() {
+    FocusScheduler scheduler = focusScheduler;
+    if (scheduler != null) {
+      scheduler.requestFocus();
+    }
+  }
+
+  /**
+   * Focus and meter on given area of frames, such as the framing rect, if camera supports it.
+   * This must be called once preview started.
+   *
+   * @param area area in coordinates of frames as delivered by camera
+   */
+  abstract void setFocusArea(Rect area);
+
+  /**
+   * Set what the preview size is chosen by the next time camera is opened.
+   *
+   * @param policy {@link PreviewSizePolicy}
+   * @param framingRect framing rect on screen
+   * @param formats formats to decode
+   */
+  synchronized void setPreviewSizePolicy(PreviewSizePolicy policy, Rect framingRect,
+      Collection<BarcodeFormat> formats) {
+    this.previewSizePolicy = policy;
+    this.framingRect = framingRect;
+    this.decodeFormats = formats;
+  }
+
+  /**
+   * Choose the size of frames with the policy set, to be called while opening.
+   *
+   * @param sizes sizes supported by camera
+   * @param screenResolution size of the preview on screen
+   * @param defaultSize size to use if the policy finds no size suitable
+   * @return the choice
+   */
+  synchronized PreviewSizeChoice choosePreviewSize(List<Point> sizes, Point screenResolution,
+      Point defaultSize) {
+    Log.i(TAG, "Supported preview sizes: " + sizes);
+    Rect rect = framingRect == null
+        ? new Rect(0, 0, screenResolution.x, screenResolution.y) : framingRect;
+    PreviewSizeChoice choice =
+        previewSizePolicy.choose(sizes, screenResolution, rect, decodeFormats);
+    if (choice == null) {
+      choice = new PreviewSizeChoice(defaultSize, "no suitable size, using default of camera");
+    }
+    Log.i(TAG, "Preview size " + choice);
+    previewSizeChoice = choice;
+    return choice;
+  }
+
+  /**
+   * Get the preview size chosen the last time camera was opened.
+   *
+   * @return {@link PreviewSizeChoice}, or null if never opened
+   */
+  synchronized PreviewSizeChoice getPreviewSizeChoice() {
+    return previewSizeChoice;
+  }
+
+  /**
+   * Record how long configuring camera took, to be called while opening.
+   *
+   * @param nanos time to configure in nanoseconds
+   * @param cacheHit configured from cached capabilities or not
+   * @param savedNanos time saved by cached capabilities, compared to configuring without them
+   */
+  synchronized void recordConfiguration(long nanos, boolean cacheHit, long savedNanos) {
+    this.configureNanos = nanos;
+    this.capabilityCacheHit = cacheHit;
+    this.configureSavedNanos = savedNanos;
+  }
+
+  synchronized long getConfigureNanos() {
+    return configureNanos;
+  }
+
+  synchronized long getConfigureSavedNanos() {
+    return configureSavedNanos;
+  }
+
+  synchronized boolean isCapabilityCacheHit() {
+    return capabilityCacheHit;
+  }
+
+  /**
+   * Pass the frame to callback.
+   *
+   * @param frame {@link Frame}
+   * @return true if the frame was taken, otherwise the source should reuse it at once
+   */
+  boolean deliver(Frame frame) {
+    Callback theCallback = callback;
+    return theCallback != null && theCallback.onFrame(this, frame);
+  }
+
+  /**
+   * Open the camera device without configuring it, which is the slowest step of opening. Does
+   * nothing if already open.
+   *
+   * @param requestedCameraId index of camera to open, or a negative value for no preference
+   * @throws Exception if the camera failed to open
+   */
+  abstract void openDevice(int requestedCameraId) throws Exception;
+
+  /**
+   * Open the camera unless opened by {@link #openDevice(int)}, and configure it for preview on
+   * given surface.
+   *
+   * @param holder the surface which preview is drawn into
+   * @param requestedCameraId index of camera to open, or a negative value for no preference
+   * @param screenResolution size of the surface
+   * @throws Exception if the camera failed to open
+   */
+  abstract void open(SurfaceHolder holder, int requestedCameraId, Point screenResolution)
+      throws Exception;
+
+  /**
+   * Check if the camera device is open. Never blocks, as it is polled while camera is opening.
+   */
+  abstract boolean isOpen();
+
+  /**
+   * Start drawing preview and delivering frames.
+   */
+  abstract void startPreview() throws Exception;
+
+  abstract void stopPreview();
+
+  /**
+   * Release the camera, frames still held by decoder are ignored when released.
+   */
+  abstract void close();
+}
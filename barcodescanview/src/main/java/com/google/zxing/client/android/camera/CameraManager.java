@@ -20,115 +20,395 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceHolder;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.client.android.camera.open.OpenCamera;
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.client.android.camera.open.OpenCameraInterface;
-import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
- * This object wraps the Camera service object and expects to be the only one talking to it. The
- * implementation encapsulates the steps needed to take preview-sized images, which are used for
- * both preview and decoding.
+ * This object wraps the camera and expects to be the only one talking to it. The implementation
+ * encapsulates the steps needed to take preview-sized images, which are used for both preview
+ * and decoding. The camera itself is driven by a {@link FrameSource} backend, picked from the
+ * capability of device unless set with {@link #setFrameSourceType(int)}.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-@SuppressWarnings("deprecation") public final class CameraManager {
+public final class CameraManager implements FrameSource.Callback {
   private static final String TAG = CameraManager.class.getSimpleName();
   private static final int MIN_FRAME_WIDTH = 240;
   private static final int MIN_FRAME_HEIGHT = 240;
   private static final int MAX_FRAME_WIDTH = 1200; // = 5/8 * 1920
   private static final int MAX_FRAME_HEIGHT = 675; // = 5/8 * 1080
+  /* least time between exposure changes requested by decoder, to let exposure settle */
+  private static final long EXPOSURE_STEP_INTERVAL_MS = 500L;
 
-  private final CameraConfigurationManager configManager;
-  private OpenCamera openCamera;
-  private AutoFocusManager autoFocusManager;
-  private boolean initialized;
+  /**
+   * Use Camera2 if camera supports more than legacy camera API through it, otherwise use legacy
+   * camera.
+   */
+  public static final int FRAME_SOURCE_AUTO = 0;
+  /**
+   * Use legacy camera, which works on every device.
+   */
+  public static final int FRAME_SOURCE_LEGACY = 1;
+  /**
+   * Use Camera2 if running on Lollipop or later, otherwise use legacy camera.
+   */
+  public static final int FRAME_SOURCE_CAMERA2 = 2;
+
+  private final Context context;
+  private final Object deliveryLock = new Object();
+  private CameraFrameSource frameSource;
+  /* what the getters report once camera closed, the closing backend is not asked again */
+  private int closedFrameSourceType = -1;
+  private PreviewSizeChoice closedPreviewSizeChoice;
+  private StartupMetrics closedStartupMetrics;
+  /* backend with camera device open but not configured yet, see openCamera */
+  private CameraFrameSource openedSource;
+  /* kept across opening, so its preview buffers are reused */
+  private LegacyFrameSource legacyFrameSource;
   private boolean previewing;
+  private Point screenResolution;
   private Rect framingRect;
   private Rect framingRectInPreview;
-  private PreviewCallback previewCallback;
+  private Handler deliveryHandler;
+  private int deliveryMessage;
+  private volatile OnPreviewFrameListener onPreviewFrameListener;
+  private OnFocusListener onFocusListener;
+  private OnExposureListener onExposureListener;
+  private boolean autoExposure = true;
+  private boolean autoTorch;
+  private boolean autoZoom;
+  private long openStartTime;
+  private long deviceOpenTime;
+  /* written by camera callback thread and decode threads */
+  private volatile long firstFrameTime;
+  private volatile long firstDecodeTime;
 
   private int requestedCameraId = OpenCameraInterface.NO_REQUESTED_CAMERA;
-  private long autoFocusIntervalInMs = AutoFocusManager.DEFAULT_AUTO_FOCUS_INTERVAL_MS;
+  private int requestedFrameSourceType = FRAME_SOURCE_AUTO;
+  private PreviewSizePolicy previewSizePolicy = new DecodeAwarePreviewSizePolicy();
+  private Collection<BarcodeFormat> decodeFormats = Collections.emptySet();
+  private long autoFocusIntervalInMs = FocusScheduler.DEFAULT_INTERVAL_MS;
+  private int previewBufferCount = PreviewBufferPool.DEFAULT_BUFFER_COUNT;
+  private int minPreviewBufferCount;
+  private int requestedFramingRectWidth;
+  private int requestedFramingRectHeight;
+  private int decodeMargin;
+  private int fullFrameDecodeInterval;
+  private long lastExposureStepTime;
 
   public CameraManager(Context context) {
-    this.configManager = new CameraConfigurationManager(context);
-    previewCallback = new PreviewCallback();
+    this.context = context;
+  }
+
+  /**
+   * Set which backend drives the camera, one of {@link #FRAME_SOURCE_AUTO},
+   * {@link #FRAME_SOURCE_LEGACY} and {@link #FRAME_SOURCE_CAMERA2}. Takes effect the next time
+   * the camera is opened.
+   *
+   * @param type type of frame source
+   */
+  public synchronized void setFrameSourceType(int type) {
+    if (type != FRAME_SOURCE_AUTO && type != FRAME_SOURCE_LEGACY && type != FRAME_SOURCE_CAMERA2) {
+      throw new IllegalArgumentException("Unknown frame source type: " + type);
+    }
+    this.requestedFrameSourceType = type;
+  }
+
+  /**
+   * Get the backend driving the camera, {@link #FRAME_SOURCE_LEGACY} or
+   * {@link #FRAME_SOURCE_CAMERA2}, or the requested type if camera was never opened.
+   *
+   * @return type of frame source
+   */
+  public synchronized int getFrameSourceType() {
+    if (frameSource == null) {
+      return closedFrameSourceType >= 0 ? closedFrameSourceType : requestedFrameSourceType;
+    }
+    return frameSource instanceof LegacyFrameSource ? FRAME_SOURCE_LEGACY : FRAME_SOURCE_CAMERA2;
   }
 
   /**
-   * Set auto focus interval.
+   * Set the longest time camera goes without focusing while nothing is decoded, for focus modes
+   * which need to be triggered. Focus is also triggered by frames failing to decode or getting
+   * blurred, and postponed by decoded frames.
    *
    * @param autofocusIntervalInMs auto focus interval in millisecond
    */
-  public void setAutoFocusInterval(long autofocusIntervalInMs) {
+  public synchronized void setAutoFocusInterval(long autofocusIntervalInMs) {
     this.autoFocusIntervalInMs = autofocusIntervalInMs;
-    if (autoFocusManager != null) {
-      autoFocusManager.setAutofocusInterval(autofocusIntervalInMs);
+    if (frameSource != null) {
+      frameSource.setAutoFocusInterval(autofocusIntervalInMs);
     }
   }
 
   /**
-   * Get camera preview size.
+   * Set the number of preview buffers used by buffered preview. With legacy camera a value of 0
+   * falls back to one-shot preview callbacks, which let the camera driver allocate a new array
+   * for every frame. Takes effect the next time preview is started.
+   *
+   * @param count number of preview buffers
+   */
+  public synchronized void setPreviewBufferCount(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Preview buffer count must not be negative.");
+    }
+    this.previewBufferCount = count;
+    if (frameSource != null) {
+      frameSource.setBufferCount(count);
+    }
+  }
+
+  /**
+   * Set the least number of preview buffers the decoder needs to keep busy, so that the pool
+   * holds enough buffers even if a smaller count was set. Has no effect on one-shot preview.
+   *
+   * @param count least number of preview buffers
+   */
+  public synchronized void setMinPreviewBufferCount(int count) {
+    this.minPreviewBufferCount = count;
+    if (frameSource != null) {
+      frameSource.setMinBufferCount(count);
+    }
+  }
+
+  /**
+   * Get the number of preview buffers in the pool, 0 if buffered preview is not active.
+   *
+   * @return number of preview buffers
+   */
+  public synchronized int getPreviewBufferCapacity() {
+    return frameSource == null ? 0 : frameSource.getBufferCapacity();
+  }
+
+  /**
+   * Get the number of preview buffers currently held by the decoder.
+   *
+   * @return number of preview buffers in use
+   */
+  public synchronized int getPreviewBuffersInUse() {
+    return frameSource == null ? 0 : frameSource.getBuffersInUse();
+  }
+
+  /**
+   * Get camera preview size, that is the size of frames delivered for decoding.
    *
    * @return {@link Point}
    */
-  public Point getPreviewSize() {
-    return configManager.getCameraResolution();
+  public synchronized Point getPreviewSize() {
+    if (frameSource == null || frameSource.getFrameWidth() == 0) {
+      return null;
+    }
+    return new Point(frameSource.getFrameWidth(), frameSource.getFrameHeight());
   }
 
   /**
-   * Opens the camera driver and initializes the hardware parameters.
+   * Set the policy to choose preview size by, default is {@link DecodeAwarePreviewSizePolicy}.
+   * Takes effect the next time the camera is opened.
    *
-   * @param holder The surface object which the camera will draw preview frames into.
-   * @param height @throws IOException Indicates the camera driver failed to open.
-   */
-  public synchronized void openDriver(SurfaceHolder holder, int width, int height)
-      throws Exception {
-    OpenCamera theCamera = openCamera;
-    if (!isOpen()) {
-      theCamera = OpenCameraInterface.open(requestedCameraId);
-      if (theCamera == null || theCamera.getCamera() == null) {
-        throw new IOException("Camera.open() failed to return object from driver");
+   * @param policy {@link PreviewSizePolicy}
+   */
+  public synchronized void setPreviewSizePolicy(PreviewSizePolicy policy) {
+    if (policy == null) {
+      throw new IllegalArgumentException("Preview size policy must not be null.");
+    }
+    this.previewSizePolicy = policy;
+  }
+
+  /**
+   * Set the formats to decode, which the preview size is chosen for. Takes effect the next time
+   * the camera is opened.
+   *
+   * @param formats formats to decode
+   */
+  public synchronized void setDecodeFormats(Collection<BarcodeFormat> formats) {
+    this.decodeFormats = formats;
+  }
+
+  /**
+   * Get the preview size chosen the last time the camera was opened, and why.
+   *
+   * @return {@link PreviewSizeChoice}, or null if camera was never opened
+   */
+  public synchronized PreviewSizeChoice getPreviewSizeChoice() {
+    return frameSource == null ? closedPreviewSizeChoice : frameSource.getPreviewSizeChoice();
+  }
+
+  /**
+   * Open the camera device without configuring it, so that it is ready by the time the surface
+   * to preview on is. This is the slowest step of starting camera, so it should not be called on
+   * main thread, see {@link CameraThread}. {@link #openDriver} is still needed to configure it.
+   * Like the other methods opening, previewing and closing camera, this must be called on the
+   * thread which camera is driven by.
+   *
+   * @throws Exception Indicates the camera driver failed to open.
+   */
+  public void openCamera() throws Exception {
+    CameraFrameSource source;
+    boolean camera2;
+    int cameraId;
+    synchronized (this) {
+      if (isOpen() || openedSource != null) {
+        return;
       }
-      openCamera = theCamera;
+
+      /* the backend is published again once configured */
+      frameSource = null;
+      previewing = false;
+      closedFrameSourceType = -1;
+      closedPreviewSizeChoice = null;
+      closedStartupMetrics = null;
+      openStartTime = System.nanoTime();
+      deviceOpenTime = 0;
+      firstFrameTime = 0;
+      firstDecodeTime = 0;
+      cameraId = requestedCameraId;
+      camera2 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+          && (requestedFrameSourceType == FRAME_SOURCE_CAMERA2
+          || requestedFrameSourceType == FRAME_SOURCE_AUTO
+          && Camera2FrameSource.isSupported(context, cameraId));
+      source = camera2 ? new Camera2FrameSource(context) : getLegacyFrameSource();
     }
 
-    if (!initialized) {
-      initialized = true;
-      configManager.initFromCameraParameters(theCamera, width, height);
+    /* the lock is not held while camera opens, so the UI thread is never blocked by it */
+    try {
+      source.openDevice(cameraId);
+    } catch (Exception e) {
+      if (!camera2) {
+        throw e;
+      }
+      Log.w(TAG, "Camera2 failed to open camera, falling back to legacy camera", e);
+      synchronized (this) {
+        source = getLegacyFrameSource();
+      }
+      source.openDevice(cameraId);
+    }
+
+    synchronized (this) {
+      openedSource = source;
+      deviceOpenTime = System.nanoTime() - openStartTime;
+    }
+  }
+
+  /**
+   * Opens the camera driver and initializes the hardware parameters. The camera is opened first
+   * unless already opened by {@link #openCamera()}.
+   *
+   * @param holder The surface object which the camera will draw preview frames into.
+   * @param width width of the surface
+   * @param height height of the surface
+   * @throws Exception Indicates the camera driver failed to open.
+   */
+  public void openDriver(SurfaceHolder holder, int width, int height) throws Exception {
+    CameraFrameSource source;
+    int cameraId;
+    Point resolution;
+    synchronized (this) {
+      source = frameSource;
+      cameraId = requestedCameraId;
+      resolution = screenResolution;
+    }
+    if (source != null && source.isOpen()) {
+      source.open(holder, cameraId, resolution);
+      return;
     }
 
-    Camera cameraObject = theCamera.getCamera();
-    Camera.Parameters parameters = cameraObject.getParameters();
-    /* save these, temporarily */
-    String parametersFlattened = parameters == null ? null : parameters.flatten();
+    openCamera();
+    resolution = new Point(width, height);
+    synchronized (this) {
+      source = openedSource;
+      openedSource = null;
+      applySettings(source, resolution);
+    }
     try {
-      configManager.setDesiredCameraParameters(theCamera, false);
-    } catch (RuntimeException re) {
-      // Driver failed
-      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
-      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
-      // Reset:
-      if (parametersFlattened != null) {
-        parameters = cameraObject.getParameters();
-        parameters.unflatten(parametersFlattened);
-        try {
-          cameraObject.setParameters(parameters);
-          configManager.setDesiredCameraParameters(theCamera, true);
-        } catch (RuntimeException exp) {
-          // Well, darn. Give up
-          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
-        }
+      source.open(holder, cameraId, resolution);
+    } catch (Exception e) {
+      source.close();
+      if (source instanceof LegacyFrameSource) {
+        throw e;
+      }
+      Log.w(TAG, "Camera2 failed to configure camera, falling back to legacy camera", e);
+      synchronized (this) {
+        source = getLegacyFrameSource();
+        applySettings(source, resolution);
+      }
+      source.open(holder, cameraId, resolution);
+    }
+
+    synchronized (this) {
+      frameSource = source;
+      screenResolution = resolution;
+      framingRect = null;
+      framingRectInPreview = null;
+    }
+    Log.i(TAG, "Camera opened with " + source.getClass().getSimpleName() + " in "
+        + TimeUnit.NANOSECONDS.toMillis(deviceOpenTime + source.getConfigureNanos()) + " ms");
+  }
+
+  /**
+   * Get the legacy backend to open, reusing the last one so its preview buffers are kept.
+   */
+  private CameraFrameSource getLegacyFrameSource() {
+    if (legacyFrameSource == null) {
+      legacyFrameSource = new LegacyFrameSource(context);
+    }
+    return legacyFrameSource;
+  }
+
+  private void applySettings(CameraFrameSource source, Point resolution) {
+    source.setBufferCount(previewBufferCount);
+    source.setMinBufferCount(minPreviewBufferCount);
+    source.setAutoFocusInterval(autoFocusIntervalInMs);
+    source.setOnFocusListener(onFocusListener);
+    source.setOnExposureListener(onExposureListener);
+    source.setAutoExposure(autoExposure, autoTorch);
+    source.setAutoZoom(autoZoom);
+    source.setPreviewSizePolicy(previewSizePolicy, calculateFramingRect(resolution),
+        decodeFormats);
+    source.setCallback(this);
+  }
+
+  /**
+   * Get how long the camera took to start the last time it was opened.
+   *
+   * @return {@link StartupMetrics}
+   */
+  public synchronized StartupMetrics getStartupMetrics() {
+    if (frameSource == null) {
+      if (closedStartupMetrics != null) {
+        return closedStartupMetrics;
       }
+      return new StartupMetrics(TimeUnit.NANOSECONDS.toMicros(deviceOpenTime), 0, 0, -1, -1,
+          false);
     }
 
-    cameraObject.setPreviewDisplay(holder);
+    return new StartupMetrics(TimeUnit.NANOSECONDS.toMicros(deviceOpenTime),
+        TimeUnit.NANOSECONDS.toMicros(frameSource.getConfigureNanos()),
+        TimeUnit.NANOSECONDS.toMicros(frameSource.getConfigureSavedNanos()),
+        getTimeSinceOpen(firstFrameTime), getTimeSinceOpen(firstDecodeTime),
+        frameSource.isCapabilityCacheHit());
+  }
+
+  private long getTimeSinceOpen(long time) {
+    return time == 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(time - openStartTime);
+  }
+
+  /**
+   * Record that a frame was run through readers, the first one since camera was opened ends
+   * startup. Called by decoder.
+   */
+  public void recordFrameDecoded() {
+    if (firstDecodeTime == 0) {
+      firstDecodeTime = System.nanoTime();
+    }
   }
 
   /**
@@ -146,92 +426,427 @@ import java.io.IOException;
   }
 
   /**
-   * Set torch light on or off.
+   * Set torch light on or off. This takes torch over from auto torch, which is disabled until
+   * enabled again with {@link #setAutoTorchEnabled(boolean)}. Switching torch is a slow camera
+   * call, so call this on the camera thread, see {@link CameraThread#setTorch(boolean)}.
    *
    * @param enabled if {@code true}, light should be turned on if currently off. And vice versa.
    */
-  public synchronized void setTorch(boolean enabled) {
-    OpenCamera theCamera = openCamera;
-    if (theCamera != null) {
-      if (enabled != configManager.getTorchState(theCamera.getCamera())) {
-        boolean wasAutoFocusManager = autoFocusManager != null;
-        if (wasAutoFocusManager) {
-          autoFocusManager.stop();
-          autoFocusManager = null;
-        }
-        configManager.setTorchEnabled(theCamera.getCamera(), enabled);
-        if (wasAutoFocusManager) {
-          autoFocusManager = new AutoFocusManager(theCamera.getCamera());
-          autoFocusManager.start();
-        }
+  public void setTorch(boolean enabled) {
+    CameraFrameSource source;
+    synchronized (this) {
+      if (autoTorch) {
+        setAutoTorchEnabled(false);
       }
+      source = isOpen() ? frameSource : null;
+    }
+    /* camera is called without holding this manager */
+    if (source != null) {
+      source.setTorch(enabled);
+      source.onTorchChanged(enabled);
+    }
+  }
+
+  /**
+   * Set whether exposure compensation is stepped to keep the framing rect well exposed, default
+   * is true.
+   *
+   * @param enabled enabled or not
+   */
+  public synchronized void setAutoExposureEnabled(boolean enabled) {
+    this.autoExposure = enabled;
+    if (frameSource != null) {
+      frameSource.setAutoExposure(autoExposure, autoTorch);
+    }
+  }
+
+  /**
+   * Set whether torch is switched on when the framing rect stays dark even at the brightest
+   * exposure, and off again when it stays too bright, default is false.
+   *
+   * @param enabled enabled or not
+   */
+  public synchronized void setAutoTorchEnabled(boolean enabled) {
+    this.autoTorch = enabled;
+    if (frameSource != null) {
+      frameSource.setAutoExposure(autoExposure, autoTorch);
+    }
+  }
+
+  /**
+   * Set whether camera zooms in, without stopping preview, when the candidate points found by
+   * readers span only a small part of the framing rect, default is false. Zoom is reset once a
+   * bar code was decoded, or when nothing decoded for a while.
+   *
+   * @param enabled enabled or not
+   */
+  public synchronized void setAutoZoomEnabled(boolean enabled) {
+    this.autoZoom = enabled;
+    if (frameSource != null) {
+      frameSource.setAutoZoom(enabled);
+    }
+  }
+
+  /**
+   * Tell how much of the framing rect the candidate points found in a frame span, which auto
+   * zoom follows. Called by decoder on any thread.
+   *
+   * @param spread larger of width and height of the points, as a fraction of the framing rect
+   */
+  public void reportResultPointSpread(float spread) {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+    }
+    if (source != null) {
+      source.onResultPointSpread(spread);
+    }
+  }
+
+  /**
+   * Zoom back out if zoomed in by auto zoom, such as when a bar code was decoded. Called by
+   * decoder on any thread.
+   */
+  public void resetAutoZoom() {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+    }
+    if (source != null) {
+      source.resetZoom();
     }
   }
 
+  /**
+   * Check if exposure or torch follows the framing rect, that is if decoder should report the
+   * luminance of frames with {@link #reportFrameLuma(float)}.
+   *
+   * @return true if controlled, otherwise return false
+   */
+  public synchronized boolean isExposureControlled() {
+    return frameSource != null && previewing && frameSource.isExposureControlled();
+  }
+
+  /**
+   * Tell the mean luminance inside the framing rect of a frame, which exposure and torch follow.
+   * Called by decoder on any thread.
+   *
+   * @param meanLuma mean luminance, from 0 to 255
+   */
+  public void reportFrameLuma(float meanLuma) {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+    }
+    if (source != null) {
+      source.onFrameLuma(meanLuma);
+    }
+  }
+
+  /**
+   * Check if camera is focusing, frames taken while focusing are usually blurred.
+   *
+   * @return true if focusing, otherwise return false
+   */
+  public synchronized boolean isFocusing() {
+    return frameSource != null && frameSource.isFocusing();
+  }
+
+  /**
+   * Ask camera to focus now, e.g. because frames are blurred. Ignored if focus mode does not
+   * support it, or if camera focused very recently.
+   */
+  public synchronized void requestAutoFocus() {
+    if (isOpen()) {
+      frameSource.requestAutoFocus();
+    }
+  }
+
+  /**
+   * Tell whether a frame run through readers had a bar code, so that camera focuses after
+   * repeated failures and not while decoding goes well. Called by decoder on any thread.
+   *
+   * @param decoded bar code found or not
+   */
+  public void reportDecodeOutcome(boolean decoded) {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+    }
+    if (source != null) {
+      source.onDecodeOutcome(decoded);
+    }
+  }
+
+  /**
+   * Tell the sharpness of a frame, so that camera focuses when frames get blurred. Called by
+   * decoder on any thread.
+   *
+   * @param sharpness mean gradient energy of luminance, higher is sharper
+   * @param sharp sharp enough to decode or not
+   */
+  public void reportFrameQuality(float sharpness, boolean sharp) {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+    }
+    if (source != null) {
+      source.onFrameQuality(sharpness, sharp);
+    }
+  }
+
+  /**
+   * Step exposure compensation up or down, e.g. because frames are too dark or too bright.
+   * Requests coming faster than exposure can settle are ignored. This is a slow camera call, so
+   * call it on the camera thread, see {@link CameraThread#stepExposureCompensation(int)}.
+   *
+   * @param steps number of steps, positive to brighten
+   */
+  public void stepExposureCompensation(int steps) {
+    CameraFrameSource source;
+    synchronized (this) {
+      long now = SystemClock.elapsedRealtime();
+      if (!isOpen() || !previewing || now - lastExposureStepTime < EXPOSURE_STEP_INTERVAL_MS) {
+        return;
+      }
+
+      lastExposureStepTime = now;
+      source = frameSource;
+    }
+    source.stepExposureCompensation(steps);
+  }
+
   /**
    * To check if current camera is opened.
    *
    * @return true if opened, otherwise return false
    */
   public synchronized boolean isOpen() {
-    return openCamera != null && openCamera.getCamera() != null;
+    return frameSource != null && frameSource.isOpen();
   }
 
   /**
    * Closes the camera driver if still in use.
    */
-  public synchronized void closeDriver() {
-    if (isOpen()) {
-      openCamera.getCamera().release();
-      openCamera = null;
-      /*
-       * make sure to clear these each time we close the camera, so that any scanning rect
-       * requested by intent is forgotten
-       */
-      framingRect = null;
-      framingRectInPreview = null;
+  public void closeDriver() {
+    CameraFrameSource opened;
+    CameraFrameSource source;
+    synchronized (this) {
+      opened = openedSource;
+      openedSource = null;
+      source = frameSource;
+      if (source != null) {
+        closedStartupMetrics = getStartupMetrics();
+        closedPreviewSizeChoice = source.getPreviewSizeChoice();
+        closedFrameSourceType = getFrameSourceType();
+        frameSource = null;
+        previewing = false;
+        /*
+         * make sure to clear these each time we close the camera, so that any scanning rect
+         * requested by intent is forgotten
+         */
+        framingRect = null;
+        framingRectInPreview = null;
+      }
+    }
+
+    /* the lock is not held while camera closes, so the UI thread drawing is never blocked by it */
+    if (opened != null) {
+      opened.close();
+    }
+    if (source != null) {
+      /* close even if camera was lost, so whatever the backend still holds is released */
+      source.close();
     }
   }
 
   /**
    * Asks the camera hardware to begin drawing preview frames to the screen.
    */
-  public synchronized void startPreview() throws Exception {
-    OpenCamera theCamera = openCamera;
-    if (theCamera != null && !previewing) {
-      theCamera.getCamera().startPreview();
+  public void startPreview() throws Exception {
+    CameraFrameSource source;
+    synchronized (this) {
+      if (!isOpen() || previewing) {
+        return;
+      }
+      source = frameSource;
+    }
+
+    source.startPreview();
+    Rect focusArea;
+    synchronized (this) {
       previewing = true;
-      autoFocusManager = new AutoFocusManager(theCamera.getCamera());
-      autoFocusManager.setAutofocusInterval(autoFocusIntervalInMs);
+      focusArea = getFramingRectInFrame();
+    }
+    if (focusArea != null) {
+      source.setFocusArea(focusArea);
     }
   }
 
   /**
    * Tells the camera to stop drawing preview frames.
    */
-  public synchronized void stopPreview() {
-    if (autoFocusManager != null) {
-      autoFocusManager.stop();
-      autoFocusManager = null;
-    }
-    if (openCamera != null && previewing) {
-      openCamera.getCamera().stopPreview();
+  public void stopPreview() {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
       previewing = false;
     }
+    if (source != null) {
+      source.stopPreview();
+    }
+  }
+
+  /**
+   * Interface defination for a callback to be invoked on camera thread for every preview frame,
+   * requested or not.
+   */
+  public interface OnPreviewFrameListener {
+    /**
+     * Invoked when camera delivered a preview frame.
+     *
+     * @param timestampNanos {@link System#nanoTime()} when the frame arrived
+     */
+    void onPreviewFrame(long timestampNanos);
+  }
+
+  /**
+   * Interface defination for a callback to be invoked on camera thread when frames are sharp
+   * again, after they got blurred or camera was told to focus.
+   */
+  public interface OnFocusListener {
+    /**
+     * Invoked on the first sharp frame.
+     *
+     * @param timeToSharpNanos time from frames getting blurred or focus starting to this frame
+     */
+    void onSharpFrame(long timeToSharpNanos);
+  }
+
+  /**
+   * Set the listener told how long frames took to get sharp. Takes effect the next time camera
+   * is opened.
+   *
+   * @param l {@link OnFocusListener}
+   */
+  public synchronized void setOnFocusListener(OnFocusListener l) {
+    this.onFocusListener = l;
+  }
+
+  /**
+   * Interface defination for a callback to be invoked on camera thread when exposure controller
+   * changed exposure or torch, or the framing rect got well exposed again.
+   */
+  public interface OnExposureListener {
+    /**
+     * Invoked when exposure compensation was stepped.
+     *
+     * @param steps steps, positive when brightened
+     * @param meanLuma smoothed mean luminance of the framing rect which led to it
+     */
+    void onExposureStep(int steps, float meanLuma);
+
+    /**
+     * Invoked when torch was switched.
+     *
+     * @param on on or off
+     * @param meanLuma smoothed mean luminance of the framing rect which led to it
+     */
+    void onTorchSwitched(boolean on, float meanLuma);
+
+    /**
+     * Invoked when the framing rect is well exposed again.
+     *
+     * @param timeToSettleNanos time from luminance leaving the target band to this frame
+     */
+    void onExposureSettled(long timeToSettleNanos);
+  }
+
+  /**
+   * Set the listener told what exposure controller decided. Takes effect the next time camera
+   * is opened.
+   *
+   * @param l {@link OnExposureListener}
+   */
+  public synchronized void setOnExposureListener(OnExposureListener l) {
+    this.onExposureListener = l;
   }
 
   /**
-   * A single preview frame will be returned to the handler supplied. The data will arrive as
-   * byte[] in the message.obj field, respectively.
+   * Set the listener of every preview frame delivered by camera, used to measure frame rate.
+   *
+   * @param l {@link OnPreviewFrameListener}
+   */
+  public void setOnPreviewFrameListener(OnPreviewFrameListener l) {
+    this.onPreviewFrameListener = l;
+  }
+
+  @Override public boolean onFrame(FrameSource source, Frame frame) {
+    long timestamp = System.nanoTime();
+    if (firstFrameTime == 0) {
+      firstFrameTime = timestamp;
+    }
+    OnPreviewFrameListener listener = onPreviewFrameListener;
+    if (listener != null) {
+      listener.onPreviewFrame(timestamp);
+    }
+
+    Handler handler;
+    int what;
+    synchronized (deliveryLock) {
+      handler = deliveryHandler;
+      what = deliveryMessage;
+      /* frames keep coming, so only deliver one frame per request */
+      deliveryHandler = null;
+    }
+    if (handler == null) {
+      return false;
+    }
+
+    /* the arrival time is split into arg1 and arg2, so nothing is allocated per frame */
+    Message.obtain(handler, what, (int) (timestamp >>> 32), (int) timestamp, frame)
+        .sendToTarget();
+    return true;
+  }
+
+  /**
+   * A single preview frame will be returned to the handler supplied. The {@link Frame} will
+   * arrive in the message.obj field. The {@link System#nanoTime()} at which the frame arrived is
+   * split into the high bits in arg1 and the low bits in arg2. The receiver must hand the frame
+   * back with {@link #releaseFrame(Frame)} once done with it.
    *
    * @param handler The handler to send the message to.
    * @param message The what field of the message to be sent.
    */
-  public synchronized void requestPreviewFrame(Handler handler, int message) {
-    OpenCamera theCamera = openCamera;
-    if (theCamera != null && previewing) {
-      previewCallback.setHandler(handler, message);
-      theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+  public void requestPreviewFrame(Handler handler, int message) {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+      if (source == null || !previewing) {
+        return;
+      }
+    }
+
+    synchronized (deliveryLock) {
+      deliveryHandler = handler;
+      deliveryMessage = message;
+    }
+    source.requestFrame();
+  }
+
+  /**
+   * Return a frame delivered by {@link #requestPreviewFrame(Handler, int)} so that the camera
+   * can fill it again. Frames of a closed or replaced camera are ignored.
+   *
+   * @param frame the preview frame
+   */
+  public void releaseFrame(Frame frame) {
+    CameraFrameSource source;
+    synchronized (this) {
+      source = frameSource;
+    }
+    if (source != null) {
+      source.releaseFrame(frame);
     }
   }
 
@@ -244,29 +859,38 @@ import java.io.IOException;
    */
   public synchronized Rect getFramingRect() {
     if (framingRect == null) {
-      if (openCamera == null) {
-        return null;
-      }
-      Point screenResolution = configManager.getScreenResolution();
-      if (screenResolution == null) {
+      if (!isOpen() || screenResolution == null) {
         /* called early, before init even finished */
         return null;
       }
 
-      int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
-      int height =
-          findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
-      width = height = Math.min(width, height);
-
-      int leftOffset = (screenResolution.x - width) / 2;
-      int topOffset = (screenResolution.y - height) * 2 / 5;
-      framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+      framingRect = calculateFramingRect(screenResolution);
       Log.d(TAG, "Calculated framing rect: " + framingRect);
     }
 
     return framingRect;
   }
 
+  /**
+   * Calculate the framing rect for given screen, which is also needed before camera is opened.
+   */
+  private Rect calculateFramingRect(Point screenResolution) {
+    int width;
+    int height;
+    if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
+      width = Math.min(requestedFramingRectWidth, screenResolution.x);
+      height = Math.min(requestedFramingRectHeight, screenResolution.y);
+    } else {
+      width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
+      height = findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
+      width = height = Math.min(width, height);
+    }
+
+    int leftOffset = (screenResolution.x - width) / 2;
+    int topOffset = (screenResolution.y - height) * 2 / 5;
+    return new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+  }
+
   private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
     int dim = 5 * resolution / 8; // Target 5/8 of each dimension
     if (dim < hardMin) {
@@ -279,8 +903,52 @@ import java.io.IOException;
   }
 
   /**
-   * Like {@link #getFramingRect} but coordinates are in terms of the preview frame,
-   * not UI / screen.
+   * Allows third party apps to specify the scanning rectangle dimensions, rather than determine
+   * them automatically based on screen resolution. The rectangle stays centered horizontally.
+   *
+   * @param width The width in pixels to scan, 0 or less means automatic.
+   * @param height The height in pixels to scan, 0 or less means automatic.
+   */
+  public synchronized void setManualFramingRect(int width, int height) {
+    requestedFramingRectWidth = width;
+    requestedFramingRectHeight = height;
+    framingRect = null;
+    framingRectInPreview = null;
+  }
+
+  /**
+   * Set the margin in screen pixels around the framing rect which is decoded as well, so that
+   * bar codes slightly overlapping the framing rect can still be read.
+   *
+   * @param margin margin in pixels
+   */
+  public synchronized void setDecodeMargin(int margin) {
+    if (margin < 0) {
+      throw new IllegalArgumentException("Decode margin must not be negative.");
+    }
+    this.decodeMargin = margin;
+  }
+
+  /**
+   * Set how often the whole frame is decoded instead of the framing rect only, as a fallback for
+   * bar codes outside the framing rect. For example 5 means every 5th frame.
+   *
+   * @param interval interval in frames, 0 means never
+   */
+  public synchronized void setFullFrameDecodeInterval(int interval) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("Full frame decode interval must not be negative.");
+    }
+    this.fullFrameDecodeInterval = interval;
+  }
+
+  public synchronized int getFullFrameDecodeInterval() {
+    return fullFrameDecodeInterval;
+  }
+
+  /**
+   * Like {@link #getFramingRect} but coordinates are in terms of the preview frame as presented
+   * by {@link #buildLuminanceSource}, that is the preview frame rotated to display orientation.
    *
    * @return {@link Rect} expressing barcode scan area in terms of the preview size
    */
@@ -291,26 +959,100 @@ import java.io.IOException;
         return null;
       }
       Rect rect = new Rect(framingRect);
-      Point cameraResolution = configManager.getCameraResolution();
-      Point screenResolution = configManager.getScreenResolution();
-      if (cameraResolution == null || screenResolution == null) {
+      Point previewSize = getRotatedPreviewSize();
+      if (previewSize == null) {
         /* called early, before init even finished */
         return null;
       }
 
-      /* rotate the frame rect in preview */
-      float scaleX = cameraResolution.x * 1f / screenResolution.x;
-      float scaleY = cameraResolution.y * 1f / screenResolution.y;
-      rect.left = (int) (rect.left * scaleY);
-      rect.right = (int) (rect.right * scaleY);
-      rect.top = (int) (rect.top * scaleX);
-      rect.bottom = (int) (rect.bottom * scaleX);
+      float scaleX = previewSize.x * 1f / screenResolution.x;
+      float scaleY = previewSize.y * 1f / screenResolution.y;
+      rect.left = (int) (rect.left * scaleX);
+      rect.right = (int) (rect.right * scaleX);
+      rect.top = (int) (rect.top * scaleY);
+      rect.bottom = (int) (rect.bottom * scaleY);
+      rect.intersect(0, 0, previewSize.x, previewSize.y);
       framingRectInPreview = rect;
     }
 
     return framingRectInPreview;
   }
 
+  /**
+   * Get the region of the rotated preview frame to decode: the framing rect plus decode margin,
+   * or the whole frame.
+   *
+   * @param fullFrame decode the whole frame or not
+   * @return {@link Rect} in terms of the rotated preview frame, or null if not ready
+   */
+  public synchronized Rect getDecodeRegion(boolean fullFrame) {
+    Rect framingRectInPreview = getFramingRectInPreview();
+    Point previewSize = getRotatedPreviewSize();
+    if (framingRectInPreview == null || previewSize == null) {
+      return null;
+    }
+
+    if (fullFrame) {
+      return new Rect(0, 0, previewSize.x, previewSize.y);
+    }
+
+    Rect region = new Rect(framingRectInPreview);
+    int marginX = decodeMargin * previewSize.x / screenResolution.x;
+    int marginY = decodeMargin * previewSize.y / screenResolution.y;
+    region.inset(-marginX, -marginY);
+    region.intersect(0, 0, previewSize.x, previewSize.y);
+    return region;
+  }
+
+  /**
+   * Get the framing rect in terms of frames as delivered by camera, before rotation.
+   */
+  private Rect getFramingRectInFrame() {
+    Rect rect = getFramingRectInPreview();
+    Point previewSize = getPreviewSize();
+    if (rect == null || previewSize == null) {
+      return null;
+    }
+    return toFrameCoordinates(rect, frameSource.getRotation(), previewSize.x, previewSize.y);
+  }
+
+  /**
+   * Map a rect of the frame rotated clockwise by given degrees back to the frame.
+   *
+   * @param rect rect in rotated frame
+   * @param rotation rotation of frame, one of 0, 90, 180 and 270
+   * @param width width of the frame before rotation
+   * @param height height of the frame before rotation
+   * @return {@link Rect} in frame
+   */
+  static Rect toFrameCoordinates(Rect rect, int rotation, int width, int height) {
+    switch (rotation) {
+      case 90:
+        return new Rect(rect.top, height - rect.right, rect.bottom, height - rect.left);
+      case 180:
+        return new Rect(width - rect.right, height - rect.bottom, width - rect.left,
+            height - rect.top);
+      case 270:
+        return new Rect(width - rect.bottom, rect.left, width - rect.top, rect.right);
+      default:
+        return new Rect(rect);
+    }
+  }
+
+  /**
+   * Get the preview size rotated to display orientation.
+   */
+  @SuppressWarnings("SuspiciousNameCombination") private Point getRotatedPreviewSize() {
+    Point previewSize = getPreviewSize();
+    if (previewSize == null) {
+      return null;
+    }
+    if (frameSource.getRotation() % 180 == 0) {
+      return previewSize;
+    }
+    return new Point(previewSize.y, previewSize.x);
+  }
+
   /**
    * Check if this device has a camera.
    *
@@ -326,19 +1068,29 @@ import java.io.IOException;
 
   /**
    * A factory method to build the appropriate LuminanceSource object based on the format
-   * of the preview buffers, as described by Camera.Parameters.
+   * of the preview frames. The frame is presented in display orientation without being copied,
+   * whether its Y plane is an array or a strided buffer.
    *
-   * @param data A preview frame.
-   * @param width The width of the image.
-   * @param height The height of the image.
-   * @return A PlanarYUVLuminanceSource instance.
+   * @param frame A preview frame.
+   * @param region The region to decode, as returned by {@link #getDecodeRegion(boolean)}.
+   * @return A RotatedYUVLuminanceSource instance.
    */
-  public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
-    Rect rect = getFramingRectInPreview();
-    if (rect == null) {
+  public synchronized RotatedYUVLuminanceSource buildLuminanceSource(Frame frame, Rect region) {
+    if (region == null || frameSource == null) {
       return null;
     }
 
-    return new PlanarYUVLuminanceSource(data, width, height, 0, 0, width, height, false);
+    /*
+     * Frames from front camera are not mirrored, only the preview on screen is. So decode the
+     * frame as the camera sees it instead of as the display shows it.
+     */
+    if (frame.getPlane() != null) {
+      return new RotatedYUVLuminanceSource(frame.getPlane(), frame.getRowStride(),
+          frame.getPixelStride(), frame.getWidth(), frame.getHeight(), frameSource.getRotation(),
+          false, region.left, region.top, region.width(), region.height(), 1);
+    }
+    return new RotatedYUVLuminanceSource(frame.getData(), frame.getWidth(), frame.getHeight(),
+        frameSource.getRotation(), false, region.left, region.top, region.width(),
+        region.height());
   }
 }
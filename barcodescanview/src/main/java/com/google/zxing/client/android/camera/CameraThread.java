@@ -0,0 +1,255 @@
+package com.google.zxing.client.android.camera;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dedicated thread which opens, configures and previews camera through {@link CameraManager},
+ * so none of the slow calls of camera blocks the UI thread. Camera is opened by {@link #open()}
+ * as early as possible, while the surface to preview on is still being created, and preview
+ * starts once {@link #startPreview} brings the surface. Operations run in the order requested,
+ * and outcomes are posted back to the thread which created this object. Closing drops the
+ * operations not run yet, and the outcomes of the ones run before it. Legacy camera delivers its
+ * callbacks on this thread as well, as it is opened here.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class CameraThread {
+  private static final String TAG = CameraThread.class.getSimpleName();
+  /* longest time the caller of close waits, well below the time to an ANR */
+  private static final long CLOSE_TIMEOUT_MS = 2000L;
+
+  private final CameraManager cameraManager;
+  private final Callback callback;
+  private final Handler callbackHandler = new Handler();
+  private HandlerThread thread;
+  private Handler handler;
+  /* bumped on close, outcomes of operations requested before are dropped */
+  private int generation;
+
+  /**
+   * Interface defination for a callback to be invoked on the thread which created
+   * {@link CameraThread} when camera started or failed.
+   */
+  public interface Callback {
+    /**
+     * Invoked when preview started on the surface, frames can be requested from now on.
+     */
+    void onPreviewStarted();
+
+    /**
+     * Invoked when camera failed to open or to preview.
+     *
+     * @param errorMsg what failed
+     */
+    void onCameraError(String errorMsg);
+  }
+
+  public CameraThread(CameraManager cameraManager, Callback callback) {
+    this.cameraManager = cameraManager;
+    this.callback = callback;
+  }
+
+  /**
+   * Open camera without waiting for the surface, starting the thread if not started yet. A
+   * failure is not reported here, as opening is tried again by {@link #startPreview}.
+   */
+  public synchronized void open() {
+    post(new Runnable() {
+      @Override public void run() {
+        try {
+          cameraManager.openCamera();
+        } catch (Exception e) {
+          Log.w(TAG, "Unable to open camera ahead of surface", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Open camera unless opened already, configure it for the surface and start preview.
+   *
+   * @param holder the surface which preview is drawn into
+   * @param width width of the surface
+   * @param height height of the surface
+   */
+  public synchronized void startPreview(final SurfaceHolder holder, final int width,
+      final int height) {
+    final int requested = generation;
+    post(new Runnable() {
+      @Override public void run() {
+        try {
+          cameraManager.openDriver(holder, width, height);
+          cameraManager.startPreview();
+        } catch (Exception e) {
+          postError(requested, "Can not open camera: " + e.getMessage());
+          return;
+        }
+        postPreviewStarted(requested);
+      }
+    });
+  }
+
+  /**
+   * Stop and start preview again, such as when the surface changed.
+   */
+  public synchronized void restartPreview() {
+    final int requested = generation;
+    post(new Runnable() {
+      @Override public void run() {
+        if (cameraManager.getPreviewSize() == null) {
+          postError(requested, "Error: preview size does not exist");
+          return;
+        }
+
+        try {
+          cameraManager.stopPreview();
+          cameraManager.startPreview();
+        } catch (Exception e) {
+          postError(requested, "Can not open camera: " + e.getMessage());
+          return;
+        }
+        postPreviewStarted(requested);
+      }
+    });
+  }
+
+  /**
+   * Switch torch on or off, see {@link CameraManager#setTorch(boolean)}.
+   *
+   * @param enabled on or off
+   */
+  public synchronized void setTorch(final boolean enabled) {
+    if (handler == null) {
+      /* camera is not open, only auto torch is turned off */
+      cameraManager.setTorch(enabled);
+      return;
+    }
+
+    handler.post(new Runnable() {
+      @Override public void run() {
+        cameraManager.setTorch(enabled);
+      }
+    });
+  }
+
+  /**
+   * Step exposure compensation up or down, see
+   * {@link CameraManager#stepExposureCompensation(int)}.
+   *
+   * @param steps number of steps, positive to brighten
+   */
+  public synchronized void stepExposureCompensation(final int steps) {
+    if (handler == null) {
+      return;
+    }
+
+    handler.post(new Runnable() {
+      @Override public void run() {
+        cameraManager.stepExposureCompensation(steps);
+      }
+    });
+  }
+
+  /**
+   * Stop preview and close camera, since the surface must not be used once it is destroyed.
+   * Operations not run yet are dropped, so closing does not wait behind them, and the wait for
+   * camera to close is bounded.
+   */
+  public void close() {
+    Handler theHandler;
+    synchronized (this) {
+      theHandler = handler;
+      generation++;
+    }
+    if (theHandler == null) {
+      return;
+    }
+
+    theHandler.removeCallbacksAndMessages(null);
+    final CountDownLatch latch = new CountDownLatch(1);
+    theHandler.post(new Runnable() {
+      @Override public void run() {
+        try {
+          closeCamera();
+        } finally {
+          latch.countDown();
+        }
+      }
+    });
+    try {
+      if (!latch.await(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Camera is still closing after " + CLOSE_TIMEOUT_MS + " ms");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Close camera and stop the thread once the operations requested are done, without waiting.
+   * Outcomes not delivered yet are dropped.
+   */
+  public synchronized void quit() {
+    generation++;
+    if (handler == null) {
+      return;
+    }
+
+    handler.removeCallbacksAndMessages(null);
+    handler.post(new Runnable() {
+      @Override public void run() {
+        closeCamera();
+        Looper.myLooper().quit();
+      }
+    });
+    thread = null;
+    handler = null;
+  }
+
+  private void closeCamera() {
+    cameraManager.stopPreview();
+    cameraManager.closeDriver();
+  }
+
+  private void post(Runnable task) {
+    if (thread == null) {
+      thread = new HandlerThread(TAG);
+      thread.start();
+      handler = new Handler(thread.getLooper());
+    }
+    handler.post(task);
+  }
+
+  private void postPreviewStarted(final int requested) {
+    callbackHandler.post(new Runnable() {
+      @Override public void run() {
+        if (isCurrent(requested)) {
+          callback.onPreviewStarted();
+        }
+      }
+    });
+  }
+
+  private void postError(final int requested, final String errorMsg) {
+    callbackHandler.post(new Runnable() {
+      @Override public void run() {
+        if (isCurrent(requested)) {
+          callback.onCameraError(errorMsg);
+        }
+      }
+    });
+  }
+
+  /**
+   * Check if the thread still runs and was not closed since an operation was requested.
+   */
+  private synchronized boolean isCurrent(int requested) {
+    return thread != null && requested == generation;
+  }
+}
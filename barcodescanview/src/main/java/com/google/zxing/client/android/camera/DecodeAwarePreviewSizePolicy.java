@@ -0,0 +1,160 @@
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import com.google.zxing.BarcodeFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A {@link PreviewSizePolicy} driven by decode cost. It chooses the smallest preview size which
+ * still gives enough pixels per module inside the framing rect for the densest format to decode,
+ * as every pixel delivered has to be copied, binarized and scanned. Sizes are capped at
+ * 1280x720, or at 1920x1080 if dense PDF417 or Data Matrix codes are to be decoded. Only sizes
+ * close to the aspect ratio of screen are considered, so the preview does not look stretched.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class DecodeAwarePreviewSizePolicy implements PreviewSizePolicy {
+  static final int MIN_PREVIEW_PIXELS = ScreenAspectPreviewSizePolicy.MIN_PREVIEW_PIXELS;
+  static final int MAX_PREVIEW_PIXELS = ScreenAspectPreviewSizePolicy.MAX_PREVIEW_PIXELS;
+  static final int MAX_DENSE_PREVIEW_PIXELS = 1920 * 1080;
+  /* share of the smaller side of framing rect a bar code is expected to span */
+  private static final float CODE_FILL = 0.8f;
+  /* sizes this much further from aspect ratio of screen than the closest one are still fine */
+  private static final float ASPECT_RATIO_SLACK = 0.1f;
+  /* modules across a typical code of each format including quiet zone, and pixels per module */
+  private static final Map<BarcodeFormat, float[]> REQUIREMENTS =
+      new EnumMap<>(BarcodeFormat.class);
+
+  static {
+    /* 1D codes are scanned along rows, so they do with fewer pixels per module */
+    REQUIREMENTS.put(BarcodeFormat.EAN_13, new float[] { 113, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.UPC_A, new float[] { 113, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.EAN_8, new float[] { 85, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.UPC_E, new float[] { 69, 1.5f });
+    /* 20 characters of code 128, 10 characters of the others */
+    REQUIREMENTS.put(BarcodeFormat.CODE_128, new float[] { 275, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.CODE_39, new float[] { 211, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.CODE_93, new float[] { 137, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.CODABAR, new float[] { 140, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.ITF, new float[] { 155, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.RSS_14, new float[] { 116, 1.5f });
+    REQUIREMENTS.put(BarcodeFormat.RSS_EXPANDED, new float[] { 200, 1.5f });
+    /* QR code version 7, compact Aztec of 4 layers */
+    REQUIREMENTS.put(BarcodeFormat.QR_CODE, new float[] { 53, 2f });
+    REQUIREMENTS.put(BarcodeFormat.AZTEC, new float[] { 31, 2f });
+    REQUIREMENTS.put(BarcodeFormat.MAXICODE, new float[] { 33, 3f });
+    /* dense codes: 52x52 Data Matrix, PDF417 of 6 data columns */
+    REQUIREMENTS.put(BarcodeFormat.DATA_MATRIX, new float[] { 54, 2.5f });
+    REQUIREMENTS.put(BarcodeFormat.PDF_417, new float[] { 175, 2f });
+  }
+
+  @Override public PreviewSizeChoice choose(List<Point> sizes, Point screenResolution,
+      Rect framingRect, Collection<BarcodeFormat> formats) {
+    BarcodeFormat densest = null;
+    float requiredPixels = 0f;
+    boolean dense = false;
+    for (BarcodeFormat format : formats) {
+      float pixels = getRequiredPixels(format);
+      if (pixels > requiredPixels) {
+        requiredPixels = pixels;
+        densest = format;
+      }
+      dense |= format == BarcodeFormat.PDF_417 || format == BarcodeFormat.DATA_MATRIX;
+    }
+    int maxPixels = dense ? MAX_DENSE_PREVIEW_PIXELS : MAX_PREVIEW_PIXELS;
+
+    List<Point> candidates = findCandidates(sizes, screenResolution, maxPixels);
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    if (densest == null) {
+      return new PreviewSizeChoice(candidates.get(0), "smallest size, no format to decode");
+    }
+
+    int framingSide = Math.min(framingRect.width(), framingRect.height());
+    for (Point size : candidates) {
+      float codePixels = getFramingSide(size, screenResolution, framingSide) * CODE_FILL;
+      if (codePixels >= requiredPixels) {
+        return new PreviewSizeChoice(size, String.format(Locale.US,
+            "smallest size giving %.1f pixels per module for %s in framing rect",
+            codePixels / REQUIREMENTS.get(densest)[0], densest));
+      }
+    }
+
+    Point largest = candidates.get(candidates.size() - 1);
+    float codePixels = getFramingSide(largest, screenResolution, framingSide) * CODE_FILL;
+    return new PreviewSizeChoice(largest, String.format(Locale.US,
+        "largest size up to %d pixels, giving only %.1f of %.1f pixels per module for %s",
+        maxPixels, codePixels / REQUIREMENTS.get(densest)[0], REQUIREMENTS.get(densest)[1],
+        densest));
+  }
+
+  /**
+   * Get the pixels a typical code of format needs to span to be decoded.
+   */
+  private static float getRequiredPixels(BarcodeFormat format) {
+    float[] requirement = REQUIREMENTS.get(format);
+    return requirement == null ? 0f : requirement[0] * requirement[1];
+  }
+
+  /**
+   * Find sizes within pixel limits and close to aspect ratio of screen, sorted by size ascending.
+   */
+  private static List<Point> findCandidates(List<Point> sizes, Point screenResolution,
+      int maxPixels) {
+    float screenAspectRatio = getAspectRatio(screenResolution);
+    float bestDiff = Float.POSITIVE_INFINITY;
+    List<Point> inRange = new ArrayList<>(sizes.size());
+    for (Point size : sizes) {
+      int pixels = size.x * size.y;
+      if (pixels >= MIN_PREVIEW_PIXELS && pixels <= maxPixels) {
+        inRange.add(size);
+        bestDiff = Math.min(bestDiff, Math.abs(getAspectRatio(size) - screenAspectRatio));
+      }
+    }
+
+    List<Point> candidates = new ArrayList<>(inRange.size());
+    for (Point size : inRange) {
+      if (Math.abs(getAspectRatio(size) - screenAspectRatio) <= bestDiff + ASPECT_RATIO_SLACK) {
+        candidates.add(size);
+      }
+    }
+    Collections.sort(candidates, new Comparator<Point>() {
+      @Override public int compare(Point a, Point b) {
+        int aPixels = a.x * a.y;
+        int bPixels = b.x * b.y;
+        return aPixels < bPixels ? -1 : aPixels == bPixels ? 0 : 1;
+      }
+    });
+    return candidates;
+  }
+
+  /**
+   * Get the ratio of longer side to shorter side, so that orientation does not matter.
+   */
+  private static float getAspectRatio(Point size) {
+    return (float) Math.max(size.x, size.y) / Math.min(size.x, size.y);
+  }
+
+  /**
+   * Get the smaller side of framing rect in pixels of preview frame.
+   */
+  @SuppressWarnings("SuspiciousNameCombination") private static float getFramingSide(
+      Point size, Point screenResolution, int framingSide) {
+    /* preview is rotated to display orientation, then scaled to fill the screen */
+    boolean flip = size.x > size.y != screenResolution.x > screenResolution.y;
+    int width = flip ? size.y : size.x;
+    int height = flip ? size.x : size.y;
+    float scale = Math.min((float) width / screenResolution.x,
+        (float) height / screenResolution.y);
+    return framingSide * scale;
+  }
+}
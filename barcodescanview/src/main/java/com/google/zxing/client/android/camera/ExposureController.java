@@ -0,0 +1,256 @@
+package com.google.zxing.client.android.camera;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * This class keeps the framing rect well exposed, on the thread camera delivers its callbacks on.
+ * It reuses the mean luminance decoder measures on every frame inside the framing rect, so it
+ * reads no pixel of its own. Smoothed luminance outside of the target band steps exposure
+ * compensation, one step at a time and only once the last step settled. Once exposure can not go
+ * any brighter and the framing rect stays dark, torch is switched on, and it is switched off again
+ * once the framing rect stays too bright. Thresholds apart from each other, a hold time before
+ * switching torch and a least time between two switches keep torch from flickering. Torch is
+ * switched without restarting focus. Signals can be sent from any thread.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ExposureController extends Handler {
+  private static final String TAG = ExposureController.class.getSimpleName();
+
+  /* target band of smoothed luminance, exposure is left alone inside it */
+  static final int DARK_LUMA = 70;
+  static final int BRIGHT_LUMA = 170;
+  /* torch goes on below the first and off above the second, once exposure is out of steps */
+  static final int TORCH_ON_LUMA = 50;
+  static final int TORCH_OFF_LUMA = 200;
+  /* how long luminance must stay past a torch threshold before switching */
+  static final long TORCH_HOLD_MS = 1000L;
+  /* least time between two torch switches */
+  static final long TORCH_DWELL_MS = 3000L;
+  /* time for exposure to settle after a change, frames meanwhile are ignored */
+  static final long SETTLE_MS = 500L;
+  /* weight of a new frame in smoothed luminance */
+  private static final float LUMA_SMOOTHING = 0.25f;
+
+  private static final int MESSAGE_START = 1;
+  private static final int MESSAGE_STOP = 2;
+  private static final int MESSAGE_LUMA = 3;
+  private static final int MESSAGE_TORCH = 4;
+
+  private final Exposer exposer;
+  private final CameraManager.OnExposureListener listener;
+  private volatile boolean autoExposure = true;
+  private volatile boolean autoTorch;
+
+  /* only touched on the thread of this handler */
+  private boolean running;
+  private boolean torchOn;
+  private float luma;
+  private long settleUntil;
+  private long lastTorchSwitch;
+  /* SystemClock.elapsedRealtime() since luminance is past a torch threshold, or 0 */
+  private long torchPendingSince;
+  /* System.nanoTime() since luminance left the target band, or 0 if inside it */
+  private long outOfBandSince;
+
+  /**
+   * Interface defination for a callback to be invoked on the thread of
+   * {@link ExposureController} to change exposure of camera.
+   */
+  interface Exposer {
+    /**
+     * Step exposure compensation up or down.
+     *
+     * @param steps number of steps, positive to brighten
+     * @return true if exposure compensation changed, false if out of range or not supported
+     */
+    boolean stepExposureCompensation(int steps);
+
+    /**
+     * Switch torch on or off.
+     *
+     * @param on on or off
+     * @return true if switched, false if torch is not supported
+     */
+    boolean switchTorch(boolean on);
+  }
+
+  /**
+   * Create a controller.
+   *
+   * @param looper looper of the thread camera delivers its callbacks on
+   * @param exposer {@link Exposer}
+   * @param listener {@link CameraManager.OnExposureListener}, or null
+   */
+  ExposureController(Looper looper, Exposer exposer, CameraManager.OnExposureListener listener) {
+    super(looper);
+    this.exposer = exposer;
+    this.listener = listener;
+  }
+
+  /**
+   * Set whether exposure compensation follows the framing rect, default is true.
+   *
+   * @param enabled enabled or not
+   */
+  void setAutoExposureEnabled(boolean enabled) {
+    this.autoExposure = enabled;
+  }
+
+  /**
+   * Set whether torch follows the framing rect, default is false.
+   *
+   * @param enabled enabled or not
+   */
+  void setAutoTorchEnabled(boolean enabled) {
+    this.autoTorch = enabled;
+  }
+
+  /**
+   * Check if either exposure or torch follows the framing rect.
+   */
+  boolean isEnabled() {
+    return autoExposure || autoTorch;
+  }
+
+  /**
+   * Start controlling, as soon as preview started.
+   */
+  void start() {
+    sendEmptyMessage(MESSAGE_START);
+  }
+
+  /**
+   * Stop controlling before preview stops. Signals not handled yet are dropped.
+   */
+  void stop() {
+    removeCallbacksAndMessages(null);
+    sendEmptyMessage(MESSAGE_STOP);
+  }
+
+  /**
+   * Tell the mean luminance inside the framing rect of a frame.
+   *
+   * @param meanLuma mean luminance, from 0 to 255
+   */
+  void onFrameLuma(float meanLuma) {
+    obtainMessage(MESSAGE_LUMA, Float.floatToIntBits(meanLuma), 0).sendToTarget();
+  }
+
+  /**
+   * Tell that torch was switched by someone else.
+   *
+   * @param on on or off
+   */
+  void onTorchChanged(boolean on) {
+    obtainMessage(MESSAGE_TORCH, on ? 1 : 0, 0).sendToTarget();
+  }
+
+  @Override public void handleMessage(Message msg) {
+    switch (msg.what) {
+      case MESSAGE_START:
+        running = true;
+        torchOn = false;
+        lastTorchSwitch = 0L;
+        reset(SystemClock.elapsedRealtime());
+        break;
+
+      case MESSAGE_STOP:
+        running = false;
+        break;
+
+      case MESSAGE_TORCH:
+        torchOn = msg.arg1 != 0;
+        lastTorchSwitch = SystemClock.elapsedRealtime();
+        reset(lastTorchSwitch);
+        break;
+
+      case MESSAGE_LUMA:
+        if (running && isEnabled()) {
+          control(Float.intBitsToFloat(msg.arg1));
+        }
+        break;
+    }
+  }
+
+  private void control(float frameLuma) {
+    long now = SystemClock.elapsedRealtime();
+    if (now < settleUntil) {
+      return;
+    }
+
+    luma = luma < 0f ? frameLuma : luma + (frameLuma - luma) * LUMA_SMOOTHING;
+    if (luma >= DARK_LUMA && luma <= BRIGHT_LUMA) {
+      torchPendingSince = 0L;
+      if (outOfBandSince != 0L) {
+        long timeToSettle = System.nanoTime() - outOfBandSince;
+        outOfBandSince = 0L;
+        if (listener != null) {
+          listener.onExposureSettled(timeToSettle);
+        }
+      }
+      return;
+    }
+
+    if (outOfBandSince == 0L) {
+      outOfBandSince = System.nanoTime();
+    }
+    boolean dark = luma < DARK_LUMA;
+    /* a torch lighting the framing rect too much is switched off before exposure goes down */
+    if (!dark && autoTorch && torchOn && luma > TORCH_OFF_LUMA && holdTorch(now)) {
+      switchTorch(false, now);
+      return;
+    }
+    if (autoExposure && exposer.stepExposureCompensation(dark ? 1 : -1)) {
+      Log.i(TAG, "Stepping exposure " + (dark ? "up" : "down") + " at luminance " + luma);
+      if (listener != null) {
+        listener.onExposureStep(dark ? 1 : -1, luma);
+      }
+      torchPendingSince = 0L;
+      settleUntil = now + SETTLE_MS;
+      return;
+    }
+    /* exposure is out of steps */
+    if (dark && autoTorch && !torchOn && luma < TORCH_ON_LUMA && holdTorch(now)) {
+      switchTorch(true, now);
+    }
+  }
+
+  /**
+   * Check if luminance stayed past a torch threshold long enough, and torch did not switch too
+   * recently.
+   */
+  private boolean holdTorch(long now) {
+    if (torchPendingSince == 0L) {
+      torchPendingSince = now;
+    }
+    return now - torchPendingSince >= TORCH_HOLD_MS && now - lastTorchSwitch >= TORCH_DWELL_MS;
+  }
+
+  private void switchTorch(boolean on, long now) {
+    if (!exposer.switchTorch(on)) {
+      return;
+    }
+
+    Log.i(TAG, "Switching torch " + (on ? "on" : "off") + " at luminance " + luma);
+    if (listener != null) {
+      listener.onTorchSwitched(on, luma);
+    }
+    torchOn = on;
+    lastTorchSwitch = now;
+    reset(now);
+  }
+
+  /**
+   * Judge the frames after a change on their own, once exposure settled.
+   */
+  private void reset(long now) {
+    luma = -1f;
+    torchPendingSince = 0L;
+    settleUntil = now + SETTLE_MS;
+  }
+}
@@ -0,0 +1,165 @@
+package com.google.zxing.client.android.camera;
+
+import java.util.Iterator;
+
+/**
+ * A {@link FrameSource} which feeds given Y planes instead of camera frames, so frame decoder can
+ * be driven on the JVM, e.g. with recorded or synthetic frames. Each requested frame is copied
+ * into a pooled frame and delivered synchronously on the requesting thread, and the camera
+ * controls asked for are only counted. It is not a {@link CameraFrameSource}, so
+ * {@link CameraManager} and the decode threads can not run on it.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class FakeFrameSource implements FrameSource {
+  private final Iterator<byte[]> planes;
+  private final int rotation;
+  private final PreviewBufferPool framePool;
+  private volatile Callback callback;
+  private volatile boolean focusing;
+  private long framesDelivered;
+  private long framesDropped;
+  private int autoFocusRequests;
+  private int exposureCompensation;
+  private boolean torch;
+
+  /**
+   * Create a fake frame source.
+   *
+   * @param width width of frames
+   * @param height height of frames
+   * @param rotation clockwise rotation which presents frames in display orientation
+   * @param bufferCount number of frames decoder can hold at the same time
+   * @param planes Y planes of frames, at least width * height bytes each
+   */
+  public FakeFrameSource(int width, int height, int rotation, int bufferCount,
+      Iterator<byte[]> planes) {
+    if (rotation % 90 != 0 || rotation < 0 || rotation >= 360) {
+      throw new IllegalArgumentException("Rotation must be one of 0, 90, 180 and 270.");
+    }
+    this.planes = planes;
+    this.rotation = rotation;
+    this.framePool = new PreviewBufferPool(bufferCount, width, height, width * height);
+  }
+
+  @Override public void setCallback(Callback callback) {
+    this.callback = callback;
+  }
+
+  /**
+   * Deliver the next plane, unless there is none left or decoder holds every frame.
+   */
+  @Override public void requestFrame() {
+    Callback theCallback = callback;
+    byte[] plane;
+    Frame frame;
+    synchronized (this) {
+      if (theCallback == null || !planes.hasNext()) {
+        return;
+      }
+      plane = planes.next();
+      frame = framePool.checkOutIdle();
+      if (frame == null) {
+        framesDropped++;
+        return;
+      }
+      framesDelivered++;
+    }
+
+    System.arraycopy(plane, 0, frame.getData(), 0, framePool.getBufferSize());
+    if (!theCallback.onFrame(this, frame)) {
+      framePool.checkIn(frame);
+    }
+  }
+
+  /**
+   * Check if there are planes left to deliver.
+   *
+   * @return true if more frames can be requested, otherwise return false
+   */
+  public synchronized boolean hasMoreFrames() {
+    return planes.hasNext();
+  }
+
+  @Override public void releaseFrame(Frame frame) {
+    framePool.checkIn(frame);
+  }
+
+  /**
+   * The pool is sized at construction, so this has no effect.
+   */
+  @Override public void setMinBufferCount(int count) {
+  }
+
+  @Override public int getBufferCapacity() {
+    return framePool.getCapacity();
+  }
+
+  @Override public int getBuffersInUse() {
+    return framePool.getCheckedOutCount();
+  }
+
+  @Override public int getFrameWidth() {
+    return framePool.getWidth();
+  }
+
+  @Override public int getFrameHeight() {
+    return framePool.getHeight();
+  }
+
+  @Override public int getRotation() {
+    return rotation;
+  }
+
+  /**
+   * Set whether camera pretends to be focusing.
+   *
+   * @param focusing focusing or not
+   */
+  public void setFocusing(boolean focusing) {
+    this.focusing = focusing;
+  }
+
+  @Override public boolean isFocusing() {
+    return focusing;
+  }
+
+  @Override public synchronized void requestAutoFocus() {
+    autoFocusRequests++;
+  }
+
+  @Override public synchronized boolean stepExposureCompensation(int steps) {
+    exposureCompensation += steps;
+    return true;
+  }
+
+  @Override public synchronized void setTorch(boolean enabled) {
+    torch = enabled;
+  }
+
+  public synchronized long getFramesDelivered() {
+    return framesDelivered;
+  }
+
+  /**
+   * Get the number of frames dropped because decoder held every frame when requested.
+   */
+  public synchronized long getFramesDropped() {
+    return framesDropped;
+  }
+
+  public synchronized int getAutoFocusRequests() {
+    return autoFocusRequests;
+  }
+
+  /**
+   * Get the sum of exposure compensation steps requested.
+   */
+  public synchronized int getExposureCompensation() {
+    return exposureCompensation;
+  }
+
+  public synchronized boolean isTorchOn() {
+    return torch;
+  }
+}
@@ -0,0 +1,301 @@
+package com.google.zxing.client.android.camera;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * This class decides when camera focuses, on the thread camera delivers its callbacks on. Instead
+ * of focusing at a fixed interval, it reacts to what decoder sees: consecutive frames failing to
+ * decode, or sharpness falling well below its recent best, trigger a focus, while a decoded frame
+ * postpones it. If nothing triggers a focus, camera still focuses again once the interval elapsed
+ * without a decoded frame. In continuous focus modes camera focuses by itself, so nothing is
+ * triggered, but the time to a sharp frame is still measured. Signals can be sent from any thread,
+ * they are handled in order on the thread of this handler, so sending one never blocks.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class FocusScheduler extends Handler {
+  private static final String TAG = FocusScheduler.class.getSimpleName();
+
+  static final long DEFAULT_INTERVAL_MS = 3000L;
+  /* consecutive frames failed to decode or blurred before focusing */
+  static final int FAILURES_BEFORE_FOCUS = 6;
+  /* focus once smoothed sharpness falls below this fraction of its recent best */
+  static final float SHARPNESS_DROP = 0.5f;
+  /* weight of a new frame in smoothed sharpness */
+  private static final float SHARPNESS_SMOOTHING = 0.3f;
+  /* the recent best sharpness fades by this factor every frame, so it follows the scene */
+  private static final float PEAK_DECAY = 0.98f;
+  /* least time between the end of a focus and the next one */
+  private static final long MIN_FOCUS_INTERVAL_MS = 1000L;
+  /* some drivers never report the end of a focus */
+  private static final long FOCUS_TIMEOUT_MS = 3000L;
+
+  private static final int MESSAGE_START = 1;
+  private static final int MESSAGE_STOP = 2;
+  private static final int MESSAGE_DECODED = 3;
+  private static final int MESSAGE_FAILED = 4;
+  private static final int MESSAGE_QUALITY = 5;
+  private static final int MESSAGE_FOCUS = 6;
+  private static final int MESSAGE_IDLE = 7;
+  private static final int MESSAGE_FOCUS_DONE = 8;
+  private static final int MESSAGE_FOCUS_TIMEOUT = 9;
+
+  private final Focuser focuser;
+  private final boolean continuous;
+  private final CameraManager.OnFocusListener listener;
+  private volatile long intervalMs = DEFAULT_INTERVAL_MS;
+  private volatile boolean focusing;
+
+  /* only touched on the thread of this handler */
+  private boolean running;
+  private int failures;
+  private float sharpness;
+  private float peakSharpness;
+  private long lastFocusEndTime;
+  /* System.nanoTime() since frames are not sharp, or 0 if they are */
+  private long blurredSince;
+
+  /**
+   * Interface defination for a callback to be invoked on the thread of {@link FocusScheduler} to
+   * focus camera.
+   */
+  interface Focuser {
+    /**
+     * Start a single focus scan, {@link FocusScheduler#onFocusDone()} must be called once over.
+     *
+     * @return true if camera started focusing, otherwise return false
+     */
+    boolean focus();
+
+    /**
+     * Cancel the focus scan in progress, if any.
+     */
+    void cancelFocus();
+  }
+
+  /**
+   * Create a scheduler.
+   *
+   * @param looper looper of the thread camera delivers its callbacks on
+   * @param focuser {@link Focuser}
+   * @param continuous camera focuses continuously by itself or not
+   * @param listener {@link CameraManager.OnFocusListener}, or null
+   */
+  FocusScheduler(Looper looper, Focuser focuser, boolean continuous,
+      CameraManager.OnFocusListener listener) {
+    super(looper);
+    this.focuser = focuser;
+    this.continuous = continuous;
+    this.listener = listener;
+    Log.i(TAG, continuous ? "Camera focuses continuously" : "Camera focuses when triggered");
+  }
+
+  /**
+   * Set the longest time camera goes without focusing while no frame is decoded.
+   *
+   * @param intervalMs interval in milliseconds
+   */
+  void setInterval(long intervalMs) {
+    if (intervalMs <= 0) {
+      throw new IllegalArgumentException("AutoFocusInterval must be greater than 0.");
+    }
+    this.intervalMs = intervalMs;
+  }
+
+  /**
+   * Start scheduling, as soon as preview started.
+   */
+  void start() {
+    sendEmptyMessage(MESSAGE_START);
+  }
+
+  /**
+   * Stop scheduling before preview stops. Signals not handled yet are dropped.
+   */
+  void stop() {
+    removeCallbacksAndMessages(null);
+    sendEmptyMessage(MESSAGE_STOP);
+  }
+
+  /**
+   * Check if camera is focusing, frames taken meanwhile are usually blurred.
+   */
+  boolean isFocusing() {
+    return focusing;
+  }
+
+  /**
+   * Tell that camera is focusing by itself or not, in continuous focus modes.
+   *
+   * @param focusing focusing or not
+   */
+  void setFocusing(boolean focusing) {
+    if (continuous) {
+      this.focusing = focusing;
+    }
+  }
+
+  /**
+   * Tell that a frame was decoded, which postpones focusing.
+   */
+  void onDecoded() {
+    sendEmptyMessage(MESSAGE_DECODED);
+  }
+
+  /**
+   * Tell that a frame was run through readers without a bar code found.
+   */
+  void onDecodeFailed() {
+    sendEmptyMessage(MESSAGE_FAILED);
+  }
+
+  /**
+   * Tell the sharpness of a frame. A frame not sharp enough to decode counts as failed.
+   *
+   * @param sharpness mean gradient energy of luminance, higher is sharper
+   * @param sharp sharp enough to decode or not
+   */
+  void onFrameQuality(float sharpness, boolean sharp) {
+    obtainMessage(MESSAGE_QUALITY, Float.floatToIntBits(sharpness), sharp ? 1 : 0)
+        .sendToTarget();
+  }
+
+  /**
+   * Focus now, unless camera is focusing or focused very recently.
+   */
+  void requestFocus() {
+    sendEmptyMessage(MESSAGE_FOCUS);
+  }
+
+  /**
+   * Tell that the focus scan started by {@link Focuser#focus()} is over.
+   */
+  void onFocusDone() {
+    sendEmptyMessage(MESSAGE_FOCUS_DONE);
+  }
+
+  @Override public void handleMessage(Message msg) {
+    if (msg.what == MESSAGE_START) {
+      running = true;
+      failures = 0;
+      sharpness = 0f;
+      peakSharpness = 0f;
+      lastFocusEndTime = 0L;
+      /* the first frames of preview are rarely sharp, time them as well */
+      blurredSince = System.nanoTime();
+      focus();
+      return;
+    }
+    if (msg.what == MESSAGE_STOP) {
+      if (running && focusing && !continuous) {
+        focuser.cancelFocus();
+      }
+      running = false;
+      focusing = false;
+      return;
+    }
+    if (!running) {
+      return;
+    }
+
+    switch (msg.what) {
+      case MESSAGE_DECODED:
+        failures = 0;
+        onSharpFrame();
+        scheduleIdleFocus();
+        break;
+
+      case MESSAGE_FAILED:
+        if (++failures >= FAILURES_BEFORE_FOCUS) {
+          focus();
+        }
+        break;
+
+      case MESSAGE_QUALITY:
+        handleFrameQuality(Float.intBitsToFloat(msg.arg1), msg.arg2 != 0);
+        break;
+
+      case MESSAGE_FOCUS:
+      case MESSAGE_IDLE:
+        focus();
+        break;
+
+      case MESSAGE_FOCUS_DONE:
+      case MESSAGE_FOCUS_TIMEOUT:
+        if (focusing && !continuous) {
+          removeMessages(MESSAGE_FOCUS_TIMEOUT);
+          focusing = false;
+          lastFocusEndTime = SystemClock.elapsedRealtime();
+          /* frames after a focus are judged on their own */
+          failures = 0;
+          sharpness = 0f;
+          peakSharpness = 0f;
+          scheduleIdleFocus();
+        }
+        break;
+    }
+  }
+
+  private void handleFrameQuality(float frameSharpness, boolean sharp) {
+    if (sharp) {
+      onSharpFrame();
+    } else {
+      if (blurredSince == 0L) {
+        blurredSince = System.nanoTime();
+      }
+      /* blurred frames are not run through readers, count them as failed */
+      if (++failures >= FAILURES_BEFORE_FOCUS) {
+        focus();
+        return;
+      }
+    }
+
+    sharpness = sharpness == 0f ? frameSharpness
+        : sharpness + (frameSharpness - sharpness) * SHARPNESS_SMOOTHING;
+    peakSharpness = Math.max(peakSharpness * PEAK_DECAY, sharpness);
+    if (sharpness < peakSharpness * SHARPNESS_DROP) {
+      focus();
+    }
+  }
+
+  private void onSharpFrame() {
+    if (blurredSince != 0L) {
+      long timeToSharp = System.nanoTime() - blurredSince;
+      blurredSince = 0L;
+      if (listener != null) {
+        listener.onSharpFrame(timeToSharp);
+      }
+    }
+  }
+
+  private void focus() {
+    long now = SystemClock.elapsedRealtime();
+    if (continuous || focusing || now - lastFocusEndTime < MIN_FOCUS_INTERVAL_MS) {
+      return;
+    }
+
+    if (focuser.focus()) {
+      focusing = true;
+      if (blurredSince == 0L) {
+        blurredSince = System.nanoTime();
+      }
+      removeMessages(MESSAGE_IDLE);
+      sendEmptyMessageDelayed(MESSAGE_FOCUS_TIMEOUT, FOCUS_TIMEOUT_MS);
+    } else {
+      /* try again later to keep cycle going */
+      lastFocusEndTime = now;
+      scheduleIdleFocus();
+    }
+  }
+
+  private void scheduleIdleFocus() {
+    removeMessages(MESSAGE_IDLE);
+    if (!continuous) {
+      sendEmptyMessageDelayed(MESSAGE_IDLE, intervalMs);
+    }
+  }
+}
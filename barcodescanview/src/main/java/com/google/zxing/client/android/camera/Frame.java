@@ -0,0 +1,106 @@
+package com.google.zxing.client.android.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A frame delivered by a {@link FrameSource}. The Y plane, which is all the decoder reads, is
+ * either packed row by row at the start of an array, frames of legacy camera carry their NV21
+ * chroma after it, or a direct buffer with row and pixel strides, read in place without being
+ * copied to the heap. A frame belongs to its source and must be given back with
+ * {@link FrameSource#releaseFrame(Frame)} once done with, so the source can fill it again.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class Frame {
+  /* index of frame in the pool of its source, or -1 if not pooled */
+  final int index;
+  private final byte[] data;
+  private final ByteBuffer plane;
+  private final int rowStride;
+  private final int pixelStride;
+  private final int width;
+  private final int height;
+
+  Frame(int index, byte[] data, int width, int height) {
+    if (data.length < width * height) {
+      throw new IllegalArgumentException("Frame data smaller than " + width + "x" + height);
+    }
+    this.index = index;
+    this.data = data;
+    this.plane = null;
+    this.rowStride = width;
+    this.pixelStride = 1;
+    this.width = width;
+    this.height = height;
+  }
+
+  Frame(int index, ByteBuffer plane, int rowStride, int pixelStride, int width, int height) {
+    if (pixelStride <= 0 || rowStride < (width - 1) * pixelStride + 1) {
+      throw new IllegalArgumentException("Bad strides: " + rowStride + ", " + pixelStride);
+    }
+    if (plane.capacity() < (height - 1) * rowStride + (width - 1) * pixelStride + 1) {
+      throw new IllegalArgumentException("Frame plane smaller than " + width + "x" + height);
+    }
+    this.index = index;
+    this.data = null;
+    this.plane = plane;
+    this.rowStride = rowStride;
+    this.pixelStride = pixelStride;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Get the frame data, the Y plane comes first.
+   *
+   * @return frame data, or null if the Y plane is a buffer
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * Get the Y plane when it is a direct buffer, its position and limit mean nothing.
+   *
+   * @return the Y plane, or null if the frame data is an array
+   */
+  public ByteBuffer getPlane() {
+    return plane;
+  }
+
+  /**
+   * Get the distance in bytes between the starts of two rows of Y plane.
+   *
+   * @return row stride
+   */
+  public int getRowStride() {
+    return rowStride;
+  }
+
+  /**
+   * Get the distance in bytes between two pixels of a row of Y plane.
+   *
+   * @return pixel stride
+   */
+  public int getPixelStride() {
+    return pixelStride;
+  }
+
+  /**
+   * Get the width of frame as delivered by camera.
+   *
+   * @return width in pixels
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Get the height of frame as delivered by camera.
+   *
+   * @return height in pixels
+   */
+  public int getHeight() {
+    return height;
+  }
+}
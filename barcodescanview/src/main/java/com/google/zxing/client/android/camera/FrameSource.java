@@ -0,0 +1,118 @@
+package com.google.zxing.client.android.camera;
+
+/**
+ * A source of preview frames and the camera controls the decoder asks for, which sits between
+ * {@link CameraManager} and decode pipeline. The legacy camera and Camera2 backends are picked
+ * by {@link CameraManager} from the capability of device, and {@link FakeFrameSource} feeds
+ * given frames so frame decoder can be driven on the JVM. Frames are pushed to the
+ * {@link Callback} as they come, each one taken must be released once decoded.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public interface FrameSource {
+  /**
+   * Interface defination for a callback to be invoked for every frame delivered.
+   */
+  interface Callback {
+    /**
+     * Invoked on the thread of source when a frame arrived.
+     *
+     * @param source {@link FrameSource} delivering the frame
+     * @param frame {@link Frame}
+     * @return true if the frame was taken and will be released later, false to let the source
+     * reuse it at once
+     */
+    boolean onFrame(FrameSource source, Frame frame);
+  }
+
+  /**
+   * Set the callback of frames, or null to drop every frame.
+   *
+   * @param callback {@link Callback}
+   */
+  void setCallback(Callback callback);
+
+  /**
+   * Tell the source a frame is wanted. Sources which deliver frames continuously ignore this,
+   * others deliver the next frame only if asked.
+   */
+  void requestFrame();
+
+  /**
+   * Give back a frame taken from this source, so it can be filled again. Frames of other sources
+   * or of a closed one are ignored.
+   *
+   * @param frame {@link Frame}
+   */
+  void releaseFrame(Frame frame);
+
+  /**
+   * Set the least number of frames the decoder needs to hold at the same time, so the source
+   * keeps delivering while they are decoded.
+   *
+   * @param count least number of frames
+   */
+  void setMinBufferCount(int count);
+
+  /**
+   * Get the number of frame buffers of the source, 0 if frames are not pooled.
+   *
+   * @return number of buffers
+   */
+  int getBufferCapacity();
+
+  /**
+   * Get the number of frames taken and not released yet.
+   *
+   * @return number of frames in use
+   */
+  int getBuffersInUse();
+
+  /**
+   * Get the width of frames as delivered, 0 if not known yet.
+   *
+   * @return width in pixels
+   */
+  int getFrameWidth();
+
+  /**
+   * Get the height of frames as delivered, 0 if not known yet.
+   *
+   * @return height in pixels
+   */
+  int getFrameHeight();
+
+  /**
+   * Get the clockwise rotation which presents frames in display orientation.
+   *
+   * @return one of 0, 90, 180, 270
+   */
+  int getRotation();
+
+  /**
+   * Check if camera is focusing, frames taken while focusing are usually blurred.
+   *
+   * @return true if focusing, otherwise return false
+   */
+  boolean isFocusing();
+
+  /**
+   * Ask camera to focus now, e.g. because frames are blurred.
+   */
+  void requestAutoFocus();
+
+  /**
+   * Step exposure compensation up or down, e.g. because frames are too dark or too bright.
+   *
+   * @param steps number of steps, positive to brighten
+   * @return true if exposure compensation changed, false if out of range or not supported
+   */
+  boolean stepExposureCompensation(int steps);
+
+  /**
+   * Set torch light on or off.
+   *
+   * @param enabled on or off
+   */
+  void setTorch(boolean enabled);
+}
@@ -0,0 +1,425 @@
+package com.google.zxing.client.android.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Looper;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import com.google.zxing.client.android.camera.open.OpenCamera;
+import com.google.zxing.client.android.camera.open.OpenCameraInterface;
+import java.io.IOException;
+
+/**
+ * A {@link CameraFrameSource} on {@link Camera}, which works on every device. Frames are NV21
+ * preview buffers queued to camera from a {@link PreviewBufferPool}, or arrays allocated by the
+ * driver for one-shot preview callbacks if no buffer is pooled.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@SuppressWarnings("deprecation") final class LegacyFrameSource extends CameraFrameSource
+    implements Camera.PreviewCallback {
+  private static final String TAG = LegacyFrameSource.class.getSimpleName();
+
+  private final CameraConfigurationManager configManager;
+  private final CameraCapabilityCache capabilityCache;
+  private volatile OpenCamera openCamera;
+  private final LegacyFocuser focuser = new LegacyFocuser();
+  private CameraCapabilities capabilities;
+  /* looper of the thread which opened camera, where its callbacks are delivered */
+  private Looper callbackLooper;
+  private boolean initialized;
+  private boolean previewing;
+  private volatile PreviewBufferPool previewBufferPool;
+
+  LegacyFrameSource(Context context) {
+    this.configManager = new CameraConfigurationManager(context);
+    this.capabilityCache = new CameraCapabilityCache(context);
+  }
+
+  @Override synchronized void openDevice(int requestedCameraId) throws Exception {
+    if (isOpen()) {
+      return;
+    }
+
+    /* callbacks of camera are delivered on the looper of the thread opening it */
+    OpenCamera theCamera = OpenCameraInterface.open(requestedCameraId);
+    if (theCamera == null || theCamera.getCamera() == null) {
+      throw new IOException("Camera.open() failed to return object from driver");
+    }
+    Looper looper = Looper.myLooper();
+    callbackLooper = looper == null ? Looper.getMainLooper() : looper;
+    openCamera = theCamera;
+  }
+
+  @Override synchronized void open(SurfaceHolder holder, int requestedCameraId,
+      Point screenResolution) throws Exception {
+    openDevice(requestedCameraId);
+    OpenCamera theCamera = openCamera;
+
+    long start = System.nanoTime();
+    if (!initialized) {
+      initialized = true;
+      configManager.initFromCameraParameters(theCamera, screenResolution.x, screenResolution.y);
+      capabilities = capabilityCache.load(theCamera.getIndex());
+      if (capabilities == null) {
+        capabilities = CameraCapabilities.read(theCamera.getCamera().getParameters());
+      }
+      configManager.setCapabilities(capabilities);
+      PreviewSizeChoice choice = choosePreviewSize(capabilities.getPreviewSizes(),
+          screenResolution, capabilities.getDefaultPreviewSize());
+      configManager.setCameraResolution(choice.getSize());
+    }
+
+    Camera cameraObject = theCamera.getCamera();
+    boolean knownGood = capabilities.isLastGood(configManager.getCameraResolution());
+    if (knownGood) {
+      try {
+        configManager.setKnownGoodCameraParameters(theCamera);
+      } catch (RuntimeException re) {
+        Log.w(TAG, "Camera rejected the configuration it accepted before, dropping cache", re);
+        capabilityCache.remove(theCamera.getIndex());
+        knownGood = false;
+      }
+    }
+    boolean accepted = !knownGood && configure(theCamera);
+    long elapsed = System.nanoTime() - start;
+    if (accepted) {
+      capabilities = capabilities.withLastGood(configManager.getCameraResolution(),
+          configManager.getFocusMode(), elapsed);
+      capabilityCache.save(theCamera.getIndex(), capabilities);
+    }
+    recordConfiguration(elapsed, knownGood,
+        knownGood ? Math.max(0, capabilities.getConfigureNanos() - elapsed) : 0);
+    createControllers(callbackLooper, focuser, !focuser.isTriggered());
+    cameraObject.setPreviewDisplay(holder);
+  }
+
+  /**
+   * Configure camera by looking up and checking everything, falling back to safe mode.
+   *
+   * @return true if camera accepted the desired parameters, false if in safe mode or failed
+   */
+  private boolean configure(OpenCamera theCamera) {
+    Camera cameraObject = theCamera.getCamera();
+    Camera.Parameters parameters = cameraObject.getParameters();
+    /* save these, temporarily */
+    String parametersFlattened = parameters == null ? null : parameters.flatten();
+    try {
+      configManager.setDesiredCameraParameters(theCamera, false);
+      return parameters != null;
+    } catch (RuntimeException re) {
+      // Driver failed
+      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
+      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
+      // Reset:
+      if (parametersFlattened != null) {
+        parameters = cameraObject.getParameters();
+        parameters.unflatten(parametersFlattened);
+        try {
+          cameraObject.setParameters(parameters);
+          configManager.setDesiredCameraParameters(theCamera, true);
+        } catch (RuntimeException exp) {
+          // Well, darn. Give up
+          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+        }
+      }
+      return false;
+    }
+  }
+
+  @Override boolean isOpen() {
+    OpenCamera theCamera = openCamera;
+    return theCamera != null && theCamera.getCamera() != null;
+  }
+
+  @Override synchronized void startPreview() throws Exception {
+    OpenCamera theCamera = openCamera;
+    if (theCamera != null && !previewing) {
+      setupPreviewBuffers(theCamera.getCamera());
+      theCamera.getCamera().startPreview();
+      previewing = true;
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && focuser.isContinuous()) {
+        FocusMoveCallback.register(theCamera.getCamera(), getFocusScheduler());
+      }
+      startControllers();
+    }
+  }
+
+  @Override synchronized void stopPreview() {
+    stopControllers();
+    if (openCamera != null && previewing) {
+      focuser.cancelFocus();
+      openCamera.getCamera().stopPreview();
+      previewing = false;
+    }
+  }
+
+  @Override synchronized void close() {
+    if (isOpen()) {
+      openCamera.getCamera().release();
+      openCamera = null;
+      /* camera, screen or policy may differ the next time, so configure again */
+      initialized = false;
+    }
+  }
+
+  @Override public void onPreviewFrame(byte[] data, Camera camera) {
+    if (data == null) {
+      return;
+    }
+
+    PreviewBufferPool pool = previewBufferPool;
+    if (pool == null) {
+      Point cameraResolution = configManager.getCameraResolution();
+      if (cameraResolution != null) {
+        deliver(new Frame(-1, data, cameraResolution.x, cameraResolution.y));
+      }
+      return;
+    }
+
+    Frame frame = pool.checkOut(data);
+    if (frame != null && !deliver(frame)) {
+      /* nobody asked for this frame, give the buffer back to camera at once */
+      pool.checkIn(frame);
+      camera.addCallbackBuffer(data);
+    }
+  }
+
+  @Override public synchronized void requestFrame() {
+    OpenCamera theCamera = openCamera;
+    if (theCamera != null && previewing && previewBufferPool == null) {
+      theCamera.getCamera().setOneShotPreviewCallback(this);
+    }
+  }
+
+  @Override public synchronized void releaseFrame(Frame frame) {
+    PreviewBufferPool pool = previewBufferPool;
+    if (pool == null || !pool.checkIn(frame)) {
+      return;
+    }
+
+    OpenCamera theCamera = openCamera;
+    if (theCamera != null && previewing) {
+      theCamera.getCamera().addCallbackBuffer(frame.getData());
+    }
+  }
+
+  @Override public synchronized int getBufferCapacity() {
+    return previewBufferPool == null ? 0 : previewBufferPool.getCapacity();
+  }
+
+  @Override public synchronized int getBuffersInUse() {
+    return previewBufferPool == null ? 0 : previewBufferPool.getCheckedOutCount();
+  }
+
+  @Override public int getFrameWidth() {
+    Point cameraResolution = configManager.getCameraResolution();
+    return cameraResolution == null ? 0 : cameraResolution.x;
+  }
+
+  @Override public int getFrameHeight() {
+    Point cameraResolution = configManager.getCameraResolution();
+    return cameraResolution == null ? 0 : cameraResolution.y;
+  }
+
+  @Override public int getRotation() {
+    return configManager.getCWNeededRotation();
+  }
+
+  @Override synchronized void setFocusArea(Rect area) {
+    OpenCamera theCamera = openCamera;
+    if (theCamera == null || area == null) {
+      return;
+    }
+
+    try {
+      configManager.setFocusArea(theCamera.getCamera(), area);
+    } catch (RuntimeException re) {
+      Log.w(TAG, "Unexpected exception while setting focus area", re);
+    }
+  }
+
+  @Override public synchronized boolean stepExposureCompensation(int steps) {
+    OpenCamera theCamera = openCamera;
+    if (theCamera == null || !previewing) {
+      return false;
+    }
+
+    try {
+      return configManager.stepExposureCompensation(theCamera.getCamera(), steps);
+    } catch (RuntimeException re) {
+      Log.w(TAG, "Unexpected exception while stepping exposure compensation", re);
+      return false;
+    }
+  }
+
+  @Override public synchronized float setZoom(float ratio) {
+    OpenCamera theCamera = openCamera;
+    if (theCamera == null || !previewing) {
+      return 1f;
+    }
+
+    try {
+      return configManager.setZoom(theCamera.getCamera(), ratio);
+    } catch (RuntimeException re) {
+      Log.w(TAG, "Unexpected exception while zooming", re);
+      return 1f;
+    }
+  }
+
+  @Override synchronized boolean isTorchSupported() {
+    return capabilities != null && capabilities.isTorchSupported();
+  }
+
+  @Override public synchronized void setTorch(boolean enabled) {
+    OpenCamera theCamera = openCamera;
+    if (theCamera == null || !isTorchSupported()) {
+      return;
+    }
+
+    /*
+     * focus is not restarted around switching torch, a focus scan in progress carries on, and
+     * one a driver drops is timed out by focus scheduler
+     */
+    try {
+      if (enabled != configManager.getTorchState(theCamera.getCamera())) {
+        /* exposure controller re-settles from the current compensation after a switch */
+        configManager.setTorchEnabled(theCamera.getCamera(), enabled, isExposureControlled());
+      }
+    } catch (RuntimeException re) {
+      Log.w(TAG, "Unexpected exception while switching torch", re);
+    }
+  }
+
+  /**
+   * Queue all idle preview buffers to camera and register the buffered preview callback.
+   */
+  private void setupPreviewBuffers(Camera camera) {
+    int bufferCount = getBufferCount();
+    if (bufferCount == 0) {
+      previewBufferPool = null;
+      camera.setPreviewCallbackWithBuffer(null);
+      return;
+    }
+
+    Camera.Parameters parameters = camera.getParameters();
+    Camera.Size size = parameters.getPreviewSize();
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(parameters.getPreviewFormat());
+    int bufferSize = size.width * size.height * bitsPerPixel / 8;
+    PreviewBufferPool pool = previewBufferPool;
+    if (pool == null
+        || pool.getBufferSize() != bufferSize
+        || pool.getCapacity() != bufferCount) {
+      pool = new PreviewBufferPool(bufferCount, size.width, size.height, bufferSize);
+      Log.i(TAG, "Allocated " + bufferCount + " preview buffers of " + bufferSize + " bytes");
+    }
+
+    /*
+     * stopping preview keeps the buffers queued, only a null callback clears the queue, so the
+     * idle buffers are not queued twice when preview restarts
+     */
+    camera.setPreviewCallbackWithBuffer(null);
+    /* buffers still held by decoder will be queued again when they are released */
+    for (int i = 0; i < pool.getCapacity(); i++) {
+      if (!pool.isCheckedOut(i)) {
+        camera.addCallbackBuffer(pool.get(i).getData());
+      }
+    }
+    previewBufferPool = pool;
+    camera.setPreviewCallbackWithBuffer(this);
+  }
+
+  /**
+   * Starts and cancels focus scans of legacy camera, in the focus modes which need it.
+   */
+  private final class LegacyFocuser implements FocusScheduler.Focuser, Camera.AutoFocusCallback {
+    /**
+     * Check if camera only focuses when told to, in the focus mode configured.
+     */
+    boolean isTriggered() {
+      String focusMode = configManager.getFocusMode();
+      return Camera.Parameters.FOCUS_MODE_AUTO.equals(focusMode)
+          || Camera.Parameters.FOCUS_MODE_MACRO.equals(focusMode);
+    }
+
+    /**
+     * Check if camera focuses by itself, in the focus mode configured.
+     */
+    boolean isContinuous() {
+      String focusMode = configManager.getFocusMode();
+      return Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(focusMode)
+          || Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO.equals(focusMode);
+    }
+
+    @Override public boolean focus() {
+      synchronized (LegacyFrameSource.this) {
+        OpenCamera theCamera = openCamera;
+        if (theCamera == null || !previewing) {
+          return false;
+        }
+
+        try {
+          theCamera.getCamera().autoFocus(this);
+          return true;
+        } catch (RuntimeException re) {
+          // Have heard RuntimeException reported in Android 4.0.x+; continue?
+          Log.w(TAG, "Unexpected exception while focusing", re);
+          return false;
+        }
+      }
+    }
+
+    @Override public void cancelFocus() {
+      synchronized (LegacyFrameSource.this) {
+        OpenCamera theCamera = openCamera;
+        if (theCamera == null || !isTriggered()) {
+          return;
+        }
+
+        // Doesn't hurt to call this even if not focusing
+        try {
+          theCamera.getCamera().cancelAutoFocus();
+        } catch (RuntimeException re) {
+          Log.w(TAG, "Unexpected exception while cancelling focusing", re);
+        }
+      }
+    }
+
+    @Override public void onAutoFocus(boolean success, Camera camera) {
+      FocusScheduler scheduler = getFocusScheduler();
+      if (scheduler != null) {
+        scheduler.onFocusDone();
+      }
+    }
+  }
+
+  /**
+   * Tells focus scheduler when camera focuses by itself in continuous focus modes. Kept apart
+   * from {@link LegacyFocuser}, since the callback only exists on Jelly Bean and later.
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN) private static final class FocusMoveCallback
+      implements Camera.AutoFocusMoveCallback {
+    private final FocusScheduler scheduler;
+
+    private FocusMoveCallback(FocusScheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    static void register(Camera camera, FocusScheduler scheduler) {
+      try {
+        camera.setAutoFocusMoveCallback(new FocusMoveCallback(scheduler));
+      } catch (RuntimeException re) {
+        Log.w(TAG, "Unexpected exception while registering focus move callback", re);
+      }
+    }
+
+    @Override public void onAutoFocusMoving(boolean start, Camera camera) {
+      scheduler.setFocusing(start);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.google.zxing.client.android.camera;
+
+/**
+ * A fixed-size pool of preview frames reused by a {@link FrameSource}, e.g. with
+ * {@link android.hardware.Camera#setPreviewCallbackWithBuffer}. Every frame is either queued in
+ * the source or checked out by the decoder, so no new frame array is ever allocated while
+ * previewing.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class PreviewBufferPool {
+  static final int DEFAULT_BUFFER_COUNT = 3;
+
+  private final Frame[] frames;
+  private final boolean[] checkedOut;
+  private final int width;
+  private final int height;
+  private final int bufferSize;
+  private int checkedOutCount;
+
+  /**
+   * Create a pool of frames.
+   *
+   * @param bufferCount number of frames
+   * @param width width of frames
+   * @param height height of frames
+   * @param bufferSize size in bytes of each frame, at least the size of Y plane
+   */
+  PreviewBufferPool(int bufferCount, int width, int height, int bufferSize) {
+    if (bufferCount <= 0) {
+      throw new IllegalArgumentException("Buffer count must be greater than 0.");
+    }
+    this.frames = new Frame[bufferCount];
+    this.checkedOut = new boolean[bufferCount];
+    this.width = width;
+    this.height = height;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Get the frame at given index, allocating it on first use.
+   *
+   * @param index index of frame
+   * @return the frame
+   */
+  synchronized Frame get(int index) {
+    if (frames[index] == null) {
+      frames[index] = new Frame(index, new byte[bufferSize], width, height);
+    }
+    return frames[index];
+  }
+
+  /**
+   * Mark the frame holding given buffer as checked out by the decoder.
+   *
+   * @param buffer the buffer delivered by camera
+   * @return the frame, or null if the buffer does not belong to this pool or is checked out
+   */
+  synchronized Frame checkOut(byte[] buffer) {
+    for (int i = 0; i < frames.length; i++) {
+      if (frames[i] != null && frames[i].getData() == buffer) {
+        return checkOut(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check out any frame not checked out yet, for sources which copy frames into the pool.
+   *
+   * @return the frame, or null if all frames are checked out
+   */
+  synchronized Frame checkOutIdle() {
+    for (int i = 0; i < frames.length; i++) {
+      if (!checkedOut[i]) {
+        get(i);
+        return checkOut(i);
+      }
+    }
+    return null;
+  }
+
+  private Frame checkOut(int index) {
+    if (checkedOut[index]) {
+      return null;
+    }
+    checkedOut[index] = true;
+    checkedOutCount++;
+    return frames[index];
+  }
+
+  /**
+   * Mark the frame as returned by the decoder.
+   *
+   * @param frame the frame to return
+   * @return true if the frame was checked out from this pool, otherwise return false
+   */
+  synchronized boolean checkIn(Frame frame) {
+    int index = frame.index;
+    if (index < 0 || index >= frames.length || frames[index] != frame || !checkedOut[index]) {
+      return false;
+    }
+    checkedOut[index] = false;
+    checkedOutCount--;
+    return true;
+  }
+
+  /**
+   * Check if the frame at given index is currently checked out by the decoder.
+   */
+  synchronized boolean isCheckedOut(int index) {
+    return checkedOut[index];
+  }
+
+  /**
+   * Get the number of frames in this pool.
+   */
+  int getCapacity() {
+    return frames.length;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * Get the size in bytes of each frame.
+   */
+  int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Get the number of frames checked out by the decoder.
+   */
+  synchronized int getCheckedOutCount() {
+    return checkedOutCount;
+  }
+}
@@ -0,0 +1,43 @@
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+
+/**
+ * The preview size chosen by a {@link PreviewSizePolicy}, and why it was chosen.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class PreviewSizeChoice {
+  private final Point size;
+  private final String reason;
+
+  public PreviewSizeChoice(Point size, String reason) {
+    if (size == null) {
+      throw new IllegalArgumentException("Size must not be null.");
+    }
+    this.size = new Point(size);
+    this.reason = reason;
+  }
+
+  /**
+   * Get the chosen preview size, as delivered by camera.
+   *
+   * @return {@link Point}
+   */
+  public Point getSize() {
+    return new Point(size);
+  }
+
+  /**
+   * Get a human readable reason of the choice, e.g. for logs.
+   *
+   * @return reason
+   */
+  public String getReason() {
+    return reason;
+  }
+
+  @Override public String toString() {
+    return size.x + "x" + size.y + ": " + reason;
+  }
+}
@@ -0,0 +1,29 @@
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import com.google.zxing.BarcodeFormat;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A policy to choose the size of frames delivered by camera, among the sizes camera supports.
+ * Larger frames resolve denser bar codes, smaller frames are cheaper to deliver and decode.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ * @see DecodeAwarePreviewSizePolicy
+ * @see ScreenAspectPreviewSizePolicy
+ */
+public interface PreviewSizePolicy {
+  /**
+   * Choose a preview size. Invoked every time the camera is opened.
+   *
+   * @param sizes sizes supported by camera, in camera orientation
+   * @param screenResolution size of the preview on screen, in display orientation
+   * @param framingRect the framing rect on screen, in display orientation
+   * @param formats formats to decode
+   * @return the choice, or null if no size suits, then the default size of camera is used
+   */
+  PreviewSizeChoice choose(List<Point> sizes, Point screenResolution, Rect framingRect,
+      Collection<BarcodeFormat> formats);
+}
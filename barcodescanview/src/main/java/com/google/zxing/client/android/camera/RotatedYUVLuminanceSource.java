@@ -0,0 +1,322 @@
+package com.google.zxing.client.android.camera;
+
+import com.google.zxing.LuminanceSource;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LuminanceSource} which presents the Y plane of a camera frame rotated clockwise by
+ * 0, 90, 180 or 270 degrees, and optionally mirrored horizontally after rotation. Rotation is done
+ * by remapping coordinates while reading rows, so the camera buffer is never copied or
+ * transposed. Only the Y plane is read, so planar formats such as NV21 work as is. The frame can
+ * also be downsampled by reading every n-th pixel of every n-th row.
+ * <p>
+ * Besides a packed array, the Y plane can be a direct {@link ByteBuffer} with any row and pixel
+ * stride, such as a plane of {@link android.media.Image}. Pixels are read from the buffer only
+ * when a row or matrix is asked for, the plane is never copied to the heap as a whole. A source
+ * over a buffer must be used on one thread at a time.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class RotatedYUVLuminanceSource extends LuminanceSource {
+  private final byte[] yuvData;
+  /* private view of the plane, so reading does not move the position of the original */
+  private final ByteBuffer plane;
+  private final int rowStride;
+  private final int pixelStride;
+  private final int dataWidth;
+  private final int dataHeight;
+  private final int rotation;
+  private final boolean mirror;
+  private final int left;
+  private final int top;
+  private final int sample;
+  /* index in plane of the top-left pixel, and index steps along a row and down a column */
+  private final int origin;
+  private final int columnStep;
+  private final int rowStep;
+
+  /**
+   * Create a luminance source over the whole rotated frame.
+   *
+   * @param yuvData frame data, the Y plane must come first
+   * @param dataWidth width of the frame as delivered by camera
+   * @param dataHeight height of the frame as delivered by camera
+   * @param rotation clockwise rotation to apply, one of 0, 90, 180, 270
+   * @param mirror mirror horizontally after rotation or not
+   */
+  public RotatedYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int rotation,
+      boolean mirror) {
+    this(yuvData, dataWidth, dataHeight, rotation, mirror, 0, 0,
+        rotation % 180 == 0 ? dataWidth : dataHeight,
+        rotation % 180 == 0 ? dataHeight : dataWidth);
+  }
+
+  /**
+   * Create a luminance source over a region of the rotated frame.
+   *
+   * @param yuvData frame data, the Y plane must come first
+   * @param dataWidth width of the frame as delivered by camera
+   * @param dataHeight height of the frame as delivered by camera
+   * @param rotation clockwise rotation to apply, one of 0, 90, 180, 270
+   * @param mirror mirror horizontally after rotation or not
+   * @param left left of region in rotated coordinates
+   * @param top top of region in rotated coordinates
+   * @param width width of region in rotated coordinates
+   * @param height height of region in rotated coordinates
+   */
+  public RotatedYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int rotation,
+      boolean mirror, int left, int top, int width, int height) {
+    this(yuvData, dataWidth, dataHeight, rotation, mirror, left, top, width, height, 1);
+  }
+
+  /**
+   * Create a downsampled luminance source over a region of the rotated frame. The size of this
+   * source is the size of region divided by sample.
+   *
+   * @param yuvData frame data, the Y plane must come first
+   * @param dataWidth width of the frame as delivered by camera
+   * @param dataHeight height of the frame as delivered by camera
+   * @param rotation clockwise rotation to apply, one of 0, 90, 180, 270
+   * @param mirror mirror horizontally after rotation or not
+   * @param left left of region in rotated coordinates
+   * @param top top of region in rotated coordinates
+   * @param width width of region in rotated coordinates
+   * @param height height of region in rotated coordinates
+   * @param sample read one pixel out of sample in both directions, 1 means full resolution
+   */
+  public RotatedYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int rotation,
+      boolean mirror, int left, int top, int width, int height, int sample) {
+    this(yuvData, null, dataWidth, 1, dataWidth, dataHeight, rotation, mirror, left, top, width,
+        height, sample);
+  }
+
+  /**
+   * Create a luminance source over the whole rotated frame, reading a strided plane.
+   *
+   * @param plane the Y plane, its position and limit are ignored
+   * @param rowStride distance in bytes between the starts of two rows
+   * @param pixelStride distance in bytes between two pixels of a row
+   * @param dataWidth width of the frame as delivered by camera
+   * @param dataHeight height of the frame as delivered by camera
+   * @param rotation clockwise rotation to apply, one of 0, 90, 180, 270
+   * @param mirror mirror horizontally after rotation or not
+   */
+  public RotatedYUVLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride,
+      int dataWidth, int dataHeight, int rotation, boolean mirror) {
+    this(plane, rowStride, pixelStride, dataWidth, dataHeight, rotation, mirror, 0, 0,
+        rotation % 180 == 0 ? dataWidth : dataHeight,
+        rotation % 180 == 0 ? dataHeight : dataWidth, 1);
+  }
+
+  /**
+   * Create a downsampled luminance source over a region of the rotated frame, reading a strided
+   * plane. The size of this source is the size of region divided by sample.
+   *
+   * @param plane the Y plane, its position and limit are ignored
+   * @param rowStride distance in bytes between the starts of two rows
+   * @param pixelStride distance in bytes between two pixels of a row
+   * @param dataWidth width of the frame as delivered by camera
+   * @param dataHeight height of the frame as delivered by camera
+   * @param rotation clockwise rotation to apply, one of 0, 90, 180, 270
+   * @param mirror mirror horizontally after rotation or not
+   * @param left left of region in rotated coordinates
+   * @param top top of region in rotated coordinates
+   * @param width width of region in rotated coordinates
+   * @param height height of region in rotated coordinates
+   * @param sample read one pixel out of sample in both directions, 1 means full resolution
+   */
+  public RotatedYUVLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride,
+      int dataWidth, int dataHeight, int rotation, boolean mirror, int left, int top, int width,
+      int height, int sample) {
+    this(null, view(plane), rowStride, pixelStride, dataWidth, dataHeight, rotation, mirror,
+        left, top, width, height, sample);
+  }
+
+  private RotatedYUVLuminanceSource(byte[] yuvData, ByteBuffer plane, int rowStride,
+      int pixelStride, int dataWidth, int dataHeight, int rotation, boolean mirror, int left,
+      int top, int width, int height, int sample) {
+    super(width / sample, height / sample);
+
+    if (sample <= 0) {
+      throw new IllegalArgumentException("Bad sample: " + sample);
+    }
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+      throw new IllegalArgumentException("Bad rotation: " + rotation);
+    }
+    if (pixelStride <= 0 || rowStride < (dataWidth - 1) * pixelStride + 1) {
+      throw new IllegalArgumentException("Bad strides: " + rowStride + ", " + pixelStride);
+    }
+    int planeSize = (dataHeight - 1) * rowStride + (dataWidth - 1) * pixelStride + 1;
+    if ((yuvData != null ? yuvData.length : plane.capacity()) < planeSize) {
+      throw new IllegalArgumentException("Plane is smaller than " + dataWidth + "x" + dataHeight);
+    }
+    int rotatedWidth = rotation % 180 == 0 ? dataWidth : dataHeight;
+    int rotatedHeight = rotation % 180 == 0 ? dataHeight : dataWidth;
+    if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+
+    this.yuvData = yuvData;
+    this.plane = plane;
+    this.rowStride = rowStride;
+    this.pixelStride = pixelStride;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.rotation = rotation;
+    this.mirror = mirror;
+    this.left = left;
+    this.top = top;
+    this.sample = sample;
+    /* the mapping is affine, so two neighbours are enough to know the steps */
+    origin = indexOf(left, top);
+    columnStep = (indexOf(left + 1, top) - origin) * sample;
+    rowStep = (indexOf(left, top + 1) - origin) * sample;
+  }
+
+  /**
+   * Map a point in rotated coordinates to its index in the camera frame.
+   */
+  private int indexOf(int x, int y) {
+    if (mirror) {
+      x = (rotation % 180 == 0 ? dataWidth : dataHeight) - 1 - x;
+    }
+
+    switch (rotation) {
+      case 90:
+        return (dataHeight - 1 - x) * rowStride + y * pixelStride;
+      case 180:
+        return (dataHeight - 1 - y) * rowStride + (dataWidth - 1 - x) * pixelStride;
+      case 270:
+        return x * rowStride + (dataWidth - 1 - y) * pixelStride;
+      default:
+        return y * rowStride + x * pixelStride;
+    }
+  }
+
+  @Override public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+
+    readRow(origin + y * rowStep, row, 0, width);
+    return row;
+  }
+
+  @Override public byte[] getMatrix() {
+    int width = getWidth();
+    int height = getHeight();
+    byte[] matrix = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      readRow(origin + y * rowStep, matrix, y * width, width);
+    }
+    return matrix;
+  }
+
+  /**
+   * Read a row of this source starting at given index of plane.
+   */
+  private void readRow(int offset, byte[] output, int outputOffset, int width) {
+    int step = columnStep;
+    if (yuvData != null) {
+      byte[] yuv = yuvData;
+      if (step == 1) {
+        System.arraycopy(yuv, offset, output, outputOffset, width);
+      } else {
+        for (int x = 0; x < width; x++) {
+          output[outputOffset + x] = yuv[offset];
+          offset += step;
+        }
+      }
+    } else {
+      ByteBuffer buffer = plane;
+      if (step == 1) {
+        /* cast, so this links against Buffer.position on every Java version */
+        ((Buffer) buffer).position(offset);
+        buffer.get(output, outputOffset, width);
+      } else {
+        for (int x = 0; x < width; x++) {
+          output[outputOffset + x] = buffer.get(offset);
+          offset += step;
+        }
+      }
+    }
+  }
+
+  @Override public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override public LuminanceSource crop(int left, int top, int width, int height) {
+    return new RotatedYUVLuminanceSource(yuvData, duplicatePlane(), rowStride, pixelStride,
+        dataWidth, dataHeight, rotation, mirror, this.left + left * sample,
+        this.top + top * sample, width * sample, height * sample, sample);
+  }
+
+  /**
+   * Downsample this source further, keeping the same region of frame.
+   *
+   * @param sample read one pixel out of sample of this source in both directions
+   * @return downsampled {@link RotatedYUVLuminanceSource}, or this source if sample is 1
+   */
+  public RotatedYUVLuminanceSource downsample(int sample) {
+    if (sample == 1) {
+      return this;
+    }
+    return new RotatedYUVLuminanceSource(yuvData, duplicatePlane(), rowStride, pixelStride,
+        dataWidth, dataHeight, rotation, mirror, left, top, getWidth() * this.sample,
+        getHeight() * this.sample, this.sample * sample);
+  }
+
+  private ByteBuffer duplicatePlane() {
+    return plane == null ? null : view(plane);
+  }
+
+  /**
+   * Create a private view over the whole plane, whatever position and limit it has.
+   */
+  private static ByteBuffer view(ByteBuffer plane) {
+    ByteBuffer view = plane.duplicate();
+    ((Buffer) view).clear();
+    return view;
+  }
+
+  /**
+   * Get the left of region in rotated coordinates.
+   */
+  public int getLeft() {
+    return left;
+  }
+
+  /**
+   * Get the top of region in rotated coordinates.
+   */
+  public int getTop() {
+    return top;
+  }
+
+  /**
+   * Get the clockwise rotation applied to the camera frame.
+   */
+  public int getRotation() {
+    return rotation;
+  }
+
+  /**
+   * Get the number of frame pixels each pixel of this source stands for in both directions.
+   */
+  public int getSample() {
+    return sample;
+  }
+
+  /**
+   * Check if the rotated frame is mirrored horizontally.
+   */
+  public boolean isMirrored() {
+    return mirror;
+  }
+}
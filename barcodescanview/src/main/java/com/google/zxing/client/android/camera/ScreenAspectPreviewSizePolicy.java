@@ -0,0 +1,57 @@
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import com.google.zxing.BarcodeFormat;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link PreviewSizePolicy} which chooses the size closest to the aspect ratio of screen
+ * between 470x320 and 1280x720, whatever the formats to decode. This is how the preview size was
+ * always chosen by ZXing.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class ScreenAspectPreviewSizePolicy implements PreviewSizePolicy {
+  // This is bigger than the size of a small screen, which is still supported. The routine
+  // below will still select the default (presumably 320x240) size for these. This prevents
+  // accidental selection of very low screenResolution on some devices.
+  static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
+  static final int MAX_PREVIEW_PIXELS = 1280 * 720;
+
+  @Override public PreviewSizeChoice choose(List<Point> sizes, Point screenResolution,
+      Rect framingRect, Collection<BarcodeFormat> formats) {
+    Point bestSize = null;
+    float screenAspectRatio = (float) screenResolution.x / (float) screenResolution.y;
+
+    float diff = Float.POSITIVE_INFINITY;
+    for (Point supportedPreviewSize : sizes) {
+      int realWidth = supportedPreviewSize.x;
+      int realHeight = supportedPreviewSize.y;
+      int pixels = realWidth * realHeight;
+      if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
+        continue;
+      }
+
+      // This code is modified since We're using portrait mode
+      boolean isCandidateLandscape = realWidth > realHeight;
+      int maybeFlippedWidth = isCandidateLandscape ? realHeight : realWidth;
+      int maybeFlippedHeight = isCandidateLandscape ? realWidth : realHeight;
+
+      if (maybeFlippedWidth == screenResolution.x && maybeFlippedHeight == screenResolution.y) {
+        return new PreviewSizeChoice(supportedPreviewSize, "exactly matching screen size");
+      }
+      float aspectRatio = (float) maybeFlippedWidth / (float) maybeFlippedHeight;
+      float newDiff = Math.abs(aspectRatio - screenAspectRatio);
+      /* on a tie, the larger size wins */
+      if (newDiff < diff || newDiff == diff && pixels > bestSize.x * bestSize.y) {
+        bestSize = supportedPreviewSize;
+        diff = newDiff;
+      }
+    }
+
+    return bestSize == null ? null
+        : new PreviewSizeChoice(bestSize, "closest to aspect ratio of screen");
+  }
+}
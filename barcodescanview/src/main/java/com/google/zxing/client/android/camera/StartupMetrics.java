@@ -0,0 +1,91 @@
+package com.google.zxing.client.android.camera;
+
+/**
+ * A snapshot of how long the camera took to start the last time it was opened, by phase: open
+ * the device, configure it, deliver the first frame and decode the first frame. First frame and
+ * first decode are counted from when opening started, so they include waiting for the surface.
+ * All times are in microseconds. On a legacy camera, configuring camera is faster once its
+ * capabilities and a configuration it accepted are cached from an earlier launch, see
+ * {@link #isCapabilityCacheHit()} and {@link #getConfigureTimeSaved()}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class StartupMetrics {
+  private final long openTime;
+  private final long configureTime;
+  private final long configureTimeSaved;
+  private final long timeToFirstFrame;
+  private final long timeToFirstDecode;
+  private final boolean capabilityCacheHit;
+
+  StartupMetrics(long openTime, long configureTime, long configureTimeSaved,
+      long timeToFirstFrame, long timeToFirstDecode, boolean capabilityCacheHit) {
+    this.openTime = openTime;
+    this.configureTime = configureTime;
+    this.configureTimeSaved = configureTimeSaved;
+    this.timeToFirstFrame = timeToFirstFrame;
+    this.timeToFirstDecode = timeToFirstDecode;
+    this.capabilityCacheHit = capabilityCacheHit;
+  }
+
+  /**
+   * Get the time to open the camera device, 0 if camera was never opened.
+   */
+  public long getOpenTime() {
+    return openTime;
+  }
+
+  /**
+   * Get the time to configure camera once the device is open.
+   */
+  public long getConfigureTime() {
+    return configureTime;
+  }
+
+  /**
+   * Get how much faster camera was configured thanks to cached capabilities, compared to the
+   * launch which cached them. 0 if the cache was not hit.
+   */
+  public long getConfigureTimeSaved() {
+    return configureTimeSaved;
+  }
+
+  /**
+   * Get the time from starting to open camera to the first preview frame, or -1 if no frame
+   * arrived yet.
+   */
+  public long getTimeToFirstFrame() {
+    return timeToFirstFrame;
+  }
+
+  /**
+   * Get the time from starting to open camera to the first frame run through readers, or -1 if
+   * no frame was decoded yet.
+   */
+  public long getTimeToFirstDecode() {
+    return timeToFirstDecode;
+  }
+
+  /**
+   * Check if camera was configured from capabilities cached on an earlier launch.
+   */
+  public boolean isCapabilityCacheHit() {
+    return capabilityCacheHit;
+  }
+
+  @Override public String toString() {
+    return "{open "
+        + openTime
+        + ", configure "
+        + configureTime
+        + ", saved "
+        + configureTimeSaved
+        + ", first frame "
+        + timeToFirstFrame
+        + ", first decode "
+        + timeToFirstDecode
+        + ", cache "
+        + (capabilityCacheHit ? "hit" : "miss")
+        + '}';
+  }
+}
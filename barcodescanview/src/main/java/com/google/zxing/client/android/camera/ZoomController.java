@@ -0,0 +1,183 @@
+package com.google.zxing.client.android.camera;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * This class zooms camera in toward bar codes too far away to decode, on the thread camera
+ * delivers its callbacks on. Readers report the candidate points they find, such as the finder
+ * patterns of a QR code, long before they decode anything. When the points of consecutive frames
+ * span only a small part of the framing rect, the bar code is too small at the current resolution,
+ * so zoom is stepped in, one step at a time to let the frames after a step come in. Zoom is reset
+ * once a bar code was decoded, or when nothing decoded for a while since the last step. Zoom is
+ * applied while preview keeps running. Signals can be sent from any thread.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ZoomController extends Handler {
+  private static final String TAG = ZoomController.class.getSimpleName();
+
+  /* points spanning less than this fraction of the framing rect are too small */
+  static final float SMALL_SPREAD = 0.25f;
+  /* consecutive frames with small points before stepping in */
+  static final int SPREADS_BEFORE_ZOOM = 3;
+  /* zoom ratio is multiplied by this each step, up to the largest ratio below */
+  static final float ZOOM_STEP = 1.5f;
+  static final float MAX_ZOOM = 4f;
+  /* least time between two steps, for frames at the new zoom to come in */
+  static final long STEP_INTERVAL_MS = 600L;
+  /* zoom is reset if nothing was decoded for this long since the last step */
+  static final long RESET_TIMEOUT_MS = 4000L;
+
+  private static final int MESSAGE_START = 1;
+  private static final int MESSAGE_STOP = 2;
+  private static final int MESSAGE_SPREAD = 3;
+  private static final int MESSAGE_RESET = 4;
+
+  private final Zoomer zoomer;
+  private volatile boolean enabled;
+
+  /* only touched on the thread of this handler */
+  private boolean running;
+  private float zoom = 1f;
+  private int smallSpreads;
+  private long lastStepTime;
+
+  /**
+   * Interface defination for a callback to be invoked on the thread of {@link ZoomController}
+   * to zoom camera.
+   */
+  interface Zoomer {
+    /**
+     * Zoom camera without stopping preview.
+     *
+     * @param ratio zoom ratio, 1 for no zoom
+     * @return the ratio applied, which is the closest camera supports up to its largest, or 1 if
+     * camera can not zoom
+     */
+    float setZoom(float ratio);
+  }
+
+  /**
+   * Create a controller.
+   *
+   * @param looper looper of the thread camera delivers its callbacks on
+   * @param zoomer {@link Zoomer}
+   */
+  ZoomController(Looper looper, Zoomer zoomer) {
+    super(looper);
+    this.zoomer = zoomer;
+  }
+
+  /**
+   * Set whether camera zooms in toward small bar codes, default is false.
+   *
+   * @param enabled enabled or not
+   */
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      reset();
+    }
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Start controlling, as soon as preview started.
+   */
+  void start() {
+    sendEmptyMessage(MESSAGE_START);
+  }
+
+  /**
+   * Stop controlling before preview stops. Signals not handled yet are dropped.
+   */
+  void stop() {
+    removeCallbacksAndMessages(null);
+    sendEmptyMessage(MESSAGE_STOP);
+  }
+
+  /**
+   * Tell how much of the framing rect the points found in a frame span.
+   *
+   * @param spread larger of width and height of the points, as a fraction of the framing rect
+   */
+  void onResultPointSpread(float spread) {
+    obtainMessage(MESSAGE_SPREAD, Float.floatToIntBits(spread), 0).sendToTarget();
+  }
+
+  /**
+   * Zoom back out, such as when a bar code was decoded.
+   */
+  void reset() {
+    sendEmptyMessage(MESSAGE_RESET);
+  }
+
+  @Override public void handleMessage(Message msg) {
+    switch (msg.what) {
+      case MESSAGE_START:
+        running = true;
+        smallSpreads = 0;
+        lastStepTime = 0L;
+        /* camera may keep the zoom of last preview */
+        zoomOut();
+        break;
+
+      case MESSAGE_STOP:
+        running = false;
+        break;
+
+      case MESSAGE_SPREAD:
+        if (running && enabled) {
+          onSpread(Float.intBitsToFloat(msg.arg1));
+        }
+        break;
+
+      case MESSAGE_RESET:
+        if (running) {
+          smallSpreads = 0;
+          zoomOut();
+        }
+        break;
+    }
+  }
+
+  private void onSpread(float spread) {
+    if (spread >= SMALL_SPREAD) {
+      smallSpreads = 0;
+      return;
+    }
+
+    long now = SystemClock.elapsedRealtime();
+    if (++smallSpreads < SPREADS_BEFORE_ZOOM || now - lastStepTime < STEP_INTERVAL_MS) {
+      return;
+    }
+
+    float applied = zoomer.setZoom(Math.min(zoom * ZOOM_STEP, MAX_ZOOM));
+    smallSpreads = 0;
+    if (applied <= zoom) {
+      /* camera is out of zoom */
+      return;
+    }
+
+    Log.i(TAG, "Zooming in to " + applied + " at spread " + spread);
+    zoom = applied;
+    lastStepTime = now;
+    removeMessages(MESSAGE_RESET);
+    sendEmptyMessageDelayed(MESSAGE_RESET, RESET_TIMEOUT_MS);
+  }
+
+  private void zoomOut() {
+    removeMessages(MESSAGE_RESET);
+    if (zoom > 1f) {
+      Log.i(TAG, "Resetting zoom from " + zoom);
+      zoom = zoomer.setZoom(1f);
+    }
+  }
+}
@@ -30,6 +30,10 @@ import android.hardware.Camera;
     this.orientation = orientation;
   }
 
+  public int getIndex() {
+    return index;
+  }
+
   public Camera getCamera() {
     return camera;
   }
@@ -0,0 +1,87 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of binarizer and readers on the framing rect of a portrait frame, per format. All
+ * formats are enabled like by default, so the scheduled reader has to learn which one to try.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeBenchmark {
+  @Param({ "QR_CODE", "EAN_13", "CODE_128", "DATA_MATRIX", "PDF_417", "AZTEC" })
+  BarcodeFormat format;
+  @Param({ "global", "hybrid" }) String binarizer;
+  @Param({ "1280x720" }) String previewSize;
+
+  private LuminanceSource source;
+  private ScheduledMultiFormatReader scheduledReader;
+  private MultiFormatReader multiFormatReader;
+  private DecodeTier tier;
+  private int frame;
+
+  @Setup public void setUp() throws NotFoundException {
+    int[] size = SyntheticFrames.parseSize(previewSize);
+    int width = size[0];
+    int height = size[1];
+    byte[] data = SyntheticFrames.frame(width, height, format, true);
+    /* portrait frame, the region holds the code with some room around */
+    int regionSize = height * 3 / 4;
+    source = new RotatedYUVLuminanceSource(data, width, height, 90, false,
+        (height - regionSize) / 2, (width - regionSize) / 2, regionSize, regionSize);
+
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    scheduledReader = new ScheduledMultiFormatReader(new ReaderScheduler());
+    scheduledReader.setHints(hints);
+    multiFormatReader = new MultiFormatReader();
+    multiFormatReader.setHints(hints);
+    tier = new DecodeTier(1,
+        ("hybrid".equals(binarizer) ? DecodeTier.HYBRID_BINARIZER : 0) | DecodeTier.ALL_FORMATS);
+
+    /* fail early if the synthetic frame can not be decoded at all */
+    Result result = multiFormatReader();
+    if (result.getBarcodeFormat() != format) {
+      throw new IllegalStateException("Decoded " + result.getBarcodeFormat() + " for " + format);
+    }
+  }
+
+  private BinaryBitmap bitmap() {
+    Binarizer b = "hybrid".equals(binarizer) ? new HybridBinarizer(source)
+        : new GlobalHistogramBinarizer(source);
+    return new BinaryBitmap(b);
+  }
+
+  @Benchmark public Result scheduledReader() throws NotFoundException {
+    return scheduledReader.decode(bitmap(), null, frame++, tier);
+  }
+
+  @Benchmark public Result multiFormatReader() throws NotFoundException {
+    return multiFormatReader.decodeWithState(bitmap());
+  }
+}
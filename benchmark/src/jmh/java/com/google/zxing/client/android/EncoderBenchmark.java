@@ -0,0 +1,66 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the pixel loops of {@code Encoder.generateBarcodeBitmap} and
+ * {@code Encoder.createQRCodeBitmap}, against the per pixel loop they used to run.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncoderBenchmark {
+  private static final int BLACK = 0xff000000;
+  private static final int WHITE = 0xffffffff;
+
+  @Param({ "CODE_128", "QR_CODE" }) BarcodeFormat format;
+  @Param({ "256", "512", "1024" }) int size;
+
+  private BitMatrix matrix;
+
+  @Setup public void setUp() throws WriterException {
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.CHARACTER_SET, "utf-8");
+    matrix = new MultiFormatWriter().encode(SyntheticFrames.contentOf(format), format, size,
+        format == BarcodeFormat.QR_CODE ? size : size / 3, hints);
+  }
+
+  @Benchmark public BitMatrix encode() throws WriterException {
+    return new MultiFormatWriter().encode(SyntheticFrames.contentOf(format), format, size,
+        format == BarcodeFormat.QR_CODE ? size : size / 3);
+  }
+
+  @Benchmark public int[] pixels() {
+    return BitMatrixPixels.toPixels(matrix, BLACK, WHITE);
+  }
+
+  @Benchmark public int[] perPixelBaseline() {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        pixels[offset + x] = matrix.get(x, y) ? BLACK : WHITE;
+      }
+    }
+    return pixels;
+  }
+}
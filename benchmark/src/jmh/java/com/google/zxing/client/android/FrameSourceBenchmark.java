@@ -0,0 +1,115 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.client.android.camera.FakeFrameSource;
+import com.google.zxing.client.android.camera.Frame;
+import com.google.zxing.client.android.camera.FrameSource;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of {@link FrameDecoder} fed by a {@link FakeFrameSource} instead of camera: each
+ * frame is requested, delivered, decoded and released, the way {@code DecodeHandler} does on the
+ * device, without camera manager or decode threads. Frames are made by
+ * {@link SyntheticFrameGenerator}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameSourceBenchmark implements FrameSource.Callback, FrameDecoder.Listener {
+  private static final int ROTATION = 90;
+
+  @Param({ "1280x720" }) String previewSize;
+  @Param({ "64" }) int frameCount;
+  @Param({ "1" }) long seed;
+
+  private SyntheticFrame[] frames;
+  private FakeFrameSource frameSource;
+  private FrameDecoder frameDecoder;
+  private Frame delivered;
+  private int sequence;
+
+  @Setup public void setUp() {
+    int[] size = SyntheticFrames.parseSize(previewSize);
+    SyntheticFrameGenerator generator = new SyntheticFrameGenerator(size[0], size[1], seed);
+    generator.setRotation(ROTATION);
+    frames = new SyntheticFrame[frameCount];
+    for (int i = 0; i < frameCount; i++) {
+      frames[i] = generator.frame(i);
+    }
+    frameSource = new FakeFrameSource(size[0], size[1], ROTATION, 1, new Iterator<byte[]>() {
+      private int next;
+
+      @Override public boolean hasNext() {
+        return true;
+      }
+
+      @Override public byte[] next() {
+        return frames[next++ % frames.length].data;
+      }
+
+      @Override public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    });
+    frameSource.setCallback(this);
+
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    ScheduledMultiFormatReader multiFormatReader =
+        new ScheduledMultiFormatReader(new ReaderScheduler());
+    multiFormatReader.setHints(hints);
+    frameDecoder = new FrameDecoder(multiFormatReader, new DecodeLadder(), new MotionDetector(),
+        new ResultCache(), new DecodeStatistics(), this);
+    frameDecoder.setOptions(FrameQualityGate.DEFAULT, false, false);
+  }
+
+  @Benchmark public int pipeline(SyntheticCorpusBenchmark.Outcomes outcomes) {
+    SyntheticFrame expected = frames[sequence % frames.length];
+    frameSource.requestFrame();
+    Frame frame = delivered;
+    delivered = null;
+    try {
+      RotatedYUVLuminanceSource source = new RotatedYUVLuminanceSource(frame.getData(),
+          frame.getWidth(), frame.getHeight(), frameSource.getRotation(), false);
+      int outcome = frameDecoder.decode(source, sequence++, System.nanoTime(),
+          frameSource.isFocusing());
+      if (outcome != FrameDecoder.OUTCOME_DECODED) {
+        outcomes.failed++;
+      } else if (frameDecoder.getResults()[0].getText().equals(expected.content)) {
+        outcomes.decoded++;
+      } else {
+        outcomes.misread++;
+      }
+      return outcome;
+    } finally {
+      frameSource.releaseFrame(frame);
+    }
+  }
+
+  @Override public boolean onFrame(FrameSource source, Frame frame) {
+    delivered = frame;
+    return true;
+  }
+
+  @Override public void onDecodeTier(DecodeTier tier) {
+  }
+
+  @Override public void onFrameQuality(FrameQuality quality) {
+  }
+}
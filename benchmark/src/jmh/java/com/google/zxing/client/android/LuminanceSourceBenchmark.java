@@ -0,0 +1,95 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the rotation and crop of NV21 frames done while decoding, as in
+ * {@code CameraManager.buildLuminanceSource} and {@code DecodeHandler.decode}. The Y plane is
+ * either a packed array like legacy camera delivers, or a direct buffer with padded rows like
+ * Camera2 delivers.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LuminanceSourceBenchmark {
+  /* padding of rows in direct planes, like the alignment of many camera HALs */
+  private static final int ROW_PADDING = 64;
+
+  @Param({ "640x480", "1280x720", "1920x1080" }) String previewSize;
+  @Param({ "0", "90" }) int rotation;
+  @Param({ "heap", "direct" }) String plane;
+
+  private byte[] data;
+  private ByteBuffer directPlane;
+  private int rowStride;
+  private int width;
+  private int height;
+  private int left;
+  private int top;
+  private int regionWidth;
+  private int regionHeight;
+  private RotatedYUVLuminanceSource source;
+  private byte[] row;
+
+  @Setup public void setUp() {
+    int[] size = SyntheticFrames.parseSize(previewSize);
+    width = size[0];
+    height = size[1];
+    data = SyntheticFrames.frame(width, height, BarcodeFormat.QR_CODE, rotation == 90);
+    if ("direct".equals(plane)) {
+      rowStride = width + ROW_PADDING;
+      directPlane = ByteBuffer.allocateDirect(rowStride * height);
+      for (int y = 0; y < height; y++) {
+        directPlane.position(y * rowStride);
+        directPlane.put(data, y * width, width);
+      }
+    }
+
+    /* a centered framing rect in rotated coordinates, like the default one */
+    int rotatedWidth = rotation == 90 ? height : width;
+    int rotatedHeight = rotation == 90 ? width : height;
+    regionWidth = Math.min(rotatedWidth, rotatedHeight) * 5 / 8;
+    regionHeight = regionWidth;
+    left = (rotatedWidth - regionWidth) / 2;
+    top = (rotatedHeight - regionHeight) / 2;
+    source = buildLuminanceSource();
+    row = new byte[regionWidth];
+  }
+
+  @Benchmark public RotatedYUVLuminanceSource buildLuminanceSource() {
+    if (directPlane != null) {
+      return new RotatedYUVLuminanceSource(directPlane, rowStride, 1, width, height, rotation,
+          false, left, top, regionWidth, regionHeight, 1);
+    }
+    return new RotatedYUVLuminanceSource(data, width, height, rotation, false, left, top,
+        regionWidth, regionHeight);
+  }
+
+  @Benchmark public byte[] matrix() {
+    return source.getMatrix();
+  }
+
+  @Benchmark public void rows(Blackhole blackhole) {
+    for (int y = 0; y < regionHeight; y++) {
+      blackhole.consume(source.getRow(y, row));
+    }
+  }
+
+  @Benchmark public byte[] downsampledMatrix() {
+    return source.downsample(2).getMatrix();
+  }
+}
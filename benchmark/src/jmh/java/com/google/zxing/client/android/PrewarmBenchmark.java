@@ -0,0 +1,76 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the first frame decoded by a fresh JVM, with and without {@link DecodePrewarmer}
+ * run before it, which is what the first scan after opening the view costs. Every fork measures a
+ * single cold shot, so run it without warmup and with many forks, such as
+ * {@code -wi 0 -i 1 -f 10}, as the settings of the jmh task would warm the decoder up.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class PrewarmBenchmark {
+  private static final int ROTATION = 90;
+
+  @Param({ "false", "true" }) boolean prewarm;
+  @Param({ "1280x720" }) String previewSize;
+
+  private FrameDecoder frameDecoder;
+  private RotatedYUVLuminanceSource source;
+
+  @Setup public void setUp() {
+    Set<BarcodeFormat> formats = EnumSet.copyOf(SyntheticFrameGenerator.SUPPORTED_FORMATS);
+    if (prewarm) {
+      new DecodePrewarmer().prewarm(formats, DecodeTier.defaultLadder());
+    }
+
+    int[] size = SyntheticFrames.parseSize(previewSize);
+    SyntheticFrameGenerator generator = new SyntheticFrameGenerator(size[0], size[1], 1L);
+    generator.setRotation(ROTATION);
+    SyntheticFrame frame = generator.frame(0);
+    source = new RotatedYUVLuminanceSource(frame.data, frame.width, frame.height, ROTATION, false);
+
+    ScheduledMultiFormatReader multiFormatReader =
+        new ScheduledMultiFormatReader(new ReaderScheduler());
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+    multiFormatReader.setHints(hints);
+    frameDecoder = new FrameDecoder(multiFormatReader, new DecodeLadder(), new MotionDetector(),
+        new ResultCache(), new DecodeStatistics(), new FrameDecoder.Listener() {
+      @Override public void onDecodeTier(DecodeTier tier) {
+      }
+
+      @Override public void onFrameQuality(FrameQuality quality) {
+      }
+    });
+  }
+
+  @Benchmark public int decodeFirstFrame() {
+    return frameDecoder.decode(source, 0, System.nanoTime(), false);
+  }
+}
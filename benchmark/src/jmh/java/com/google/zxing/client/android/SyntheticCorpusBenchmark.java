@@ -0,0 +1,115 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of decoder over a seeded corpus of degraded portrait frames made by
+ * {@link SyntheticFrameGenerator}, the way they come from camera. Besides the time per frame,
+ * the frames decoded and failed are counted, so a change can be checked for both speed and
+ * decode rate. The generator itself is measured too, to soak test without a camera.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SyntheticCorpusBenchmark {
+  private static final int ROTATION = 90;
+
+  @Param({ "clean", "degraded" }) String corpus;
+  @Param({ "1280x720" }) String previewSize;
+  @Param({ "64" }) int frameCount;
+  @Param({ "1" }) long seed;
+
+  private SyntheticFrameGenerator generator;
+  private SyntheticFrame[] frames;
+  private ScheduledMultiFormatReader scheduledReader;
+  private DecodeTier tier;
+  private byte[] buffer;
+  private int frame;
+
+  @Setup public void setUp() {
+    int[] size = SyntheticFrames.parseSize(previewSize);
+    generator = new SyntheticFrameGenerator(size[0], size[1], seed);
+    generator.setRotation(ROTATION);
+    if ("degraded".equals(corpus)) {
+      generator.setMaxAngle(30f);
+      generator.setMaxPerspective(0.1f);
+      generator.setMaxBlur(2f);
+      generator.setMaxNoise(4f);
+      generator.setGlareChance(0.3f);
+      generator.setContrast(0.3f, 0.8f);
+    }
+    frames = new SyntheticFrame[frameCount];
+    for (int i = 0; i < frameCount; i++) {
+      frames[i] = generator.frame(i);
+    }
+
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    scheduledReader = new ScheduledMultiFormatReader(new ReaderScheduler());
+    scheduledReader.setHints(hints);
+    tier = new DecodeTier(1, DecodeTier.HYBRID_BINARIZER | DecodeTier.ALL_FORMATS);
+  }
+
+  @Benchmark public Result decode(Outcomes outcomes) {
+    SyntheticFrame next = frames[frame++ % frames.length];
+    BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(
+        new RotatedYUVLuminanceSource(next.data, next.width, next.height, ROTATION, false)));
+    try {
+      Result result = scheduledReader.decode(bitmap, null, frame, tier);
+      if (result.getText().equals(next.content)) {
+        outcomes.decoded++;
+      } else {
+        outcomes.misread++;
+      }
+      return result;
+    } catch (NotFoundException e) {
+      outcomes.failed++;
+      return null;
+    }
+  }
+
+  @Benchmark public SyntheticFrame generate() {
+    SyntheticFrame next = generator.frame(frame++, buffer);
+    buffer = next.data;
+    return next;
+  }
+
+  /**
+   * Frames decoded, misread and failed, reported by JMH next to the time per frame.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Outcomes {
+    public long decoded;
+    public long misread;
+    public long failed;
+
+    @Setup(Level.Iteration) public void reset() {
+      decoded = 0;
+      misread = 0;
+      failed = 0;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Synthetic NV21 preview frames holding a bar code, so benchmarks need no camera.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class SyntheticFrames {
+  static final int DARK = 30;
+  static final int LIGHT = 220;
+
+  private SyntheticFrames() {
+  }
+
+  /**
+   * Get the content to encode for a format, valid for its writer.
+   */
+  static String contentOf(BarcodeFormat format) {
+    switch (format) {
+      case EAN_13:
+        return "5901234123457";
+      case EAN_8:
+        return "96385074";
+      case UPC_A:
+        return "036000291452";
+      case CODE_128:
+        return "BarCodeScanView-128";
+      case CODE_39:
+        return "BARCODE39";
+      case ITF:
+        return "00012345678905";
+      default:
+        return "https://github.com/anbillon/Android-BarCodeScanView";
+    }
+  }
+
+  /**
+   * Parse a preview size such as "1280x720".
+   *
+   * @return width and height
+   */
+  static int[] parseSize(String size) {
+    int x = size.indexOf('x');
+    return new int[] {
+        Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1))
+    };
+  }
+
+  /**
+   * Build a landscape NV21 frame as delivered by camera, with a bar code in the middle. The code
+   * is drawn rotated by 90 degrees counter clockwise, so it reads upright once the frame is
+   * rotated to portrait like on a phone held upright.
+   *
+   * @param width width of frame
+   * @param height height of frame
+   * @param format format of bar code
+   * @param rotated draw the code rotated for portrait or not
+   * @return NV21 frame data
+   */
+  static byte[] frame(int width, int height, BarcodeFormat format, boolean rotated) {
+    BitMatrix matrix = encode(format, Math.min(width, height) / 2);
+    byte[] data = new byte[width * height * 3 / 2];
+    for (int i = 0; i < width * height; i++) {
+      data[i] = (byte) LIGHT;
+    }
+    /* chroma planes stay neutral */
+    for (int i = width * height; i < data.length; i++) {
+      data[i] = (byte) 128;
+    }
+
+    int codeWidth = rotated ? matrix.getHeight() : matrix.getWidth();
+    int codeHeight = rotated ? matrix.getWidth() : matrix.getHeight();
+    int left = (width - codeWidth) / 2;
+    int top = (height - codeHeight) / 2;
+    for (int y = 0; y < codeHeight; y++) {
+      for (int x = 0; x < codeWidth; x++) {
+        /* rotating back clockwise maps frame (x, y) to code (codeHeight - 1 - y, x) */
+        boolean on = rotated ? matrix.get(codeHeight - 1 - y, x) : matrix.get(x, y);
+        if (on) {
+          data[(top + y) * width + left + x] = (byte) DARK;
+        }
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Encode the content of a format, about size pixels on the longest side.
+   */
+  static BitMatrix encode(BarcodeFormat format, int size) {
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.MARGIN, 0);
+    boolean oneD = ReaderScheduler.familyOf(format) == ReaderScheduler.FAMILY_ONE_D;
+    BitMatrix matrix;
+    try {
+      matrix = new MultiFormatWriter().encode(contentOf(format), format, size,
+          oneD ? size / 3 : size, hints);
+    } catch (WriterException e) {
+      throw new IllegalArgumentException(e);
+    }
+    return scale(matrix, size / Math.max(matrix.getWidth(), matrix.getHeight()));
+  }
+
+  /**
+   * Scale a matrix up by an integer factor, some writers such as data matrix ignore the size
+   * asked and output one pixel per module.
+   */
+  private static BitMatrix scale(BitMatrix matrix, int factor) {
+    if (factor <= 1) {
+      return matrix;
+    }
+
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    BitMatrix scaled = new BitMatrix(width * factor, height * factor);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (matrix.get(x, y)) {
+          scaled.setRegion(x * factor, y * factor, factor, factor);
+        }
+      }
+    }
+    return scaled;
+  }
+}
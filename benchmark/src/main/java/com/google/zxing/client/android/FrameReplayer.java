@@ -0,0 +1,196 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays a recording made with {@code BarCodeScanView.startFrameRecording} through the same
+ * {@link FrameDecoder} as the device, as fast as possible. Every frame is checked against the
+ * outcome recorded on the device, and the throughput of decoder is reported.
+ *
+ * <pre>
+ * ./gradlew :benchmark:replay -Precording=/path/to/recording
+ * </pre>
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class FrameReplayer implements FrameDecoder.Listener {
+  private static final int MAX_MISMATCHES_PRINTED = 20;
+
+  private final ReaderScheduler readerScheduler = new ReaderScheduler();
+  private final DecodeLadder decodeLadder = new DecodeLadder();
+  private final MotionDetector motionDetector = new MotionDetector();
+  private final ResultCache resultCache = new ResultCache();
+  private final DecodeStatistics statistics = new DecodeStatistics();
+  private final ScheduledMultiFormatReader multiFormatReader =
+      new ScheduledMultiFormatReader(readerScheduler);
+  private final FrameDecoder frameDecoder = new FrameDecoder(multiFormatReader, decodeLadder,
+      motionDetector, resultCache, statistics, this);
+  /* outcomes replayed and not yet checked, by sequence */
+  private final Map<Integer, Outcome> replayed = new HashMap<>();
+
+  private long frames;
+  private long matches;
+  private long mismatches;
+  private long decodeTime;
+
+  private FrameReplayer() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: FrameReplayer <recording>");
+      System.exit(2);
+    }
+
+    FrameReplayer replayer = new FrameReplayer();
+    FrameRecording recording = new FrameRecording(new File(args[0]));
+    try {
+      replayer.replay(recording);
+    } finally {
+      recording.close();
+    }
+    replayer.report();
+    System.exit(replayer.mismatches == 0 ? 0 : 1);
+  }
+
+  private void replay(FrameRecording recording) throws IOException {
+    byte[] plane = null;
+    int type;
+    while ((type = recording.next()) != FrameRecording.END) {
+      switch (type) {
+        case FrameRecorder.RECORD_CONFIG:
+          configure(recording);
+          break;
+
+        case FrameRecorder.RECORD_FRAME:
+          if (!recording.hasConfig()) {
+            throw new IOException("Frame recorded before config.");
+          }
+          plane = recording.readPlane(plane);
+          RotatedYUVLuminanceSource source = recording.buildLuminanceSource(plane);
+          long start = System.nanoTime();
+          int outcome = frameDecoder.decode(source, recording.getSequence(),
+              recording.getFrameTime(), recording.isFocusing());
+          decodeTime += System.nanoTime() - start;
+          frames++;
+          replayed.put(recording.getSequence(),
+              new Outcome(outcome, frameDecoder.getTier(), frameDecoder.getResults()));
+          break;
+
+        case FrameRecorder.RECORD_OUTCOME:
+          Outcome expected = new Outcome(recording.getOutcome(), recording.getTier(),
+              recording.getResults());
+          check(recording.getSequence(), expected, replayed.remove(recording.getSequence()));
+          break;
+      }
+    }
+  }
+
+  /**
+   * Start a new session with the config recorded, like the device did when recording started.
+   */
+  private void configure(FrameRecording recording) {
+    readerScheduler.reset();
+    decodeLadder.reset();
+    motionDetector.reset();
+    resultCache.clear();
+    recording.configure(decodeLadder, motionDetector, readerScheduler, resultCache);
+
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, recording.getDecodeFormats());
+    multiFormatReader.setHints(hints);
+    frameDecoder.setOptions(recording.getFrameQualityGate(), recording.isMultiDecode(),
+        recording.isContinuous());
+  }
+
+  private void check(int sequence, Outcome expected, Outcome actual) {
+    if (actual == null) {
+      /* the frame itself was dropped, e.g. the recording was full */
+      return;
+    }
+    if (expected.equals(actual)) {
+      matches++;
+      return;
+    }
+
+    if (mismatches++ < MAX_MISMATCHES_PRINTED) {
+      System.out.println("frame " + sequence + ": device " + expected + ", replay " + actual);
+    }
+  }
+
+  private void report() {
+    long millis = decodeTime / 1000000L;
+    System.out.println("frames " + frames
+        + ", decoded " + statistics.getFramesDecoded()
+        + ", failed " + statistics.getFramesFailed()
+        + ", skipped " + statistics.getFramesSkipped());
+    if (frames > 0) {
+      System.out.println("decode time " + millis + " ms, "
+          + String.format("%.1f", frames * 1e9 / Math.max(1L, decodeTime)) + " frames/s, "
+          + String.format("%.3f", decodeTime / 1e6 / frames) + " ms/frame");
+    }
+    System.out.println("outcomes matching device " + matches + "/" + (matches + mismatches)
+        + ", without outcome " + replayed.size());
+  }
+
+  @Override public void onDecodeTier(DecodeTier tier) {
+  }
+
+  @Override public void onFrameQuality(FrameQuality quality) {
+  }
+
+  /**
+   * The outcome of a frame, compared by outcome, tier and format and text of bar codes.
+   */
+  private static final class Outcome {
+    private final int outcome;
+    private final int tier;
+    private final Result[] results;
+
+    Outcome(int outcome, int tier, Result[] results) {
+      this.outcome = outcome;
+      this.tier = tier;
+      this.results = results == null ? new Result[0] : results;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof Outcome)) {
+        return false;
+      }
+
+      Outcome other = (Outcome) o;
+      if (outcome != other.outcome || tier != other.tier
+          || results.length != other.results.length) {
+        return false;
+      }
+      for (int i = 0; i < results.length; i++) {
+        if (results[i].getBarcodeFormat() != other.results[i].getBarcodeFormat()
+            || !results[i].getText().equals(other.results[i].getText())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override public int hashCode() {
+      return 31 * outcome + tier;
+    }
+
+    @Override public String toString() {
+      StringBuilder builder = new StringBuilder("{outcome ").append(outcome)
+          .append(", tier ").append(tier);
+      for (Result result : results) {
+        builder.append(", ").append(result.getBarcodeFormat()).append(' ')
+            .append(result.getText());
+      }
+      return builder.append('}').toString();
+    }
+  }
+}
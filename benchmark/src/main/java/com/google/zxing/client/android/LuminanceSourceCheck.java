@@ -0,0 +1,254 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link RotatedYUVLuminanceSource} presents exactly the pixels of a frame copied
+ * and rotated up front, the way {@code DecodeHandler} transposed every frame before decoding
+ * through it, and that readers decode the same from both. Every rotation, mirroring, sample of 1
+ * to 3, region, crop, row and matrix is compared, over packed arrays and strided buffers alike.
+ * Frames are synthetic, or the ones of a recording made with
+ * {@code BarCodeScanView.startFrameRecording} if given.
+ *
+ * <pre>
+ * ./gradlew :benchmark:checkLuminanceSource [-Precording=/path/to/recording]
+ * </pre>
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class LuminanceSourceCheck {
+  private static final int[] ROTATIONS = { 0, 90, 180, 270 };
+  private static final int MAX_SAMPLE = 3;
+  private static final int SYNTHETIC_FRAMES = 8;
+  private static final int MAX_MISMATCHES_PRINTED = 20;
+  /* padding of rows and stride of pixels in strided planes, like Camera2 may deliver */
+  private static final int ROW_PADDING = 64;
+  private static final int PIXEL_STRIDE = 2;
+
+  private final MultiFormatReader reader = new MultiFormatReader();
+  private long frames;
+  private long checks;
+  private long mismatches;
+
+  private LuminanceSourceCheck() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 1) {
+      System.err.println("Usage: LuminanceSourceCheck [recording]");
+      System.exit(2);
+    }
+
+    LuminanceSourceCheck check = new LuminanceSourceCheck();
+    if (args.length == 0) {
+      SyntheticFrameGenerator generator = new SyntheticFrameGenerator(640, 480, 1L);
+      generator.setRotation(90);
+      for (SyntheticFrame frame : generator.frames(SYNTHETIC_FRAMES)) {
+        check.check(frame.data, frame.width, frame.height);
+      }
+    } else {
+      FrameRecording recording = new FrameRecording(new File(args[0]));
+      try {
+        byte[] plane = null;
+        int type;
+        while ((type = recording.next()) != FrameRecording.END) {
+          if (type == FrameRecorder.RECORD_FRAME) {
+            plane = recording.readPlane(plane);
+            check.check(plane, recording.getWidth(), recording.getHeight());
+          }
+        }
+      } finally {
+        recording.close();
+      }
+    }
+
+    System.out.println("frames " + check.frames + ", checks " + check.checks
+        + ", mismatches " + check.mismatches);
+    System.exit(check.mismatches == 0 ? 0 : 1);
+  }
+
+  private void check(byte[] data, int width, int height) {
+    frames++;
+    ByteBuffer plane = stride(data, width, height);
+    int rowStride = width * PIXEL_STRIDE + ROW_PADDING;
+    /* the baseline itself, before any region or sample */
+    expect("transpose", transpose(data, width, height), rotate(data, width, height, 90, false));
+
+    for (int rotation : ROTATIONS) {
+      for (boolean mirror : new boolean[] { false, true }) {
+        int rotatedWidth = rotation % 180 == 0 ? width : height;
+        int rotatedHeight = rotation % 180 == 0 ? height : width;
+        byte[] rotated = rotate(data, width, height, rotation, mirror);
+        String frame = "frame " + frames + ", rotation " + rotation + ", mirror " + mirror;
+
+        expectDecoded(frame,
+            new PlanarYUVLuminanceSource(rotated, rotatedWidth, rotatedHeight, 0, 0, rotatedWidth,
+                rotatedHeight, false),
+            new RotatedYUVLuminanceSource(data, width, height, rotation, mirror));
+
+        int side = Math.min(rotatedWidth, rotatedHeight) * 5 / 8;
+        int[][] regions = {
+            { 0, 0, rotatedWidth, rotatedHeight },
+            { (rotatedWidth - side) / 2, (rotatedHeight - side) / 2, side, side },
+            { 3, 5, rotatedWidth - 7, rotatedHeight - 11 }
+        };
+        for (int[] region : regions) {
+          for (int sample = 1; sample <= MAX_SAMPLE; sample++) {
+            String what = frame + ", region " + Arrays.toString(region) + ", sample " + sample;
+            byte[] expected = sample(rotated, rotatedWidth, region, sample);
+            checkSource(what, expected, region[2] / sample,
+                new RotatedYUVLuminanceSource(data, width, height, rotation, mirror, region[0],
+                    region[1], region[2], region[3], sample));
+            checkSource(what + ", strided", expected, region[2] / sample,
+                new RotatedYUVLuminanceSource(plane, rowStride, PIXEL_STRIDE, width, height,
+                    rotation, mirror, region[0], region[1], region[2], region[3], sample));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compare the matrix, every row, a crop and a further downsample of a source with the pixels
+   * expected.
+   */
+  private void checkSource(String what, byte[] expected, int width,
+      RotatedYUVLuminanceSource source) {
+    int height = expected.length / width;
+    expect(what + ", matrix", expected, source.getMatrix());
+
+    byte[] row = null;
+    for (int y = 0; y < height; y++) {
+      row = source.getRow(y, row);
+      expect(what + ", row " + y, Arrays.copyOfRange(expected, y * width, (y + 1) * width),
+          Arrays.copyOf(row, width));
+    }
+
+    int[] crop = { width / 4, height / 3, width / 2, height / 2 };
+    expect(what + ", crop", sample(expected, width, crop, 1),
+        source.crop(crop[0], crop[1], crop[2], crop[3]).getMatrix());
+    expect(what + ", downsample", sample(expected, width, new int[] { 0, 0, width, height }, 2),
+        source.downsample(2).getMatrix());
+  }
+
+  private void expect(String what, byte[] expected, byte[] actual) {
+    checks++;
+    if (!Arrays.equals(expected, actual) && mismatches++ < MAX_MISMATCHES_PRINTED) {
+      System.out.println("pixels differ: " + what);
+    }
+  }
+
+  private void expectDecoded(String what, LuminanceSource expected, LuminanceSource actual) {
+    checks++;
+    Result expectedResult = decode(expected);
+    Result actualResult = decode(actual);
+    boolean same = expectedResult == null ? actualResult == null : actualResult != null
+        && expectedResult.getBarcodeFormat() == actualResult.getBarcodeFormat()
+        && expectedResult.getText().equals(actualResult.getText());
+    if (!same && mismatches++ < MAX_MISMATCHES_PRINTED) {
+      System.out.println("decoded differ: " + what + ", " + expectedResult + " / " + actualResult);
+    }
+  }
+
+  private Result decode(LuminanceSource source) {
+    try {
+      return reader.decode(new BinaryBitmap(new HybridBinarizer(source)));
+    } catch (ReaderException e) {
+      return null;
+    } finally {
+      reader.reset();
+    }
+  }
+
+  /**
+   * The copy {@code DecodeHandler} made of every frame before the rotating source, which only
+   * rotated clockwise by 90 degrees.
+   */
+  private static byte[] transpose(byte[] data, int width, int height) {
+    byte[] rotatedData = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        rotatedData[x * height + height - y - 1] = data[x + y * width];
+      }
+    }
+    return rotatedData;
+  }
+
+  /**
+   * Copy the Y plane rotated clockwise and mirrored after rotation, one pixel at a time.
+   */
+  private static byte[] rotate(byte[] data, int width, int height, int rotation, boolean mirror) {
+    int rotatedWidth = rotation % 180 == 0 ? width : height;
+    byte[] rotated = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int rx;
+        int ry;
+        switch (rotation) {
+          case 90:
+            rx = height - 1 - y;
+            ry = x;
+            break;
+          case 180:
+            rx = width - 1 - x;
+            ry = height - 1 - y;
+            break;
+          case 270:
+            rx = y;
+            ry = width - 1 - x;
+            break;
+          default:
+            rx = x;
+            ry = y;
+            break;
+        }
+        if (mirror) {
+          rx = rotatedWidth - 1 - rx;
+        }
+        rotated[ry * rotatedWidth + rx] = data[y * width + x];
+      }
+    }
+    return rotated;
+  }
+
+  /**
+   * Cut a region out of a packed image, keeping one pixel out of sample in both directions.
+   */
+  private static byte[] sample(byte[] image, int imageWidth, int[] region, int sample) {
+    int width = region[2] / sample;
+    int height = region[3] / sample;
+    byte[] sampled = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        sampled[y * width + x] =
+            image[(region[1] + y * sample) * imageWidth + region[0] + x * sample];
+      }
+    }
+    return sampled;
+  }
+
+  /**
+   * Copy the Y plane into a direct buffer with padded rows and interleaved pixels.
+   */
+  private static ByteBuffer stride(byte[] data, int width, int height) {
+    int rowStride = width * PIXEL_STRIDE + ROW_PADDING;
+    ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        plane.put(y * rowStride + x * PIXEL_STRIDE, data[y * width + x]);
+      }
+    }
+    return plane;
+  }
+}
@@ -0,0 +1,108 @@
+package com.google.zxing.client.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link DecodeLadder}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public class DecodeLadderTest {
+  private DecodeLadder decodeLadder;
+
+  @Before public void setUp() {
+    decodeLadder = new DecodeLadder();
+    decodeLadder.setTiers(new DecodeTier[] {
+        new DecodeTier(2, 0), new DecodeTier(1, 0), new DecodeTier(1, DecodeTier.TRY_HARDER)
+    });
+    decodeLadder.setFailuresPerTier(2);
+  }
+
+  @Test public void startsAtCheapestTier() {
+    assertEquals(0, decodeLadder.current());
+  }
+
+  @Test public void escalatesAfterFailuresPerTier() {
+    decodeLadder.onFailed(0);
+    assertEquals(0, decodeLadder.current());
+    decodeLadder.onFailed(0);
+    assertEquals(1, decodeLadder.current());
+    decodeLadder.onFailed(1);
+    decodeLadder.onFailed(1);
+    assertEquals(2, decodeLadder.current());
+  }
+
+  @Test public void wrapsAroundFromTopTier() {
+    fail(0);
+    fail(1);
+    fail(2);
+    assertEquals(0, decodeLadder.current());
+  }
+
+  @Test public void staleFailuresDoNotCount() {
+    fail(0);
+    /* workers still finishing frames started at the cheapest tier */
+    decodeLadder.onFailed(0);
+    decodeLadder.onFailed(0);
+    decodeLadder.onFailed(2);
+    assertEquals(1, decodeLadder.current());
+    decodeLadder.onFailed(1);
+    assertEquals(1, decodeLadder.current());
+  }
+
+  @Test public void successResets() {
+    fail(0);
+    decodeLadder.onFailed(1);
+    decodeLadder.onSucceeded();
+    assertEquals(0, decodeLadder.current());
+    /* failures counted before the success are forgotten */
+    decodeLadder.onFailed(0);
+    assertEquals(0, decodeLadder.current());
+  }
+
+  @Test public void newTiersReset() {
+    fail(0);
+    decodeLadder.setTiers(DecodeTier.defaultLadder());
+    assertEquals(0, decodeLadder.current());
+    assertEquals(DecodeTier.defaultLadder().length, decodeLadder.getTiers().length);
+  }
+
+  @Test public void staleIndexGetsTopTier() {
+    fail(0);
+    fail(1);
+    decodeLadder.setTiers(new DecodeTier[] { new DecodeTier(1, 0) });
+    assertEquals(1, decodeLadder.getTier(2).getSample());
+  }
+
+  @Test public void topTier() {
+    assertFalse(decodeLadder.isTopTier(0));
+    assertFalse(decodeLadder.isTopTier(1));
+    assertTrue(decodeLadder.isTopTier(2));
+  }
+
+  @Test public void singleTierStays() {
+    decodeLadder.setTiers(new DecodeTier[] { new DecodeTier(1, 0) });
+    fail(0);
+    assertEquals(0, decodeLadder.current());
+    assertTrue(decodeLadder.isTopTier(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void badFailuresPerTier() {
+    decodeLadder.setFailuresPerTier(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void noTiers() {
+    decodeLadder.setTiers(new DecodeTier[0]);
+  }
+
+  private void fail(int tier) {
+    for (int i = 0; i < decodeLadder.getFailuresPerTier(); i++) {
+      decodeLadder.onFailed(tier);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.client.android.camera.RotatedYUVLuminanceSource;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of how {@link FrameDecoder} drives {@link DecodeLadder}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public class FrameDecoderTest {
+  private static final int ROTATION = 90;
+
+  private final DecodeLadder decodeLadder = new DecodeLadder();
+  private final MotionDetector motionDetector = new MotionDetector();
+  private FrameDecoder frameDecoder;
+  private RotatedYUVLuminanceSource source;
+
+  @Before public void setUp() {
+    SyntheticFrameGenerator generator = new SyntheticFrameGenerator(640, 480, 1L);
+    generator.setRotation(ROTATION);
+    SyntheticFrame frame = generator.frame(0);
+    source = new RotatedYUVLuminanceSource(frame.data, frame.width, frame.height, ROTATION, false);
+
+    ScheduledMultiFormatReader multiFormatReader =
+        new ScheduledMultiFormatReader(new ReaderScheduler());
+    Set<BarcodeFormat> formats = EnumSet.copyOf(SyntheticFrameGenerator.SUPPORTED_FORMATS);
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+    multiFormatReader.setHints(hints);
+
+    /* every tier reads the frame, so only the cache decides whether a frame succeeds */
+    DecodeTier tier = new DecodeTier(1, DecodeTier.HYBRID_BINARIZER | DecodeTier.ALL_FORMATS);
+    decodeLadder.setTiers(new DecodeTier[] { tier, tier, tier });
+    motionDetector.setEnabled(false);
+    frameDecoder = new FrameDecoder(multiFormatReader, decodeLadder, motionDetector,
+        new ResultCache(), new DecodeStatistics(), new FrameDecoder.Listener() {
+      @Override public void onDecodeTier(DecodeTier tier) {
+      }
+
+      @Override public void onFrameQuality(FrameQuality quality) {
+      }
+    });
+    frameDecoder.setOptions(FrameQualityGate.DISABLED, false, true);
+  }
+
+  @Test public void newResultSucceeds() {
+    assertEquals(FrameDecoder.OUTCOME_DECODED, frameDecoder.decode(source, 0, 0L, false));
+    assertEquals(0, decodeLadder.current());
+  }
+
+  @Test public void filteredRepeatCountsAsFailure() {
+    assertEquals(FrameDecoder.OUTCOME_DECODED, frameDecoder.decode(source, 0, 0L, false));
+    for (int i = 1; i <= decodeLadder.getFailuresPerTier(); i++) {
+      assertEquals(FrameDecoder.OUTCOME_FAILED, frameDecoder.decode(source, i, 0L, false));
+      /* readers found the code, the cache dropped it */
+      assertTrue(frameDecoder.isFound());
+    }
+    assertEquals(1, decodeLadder.current());
+  }
+
+  @Test public void repeatDoesNotResetLadder() {
+    frameDecoder.decode(source, 0, 0L, false);
+    decodeLadder.onFailed(0);
+    decodeLadder.onFailed(0);
+    assertEquals(1, decodeLadder.current());
+
+    frameDecoder.decode(source, 1, 0L, false);
+    assertEquals(1, decodeLadder.current());
+  }
+}
@@ -0,0 +1,72 @@
+package com.google.zxing.client.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link LatencyHistogram} buckets.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public class LatencyHistogramTest {
+  /* the largest power of two with buckets of its own */
+  private static final int MAX_POWER = 40;
+
+  @Test public void smallValuesAreExact() {
+    for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+      assertEquals(value, LatencyHistogram.bucketOf(value));
+      assertEquals(value, LatencyHistogram.highestValueOf(value));
+    }
+  }
+
+  @Test public void negativeValuesGoToFirstBucket() {
+    assertEquals(0, LatencyHistogram.bucketOf(-1L));
+  }
+
+  @Test public void bucketsAreContiguous() {
+    for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+      long highest = LatencyHistogram.highestValueOf(bucket);
+      assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+      assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+    }
+  }
+
+  @Test public void valuesRoundTripAcrossPowersOfTwo() {
+    for (int power = 1; power < MAX_POWER; power++) {
+      long boundary = 1L << power;
+      for (long value = boundary - 2; value <= boundary + 2; value++) {
+        checkRoundTrip(value);
+      }
+    }
+  }
+
+  @Test public void valuesRoundTripWithinPowersOfTwo() {
+    for (int power = 3; power < MAX_POWER; power++) {
+      long base = 1L << power;
+      for (int i = 0; i < LatencyHistogram.SUB_BUCKETS * 4; i++) {
+        checkRoundTrip(base + base * i / (LatencyHistogram.SUB_BUCKETS * 4));
+      }
+    }
+  }
+
+  @Test public void hugeValuesGoToLastBucket() {
+    int last = LatencyHistogram.BUCKET_COUNT - 1;
+    assertEquals(last, LatencyHistogram.bucketOf(1L << (MAX_POWER + 1)));
+    assertEquals(last, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  /**
+   * Check a value falls in a bucket whose highest value overestimates it by 12.5% at most.
+   */
+  private static void checkRoundTrip(long value) {
+    int bucket = LatencyHistogram.bucketOf(value);
+    long highest = LatencyHistogram.highestValueOf(bucket);
+    assertTrue(value + " above " + highest, value <= highest);
+    assertTrue(value + " below bucket " + bucket,
+        bucket == 0 || LatencyHistogram.highestValueOf(bucket - 1) < value);
+    assertTrue(highest + " too far from " + value,
+        highest - value <= value / LatencyHistogram.SUB_BUCKETS);
+  }
+}
@@ -0,0 +1,116 @@
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of {@link ResultCache}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public class ResultCacheTest {
+  private static final long TTL = 1000L;
+
+  private ResultCache resultCache;
+
+  @Before public void setUp() {
+    resultCache = new ResultCache();
+    resultCache.setTtl(TTL);
+  }
+
+  @Test public void newResultsPassThrough() {
+    Result[] results = { result("a"), result("b") };
+    assertSame(results, resultCache.filter(results, 0L));
+  }
+
+  @Test public void repeatReadIsDropped() {
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    assertNull(resultCache.filter(new Result[] { result("a") }, 10L));
+  }
+
+  @Test public void onlyNewResultsAreKept() {
+    Result b = result("b");
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    assertArrayEquals(new Result[] { b }, resultCache.filter(new Result[] { result("a"), b }, 10L));
+  }
+
+  @Test public void formatIsPartOfKey() {
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    Result[] results = { new Result("a", null, null, BarcodeFormat.CODE_128) };
+    assertSame(results, resultCache.filter(results, 10L));
+  }
+
+  @Test public void entryExpiresAfterTtl() {
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    assertNull(resultCache.filter(new Result[] { result("a") }, TTL - 1));
+    /* the repeat read refreshed the entry */
+    assertNull(resultCache.filter(new Result[] { result("a") }, 2 * TTL - 2));
+    assertEquals(1, resultCache.filter(new Result[] { result("a") }, 3 * TTL - 2).length);
+  }
+
+  @Test public void entryExpiresExactlyAtTtl() {
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    assertEquals(1, resultCache.filter(new Result[] { result("a") }, TTL).length);
+  }
+
+  @Test public void leastRecentlyReadIsEvicted() {
+    resultCache.setMaxSize(2);
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    resultCache.filter(new Result[] { result("b") }, 1L);
+    /* a read again, so b is the least recently read now */
+    resultCache.filter(new Result[] { result("a") }, 2L);
+    resultCache.filter(new Result[] { result("c") }, 3L);
+
+    assertNull(resultCache.filter(new Result[] { result("a") }, 4L));
+    assertNull(resultCache.filter(new Result[] { result("c") }, 5L));
+    assertEquals(1, resultCache.filter(new Result[] { result("b") }, 6L).length);
+    assertEquals(2, resultCache.snapshot().getEvictions());
+  }
+
+  @Test public void shrinkingEvictsLeastRecentlyRead() {
+    resultCache.filter(new Result[] { result("a"), result("b"), result("c") }, 0L);
+    resultCache.setMaxSize(1);
+
+    ResultCacheStatistics statistics = resultCache.snapshot();
+    assertEquals(1, statistics.getSize());
+    assertEquals(2, statistics.getEvictions());
+    assertNull(resultCache.filter(new Result[] { result("c") }, 1L));
+  }
+
+  @Test public void hitsAndMissesAreCounted() {
+    resultCache.filter(new Result[] { result("a"), result("b") }, 0L);
+    resultCache.filter(new Result[] { result("a"), result("c") }, 1L);
+    resultCache.filter(new Result[] { result("a") }, 2L);
+
+    ResultCacheStatistics statistics = resultCache.snapshot();
+    assertEquals(2, statistics.getHits());
+    assertEquals(3, statistics.getMisses());
+    assertEquals(3, statistics.getSize());
+    assertEquals(0, statistics.getEvictions());
+  }
+
+  @Test public void clearForgetsEntries() {
+    resultCache.filter(new Result[] { result("a") }, 0L);
+    resultCache.clear();
+    assertEquals(1, resultCache.filter(new Result[] { result("a") }, 1L).length);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void badMaxSize() {
+    resultCache.setMaxSize(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void badTtl() {
+    resultCache.setTtl(0L);
+  }
+
+  private static Result result(String text) {
+    return new Result(text, null, null, BarcodeFormat.QR_CODE);
+  }
+}
@@ -0,0 +1,89 @@
+package com.google.zxing.client.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link StageLatency} percentiles.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public class StageLatencyTest {
+  @Test public void emptyIsZero() {
+    StageLatency latency = new LatencyHistogram().snapshot();
+    assertEquals(0, latency.getCount());
+    assertEquals(0, latency.getMean());
+    assertEquals(0, latency.getPercentile(50));
+  }
+
+  @Test public void constantIsExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 100; i++) {
+      histogram.recordNanos(100000L);
+    }
+    StageLatency latency = histogram.snapshot();
+    /* the bucket goes above 100, percentiles never exceed the largest value recorded */
+    assertEquals(100, latency.getPercentile(0));
+    assertEquals(100, latency.getPercentile(50));
+    assertEquals(100, latency.getPercentile(100));
+    assertEquals(100, latency.getMean());
+  }
+
+  @Test public void uniformIsWithinAccuracy() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int micros = 1; micros <= 1000; micros++) {
+      histogram.recordNanos(micros * 1000L);
+    }
+    StageLatency latency = histogram.snapshot();
+    assertEquals(1000, latency.getCount());
+    assertEquals(500, latency.getMean());
+    assertEquals(1000, latency.getMax());
+    assertWithinAccuracy(1, latency.getPercentile(0));
+    assertWithinAccuracy(500, latency.getPercentile(50));
+    assertWithinAccuracy(900, latency.getPercentile(90));
+    assertWithinAccuracy(990, latency.getPercentile(99));
+    assertEquals(1000, latency.getPercentile(100));
+  }
+
+  @Test public void bimodalSplitsAtRank() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.recordNanos(2000L);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.recordNanos(50000000L);
+    }
+    StageLatency latency = histogram.snapshot();
+    assertEquals(2, latency.getPercentile(90));
+    assertWithinAccuracy(50000, latency.getPercentile(90.5));
+    assertEquals(50000, latency.getPercentile(99));
+  }
+
+  @Test public void nanosAreTruncatedToMicros() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(999L);
+    histogram.recordNanos(1999L);
+    StageLatency latency = histogram.snapshot();
+    assertEquals(0, latency.getPercentile(50));
+    assertEquals(1, latency.getMax());
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void negativePercentile() {
+    new LatencyHistogram().snapshot().getPercentile(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void percentileAboveHundred() {
+    new LatencyHistogram().snapshot().getPercentile(100.5);
+  }
+
+  /**
+   * Check a percentile is the expected value or above it by 12.5% at most.
+   */
+  private static void assertWithinAccuracy(long expected, long actual) {
+    assertTrue(actual + " below " + expected, actual >= expected);
+    assertTrue(actual + " too far from " + expected,
+        actual - expected <= expected / LatencyHistogram.SUB_BUCKETS);
+  }
+}